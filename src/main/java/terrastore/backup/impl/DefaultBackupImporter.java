@@ -100,7 +100,8 @@ public class DefaultBackupImporter implements BackupImporter {
 
             @Override
             public Value create(byte[] bytes) {
-                return new Value(bytes);
+                // Exported values are always raw Json:
+                return Value.fromJson(bytes);
             }
 
         });
@@ -41,6 +41,13 @@ public interface Coordinator {
 
     public void setWokerThreads(int workerThreads);
 
+    /**
+     * Set if this node must be the only node connected to its master, because it holds node-local data (i.e. with the log
+     * store): if so, the node refuses to start when other nodes are already connected, and refuses to join other nodes
+     * connecting later.
+     */
+    public void setSingleNode(boolean singleNode);
+
     public void setLockManager(LockManager lockManager);
 
     public void setStore(Store store);
@@ -83,6 +83,7 @@ public class TCCoordinator implements Coordinator, ClusterListener {
     private volatile long nodeTimeout;
     private volatile int remoteProcessorThreads;
     private volatile int globalExecutorThreads;
+    private volatile boolean singleNode;
     //
     private volatile LockManager lockManager;
     private volatile Store store;
@@ -118,6 +119,11 @@ public class TCCoordinator implements Coordinator, ClusterListener {
         this.globalExecutorThreads = threads;
     }
 
+    @Override
+    public void setSingleNode(boolean singleNode) {
+        this.singleNode = singleNode;
+    }
+
     @Override
     public void setLockManager(LockManager lockManager) {
         this.lockManager = lockManager;
@@ -164,6 +170,10 @@ public class TCCoordinator implements Coordinator, ClusterListener {
             thisCluster = new Cluster(ensembleConfiguration.getLocalCluster(), true);
             thisConfiguration = serverConfiguration;
             clusterNodes = new ConcurrentHashMap<String, Node>();
+            // Verify this node is alone, if required:
+            if (singleNode && getCluster().getClusterTopology().getNodes().size() > 1) {
+                throw new IllegalStateException("This node holds node-local data, so it cannot share its master with other nodes!");
+            }
             // Configure global executor:
             GlobalExecutor.configure(globalExecutorThreads);
             // Setup ensemble:
@@ -189,6 +199,8 @@ public class TCCoordinator implements Coordinator, ClusterListener {
             } catch (Exception ex) {
                 LOG.error(ex.getMessage(), ex);
             }
+        } else if (singleNode) {
+            LOG.error("Refusing to join remote node {}: this node holds node-local data, so it cannot share its master with other nodes!", joinedNodeName);
         } else {
             try {
                 LOG.info("Joining remote node as {}:{}", thisCluster.getName(), joinedNodeName);
@@ -34,6 +34,7 @@ public class ErrorMessage implements MessagePackable {
     public static final int FORBIDDEN_ERROR_CODE = 403;
     public static final int NOT_FOUND_ERROR_CODE = 404;
     public static final int CONFLICT_ERROR_CODE = 409;
+    public static final int PRECONDITION_FAILED_ERROR_CODE = 412;
     public static final int INTERNAL_SERVER_ERROR_CODE = 500;
     public static final int UNAVAILABLE_ERROR_CODE = 503;
     //
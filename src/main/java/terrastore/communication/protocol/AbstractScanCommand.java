@@ -0,0 +1,84 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.communication.protocol;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import terrastore.common.ErrorMessage;
+import terrastore.communication.CommunicationException;
+import terrastore.communication.ProcessingException;
+import terrastore.router.MissingRouteException;
+import terrastore.router.Router;
+import terrastore.store.Key;
+import terrastore.store.Store;
+import terrastore.store.StoreOperationException;
+
+/**
+ * Base class for commands scanning the bucket keys owned by a given node, as computed by the router of the node
+ * executing the command: so keys never leave the node they're stored on, and only results are returned.<br>
+ * The owner node is usually the executing node itself, but may differ when scanning on behalf of an unavailable
+ * node of the same cluster.<br>
+ * Scan commands can only be executed on routers: by the receiving node, or directly by the coordinator when scanning
+ * its own keys.
+ *
+ * @author Sergio Bossa
+ */
+public abstract class AbstractScanCommand<R> extends AbstractCommand<R> {
+
+    protected String bucketName;
+    protected String ownerName;
+
+    protected AbstractScanCommand(String bucketName, String ownerName) {
+        this.bucketName = bucketName;
+        this.ownerName = ownerName;
+    }
+
+    protected AbstractScanCommand() {
+    }
+
+    /**
+     * Create a copy of this command scanning the keys owned by the node with the given name.
+     */
+    public abstract AbstractScanCommand<R> forOwner(String ownerName);
+
+    /**
+     * Scan the keys owned by the owner node, returning the command result.
+     */
+    public abstract R scan(Router router) throws CommunicationException, MissingRouteException, ProcessingException;
+
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    public Response<R> executeOn(Store store) throws StoreOperationException {
+        throw new StoreOperationException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, "Scan commands must be executed on a router."));
+    }
+
+    /**
+     * Get the keys of the given bucket, as stored by the cluster of the local node, owned by the given node.
+     */
+    public static Set<Key> getOwnedKeys(Router router, String bucketName, String ownerName) throws CommunicationException, MissingRouteException, ProcessingException {
+        Set<Key> keys = router.routeToLocalNode().<Set<Key>>send(new GetKeysCommand(bucketName));
+        Set<Key> owned = new HashSet<Key>();
+        for (Key key : keys) {
+            if (ownerName.equals(router.routeToNodeFor(bucketName, key).getName())) {
+                owned.add(key);
+            }
+        }
+        return owned;
+    }
+}
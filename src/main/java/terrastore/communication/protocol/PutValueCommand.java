@@ -46,6 +46,8 @@ public class PutValueCommand extends AbstractCommand {
     private Value value;
     private boolean conditional;
     private Predicate predicate;
+    private boolean versioned;
+    private long version;
 
     public PutValueCommand(String bucketName, Key key, Value value) {
         this.bucketName = bucketName;
@@ -63,6 +65,16 @@ public class PutValueCommand extends AbstractCommand {
         this.predicate = predicate;
     }
 
+    public PutValueCommand(String bucketName, Key key, Value value, long version) {
+        this.bucketName = bucketName;
+        this.key = key;
+        this.value = value;
+        this.conditional = false;
+        this.predicate = null;
+        this.versioned = true;
+        this.version = version;
+    }
+
     public PutValueCommand() {
     }
 
@@ -76,7 +88,13 @@ public class PutValueCommand extends AbstractCommand {
     public NullResponse executeOn(Store store) throws StoreOperationException {
         Bucket bucket = store.getOrCreate(bucketName);
         if (bucket != null) {
-            if (conditional) {
+            if (versioned) {
+                boolean put = bucket.putIfVersion(key, value, version);
+                if (!put) {
+                    throw new StoreOperationException(new ErrorMessage(ErrorMessage.PRECONDITION_FAILED_ERROR_CODE,
+                            "Version mismatch for key: " + key));
+                }
+            } else if (conditional) {
                 boolean put = bucket.conditionalPut(key, value, predicate);
                 if (!put) {
                     throw new StoreOperationException(new ErrorMessage(ErrorMessage.CONFLICT_ERROR_CODE,
@@ -96,6 +114,8 @@ public class PutValueCommand extends AbstractCommand {
         MsgPackUtils.packValue(packer, value);
         MsgPackUtils.packBoolean(packer, conditional);
         MsgPackUtils.packPredicate(packer, predicate);
+        MsgPackUtils.packBoolean(packer, versioned);
+        MsgPackUtils.packLong(packer, version);
     }
 
     @Override
@@ -105,5 +125,7 @@ public class PutValueCommand extends AbstractCommand {
         value = MsgPackUtils.unpackValue(unpacker);
         conditional = MsgPackUtils.unpackBoolean(unpacker);
         predicate = MsgPackUtils.unpackPredicate(unpacker);
+        versioned = MsgPackUtils.unpackBoolean(unpacker);
+        version = MsgPackUtils.unpackLong(unpacker);
     }
 }
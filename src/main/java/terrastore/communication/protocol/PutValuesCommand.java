@@ -69,12 +69,8 @@ public class PutValuesCommand extends AbstractCommand<Set<Key>> {
 
     public Response<Set<Key>> executeOn(Store store) throws StoreOperationException {
         Bucket bucket = store.getOrCreate(bucketName);
-        Set<Key> insertedKeys = new HashSet<Key>();
-        for (Map.Entry<Key, Value> entry : values.entrySet()) {
-            bucket.put(entry.getKey(), entry.getValue());
-            insertedKeys.add(entry.getKey());
-        }
-        return new KeysResponse(id, insertedKeys);
+        bucket.putAll(values);
+        return new KeysResponse(id, new HashSet<Key>(values.keySet()));
     }
 
     @Override
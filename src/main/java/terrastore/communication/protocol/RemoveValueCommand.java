@@ -21,6 +21,7 @@ import org.msgpack.MessageTypeException;
 import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
+import terrastore.common.ErrorMessage;
 import terrastore.communication.CommunicationException;
 import terrastore.communication.Node;
 import terrastore.communication.ProcessingException;
@@ -40,12 +41,21 @@ public class RemoveValueCommand extends AbstractCommand {
 
     private String bucketName;
     private Key key;
+    private boolean versioned;
+    private long version;
 
     public RemoveValueCommand(String bucketName, Key key) {
         this.bucketName = bucketName;
         this.key = key;
     }
 
+    public RemoveValueCommand(String bucketName, Key key, long version) {
+        this.bucketName = bucketName;
+        this.key = key;
+        this.versioned = true;
+        this.version = version;
+    }
+
     public RemoveValueCommand() {
     }
 
@@ -58,7 +68,12 @@ public class RemoveValueCommand extends AbstractCommand {
 
     public NullResponse executeOn(Store store) throws StoreOperationException {
         Bucket bucket = store.get(bucketName);
-        if (bucket != null) {
+        if (versioned) {
+            if (bucket == null || !bucket.removeIfVersion(key, version)) {
+                throw new StoreOperationException(new ErrorMessage(ErrorMessage.PRECONDITION_FAILED_ERROR_CODE,
+                        "Version mismatch for key: " + key));
+            }
+        } else if (bucket != null) {
             bucket.remove(key);
         }
         return new NullResponse(id);
@@ -68,11 +83,15 @@ public class RemoveValueCommand extends AbstractCommand {
     protected void doSerialize(Packer packer) throws IOException {
         MsgPackUtils.packString(packer, bucketName);
         MsgPackUtils.packKey(packer, key);
+        MsgPackUtils.packBoolean(packer, versioned);
+        MsgPackUtils.packLong(packer, version);
     }
 
     @Override
     protected void doDeserialize(Unpacker unpacker) throws IOException, MessageTypeException {
         bucketName = MsgPackUtils.unpackString(unpacker);
         key = MsgPackUtils.unpackKey(unpacker);
+        versioned = MsgPackUtils.unpackBoolean(unpacker);
+        version = MsgPackUtils.unpackLong(unpacker);
     }
 }
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.communication.protocol;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import org.msgpack.MessageTypeException;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.Unpacker;
+
+import terrastore.communication.CommunicationException;
+import terrastore.communication.ProcessingException;
+import terrastore.router.MissingRouteException;
+import terrastore.router.Router;
+import terrastore.store.Key;
+import terrastore.store.features.Mapper;
+import terrastore.util.io.MsgPackUtils;
+
+/**
+ * Map (and combine) all values owned by a given node.<br>
+ * Its result is null if the node owns no keys, so that there's nothing to reduce.
+ *
+ * @author Sergio Bossa
+ */
+public class ScanMapCommand extends AbstractScanCommand<Map<String, Object>> {
+
+    private Mapper mapper;
+
+    public ScanMapCommand(String bucketName, Mapper mapper) {
+        super(bucketName, null);
+        this.mapper = mapper;
+    }
+
+    private ScanMapCommand(ScanMapCommand command, String ownerName) {
+        super(command.bucketName, ownerName);
+        this.mapper = command.mapper;
+    }
+
+    public ScanMapCommand() {
+    }
+
+    @Override
+    public Map<String, Object> scan(Router router) throws CommunicationException, MissingRouteException, ProcessingException {
+        Set<Key> keys = getOwnedKeys(router, bucketName, ownerName);
+        if (!keys.isEmpty()) {
+            return router.routeToLocalNode().<Map<String, Object>>send(new MapCommand(bucketName, keys, mapper));
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public ScanMapCommand forOwner(String ownerName) {
+        return new ScanMapCommand(this, ownerName);
+    }
+
+    @Override
+    public Response<Map<String, Object>> executeOn(Router router) throws CommunicationException, MissingRouteException, ProcessingException {
+        return new GenericMapResponse(id, scan(router));
+    }
+
+    @Override
+    protected void doSerialize(Packer packer) throws IOException {
+        MsgPackUtils.packString(packer, bucketName);
+        MsgPackUtils.packString(packer, ownerName);
+        MsgPackUtils.packMapper(packer, mapper);
+    }
+
+    @Override
+    protected void doDeserialize(Unpacker unpacker) throws IOException, MessageTypeException {
+        bucketName = MsgPackUtils.unpackString(unpacker);
+        ownerName = MsgPackUtils.unpackString(unpacker);
+        mapper = MsgPackUtils.unpackMapper(unpacker);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.communication.protocol;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.msgpack.MessageTypeException;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.Unpacker;
+
+import terrastore.communication.CommunicationException;
+import terrastore.communication.ProcessingException;
+import terrastore.router.MissingRouteException;
+import terrastore.router.Router;
+import terrastore.store.Key;
+import terrastore.store.Value;
+import terrastore.store.features.Predicate;
+import terrastore.util.io.MsgPackUtils;
+
+/**
+ * Get all values owned by a given node, optionally satisfying the given predicate.
+ *
+ * @author Sergio Bossa
+ */
+public class ScanValuesCommand extends AbstractScanCommand<Map<Key, Value>> {
+
+    private Predicate predicate;
+
+    public ScanValuesCommand(String bucketName, Predicate predicate) {
+        super(bucketName, null);
+        this.predicate = predicate;
+    }
+
+    private ScanValuesCommand(ScanValuesCommand command, String ownerName) {
+        super(command.bucketName, ownerName);
+        this.predicate = command.predicate;
+    }
+
+    public ScanValuesCommand() {
+    }
+
+    @Override
+    public Map<Key, Value> scan(Router router) throws CommunicationException, MissingRouteException, ProcessingException {
+        Set<Key> keys = getOwnedKeys(router, bucketName, ownerName);
+        if (!keys.isEmpty()) {
+            GetValuesCommand command = predicate == null || predicate.isEmpty()
+                    ? new GetValuesCommand(bucketName, keys)
+                    : new GetValuesCommand(bucketName, keys, predicate);
+            return router.routeToLocalNode().<Map<Key, Value>>send(command);
+        } else {
+            return Collections.<Key, Value>emptyMap();
+        }
+    }
+
+    @Override
+    public ScanValuesCommand forOwner(String ownerName) {
+        return new ScanValuesCommand(this, ownerName);
+    }
+
+    @Override
+    public Response<Map<Key, Value>> executeOn(Router router) throws CommunicationException, MissingRouteException, ProcessingException {
+        return new ValuesResponse(id, scan(router));
+    }
+
+    @Override
+    protected void doSerialize(Packer packer) throws IOException {
+        MsgPackUtils.packString(packer, bucketName);
+        MsgPackUtils.packString(packer, ownerName);
+        MsgPackUtils.packPredicate(packer, predicate);
+    }
+
+    @Override
+    protected void doDeserialize(Unpacker unpacker) throws IOException, MessageTypeException {
+        bucketName = MsgPackUtils.unpackString(unpacker);
+        ownerName = MsgPackUtils.unpackString(unpacker);
+        predicate = MsgPackUtils.unpackPredicate(unpacker);
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.communication.protocol;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.msgpack.MessageTypeException;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.Unpacker;
+
+import terrastore.common.ErrorMessage;
+import terrastore.communication.CommunicationException;
+import terrastore.communication.Node;
+import terrastore.communication.ProcessingException;
+import terrastore.router.MissingRouteException;
+import terrastore.router.Router;
+import terrastore.store.Key;
+import terrastore.store.Store;
+import terrastore.store.StoreOperationException;
+import terrastore.store.Value;
+import terrastore.store.features.Mapper;
+import terrastore.store.features.Reducer;
+import terrastore.util.collect.parallel.MapCollector;
+import terrastore.util.collect.parallel.MapTask;
+import terrastore.util.collect.parallel.ParallelExecutionException;
+import terrastore.util.collect.parallel.ParallelUtils;
+import terrastore.util.concurrent.GlobalExecutor;
+import terrastore.util.io.MsgPackUtils;
+import terrastore.util.json.JsonUtils;
+
+/**
+ * Execute a level of a tree map/reduce: map the given keys on the receiving node, execute all children commands
+ * on their own nodes, and reduce all results together.<br>
+ * If no keys are given (null), the keys owned by the receiving node are scanned, as in {@link ScanMapCommand}.<br>
+ * So every node only receives results from its children, rather than from all nodes.
+ *
+ * @author Sergio Bossa
+ */
+public class TreeReduceCommand extends AbstractCommand<Map<String, Object>> {
+
+    private String bucketName;
+    private Set<Key> keys;
+    private Mapper mapper;
+    private Reducer reducer;
+    private Map<String, TreeReduceCommand> children;
+
+    public TreeReduceCommand(String bucketName, Set<Key> keys, Mapper mapper, Reducer reducer) {
+        this.bucketName = bucketName;
+        this.keys = keys;
+        this.mapper = mapper;
+        this.reducer = reducer;
+        this.children = new LinkedHashMap<String, TreeReduceCommand>();
+    }
+
+    public TreeReduceCommand() {
+    }
+
+    /**
+     * Add a child command, to execute on the node with the given name.
+     */
+    public void addChild(String nodeName, TreeReduceCommand child) {
+        children.put(nodeName, child);
+    }
+
+    public Map<String, TreeReduceCommand> getChildren() {
+        return children;
+    }
+
+    /**
+     * Map keys on the local node and execute children commands on their own nodes, in parallel,
+     * returning all results to reduce.
+     */
+    public List<Map<String, Object>> mapAndCollect(Router router) throws CommunicationException, MissingRouteException, ProcessingException {
+        Map<Node, Command<Map<String, Object>>> commands = new LinkedHashMap<Node, Command<Map<String, Object>>>();
+        Node localNode = router.routeToLocalNode();
+        Set<Key> localKeys = keys != null ? keys : AbstractScanCommand.getOwnedKeys(router, bucketName, localNode.getName());
+        if (!localKeys.isEmpty()) {
+            commands.put(localNode, new MapCommand(bucketName, localKeys, mapper));
+        }
+        if (!children.isEmpty()) {
+            Map<String, Node> nodes = new HashMap<String, Node>();
+            for (Set<Node> clusterNodes : router.broadcastRoute().values()) {
+                for (Node node : clusterNodes) {
+                    nodes.put(node.getName(), node);
+                }
+            }
+            for (Map.Entry<String, TreeReduceCommand> child : children.entrySet()) {
+                Node node = nodes.get(child.getKey());
+                if (node != null) {
+                    commands.put(node, child.getValue());
+                } else {
+                    throw new MissingRouteException(new ErrorMessage(ErrorMessage.UNAVAILABLE_ERROR_CODE, "No route to node: " + child.getKey()));
+                }
+            }
+        }
+        try {
+            return ParallelUtils.parallelMap(
+                    commands.entrySet(),
+                    new MapTask<Map.Entry<Node, Command<Map<String, Object>>>, Map<String, Object>>() {
+
+                        @Override
+                        public Map<String, Object> map(Map.Entry<Node, Command<Map<String, Object>>> nodeToCommand) throws ParallelExecutionException {
+                            try {
+                                return nodeToCommand.getKey().send(nodeToCommand.getValue());
+                            } catch (Exception ex) {
+                                throw new ParallelExecutionException(ex);
+                            }
+                        }
+
+                    },
+                    new MapCollector<Map<String, Object>, List<Map<String, Object>>>() {
+
+                        @Override
+                        public List<Map<String, Object>> collect(List<Map<String, Object>> values) {
+                            return values;
+                        }
+
+                    }, GlobalExecutor.getQueryExecutor());
+        } catch (ParallelExecutionException ex) {
+            if (ex.getCause() instanceof ProcessingException) {
+                throw (ProcessingException) ex.getCause();
+            } else if (ex.getCause() instanceof CommunicationException) {
+                throw (CommunicationException) ex.getCause();
+            } else {
+                throw new ProcessingException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, ex.getMessage()));
+            }
+        }
+    }
+
+    @Override
+    public Response<Map<String, Object>> executeOn(Router router) throws CommunicationException, MissingRouteException, ProcessingException {
+        List<Map<String, Object>> values = mapAndCollect(router);
+        Value reduced = router.routeToLocalNode().<Value>send(new ReduceCommand(values, reducer));
+        return new GenericMapResponse(id, JsonUtils.toModifiableMap(reduced));
+    }
+
+    public Response<Map<String, Object>> executeOn(Store store) throws StoreOperationException {
+        // Children commands can only be sent, and owned keys computed, through the router, so this only works for leaves
+        // with given keys:
+        if (children.isEmpty() && keys != null) {
+            List<Map<String, Object>> values = new LinkedList<Map<String, Object>>();
+            values.add(store.map(bucketName, keys, mapper));
+            return new GenericMapResponse(id, JsonUtils.toModifiableMap(store.reduce(values, reducer)));
+        } else {
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, "Tree reduce commands with children or without keys must be executed on a router."));
+        }
+    }
+
+    @Override
+    protected void doSerialize(Packer packer) throws IOException {
+        MsgPackUtils.packString(packer, bucketName);
+        MsgPackUtils.packKeys(packer, keys);
+        MsgPackUtils.packMapper(packer, mapper);
+        MsgPackUtils.packReducer(packer, reducer);
+        MsgPackUtils.packInt(packer, children.size());
+        for (Map.Entry<String, TreeReduceCommand> child : children.entrySet()) {
+            MsgPackUtils.packString(packer, child.getKey());
+            child.getValue().doSerialize(packer);
+        }
+    }
+
+    @Override
+    protected void doDeserialize(Unpacker unpacker) throws IOException, MessageTypeException {
+        bucketName = MsgPackUtils.unpackString(unpacker);
+        keys = MsgPackUtils.unpackKeys(unpacker);
+        mapper = MsgPackUtils.unpackMapper(unpacker);
+        reducer = MsgPackUtils.unpackReducer(unpacker);
+        int size = MsgPackUtils.unpackInt(unpacker);
+        children = new LinkedHashMap<String, TreeReduceCommand>(size);
+        for (int i = 0; i < size; i++) {
+            String nodeName = MsgPackUtils.unpackString(unpacker);
+            TreeReduceCommand child = new TreeReduceCommand();
+            child.doDeserialize(unpacker);
+            children.put(nodeName, child);
+        }
+    }
+
+}
@@ -22,13 +22,14 @@ import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
 import terrastore.store.Value;
+import terrastore.util.io.Compressible;
 import terrastore.util.io.MsgPackUtils;
 
 /**
  * @author Sergio Bossa
  * @author Adriano Santos
  */
-public class ValueResponse extends AbstractResponse<Value> {
+public class ValueResponse extends AbstractResponse<Value> implements Compressible {
 
     private Value result;
 
@@ -45,6 +46,14 @@ public class ValueResponse extends AbstractResponse<Value> {
         return result;
     }
 
+    /**
+     * Values compressed by a codec travel as they are, so they're not worth compressing again.
+     */
+    @Override
+    public boolean isCompressible() {
+        return result == null || result.getCodec() == null;
+    }
+
     @Override
     protected void doSerialize(Packer packer) throws IOException {
         MsgPackUtils.packValue(packer, result);
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import terrastore.store.Key;
+
+/**
+ * Continuation of a paged query, holding the key comparator used for ordering results and, for each cluster,
+ * the last key returned so far, or no key at all if the cluster has no more results.
+ * <br><br>
+ * Continuations are exchanged with clients as opaque, url-safe, tokens (see {@link #toToken()} and {@link #fromToken(String)}).
+ *
+ * @author Sergio Bossa
+ */
+public class Continuation implements Serializable {
+
+    private static final long serialVersionUID = 12345678901L;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    //
+    private final String comparator;
+    private final Map<String, Key> positions;
+
+    public Continuation(String comparator, Map<String, Key> positions) {
+        this.comparator = comparator;
+        this.positions = positions;
+    }
+
+    public static Continuation fromToken(String token) throws IllegalArgumentException {
+        try {
+            byte[] bytes = new byte[token.length() / 2];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) Integer.parseInt(token.substring(i * 2, i * 2 + 2), 16);
+            }
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            String comparator = input.readUTF();
+            int size = input.readInt();
+            Map<String, Key> positions = new HashMap<String, Key>();
+            for (int i = 0; i < size; i++) {
+                String cluster = input.readUTF();
+                Key key = input.readBoolean() ? new Key(input.readUTF()) : null;
+                positions.put(cluster, key);
+            }
+            return new Continuation(comparator, positions);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Bad continuation: " + token);
+        }
+    }
+
+    public String getComparator() {
+        return comparator;
+    }
+
+    public Map<String, Key> getPositions() {
+        return Collections.unmodifiableMap(positions);
+    }
+
+    /**
+     * Get the last key returned for the given cluster, or null if the cluster has no more results, or no results
+     * have been returned yet for it.
+     */
+    public Key getPosition(String cluster) {
+        return positions.get(cluster);
+    }
+
+    /**
+     * Determine if the given cluster has no more results.
+     */
+    public boolean isExhausted(String cluster) {
+        return positions.containsKey(cluster) && positions.get(cluster) == null;
+    }
+
+    public String toToken() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeUTF(comparator);
+            output.writeInt(positions.size());
+            for (Map.Entry<String, Key> position : positions.entrySet()) {
+                output.writeUTF(position.getKey());
+                output.writeBoolean(position.getValue() != null);
+                if (position.getValue() != null) {
+                    output.writeUTF(position.getValue().toString());
+                }
+            }
+            output.flush();
+            StringBuilder token = new StringBuilder();
+            for (byte b : bytes.toByteArray()) {
+                token.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+            return token.toString();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof Continuation) {
+            Continuation other = (Continuation) obj;
+            return new EqualsBuilder().append(this.comparator, other.comparator).append(this.positions, other.positions).isEquals();
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder().append(comparator).append(positions).toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toToken();
+    }
+}
@@ -82,6 +82,8 @@ public class MapReduceDescriptor {
         public String reducer;
         public long timeout;
         public Parameters parameters;
+        public boolean treeReduce;
+        public long memoryBudget;
 
         public Task(String mapper, String combiner, String reducer, Long timeout, Parameters parameters) {
             this.mapper = mapper;
@@ -113,6 +115,10 @@ public class MapReduceDescriptor {
             if (parameters == null) {
                 parameters = new Parameters();
             }
+            if (memoryBudget < 0) {
+                ErrorMessage error = new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Memory budget value must not be negative!");
+                throw new ServerOperationException(error);
+            }
         }
 
     }
@@ -17,6 +17,7 @@ package terrastore.server;
 
 import terrastore.common.ClusterStats;
 import terrastore.service.BackupService;
+import terrastore.service.ExtensionService;
 import terrastore.service.QueryService;
 import terrastore.service.UpdateService;
 import terrastore.store.Key;
@@ -70,6 +71,18 @@ public interface Server {
      */
     public void putValue(String bucket, Key key, Value value, String predicate) throws ServerOperationException;
 
+    /**
+     * Put a value in the given bucket under the given key, only if an old value exists and its version
+     * (see {@link terrastore.store.Value#getVersion()}) is equal to the given one.
+     *
+     * @param bucket The name of the bucket where to put the value.
+     * @param key The key of the value to put.
+     * @param value The value to put.
+     * @param version The expected version of the old value, or {@link terrastore.store.Value#ANY_VERSION} to match any existing value.
+     * @throws ServerOperationException If an error occurs, or versions don't match.
+     */
+    public void putValueIfVersion(String bucket, Key key, Value value, long version) throws ServerOperationException;
+
     /**
      * Remove a value from the given bucket under the given key.
      *
@@ -79,6 +92,17 @@ public interface Server {
      */
     public void removeValue(String bucket, Key key) throws ServerOperationException;
 
+    /**
+     * Remove a value from the given bucket under the given key, only if its version
+     * (see {@link terrastore.store.Value#getVersion()}) is equal to the given one.
+     *
+     * @param bucket The name of the bucket where to remove the value from.
+     * @param key The key of the value to remove.
+     * @param version The expected version of the value, or {@link terrastore.store.Value#ANY_VERSION} to match any existing value.
+     * @throws ServerOperationException If an error occurs, or versions don't match.
+     */
+    public void removeValueIfVersion(String bucket, Key key, long version) throws ServerOperationException;
+
     /**
      * Execute an update on a value from the given bucket under the given key.
      * 
@@ -124,14 +148,19 @@ public interface Server {
     public Value getValue(String bucket, Key key, String predicate) throws ServerOperationException;
 
     /**
-     * Get all key/value entries into the given bucket.
+     * Get all key/value entries into the given bucket.<br>
+     * Entries can be read in pages of the given limit size: if more entries are available, the returned values
+     * carry a {@link Continuation} whose token can be passed back to get the next page.
      *
      * @param bucket The name of the bucket containing the values to get.
      * @param limit Max number of elements to retrieve; if zero, all values will be returned.
+     * @param timeToLive Number of milliseconds specifying the snapshot age in paged reads: pages read within
+     * this time share the same snapshot; if set to 0, a new snapshot will be immediately computed.
+     * @param continuation The continuation token returned by the previous page, or null to get the first page.
      * @return A map containing all key/value entries.
      * @throws ServerOperationException If an error occurs.
      */
-    public Values getAllValues(String bucket, int limit) throws ServerOperationException;
+    public Values getAllValues(String bucket, int limit, long timeToLive, String continuation) throws ServerOperationException;
 
     /**
      * Execute a range query returning all key/value pairs whose key falls into the given range, and whose value satisfies the given predicate (if any).
@@ -142,7 +171,13 @@ public interface Server {
      * <br><br>
      * The range query is executed over a snapshot view of the bucket keys, so the timeToLive parameter determines,
      * in milliseconds, the snapshot max age: if the snapshot is older than the given time, it's recomputed,
-     * otherwise it will be actually used for the query.
+     * otherwise it will be actually used for the query.<br>
+     * Snapshots are also incrementally kept up to date with writes made through the node holding them, but writes made
+     * through other nodes of the same cluster are only seen after a recomputation: so a negative timeToLive, never
+     * recomputing the snapshot, should only be used with single node clusters.
+     * <br><br>
+     * If the limit is reached and more elements are available, the returned values carry a {@link Continuation} whose token
+     * can be passed back, along with the same range parameters, to get the next page.
      *
      * @param bucket The bucket to query.
      * @param startKey First key in range.
@@ -151,11 +186,12 @@ public interface Server {
      * @param comparator Name of the comparator to use for testing if a key is in range.
      * @param predicate The predicate to evaluate (if any).
      * @param timeToLive Number of milliseconds specifying the snapshot age; if set to 0, a new snapshot will be immediately computed
-     * and the query executed on the fresh snasphot.
+     * and the query executed on the fresh snasphot, if negative, the snapshot will never be recomputed.
+     * @param continuation The continuation token returned by the previous page, or null to get the first page.
      * @return A map containing key/value pairs
      * @throws ServerOperationException If an error occurs.
      */
-    public Values queryByRange(String bucket, Key startKey, Key endKey, int limit, String comparator, String predicate, long timeToLive) throws ServerOperationException;
+    public Values queryByRange(String bucket, Key startKey, Key endKey, int limit, String comparator, String predicate, long timeToLive, String continuation) throws ServerOperationException;
 
     /**
      * Remove all key/value pairs whose key falls wihtin the given range, and whose value satisfies the given predicate (if any).
@@ -170,7 +206,7 @@ public interface Server {
      * <br><br>
      * The range query is executed over a snapshot view of the bucket keys, so the timeToLive parameter determines,
      * in milliseconds, the snapshot max age: if the snapshot is older than the given time, it's recomputed,
-     * otherwise it will be actually used for the query.
+     * otherwise it will be actually used for the query (see {@link #queryByRange}).
      * 
      * @param bucket The bucket to query.
      * @param startKey First key in range.
@@ -179,7 +215,7 @@ public interface Server {
      * @param comparator Name of the comparator to use for testing if a key is in range.
      * @param predicate The predicate to evaluate against values (optional).
      * @param timeToLive Number of milliseconds specifying the snapshot age; if set to 0, a new snapshot will be immediately computed
-     * for the delete operation to be executed on.
+     * for the delete operation to be executed on, if negative, the snapshot will never be recomputed.
      * @return An unordered {@link Keys} set containing the keys that were actually removed.
      */
     public Keys removeByRange(String bucket, Key startKey, Key endKey, int limit, String comparator, String predicate, long timeToLive) throws ServerOperationException;
@@ -224,6 +260,17 @@ public interface Server {
      */
     public void exportBackup(String bucket, String destination, String secret) throws ServerOperationException;
 
+    /**
+     * Deploy the given extension jar on all cluster nodes, without restarting them and replacing any extension
+     * previously deployed with the same name.
+     *
+     * @param name The extension name.
+     * @param jar The extension jar bytes.
+     * @param secret The secret key: deployment is executed only if it matches the pre-configured secret.
+     * @throws ServerOperationException If an error occurs.
+     */
+    public void deployExtension(String name, byte[] jar, String secret) throws ServerOperationException;
+
     /**
      * Get the current {@link terrastore.common.ClusterStats}.
      *
@@ -252,4 +299,11 @@ public interface Server {
      */
     public BackupService getBackupService();
 
+    /**
+     * Get the {@link terrastore.service.ExtensionService} which will actually execute all extension operations.
+     *
+     * @return The {@link terrastore.service.ExtensionService} instance.
+     */
+    public ExtensionService getExtensionService();
+
 }
@@ -31,9 +31,22 @@ public class Values extends AbstractMap<Key, Value> implements Serializable {
     private static final long serialVersionUID = 12345678901L;
     //
     private final Map<Key, Value> values;
+    private final Continuation continuation;
 
     public Values(Map<Key, Value> values) {
+        this(values, null);
+    }
+
+    public Values(Map<Key, Value> values, Continuation continuation) {
         this.values = values;
+        this.continuation = continuation;
+    }
+
+    /**
+     * Get the {@link Continuation} to use for getting the next page of values, or null if there are no more values.
+     */
+    public Continuation getContinuation() {
+        return continuation;
     }
 
     @Override
@@ -22,6 +22,7 @@ import terrastore.common.ErrorLogger;
 import terrastore.common.ErrorMessage;
 import terrastore.communication.CommunicationException;
 import terrastore.server.Buckets;
+import terrastore.server.Continuation;
 import terrastore.server.Keys;
 import terrastore.server.MapReduceDescriptor;
 import terrastore.server.Parameters;
@@ -30,6 +31,8 @@ import terrastore.server.ServerOperationException;
 import terrastore.server.Values;
 import terrastore.service.BackupOperationException;
 import terrastore.service.BackupService;
+import terrastore.service.ExtensionOperationException;
+import terrastore.service.ExtensionService;
 import terrastore.service.QueryOperationException;
 import terrastore.service.QueryService;
 import terrastore.service.StatsService;
@@ -57,12 +60,14 @@ public class CoreServer implements Server {
     private final QueryService queryService;
     private final BackupService backupService;
     private final StatsService statsService;
+    private final ExtensionService extensionService;
 
-    public CoreServer(UpdateService updateService, QueryService queryService, BackupService backupService, StatsService statsService) {
+    public CoreServer(UpdateService updateService, QueryService queryService, BackupService backupService, StatsService statsService, ExtensionService extensionService) {
         this.updateService = updateService;
         this.queryService = queryService;
         this.backupService = backupService;
         this.statsService = statsService;
+        this.extensionService = extensionService;
     }
 
     public void removeBucket(String bucket) throws ServerOperationException {
@@ -135,6 +140,25 @@ public class CoreServer implements Server {
         }
     }
 
+    public void putValueIfVersion(String bucket, Key key, Value value, long version) throws ServerOperationException {
+        try {
+            LOG.info("Putting value with key {} and version {} to bucket {}", new Object[]{key, Long.toHexString(version), bucket});
+            updateService.putValueIfVersion(bucket, key, value, version);
+        } catch (CommunicationException ex) {
+            ErrorMessage error = ex.getErrorMessage();
+            ErrorLogger.LOG(LOG, error, ex);
+            throw new ServerOperationException(error);
+        } catch (UpdateOperationException ex) {
+            ErrorMessage error = ex.getErrorMessage();
+            ErrorLogger.LOG(LOG, error, ex);
+            throw new ServerOperationException(error);
+        } catch (ValidationException ex) {
+            ErrorMessage error = ex.getErrorMessage();
+            ErrorLogger.LOG(LOG, error, ex);
+            throw new ServerOperationException(error);
+        }
+    }
+
     public void removeValue(String bucket, Key key) throws ServerOperationException {
         try {
             LOG.info("Removing value with key {} from bucket {}", key, bucket);
@@ -150,6 +174,21 @@ public class CoreServer implements Server {
         }
     }
 
+    public void removeValueIfVersion(String bucket, Key key, long version) throws ServerOperationException {
+        try {
+            LOG.info("Removing value with key {} and version {} from bucket {}", new Object[]{key, Long.toHexString(version), bucket});
+            updateService.removeValueIfVersion(bucket, key, version);
+        } catch (CommunicationException ex) {
+            ErrorMessage error = ex.getErrorMessage();
+            ErrorLogger.LOG(LOG, error, ex);
+            throw new ServerOperationException(error);
+        } catch (UpdateOperationException ex) {
+            ErrorMessage error = ex.getErrorMessage();
+            ErrorLogger.LOG(LOG, error, ex);
+            throw new ServerOperationException(error);
+        }
+    }
+
     public Value updateValue(String bucket, Key key, String function, Long timeout, Parameters parameters) throws ServerOperationException {
         try {
             if (function == null) {
@@ -226,10 +265,10 @@ public class CoreServer implements Server {
         }
     }
 
-    public Values getAllValues(String bucket, int limit) throws ServerOperationException {
+    public Values getAllValues(String bucket, int limit, long timeToLive, String continuation) throws ServerOperationException {
         try {
             LOG.info("Getting all values from bucket {}", bucket);
-            return queryService.getAllValues(bucket, limit);
+            return queryService.getAllValues(bucket, limit, timeToLive, continuation != null ? Continuation.fromToken(continuation) : null);
         } catch (CommunicationException ex) {
             ErrorMessage error = ex.getErrorMessage();
             ErrorLogger.LOG(LOG, error, ex);
@@ -238,10 +277,14 @@ public class CoreServer implements Server {
             ErrorMessage error = ex.getErrorMessage();
             ErrorLogger.LOG(LOG, error, ex);
             throw new ServerOperationException(error);
+        } catch (IllegalArgumentException ex) {
+            ErrorMessage error = new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, ex.getMessage());
+            ErrorLogger.LOG(LOG, error, ex);
+            throw new ServerOperationException(error);
         }
     }
 
-    public Values queryByRange(String bucket, Key startKey, Key endKey, int limit, String comparator, String predicateExpression, long timeToLive) throws ServerOperationException {
+    public Values queryByRange(String bucket, Key startKey, Key endKey, int limit, String comparator, String predicateExpression, long timeToLive, String continuation) throws ServerOperationException {
         try {
             if (startKey == null) {
                 ErrorMessage error = new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "No startKey provided!");
@@ -255,7 +298,8 @@ public class CoreServer implements Server {
             Predicate predicate = new Predicate(predicateExpression);
             return queryService.queryByRange(bucket,
                    range,
-                   predicate);
+                   predicate,
+                   continuation != null ? Continuation.fromToken(continuation) : null);
         } catch (CommunicationException ex) {
             ErrorMessage error = ex.getErrorMessage();
             ErrorLogger.LOG(LOG, error, ex);
@@ -334,8 +378,8 @@ public class CoreServer implements Server {
             } else {
                 range = new Range();
             }
-            Mapper mapper = new Mapper(descriptor.task.mapper, descriptor.task.combiner, descriptor.task.timeout, descriptor.task.parameters);
-            Reducer reducer = new Reducer(descriptor.task.reducer, descriptor.task.timeout, descriptor.task.parameters);
+            Mapper mapper = new Mapper(descriptor.task.mapper, descriptor.task.combiner, descriptor.task.timeout, descriptor.task.parameters, descriptor.task.memoryBudget);
+            Reducer reducer = new Reducer(descriptor.task.reducer, descriptor.task.timeout, descriptor.task.parameters, descriptor.task.treeReduce, descriptor.task.memoryBudget);
             return queryService.queryByMapReduce(bucket, range, mapper, reducer);
         } catch (CommunicationException ex) {
             ErrorMessage error = ex.getErrorMessage();
@@ -392,6 +436,28 @@ public class CoreServer implements Server {
         }
     }
 
+    public void deployExtension(String name, byte[] jar, String secret) throws ServerOperationException {
+        try {
+            if (jar == null || jar.length == 0) {
+                ErrorMessage error = new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "No extension jar provided!");
+                throw new ServerOperationException(error);
+            } else if (secret == null) {
+                ErrorMessage error = new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "No secret provided!");
+                throw new ServerOperationException(error);
+            }
+            LOG.info("Deploying extension {}", name);
+            extensionService.deployExtension(name, jar, secret);
+        } catch (CommunicationException ex) {
+            ErrorMessage error = ex.getErrorMessage();
+            ErrorLogger.LOG(LOG, error, ex);
+            throw new ServerOperationException(error);
+        } catch (ExtensionOperationException ex) {
+            ErrorMessage error = ex.getErrorMessage();
+            ErrorLogger.LOG(LOG, error, ex);
+            throw new ServerOperationException(error);
+        }
+    }
+
     public ClusterStats getClusterStats() {
         LOG.info("Getting cluster statistics.");
         return statsService.getClusterStats();
@@ -409,4 +475,8 @@ public class CoreServer implements Server {
         return backupService;
     }
 
+    public ExtensionService getExtensionService() {
+        return extensionService;
+    }
+
 }
@@ -15,6 +15,7 @@
  */
 package terrastore.server.impl;
 
+import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Arrays;
@@ -22,13 +23,16 @@ import java.util.List;
 import java.util.Map;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response;
 import org.jboss.resteasy.plugins.providers.StringTextStar;
 import org.jboss.resteasy.plugins.server.servlet.HttpServletDispatcher;
@@ -62,6 +66,8 @@ import terrastore.server.impl.support.JsonValueProvider;
 import terrastore.server.impl.support.JsonValuesProvider;
 import terrastore.store.Key;
 import terrastore.store.Value;
+import terrastore.store.codec.Codec;
+import terrastore.store.codec.DeflateCodec;
 
 /**
  * Jetty-based JAX-RS json-over-http server.
@@ -73,8 +79,11 @@ public class JsonHttpServer {
 
     public final static String HTTP_THREADS_CONFIGURATION_PARAMETER = "configuration.httpThreads";
     public final static String CORS_ALLOWED_ORIGINS_CONFIGURATION_PARAMETER = "configuration.corsAllowedOrigins";
+    public final static String CONTINUATION_HEADER = "X-Terrastore-Continuation";
+    public final static String DEFAULT_PAGE_TIME_TO_LIVE = "60000";
     //
     private static final Logger LOG = LoggerFactory.getLogger(JsonHttpServer.class);
+    private static final String DEFLATE_ENCODING = "deflate";
     //
     private final Server core;
     private org.mortbay.jetty.Server jetty;
@@ -122,15 +131,26 @@ public class JsonHttpServer {
     @PUT
     @Path("/{bucket}/{key}")
     @Consumes("application/json")
-    public Response putValue(@PathParam("bucket") String bucket, @PathParam("key") Key key, Value value, @QueryParam("predicate") String predicate) throws ServerOperationException {
-        core.putValue(bucket, key, value, predicate);
-        return Response.noContent().build();
+    public Response putValue(@PathParam("bucket") String bucket, @PathParam("key") Key key, Value value, @QueryParam("predicate") String predicate, @HeaderParam("If-Match") String ifMatch) throws ServerOperationException {
+        if (ifMatch != null) {
+            if (predicate != null) {
+                throw new ServerOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Cannot use both predicate and If-Match header!"));
+            }
+            core.putValueIfVersion(bucket, key, value, parseVersion(ifMatch));
+        } else {
+            core.putValue(bucket, key, value, predicate);
+        }
+        return Response.noContent().tag(versionTag(value)).build();
     }
 
     @DELETE
     @Path("/{bucket}/{key}")
-    public Response removeValue(@PathParam("bucket") String bucket, @PathParam("key") Key key) throws ServerOperationException {
-        core.removeValue(bucket, key);
+    public Response removeValue(@PathParam("bucket") String bucket, @PathParam("key") Key key, @HeaderParam("If-Match") String ifMatch) throws ServerOperationException {
+        if (ifMatch != null) {
+            core.removeValueIfVersion(bucket, key, parseVersion(ifMatch));
+        } else {
+            core.removeValue(bucket, key);
+        }
         return Response.noContent().build();
     }
 
@@ -171,25 +191,35 @@ public class JsonHttpServer {
     @GET
     @Path("/{bucket}/{key}")
     @Produces("application/json")
-    public Response getValue(@PathParam("bucket") String bucket, @PathParam("key") Key key, @QueryParam("predicate") String predicate) throws ServerOperationException {
+    public Response getValue(@PathParam("bucket") String bucket, @PathParam("key") Key key, @QueryParam("predicate") String predicate, @HeaderParam("Accept-Encoding") String acceptEncoding) throws ServerOperationException {
         Value result = core.getValue(bucket, key, predicate);
-        return Response.ok(result).build();
+        if (result != null) {
+            Response.ResponseBuilder response = Response.ok(result).tag(versionTag(result)).header("Vary", "Accept-Encoding");
+            // Deflate compressed values are sent as they are if the client accepts them, otherwise decompressed by the provider:
+            Codec codec = result.getCodec();
+            if (codec != null && codec.getId() == DeflateCodec.ID && accepts(acceptEncoding, DEFLATE_ENCODING)) {
+                response.header("Content-Encoding", DEFLATE_ENCODING);
+            }
+            return response.build();
+        } else {
+            return Response.ok(result).build();
+        }
     }
 
     @GET
     @Path("/{bucket}")
     @Produces("application/json")
-    public Response getAllValues(@PathParam("bucket") String bucket, @QueryParam("limit") int limit) throws ServerOperationException {
-        Values result = core.getAllValues(bucket, limit);
-        return Response.ok(result).build();
+    public Response getAllValues(@PathParam("bucket") String bucket, @QueryParam("limit") int limit, @QueryParam("timeToLive") @DefaultValue(DEFAULT_PAGE_TIME_TO_LIVE) long timeToLive, @QueryParam("continuation") String continuation) throws ServerOperationException {
+        Values result = core.getAllValues(bucket, limit, timeToLive, continuation);
+        return page(result);
     }
 
     @GET
     @Path("/{bucket}/range")
     @Produces("application/json")
-    public Response queryByRange(@PathParam("bucket") String bucket, @QueryParam("startKey") Key startKey, @QueryParam("endKey") Key endKey, @QueryParam("limit") int limit, @QueryParam("comparator") String comparator, @QueryParam("predicate") String predicateExpression, @QueryParam("timeToLive") long timeToLive) throws ServerOperationException {
-        Values result = core.queryByRange(bucket, startKey, endKey, limit, comparator, predicateExpression, timeToLive);
-        return Response.ok(result).build();
+    public Response queryByRange(@PathParam("bucket") String bucket, @QueryParam("startKey") Key startKey, @QueryParam("endKey") Key endKey, @QueryParam("limit") int limit, @QueryParam("comparator") String comparator, @QueryParam("predicate") String predicateExpression, @QueryParam("timeToLive") long timeToLive, @QueryParam("continuation") String continuation) throws ServerOperationException {
+        Values result = core.queryByRange(bucket, startKey, endKey, limit, comparator, predicateExpression, timeToLive, continuation);
+        return page(result);
     }
 
     @DELETE
@@ -231,6 +261,14 @@ public class JsonHttpServer {
         return Response.noContent().build();
     }
 
+    @PUT
+    @Path("/_extensions/{name}")
+    @Consumes("application/octet-stream")
+    public Response deployExtension(@PathParam("name") String name, byte[] jar, @QueryParam("secret") String secret) throws ServerOperationException {
+        core.deployExtension(name, jar, secret);
+        return Response.noContent().build();
+    }
+
     @GET
     @Path("/_stats/cluster")
     @Produces("application/json")
@@ -239,6 +277,65 @@ public class JsonHttpServer {
         return Response.ok(result).build();
     }
 
+    private boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding != null) {
+            for (String accepted : acceptEncoding.split(",")) {
+                String[] parts = accepted.trim().split(";");
+                String name = parts[0].trim();
+                if (name.equalsIgnoreCase(encoding) || name.equals("*")) {
+                    for (int i = 1; i < parts.length; i++) {
+                        String parameter = parts[i].trim();
+                        if (parameter.startsWith("q=")) {
+                            try {
+                                return Float.parseFloat(parameter.substring(2)) > 0;
+                            } catch (NumberFormatException ex) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private EntityTag versionTag(Value value) {
+        return new EntityTag(Long.toHexString(value.getVersion()));
+    }
+
+    private long parseVersion(String ifMatch) throws ServerOperationException {
+        String tag = ifMatch.trim();
+        if (tag.equals("*")) {
+            return Value.ANY_VERSION;
+        } else if (tag.startsWith("W/")) {
+            // If-Match requires strong comparison, so weak tags never match:
+            throw new ServerOperationException(new ErrorMessage(ErrorMessage.PRECONDITION_FAILED_ERROR_CODE, "Weak entity tags cannot be used with If-Match header: " + ifMatch));
+        }
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        long version;
+        try {
+            version = new BigInteger(tag, 16).longValue();
+        } catch (NumberFormatException ex) {
+            throw new ServerOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Bad If-Match header: " + ifMatch));
+        }
+        // No value has such a version, which is rather reserved to match any value:
+        if (version == Value.ANY_VERSION) {
+            throw new ServerOperationException(new ErrorMessage(ErrorMessage.PRECONDITION_FAILED_ERROR_CODE, "Version mismatch for If-Match header: " + ifMatch));
+        }
+        return version;
+    }
+
+    private Response page(Values values) {
+        Response.ResponseBuilder response = Response.ok(values);
+        if (values.getContinuation() != null) {
+            response.header(CONTINUATION_HEADER, values.getContinuation().toToken());
+        }
+        return response.build();
+    }
+
     private void registerProviders(ResteasyDeployment deployment, Map<String, String> configuration) {
         List providers = Arrays.asList(
                 new JsonKeysProvider(),
@@ -33,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import terrastore.common.ErrorMessage;
 import terrastore.store.Value;
+import terrastore.store.codec.Codecs;
 import terrastore.util.io.IOUtils;
 
 /**
@@ -44,6 +45,9 @@ import terrastore.util.io.IOUtils;
 public class JsonValueProvider implements MessageBodyReader<Value>, MessageBodyWriter<Value> {
 
     private static final Logger LOG = LoggerFactory.getLogger(JsonValueProvider.class);
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String DEFLATE_ENCODING = "deflate";
+    private static final String IDENTITY_ENCODING = "identity";
 
     public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return type.equals(Value.class);
@@ -51,10 +55,22 @@ public class JsonValueProvider implements MessageBodyReader<Value>, MessageBodyW
 
     public Value readFrom(Class<Value> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException, WebApplicationException {
         byte[] bytes = null;
+        String encoding = httpHeaders != null ? httpHeaders.getFirst(CONTENT_ENCODING) : null;
+        if (encoding != null && !encoding.trim().equalsIgnoreCase(DEFLATE_ENCODING) && !encoding.trim().equalsIgnoreCase(IDENTITY_ENCODING)) {
+            throw new WebApplicationException(Response
+                    .status(ErrorMessage.BAD_REQUEST_ERROR_CODE)
+                    .entity(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Unsupported content encoding: " + encoding))
+                    .type("application/json")
+                    .build());
+        }
         try {
             bytes = IOUtils.read(entityStream);
-            Value result = new Value(bytes);
-            return result;
+            // Client bytes are always raw Json, unless explicitly sent deflate compressed:
+            if (encoding != null && encoding.trim().equalsIgnoreCase(DEFLATE_ENCODING)) {
+                return Value.fromCompressed(Codecs.DEFLATE, bytes);
+            } else {
+                return Value.fromJson(bytes);
+            }
         } catch (Exception ex) {
             LOG.error(ex.getMessage(), ex);
             throw new WebApplicationException(Response
@@ -70,7 +86,12 @@ public class JsonValueProvider implements MessageBodyReader<Value>, MessageBodyW
     }
 
     public void writeTo(Value value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
-        IOUtils.read(value.getInputStream(), entityStream);
+        // Write compressed bytes as they are if a matching content encoding has been set, otherwise decompress them:
+        if (value.getCodec() != null && httpHeaders.containsKey(CONTENT_ENCODING)) {
+            value.writeCompressedTo(entityStream);
+        } else {
+            IOUtils.read(value.getInputStream(), entityStream);
+        }
     }
 
     public long getSize(Value value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.service;
+
+import terrastore.communication.CommunicationException;
+import terrastore.router.Router;
+
+/**
+ * The ExtensionService manages the deployment of extension jars, containing user-defined comparators, conditions,
+ * functions and aggregators, on all cluster nodes.
+ *
+ * @author Sergio Bossa
+ */
+public interface ExtensionService {
+
+    /**
+     * Deploy the given extension jar on all nodes of all clusters, without restarting them and replacing
+     * any extension previously deployed with the same name.<br>
+     * Operators are detected by looking for {@link terrastore.annotation.AutoDetect} annotated classes.
+     *
+     * @param name The extension name.
+     * @param jar The extension jar bytes.
+     * @param secret The secret key: deployment is executed only if it matches the pre-configured secret.
+     * @throws CommunicationException If unable to perform the operation due to cluster communication errors.
+     * @throws ExtensionOperationException If an error occurs, or if no secret is configured and hot deployment
+     * is so disabled.
+     */
+    public void deployExtension(String name, byte[] jar, String secret) throws CommunicationException, ExtensionOperationException;
+
+    /**
+     * The pre-configured secret that deployment has to match.
+     *
+     * @return The secret key, or null if hot deployment is disabled.
+     */
+    public String getSecret();
+
+    /**
+     * Get the {@link terrastore.router.Router} instance used for routing actual deploy operations.
+     *
+     * @return The router instance.
+     */
+    public Router getRouter();
+}
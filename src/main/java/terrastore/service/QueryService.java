@@ -21,6 +21,7 @@ import terrastore.communication.CommunicationException;
 import terrastore.decorator.failure.HandleFailure;
 import terrastore.router.Router;
 import terrastore.server.Buckets;
+import terrastore.server.Continuation;
 import terrastore.server.Keys;
 import terrastore.server.ServerOperationException;
 import terrastore.server.Values;
@@ -77,15 +78,23 @@ public interface QueryService {
 
     /**
      * Get all values contained by the given bucket.
+     * <br><br>
+     * If a limit or continuation is given, values are read in pages, sorted by the default key comparator:
+     * each page is scanned by every cluster starting from the position recorded into the given
+     * {@link terrastore.server.Continuation} (if any), and returned values carry the continuation for the next page,
+     * if more values are available.
      *
      * @param bucket The bucket whose key/values we want to get.
      * @param limit Max number of elements to retrieve; if zero, all values will be returned.
+     * @param timeToLive Number of milliseconds specifying the snapshot age in paged reads, so that
+     * following pages can be read from the same snapshot: if set to 0, a new snapshot will be immediately computed.
+     * @param continuation The continuation of a previous page, or null.
      * @return A map containing all key/value pairs
      * @throws CommunicationException If unable to perform the operation due to cluster communication errors.
      * @throws QueryOperationException If a bucket with the given name doesn't exist.
      */
     @HandleFailure(exception = CommunicationException.class)
-    public Values getAllValues(String bucket, int limit) throws CommunicationException, QueryOperationException;
+    public Values getAllValues(String bucket, int limit, long timeToLive, Continuation continuation) throws CommunicationException, QueryOperationException;
 
     /**
      * Execute a range query returning all key/value pairs whose key falls into the given range, and whose value satisfies the given predicate (if any).
@@ -94,19 +103,25 @@ public interface QueryService {
      * {@link terrastore.store.features.Range} object, and values satisfy the condition whose name matches the one contained in the
      * {@link terrastore.store.features.Predicate} object (if any).
      * <br><br>
-     * The query is executed over a snapshot view of the bucket keys, so the timeToLive carried into the range object determines,
-     * in milliseconds, the max snapshot age: if the snapshot is older than the given time, it's recomputed,
-     * otherwise it will be actually used for the query.
+     * The query is executed over a snapshot view of the bucket keys, incrementally kept up to date with writes, and the
+     * timeToLive carried into the range object determines, in milliseconds, the max snapshot age: if the snapshot is
+     * older than the given time, it's fully recomputed,
+     * otherwise it will be actually used for the query: so a time to live of 0 always recomputes it, while a negative one never does.
+     * <br><br>
+     * If the range limit is reached and more values are available, returned values carry the
+     * {@link terrastore.server.Continuation} to pass back, along with the same range and predicate, for getting the next page.
      *
      * @param bucket The bucket to query.
      * @param range The range which keys must be fall into.
      * @param predicate The predicate to evaluate on values.
+     * @param continuation The continuation of a previous page, or null.
      * @return An ordered map containing key/value pairs.
      * @throws CommunicationException If unable to perform the operation due to cluster communication errors.
-     * @throws QueryOperationException If a bucket with the given name doesn't exist, or no matching condition is found.
+     * @throws QueryOperationException If a bucket with the given name doesn't exist, no matching condition is found,
+     * or the continuation doesn't match the range comparator.
      */
     @HandleFailure(exception = CommunicationException.class)
-    public Values queryByRange(String bucket, Range range, Predicate predicate) throws CommunicationException, QueryOperationException;
+    public Values queryByRange(String bucket, Range range, Predicate predicate, Continuation continuation) throws CommunicationException, QueryOperationException;
 
     /**
      * Execute a predicate-based query returning all key/value pairs whose value satisfies the given predicate.
@@ -74,6 +74,21 @@ public interface UpdateService {
     @HandleFailure(exception = CommunicationException.class)
     public void putValue(String bucket, Key key, Value value, Predicate predicate) throws CommunicationException, UpdateOperationException, ValidationException;
 
+    /**
+     * Put a value into the given bucket under the given key, only if an old value exists and its version
+     * (see {@link terrastore.store.Value#getVersion()}) is equal to the given one.
+     *
+     * @param bucket The name of the bucket to put the value into.
+     * @param key The key of the value.
+     * @param value The value to put.
+     * @param version The expected version of the old value, or {@link terrastore.store.Value#ANY_VERSION} to match any existing value.
+     * @throws CommunicationException If unable to perform the operation due to cluster communication errors.
+     * @throws UpdateOperationException If the old value doesn't exist or its version doesn't match.
+     * @throws ValidationException If the passed value isn't a valid one.
+     */
+    @HandleFailure(exception = CommunicationException.class)
+    public void putValueIfVersion(String bucket, Key key, Value value, long version) throws CommunicationException, UpdateOperationException, ValidationException;
+
     /**
      * Remove a value from the given bucket under the given key.
      *
@@ -85,14 +100,28 @@ public interface UpdateService {
     @HandleFailure(exception = CommunicationException.class)
     public void removeValue(String bucket, Key key) throws CommunicationException, UpdateOperationException;
 
+    /**
+     * Remove a value from the given bucket under the given key, only if its version
+     * (see {@link terrastore.store.Value#getVersion()}) is equal to the given one.
+     *
+     * @param bucket The name of the bucket to remove the value from.
+     * @param key The key of the value.
+     * @param version The expected version of the value, or {@link terrastore.store.Value#ANY_VERSION} to match any existing value.
+     * @throws CommunicationException If unable to perform the operation due to cluster communication errors.
+     * @throws UpdateOperationException If the value doesn't exist or its version doesn't match.
+     */
+    @HandleFailure(exception = CommunicationException.class)
+    public void removeValueIfVersion(String bucket, Key key, long version) throws CommunicationException, UpdateOperationException;
+
     /**
      * Execute a range query removing all key/value pairs whose key falls within the given range, and whose values satisfies the given predicate (if any).
      * <br><br>
      * The method returns an unordered set of all keys that were successfully removed in the form of a {@link Keys} object.
      * <br><br>
-     * The command is executed over a snapshot view of the bucket keys, so the timeToLive carried into the range object determines,
-     * in milliseconds, the max snapshot age: if the snapshot is older than the given time, it's recomputed,
-     * otherwise it will be actually used for the command.
+     * The command is executed over a snapshot view of the bucket keys, incrementally kept up to date with writes, and the
+     * timeToLive carried into the range object determines, in milliseconds, the max snapshot age: if the snapshot is
+     * older than the given time, it's fully recomputed,
+     * otherwise it will be actually used for the command: so a time to live of 0 always recomputes it, while a negative one never does.
      * 
      * @param bucket The bucket to remove keys/values from.
      * @param range The range which keys must fall within. 
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.service.impl;
+
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import terrastore.common.ErrorLogger;
+import terrastore.common.ErrorMessage;
+import terrastore.communication.Cluster;
+import terrastore.communication.CommunicationException;
+import terrastore.communication.Node;
+import terrastore.communication.ProcessingException;
+import terrastore.communication.protocol.DeployExtensionCommand;
+import terrastore.router.MissingRouteException;
+import terrastore.router.Router;
+import terrastore.service.ExtensionOperationException;
+import terrastore.service.ExtensionService;
+
+/**
+ * Hot deployment of extensions is only enabled if configured with a non-empty secret, other than the
+ * {@link #PLACEHOLDER_SECRET} used by old configuration files.
+ *
+ * @author Sergio Bossa
+ */
+public class DefaultExtensionService implements ExtensionService {
+
+    public static final String PLACEHOLDER_SECRET = "SECRET-KEY";
+    //
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultExtensionService.class);
+    //
+    private final Router router;
+    private final String secret;
+
+    public DefaultExtensionService(Router router, String secret) {
+        if (PLACEHOLDER_SECRET.equals(secret)) {
+            throw new IllegalArgumentException("The extensions secret must be explicitly set, rather than using the " + PLACEHOLDER_SECRET + " placeholder.");
+        }
+        this.router = router;
+        this.secret = secret != null && !secret.isEmpty() ? secret : null;
+        if (this.secret == null) {
+            LOG.info("Hot deployment of extensions is disabled.");
+        }
+    }
+
+    @Override
+    public void deployExtension(String name, byte[] jar, String secret) throws CommunicationException, ExtensionOperationException {
+        try {
+            if (this.secret == null) {
+                throw new ExtensionOperationException(new ErrorMessage(ErrorMessage.FORBIDDEN_ERROR_CODE, "Hot deployment of extensions is disabled."));
+            } else if (this.secret.equals(secret)) {
+                LOG.debug("Deploying extension {}", name);
+                DeployExtensionCommand command = new DeployExtensionCommand(name, jar);
+                Map<Cluster, Set<Node>> perClusterNodes = router.broadcastRoute();
+                broadcastDeployExtensionCommand(perClusterNodes, command);
+            } else {
+                throw new ExtensionOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Bad secret!"));
+            }
+        } catch (MissingRouteException ex) {
+            ErrorMessage error = ex.getErrorMessage();
+            ErrorLogger.LOG(LOG, error, ex);
+            throw new CommunicationException(error);
+        } catch (ProcessingException ex) {
+            ErrorMessage error = ex.getErrorMessage();
+            ErrorLogger.LOG(LOG, error, ex);
+            throw new ExtensionOperationException(error);
+        }
+    }
+
+    @Override
+    public String getSecret() {
+        return secret;
+    }
+
+    @Override
+    public Router getRouter() {
+        return router;
+    }
+
+    private void broadcastDeployExtensionCommand(Map<Cluster, Set<Node>> perClusterNodes, DeployExtensionCommand command) throws MissingRouteException, ProcessingException {
+        boolean successful = true;
+        for (Set<Node> nodes : perClusterNodes.values()) {
+            // Operators live in each node memory, so the command must be sent to all nodes of all clusters:
+            if (!nodes.isEmpty()) {
+                for (Node node : nodes) {
+                    try {
+                        node.send(command);
+                    } catch (CommunicationException ex) {
+                        LOG.error(ex.getMessage(), ex);
+                        successful = false;
+                    }
+                }
+            } else {
+                successful = false;
+            }
+        }
+        if (!successful) {
+            throw new MissingRouteException(new ErrorMessage(ErrorMessage.UNAVAILABLE_ERROR_CODE, "The extension has been only partially deployed. Some nodes of your ensemble may be down or unreachable."));
+        }
+    }
+}
@@ -15,11 +15,18 @@
  */
 package terrastore.service.impl;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import terrastore.common.ErrorLogger;
@@ -28,15 +35,21 @@ import terrastore.communication.Cluster;
 import terrastore.communication.CommunicationException;
 import terrastore.communication.Node;
 import terrastore.communication.ProcessingException;
-import terrastore.communication.protocol.GetKeysCommand;
+import terrastore.communication.protocol.AbstractScanCommand;
 import terrastore.communication.protocol.GetBucketsCommand;
 import terrastore.communication.protocol.GetValueCommand;
 import terrastore.communication.protocol.GetValuesCommand;
 import terrastore.communication.protocol.MapCommand;
+import terrastore.communication.protocol.QueryByIndexCommand;
+import terrastore.communication.protocol.RangeQueryCommand;
 import terrastore.communication.protocol.ReduceCommand;
+import terrastore.communication.protocol.ScanMapCommand;
+import terrastore.communication.protocol.ScanValuesCommand;
+import terrastore.communication.protocol.TreeReduceCommand;
 import terrastore.router.MissingRouteException;
 import terrastore.router.Router;
 import terrastore.server.Buckets;
+import terrastore.server.Continuation;
 import terrastore.server.Keys;
 import terrastore.server.Values;
 import terrastore.service.KeyRangeStrategy;
@@ -44,6 +57,7 @@ import terrastore.service.QueryOperationException;
 import terrastore.service.QueryService;
 import terrastore.store.Key;
 import terrastore.store.Value;
+import terrastore.store.conditions.IndexCondition;
 import terrastore.store.features.Mapper;
 import terrastore.store.features.Predicate;
 import terrastore.store.features.Range;
@@ -146,39 +160,17 @@ public class DefaultQueryService implements QueryService {
     }
 
     @Override
-    public Values getAllValues(final String bucket, final int limit) throws CommunicationException, QueryOperationException {
+    public Values getAllValues(final String bucket, final int limit, final long timeToLive, final Continuation continuation) throws CommunicationException, QueryOperationException {
         try {
-            Set<Key> allKeys = Sets.limited(getAllKeysForBucket(bucket), limit);
-            Map<Node, Set<Key>> nodeToKeys = router.routeToNodesFor(bucket, allKeys);
-            List<Map<Key, Value>> allKeyValues = ParallelUtils.parallelMap(
-                    nodeToKeys.entrySet(),
-                    new MapTask<Map.Entry<Node, Set<Key>>, Map<Key, Value>>() {
-
-                        @Override
-                        public Map<Key, Value> map(Map.Entry<Node, Set<Key>> nodeToKeys) throws ParallelExecutionException {
-                            try {
-                                Node node = nodeToKeys.getKey();
-                                Set<Key> keys = nodeToKeys.getValue();
-                                GetValuesCommand command = new GetValuesCommand(bucket, keys);
-                                return node.<Map<Key, Value>>send(command);
-                            } catch (Exception ex) {
-                                throw new ParallelExecutionException(ex);
-                            }
-                        }
-
-                    },
-                    new MapCollector<Map<Key, Value>, List<Map<Key, Value>>>() {
-
-                        @Override
-                        public List<Map<Key, Value>> collect(List<Map<Key, Value>> allKeyValues) {
-                            return allKeyValues;
-                        }
-
-                    }, GlobalExecutor.getQueryExecutor());
+            if (limit > 0 || continuation != null) {
+                // Pages are scanned by nodes over the whole key space, sorted by the default comparator,
+                // from a snapshot living for the given time so that following pages don't need to rebuild it:
+                Range all = new Range(new Key(""), null, limit, "", timeToLive);
+                return scanRange(bucket, all, new Predicate(null), continuation);
+            }
+            // Values are scanned by nodes over their own keys, so they only need to be merged here:
+            List<Map<Key, Value>> allKeyValues = multicastScanCommand(router.broadcastRoute(), new ScanValuesCommand(bucket, null));
             return new Values(Maps.union(allKeyValues));
-        } catch (MissingRouteException ex) {
-            handleMissingRouteException(ex);
-            return null;
         } catch (ParallelExecutionException ex) {
             handleParallelExecutionException(ex);
             return null;
@@ -186,44 +178,9 @@ public class DefaultQueryService implements QueryService {
     }
 
     @Override
-    public Values queryByRange(final String bucket, final Range range, final Predicate predicate) throws CommunicationException, QueryOperationException {
+    public Values queryByRange(final String bucket, final Range range, final Predicate predicate, final Continuation continuation) throws CommunicationException, QueryOperationException {
         try {
-            Set<Key> keysInRange = Sets.limited(keyRangeStrategy.getKeyRangeForBucket(router, bucket, range), range.getLimit());
-            Map<Node, Set<Key>> nodeToKeys = router.routeToNodesFor(bucket, keysInRange);
-            List<Map<Key, Value>> allKeyValues = ParallelUtils.parallelMap(
-                    nodeToKeys.entrySet(),
-                    new MapTask<Map.Entry<Node, Set<Key>>, Map<Key, Value>>() {
-
-                        @Override
-                        public Map<Key, Value> map(Map.Entry<Node, Set<Key>> nodeToKeys) throws ParallelExecutionException {
-                            try {
-                                Node node = nodeToKeys.getKey();
-                                Set<Key> keys = nodeToKeys.getValue();
-                                GetValuesCommand command = null;
-                                if (predicate.isEmpty()) {
-                                    command = new GetValuesCommand(bucket, keys);
-                                } else {
-                                    command = new GetValuesCommand(bucket, keys, predicate);
-                                }
-                                return node.<Map<Key, Value>>send(command);
-                            } catch (Exception ex) {
-                                throw new ParallelExecutionException(ex);
-                            }
-                        }
-
-                    },
-                    new MapCollector<Map<Key, Value>, List<Map<Key, Value>>>() {
-
-                        @Override
-                        public List<Map<Key, Value>> collect(List<Map<Key, Value>> allKeyValues) {
-                            return allKeyValues;
-                        }
-
-                    }, GlobalExecutor.getQueryExecutor());
-            return new Values(Maps.composite(keysInRange, allKeyValues));
-        } catch (MissingRouteException ex) {
-            handleMissingRouteException(ex);
-            return null;
+            return scanRange(bucket, range, predicate, continuation);
         } catch (ParallelExecutionException ex) {
             handleParallelExecutionException(ex);
             return null;
@@ -233,37 +190,14 @@ public class DefaultQueryService implements QueryService {
     @Override
     public Values queryByPredicate(final String bucket, final Predicate predicate) throws CommunicationException, QueryOperationException {
         try {
-            Set<Key> allKeys = getAllKeysForBucket(bucket);
-            Map<Node, Set<Key>> nodeToKeys = router.routeToNodesFor(bucket, allKeys);
-            List<Map<Key, Value>> allKeyValues = ParallelUtils.parallelMap(
-                    nodeToKeys.entrySet(),
-                    new MapTask<Map.Entry<Node, Set<Key>>, Map<Key, Value>>() {
-
-                        @Override
-                        public Map<Key, Value> map(Map.Entry<Node, Set<Key>> nodeToKeys) throws ParallelExecutionException {
-                            try {
-                                Node node = nodeToKeys.getKey();
-                                Set<Key> keys = nodeToKeys.getValue();
-                                GetValuesCommand command = new GetValuesCommand(bucket, keys, predicate);
-                                return node.<Map<Key, Value>>send(command);
-                            } catch (Exception ex) {
-                                throw new ParallelExecutionException(ex);
-                            }
-                        }
-
-                    },
-                    new MapCollector<Map<Key, Value>, List<Map<Key, Value>>>() {
-
-                        @Override
-                        public List<Map<Key, Value>> collect(List<Map<Key, Value>> allKeyValues) {
-                            return allKeyValues;
-                        }
-
-                    }, GlobalExecutor.getQueryExecutor());
+            if (predicate.getConditionType().equals(IndexCondition.TYPE)) {
+                Map<Key, Value> indexed = multicastQueryByIndexCommand(router.broadcastRoute(), new QueryByIndexCommand(bucket, predicate));
+                if (indexed != null) {
+                    return new Values(indexed);
+                }
+            }
+            List<Map<Key, Value>> allKeyValues = multicastScanCommand(router.broadcastRoute(), new ScanValuesCommand(bucket, predicate));
             return new Values(Maps.union(allKeyValues));
-        } catch (MissingRouteException ex) {
-            handleMissingRouteException(ex);
-            return null;
         } catch (ParallelExecutionException ex) {
             handleParallelExecutionException(ex);
             return null;
@@ -273,40 +207,37 @@ public class DefaultQueryService implements QueryService {
     @Override
     public Value queryByMapReduce(final String bucket, final Range range, final Mapper mapper, final Reducer reducer) throws CommunicationException, QueryOperationException {
         try {
-            Set<Key> keys = null;
+            // Keys are collected only for ranges, otherwise nodes scan their own keys (null keys):
+            Map<Node, Set<Key>> nodeToKeys = null;
             if (range != null && !range.isEmpty()) {
-                keys = keyRangeStrategy.getKeyRangeForBucket(router, bucket, range);
-            } else {
-                keys = getAllKeysForBucket(bucket);
+                Set<Key> keys = keyRangeStrategy.getKeyRangeForBucket(router, bucket, range);
+                nodeToKeys = router.routeToNodesFor(bucket, keys);
+            }
+            if (reducer.isTree()) {
+                //
+                // Map and reduce on every node, and reduce the top level here:
+                if (nodeToKeys == null) {
+                    nodeToKeys = new HashMap<Node, Set<Key>>();
+                    for (Set<Node> nodes : router.broadcastRoute().values()) {
+                        for (Node node : nodes) {
+                            nodeToKeys.put(node, null);
+                        }
+                    }
+                }
+                TreeReduceCommand root = buildReduceTree(bucket, nodeToKeys, mapper, reducer);
+                List<Map<String, Object>> treeResults = root.mapAndCollect(router);
+                Node reducerNode = router.routeToLocalNode();
+                ReduceCommand reducerCommand = new ReduceCommand(treeResults, reducer);
+                return reducerNode.<Value>send(reducerCommand);
             }
-            Map<Node, Set<Key>> nodeToKeys = router.routeToNodesFor(bucket, keys);
             //
             // Map:
-            List<Map<String, Object>> mapResults = ParallelUtils.parallelMap(
-                    nodeToKeys.entrySet(),
-                    new MapTask<Map.Entry<Node, Set<Key>>, Map<String, Object>>() {
-
-                        @Override
-                        public Map<String, Object> map(Map.Entry<Node, Set<Key>> nodeToKeys) throws ParallelExecutionException {
-                            try {
-                                Node node = nodeToKeys.getKey();
-                                Set<Key> keys = nodeToKeys.getValue();
-                                MapCommand command = new MapCommand(bucket, keys, mapper);
-                                return node.<Map<String, Object>>send(command);
-                            } catch (Exception ex) {
-                                throw new ParallelExecutionException(ex);
-                            }
-                        }
-
-                    },
-                    new MapCollector<Map<String, Object>, List<Map<String, Object>>>() {
-
-                        @Override
-                        public List<Map<String, Object>> collect(List<Map<String, Object>> values) {
-                            return values;
-                        }
-
-                    }, GlobalExecutor.getQueryExecutor());
+            List<Map<String, Object>> mapResults = null;
+            if (nodeToKeys != null) {
+                mapResults = multicastMapCommand(bucket, nodeToKeys, mapper);
+            } else {
+                mapResults = multicastScanCommand(router.broadcastRoute(), new ScanMapCommand(bucket, mapper));
+            }
             //
             // Reduce:
             Node reducerNode = router.routeToLocalNode();
@@ -329,11 +260,205 @@ public class DefaultQueryService implements QueryService {
         return router;
     }
 
-    private Set<Key> getAllKeysForBucket(String bucket) throws ParallelExecutionException {
-        GetKeysCommand command = new GetKeysCommand(bucket);
+    private TreeReduceCommand buildReduceTree(String bucket, Map<Node, Set<Key>> nodeToKeys, Mapper mapper, Reducer reducer) {
+        Node localNode = router.routeToLocalNode();
+        Set<Key> localKeys = nodeToKeys.containsKey(localNode) ? nodeToKeys.get(localNode) : Collections.<Key>emptySet();
+        TreeReduceCommand root = new TreeReduceCommand(bucket, localKeys, mapper, reducer);
+        // Group other nodes by cluster:
+        Map<Cluster, Set<Node>> perClusterNodes = router.broadcastRoute();
+        List<List<Node>> groups = new LinkedList<List<Node>>();
+        Set<Node> remaining = new HashSet<Node>(nodeToKeys.keySet());
+        remaining.remove(localNode);
+        for (Set<Node> clusterNodes : perClusterNodes.values()) {
+            List<Node> group = new ArrayList<Node>();
+            for (Node node : clusterNodes) {
+                if (remaining.remove(node)) {
+                    group.add(node);
+                }
+            }
+            if (!group.isEmpty()) {
+                groups.add(group);
+            }
+        }
+        // Nodes not found in any cluster are reduced directly by the root:
+        for (Node node : remaining) {
+            groups.add(Collections.singletonList(node));
+        }
+        // Each group is reduced by a tree whose fan-in is the square root of the group size, so that it's at most
+        // three levels deep, and whose root is then reduced here:
+        for (List<Node> group : groups) {
+            int fanIn = Math.max(2, (int) Math.ceil(Math.sqrt(group.size())));
+            TreeReduceCommand[] commands = new TreeReduceCommand[group.size()];
+            for (int i = 0; i < commands.length; i++) {
+                commands[i] = new TreeReduceCommand(bucket, nodeToKeys.get(group.get(i)), mapper, reducer);
+                if (i > 0) {
+                    commands[(i - 1) / fanIn].addChild(group.get(i).getName(), commands[i]);
+                }
+            }
+            root.addChild(group.get(0).getName(), commands[0]);
+        }
+        return root;
+    }
+
+    private Values scanRange(String bucket, Range range, Predicate predicate, Continuation continuation) throws ParallelExecutionException, QueryOperationException {
+        if (continuation != null && !continuation.getComparator().equals(range.getKeyComparatorName())) {
+            throw new QueryOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Continuation doesn't match comparator: " + range.getKeyComparatorName()));
+        }
+        // Values in range are scanned, filtered and limited by nodes, each cluster starting from its own position,
+        // so they only need to be merged here:
         Map<Cluster, Set<Node>> perClusterNodes = router.broadcastRoute();
-        Set<Key> keys = multicastGetAllKeysCommand(perClusterNodes, command);
-        return keys;
+        Map<Cluster, Key> positions = new HashMap<Cluster, Key>();
+        Map<Cluster, RangeQueryCommand> perClusterCommands = new HashMap<Cluster, RangeQueryCommand>();
+        for (Cluster cluster : perClusterNodes.keySet()) {
+            if (continuation == null) {
+                perClusterCommands.put(cluster, new RangeQueryCommand(bucket, range, predicate));
+            } else if (!continuation.isExhausted(cluster.getName())) {
+                Key position = continuation.getPosition(cluster.getName());
+                if (position != null) {
+                    // Start from the last returned key, so one more value is needed in place of it:
+                    Range next = new Range(position, range.getEndKey(), range.getLimit() > 0 ? range.getLimit() + 1 : 0, range.getKeyComparatorName(), range.getTimeToLive());
+                    positions.put(cluster, position);
+                    perClusterCommands.put(cluster, new RangeQueryCommand(bucket, next, predicate));
+                } else {
+                    perClusterCommands.put(cluster, new RangeQueryCommand(bucket, range, predicate));
+                }
+            }
+        }
+        List<SortedValues> allSortedValues = multicastRangeQueryCommand(perClusterNodes, perClusterCommands, positions);
+        Map<Key, Value> result = mergeSortedValues(allSortedValues, range.getLimit());
+        if (range.getLimit() > 0 && result.size() == range.getLimit()) {
+            return new Values(result, nextContinuation(range, continuation, perClusterNodes.keySet(), allSortedValues));
+        } else {
+            return new Values(result);
+        }
+    }
+
+    private List<SortedValues> multicastRangeQueryCommand(final Map<Cluster, Set<Node>> perClusterNodes, final Map<Cluster, RangeQueryCommand> perClusterCommands, final Map<Cluster, Key> positions) throws ParallelExecutionException {
+        // Parallel collection of all sorted values in range, one node per cluster:
+        return ParallelUtils.parallelMap(
+                perClusterCommands.entrySet(),
+                new MapTask<Map.Entry<Cluster, RangeQueryCommand>, SortedValues>() {
+
+                    @Override
+                    public SortedValues map(Map.Entry<Cluster, RangeQueryCommand> clusterCommand) throws ParallelExecutionException {
+                        Cluster cluster = clusterCommand.getKey();
+                        RangeQueryCommand command = clusterCommand.getValue();
+                        // Try to send command, stopping after first successful attempt:
+                        for (Node node : perClusterNodes.get(cluster)) {
+                            try {
+                                Map<Key, Value> values = node.<Map<Key, Value>>send(command);
+                                return new SortedValues(cluster, positions.get(cluster), values);
+                            } catch (CommunicationException ex) {
+                                ErrorLogger.LOG(LOG, ex.getErrorMessage(), ex);
+                            } catch (ProcessingException ex) {
+                                ErrorLogger.LOG(LOG, ex.getErrorMessage(), ex);
+                                throw new ParallelExecutionException(ex);
+                            }
+                        }
+                        // No node answered, so this cluster will be retried at next page (if any):
+                        return null;
+                    }
+
+                },
+                new MapCollector<SortedValues, List<SortedValues>>() {
+
+                    @Override
+                    public List<SortedValues> collect(List<SortedValues> allSortedValues) {
+                        return allSortedValues;
+                    }
+
+                }, GlobalExecutor.getQueryExecutor());
+    }
+
+    private Map<Key, Value> mergeSortedValues(List<SortedValues> allSortedValues, int limit) {
+        // K-way merge of all sorted values, up to the given limit:
+        Map<Key, Value> result = new LinkedHashMap<Key, Value>();
+        PriorityQueue<SortedValues> heads = new PriorityQueue<SortedValues>(Math.max(1, allSortedValues.size()));
+        for (SortedValues values : allSortedValues) {
+            if (values.advance()) {
+                heads.add(values);
+            }
+        }
+        while (!heads.isEmpty() && (limit == 0 || result.size() < limit)) {
+            SortedValues head = heads.poll();
+            result.put(head.current.getKey(), head.current.getValue());
+            head.consume();
+            if (head.advance()) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    private Continuation nextContinuation(Range range, Continuation previous, Set<Cluster> clusters, List<SortedValues> allSortedValues) {
+        Map<String, Key> positions = new HashMap<String, Key>();
+        // Keep positions of clusters which didn't answer, or were already exhausted:
+        if (previous != null) {
+            for (Cluster cluster : clusters) {
+                if (previous.getPositions().containsKey(cluster.getName())) {
+                    positions.put(cluster.getName(), previous.getPosition(cluster.getName()));
+                }
+            }
+        }
+        for (SortedValues values : allSortedValues) {
+            if (values.isExhausted(range.getLimit())) {
+                positions.put(values.cluster.getName(), null);
+            } else if (values.last != null) {
+                positions.put(values.cluster.getName(), values.last);
+            }
+        }
+        // No continuation is needed if all clusters have been exhausted:
+        boolean exhausted = true;
+        for (Cluster cluster : clusters) {
+            if (!positions.containsKey(cluster.getName()) || positions.get(cluster.getName()) != null) {
+                exhausted = false;
+                break;
+            }
+        }
+        return exhausted ? null : new Continuation(range.getKeyComparatorName(), positions);
+    }
+
+    private Map<Key, Value> multicastQueryByIndexCommand(final Map<Cluster, Set<Node>> perClusterNodes, final QueryByIndexCommand command) throws ParallelExecutionException {
+        // Every node must be queried, because indexes are local to each node, and results are valid only if all nodes
+        // actually answered through indexes:
+        final AtomicBoolean unanswered = new AtomicBoolean(false);
+        List<Node> allNodes = new LinkedList<Node>();
+        for (Set<Node> nodes : perClusterNodes.values()) {
+            allNodes.addAll(nodes);
+        }
+        List<Map<Key, Value>> allKeyValues = ParallelUtils.parallelMap(
+                allNodes,
+                new MapTask<Node, Map<Key, Value>>() {
+
+                    @Override
+                    public Map<Key, Value> map(Node node) throws ParallelExecutionException {
+                        try {
+                            Map<Key, Value> result = node.<Map<Key, Value>>send(command);
+                            if (result == null) {
+                                unanswered.set(true);
+                            }
+                            return result;
+                        } catch (Exception ex) {
+                            ErrorLogger.LOG(LOG, new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, ex.getMessage()), ex);
+                            unanswered.set(true);
+                            return null;
+                        }
+                    }
+
+                },
+                new MapCollector<Map<Key, Value>, List<Map<Key, Value>>>() {
+
+                    @Override
+                    public List<Map<Key, Value>> collect(List<Map<Key, Value>> allKeyValues) {
+                        return allKeyValues;
+                    }
+
+                }, GlobalExecutor.getQueryExecutor());
+        if (!unanswered.get()) {
+            return Maps.union(allKeyValues);
+        } else {
+            return null;
+        }
     }
 
     private Set<String> multicastGetBucketsCommand(final Map<Cluster, Set<Node>> perClusterNodes, final GetBucketsCommand command) throws ParallelExecutionException {
@@ -373,41 +498,98 @@ public class DefaultQueryService implements QueryService {
         return result;
     }
 
-    private Set<Key> multicastGetAllKeysCommand(final Map<Cluster, Set<Node>> perClusterNodes, final GetKeysCommand command) throws ParallelExecutionException {
-        // Parallel collection of all keys:
-        Set<Key> result = ParallelUtils.parallelMap(
-                perClusterNodes.values(),
-                new MapTask<Set<Node>, Set<Key>>() {
+    private List<Map<String, Object>> multicastMapCommand(final String bucket, final Map<Node, Set<Key>> nodeToKeys, final Mapper mapper) throws ParallelExecutionException {
+        // Parallel map of all keys, on the nodes they belong to:
+        return ParallelUtils.parallelMap(
+                nodeToKeys.entrySet(),
+                new MapTask<Map.Entry<Node, Set<Key>>, Map<String, Object>>() {
 
                     @Override
-                    public Set<Key> map(Set<Node> nodes) throws ParallelExecutionException {
-                        Set<Key> keys = new HashSet<Key>();
-                        // Try to send command, stopping after first successful attempt:
+                    public Map<String, Object> map(Map.Entry<Node, Set<Key>> nodeToKeys) throws ParallelExecutionException {
+                        try {
+                            Node node = nodeToKeys.getKey();
+                            Set<Key> keys = nodeToKeys.getValue();
+                            MapCommand command = new MapCommand(bucket, keys, mapper);
+                            return node.<Map<String, Object>>send(command);
+                        } catch (Exception ex) {
+                            throw new ParallelExecutionException(ex);
+                        }
+                    }
+
+                },
+                new MapCollector<Map<String, Object>, List<Map<String, Object>>>() {
+
+                    @Override
+                    public List<Map<String, Object>> collect(List<Map<String, Object>> values) {
+                        return values;
+                    }
+
+                }, GlobalExecutor.getQueryExecutor());
+    }
+
+    private <R> List<R> multicastScanCommand(final Map<Cluster, Set<Node>> perClusterNodes, final AbstractScanCommand<R> command) throws ParallelExecutionException {
+        // Parallel scan of all nodes, each one over its own keys; keys owned by unavailable nodes are scanned
+        // by other nodes of the same cluster:
+        final Node localNode = router.routeToLocalNode();
+        Map<Node, Set<Node>> ownerToClusterNodes = new LinkedHashMap<Node, Set<Node>>();
+        for (Set<Node> nodes : perClusterNodes.values()) {
+            for (Node node : nodes) {
+                ownerToClusterNodes.put(node, nodes);
+            }
+        }
+        return ParallelUtils.parallelMap(
+                ownerToClusterNodes.entrySet(),
+                new MapTask<Map.Entry<Node, Set<Node>>, R>() {
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public R map(Map.Entry<Node, Set<Node>> ownerToClusterNodes) throws ParallelExecutionException {
+                        Node owner = ownerToClusterNodes.getKey();
+                        AbstractScanCommand<R> ownerCommand = command.forOwner(owner.getName());
+                        List<Node> nodes = new LinkedList<Node>();
+                        nodes.add(owner);
+                        for (Node node : ownerToClusterNodes.getValue()) {
+                            if (!node.equals(owner)) {
+                                nodes.add(node);
+                            }
+                        }
+                        // Try to send command, starting from the owner and stopping after first successful attempt:
                         for (Node node : nodes) {
                             try {
-                                keys = node.<Set<Key>>send(command);
-                                // Break after first success, we just want to send command to one node per cluster:
-                                break;
+                                if (node.equals(localNode)) {
+                                    return ownerCommand.scan(router);
+                                } else {
+                                    // Scan commands are raw commands, so their result must be cast:
+                                    return (R) node.send(ownerCommand);
+                                }
                             } catch (CommunicationException ex) {
                                 ErrorLogger.LOG(LOG, ex.getErrorMessage(), ex);
+                            } catch (MissingRouteException ex) {
+                                ErrorLogger.LOG(LOG, ex.getErrorMessage(), ex);
                             } catch (ProcessingException ex) {
                                 ErrorLogger.LOG(LOG, ex.getErrorMessage(), ex);
                                 throw new ParallelExecutionException(ex);
                             }
                         }
-                        return keys;
+                        // No node answered, so keys owned by this node are skipped:
+                        return null;
                     }
 
                 },
-                new MapCollector<Set<Key>, Set<Key>>() {
+                new MapCollector<R, List<R>>() {
 
                     @Override
-                    public Set<Key> collect(List<Set<Key>> keys) {
-                        return Sets.union(keys);
+                    public List<R> collect(List<R> results) {
+                        List<R> result = new LinkedList<R>();
+                        for (R scanned : results) {
+                            if (scanned != null) {
+                                result.add(scanned);
+                            }
+                        }
+                        return result;
                     }
 
                 }, GlobalExecutor.getQueryExecutor());
-        return result;
     }
 
     private void handleMissingRouteException(MissingRouteException ex) throws CommunicationException {
@@ -434,4 +616,46 @@ public class DefaultQueryService implements QueryService {
         }
     }
 
+    private static class SortedValues implements Comparable<SortedValues> {
+
+        private final Cluster cluster;
+        private final Key position;
+        private final Iterator<Map.Entry<Key, Value>> iterator;
+        private final int size;
+        private int consumed;
+        private Map.Entry<Key, Value> current;
+        private Key last;
+
+        public SortedValues(Cluster cluster, Key position, Map<Key, Value> values) {
+            this.cluster = cluster;
+            this.position = position;
+            this.iterator = values.entrySet().iterator();
+            this.size = position != null && values.containsKey(position) ? values.size() - 1 : values.size();
+        }
+
+        public boolean advance() {
+            while (iterator.hasNext()) {
+                current = iterator.next();
+                // Skip the last key returned by the previous page:
+                if (position == null || !current.getKey().equals(position)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void consume() {
+            last = current.getKey();
+            consumed++;
+        }
+
+        public boolean isExhausted(int limit) {
+            return consumed == size && size < limit;
+        }
+
+        @Override
+        public int compareTo(SortedValues other) {
+            return current.getKey().compareTo(other.current.getKey());
+        }
+    }
 }
@@ -146,6 +146,24 @@ public class DefaultUpdateService implements UpdateService {
         }
     }
 
+    @Override
+    public void putValueIfVersion(String bucket, Key key, Value value, long version) throws CommunicationException, UpdateOperationException, ValidationException {
+        Value.ValidationResult validation = value.validate();
+        if (validation.isValid()) {
+            try {
+                Node node = router.routeToNodeFor(bucket, key);
+                PutValueCommand command = new PutValueCommand(bucket, key, value, version);
+                node.send(command);
+            } catch (MissingRouteException ex) {
+                handleMissingRouteException(ex);
+            } catch (ProcessingException ex) {
+                handleProcessingException(ex);
+            }
+        } else {
+            throw validation.getException();
+        }
+    }
+
     @Override
     public void removeValue(String bucket, Key key) throws CommunicationException, UpdateOperationException {
         try {
@@ -159,6 +177,19 @@ public class DefaultUpdateService implements UpdateService {
         }
     }
 
+    @Override
+    public void removeValueIfVersion(String bucket, Key key, long version) throws CommunicationException, UpdateOperationException {
+        try {
+            Node node = router.routeToNodeFor(bucket, key);
+            RemoveValueCommand command = new RemoveValueCommand(bucket, key, version);
+            node.send(command);
+        } catch (MissingRouteException ex) {
+            handleMissingRouteException(ex);
+        } catch (ProcessingException ex) {
+            handleProcessingException(ex);
+        }
+    }
+
     @Override
     public Value updateValue(String bucket, Key key, Update update) throws CommunicationException, UpdateOperationException {
         try {
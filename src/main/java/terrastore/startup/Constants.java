@@ -24,6 +24,8 @@ public class Constants {
     public static final String BACKUPS_DIR = "backups";
     public static final String JAVASCRIPT_DIR = "javascript";
     public static final String SNAPSHOTS_DIR = "snapshots";
+    public static final String DATA_DIR = "data";
+    public static final String SPILL_DIR = "spill";
 
     private Constants() {
     }
@@ -60,6 +60,10 @@ public class Startup {
     private static final boolean DEFAULT_COMPRESS_DOCUMENTS = false;
     private static final boolean DEFAULT_COMPRESS_COMMUNICATION = false;
     private static final int DEFAULT_CONCURRENCY_LEVEL = 1024;
+    private static final String DEFAULT_STORE = "tc";
+    private static final long DEFAULT_NEAR_CACHE_SIZE = 0;
+    private static final int DEFAULT_COMPRESS_THRESHOLD = 256;
+    private static final String DEFAULT_EXTENSIONS_SECRET = "";
     private static final String WELCOME_MESSAGE = "Welcome to Terrastore.";
     private static final String POWEREDBY_MESSAGE = "Powered by Terracotta (http://www.terracotta.org).";
 
@@ -90,8 +94,12 @@ public class Startup {
     private String eventBus = DEFAULT_EVENT_BUS;
     private String allowedOrigins = DEFAULT_ALLOWED_ORIGINS;
     private boolean compressDocuments = DEFAULT_COMPRESS_DOCUMENTS;
+    private int compressThreshold = DEFAULT_COMPRESS_THRESHOLD;
     private boolean compressCommunication = DEFAULT_COMPRESS_COMMUNICATION;
     private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+    private String store = DEFAULT_STORE;
+    private long nearCacheSize = DEFAULT_NEAR_CACHE_SIZE;
+    private String extensionsSecret = DEFAULT_EXTENSIONS_SECRET;
 
     @Option(name = "--master", required = true)
     public void setMaster(String master) {
@@ -169,6 +177,11 @@ public class Startup {
         this.compressDocuments = Boolean.parseBoolean(compressDocuments);
     }
 
+    @Option(name = "--compressThreshold", required = false)
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
     @Option(name = "--compressCommunication", required = false)
     public void setCompressCommunication(String compressCommunication) {
         this.compressCommunication = Boolean.parseBoolean(compressCommunication);
@@ -179,6 +192,25 @@ public class Startup {
         this.concurrencyLevel = concurrencyLevel;
     }
 
+    @Option(name = "--store", required = false, usage = "Store type, either tc (the default, data shared by all nodes connected to the same master) or log (node-local data, only allowed if the node is the only one connected to its master)")
+    public void setStore(String store) throws CmdLineException {
+        if (store.equals("tc") || store.equals("log")) {
+            this.store = store;
+        } else {
+            throw new CmdLineException("Unknown store: " + store + " (should be either tc or log)");
+        }
+    }
+
+    @Option(name = "--nearCacheSize", required = false)
+    public void setNearCacheSize(long nearCacheSize) {
+        this.nearCacheSize = nearCacheSize;
+    }
+
+    @Option(name = "--extensionsSecret", required = false)
+    public void setExtensionsSecret(String extensionsSecret) {
+        this.extensionsSecret = extensionsSecret;
+    }
+
     public void start() throws Exception {
         try {
             // TODO: make connection timeout configurable.
@@ -221,11 +253,15 @@ public class Startup {
         LOG.info("Node communication timeout (in milliseconds): {}", nodeTimeout);
         LOG.info("Node communication compression is {}.", compressCommunication ? "ENABLED" : "DISABLED");
         LOG.info("Document compression is {}.", compressDocuments ? "ENABLED" : "DISABLED");
+        LOG.info("Document compression threshold (in bytes): {}", compressThreshold);
         LOG.info("Failover retries: {}", failoverRetries);
         LOG.info("Failover retry interval (in milliseconds): {}", failoverInterval);
         LOG.info("Number of http threads: {}", httpThreads);
         LOG.info("Number of worker threads: {}", workerThreads);
         LOG.info("Internal concurrency level: {}", concurrencyLevel);
+        LOG.info("Store: {}", store.equals("log") ? "LOG" : "TC");
+        LOG.info("Near cache size (in bytes, per bucket): {}", nearCacheSize > 0 ? nearCacheSize : "DISABLED");
+        LOG.info("Extensions hot deployment is {}.", extensionsSecret.isEmpty() ? "DISABLED" : "ENABLED");
     }
 
     private void setupSystemParams() {
@@ -236,11 +272,25 @@ public class Startup {
         } else {
             System.setProperty("eventBus.impl", "memory");
         }
+        // Store (log-based stores hold node-local data, so they don't need clustered locks, while TC stores
+        // hold data shared by all nodes connected to the same master, which may join at any time, so they always do):
+        if (store.equals("log")) {
+            System.setProperty("store.impl", "terrastore.store.impl.LogStore");
+            System.setProperty("lockManager.impl", "terrastore.store.impl.LocalLockManager");
+        } else {
+            System.setProperty("store.impl", "terrastore.store.impl.TCStore");
+            System.setProperty("lockManager.impl", "terrastore.store.impl.TCLockManager");
+        }
         // Backoff configuration:
         System.setProperty("failover.retries", Integer.toString(failoverRetries));
         System.setProperty("failover.interval", Long.toString(failoverInterval));
         // Compression configuration:
         System.setProperty("compress.documents", Boolean.toString(compressDocuments));
+        System.setProperty("compress.threshold", Integer.toString(compressThreshold));
+        // Near cache configuration:
+        System.setProperty("near.cache.size", Long.toString(nearCacheSize));
+        // Extensions configuration (an empty secret disables hot deployment):
+        System.setProperty("extensions.secret", extensionsSecret);
         // Node configuration:
         System.setProperty("node.id", ClusterUtils.getServerId(TCMaster.getInstance().getClusterInfo().getCurrentNode()));
         System.setProperty("node.concurrency", Integer.toString(concurrencyLevel));
@@ -258,6 +308,8 @@ public class Startup {
         coordinator.setReconnectTimeout(reconnectTimeout);
         coordinator.setNodeTimeout(nodeTimeout);
         coordinator.setWokerThreads(workerThreads);
+        // Log-based stores hold node-local data, which can't be partitioned among other nodes:
+        coordinator.setSingleNode(store.equals("log"));
         coordinator.start(
                 new NodeConfiguration(ClusterUtils.getServerId(TCMaster.getInstance().getClusterInfo().getCurrentNode()), nodeHost, nodePort, httpHost, httpPort),
                 ensembleConfiguration);
@@ -16,15 +16,18 @@
 package terrastore.store;
 
 import terrastore.store.features.Update;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import terrastore.event.EventBus;
 import terrastore.server.Keys;
 import terrastore.server.Values;
+import terrastore.store.codec.CompressionPolicy;
 import terrastore.store.features.Mapper;
 import terrastore.store.features.Predicate;
 import terrastore.store.operators.Function;
 import terrastore.store.features.Range;
+import terrastore.store.index.IndexDefinition;
 import terrastore.store.operators.Comparator;
 import terrastore.store.operators.Condition;
 
@@ -51,6 +54,16 @@ public interface Bucket {
      */
     public void put(Key key, Value value);
 
+    /**
+     * Put all the given {@link Value}s into this bucket under their own keys, eventually replacing the old ones.<br>
+     * This is equivalent to calling {@link #put(Key, Value)} for each entry, but takes each key lock only once per
+     * group of keys sharing it, and reads old values only if needed by events or secondary indexes.<br>
+     * This publishes a {@link terrastore.event.ValueChangedEvent} to the {@link terrastore.event.EventBus} for each put value.
+     *
+     * @param values The key/value pairs to put.
+     */
+    public void putAll(Map<Key, Value> values);
+
     /**
      * Put the given {@link Value} into this bucket under the given key only if no value existed before,
      * or the existent value satisfies the given {@link terrastore.store.features.Predicate}.<br>
@@ -64,6 +77,30 @@ public interface Bucket {
      */
     public boolean conditionalPut(Key key, Value value, Predicate predicate) throws StoreOperationException;
 
+    /**
+     * Put the given {@link Value} into this bucket under the given key only if a value already exists
+     * and its version (see {@link Value#getVersion()}) is equal to the given one.<br>
+     * Versions are compared without parsing values.<br>
+     * This publishes a {@link terrastore.event.ValueChangedEvent} to the {@link terrastore.event.EventBus} if the value is actually put.
+     *
+     * @param key The key of the value to put.
+     * @param value The value to put.
+     * @param version The expected version of the old value, or {@link Value#ANY_VERSION} to match any existing value.
+     * @return True if the value has been actually put, false otherwise.
+     */
+    public boolean putIfVersion(Key key, Value value, long version);
+
+    /**
+     * Remove the {@link Value} under the given key only if its version (see {@link Value#getVersion()})
+     * is equal to the given one.<br>
+     * This publishes a {@link terrastore.event.ValueRemovedEvent} to the {@link terrastore.event.EventBus} if the value is actually removed.
+     *
+     * @param key The key of the value to remove.
+     * @param version The expected version of the value to remove, or {@link Value#ANY_VERSION} to match any existing value.
+     * @return True if the value has been actually removed, false otherwise (also if no value exists).
+     */
+    public boolean removeIfVersion(Key key, long version);
+
     /**
      * Get the {@link Value} under the given key.
      *
@@ -161,6 +198,16 @@ public interface Bucket {
      */
     public Map<String, Object> map(Key key, Mapper mapper) throws StoreOperationException;
 
+    /**
+     * Get all values matching the given predicate by looking them up into this bucket secondary indexes
+     * (see {@link #setIndexes(List)}).
+     *
+     * @param predicate The predicate to evaluate.
+     * @return The matching values, or null if no secondary index can answer the given predicate.
+     * @throws StoreOperationException If errors occur.
+     */
+    public Values queryByIndex(Predicate predicate) throws StoreOperationException;
+
     /**
      * Clear all entries.
      */
@@ -182,9 +229,9 @@ public interface Bucket {
 
     /**
      * Get a set of all keys falling into the given range, sorted as determined by the given comparator.<br>
-     * The range is always computed over a snapshot of all keys: however, if the snapshot is older than the given timeToLive
-     * contained into the range object (in milliseconds),
-     * a new one will be created with latest keys.<br>
+     * The range is always computed over a snapshot of all keys, incrementally kept up to date with bucket writes: however,
+     * if the snapshot is older than the timeToLive contained into the range object (in milliseconds, and non negative),
+     * it will be fully recomputed with latest keys.<br>
      * The snapshot is computed (and managed) by using the configured {@link SnapshotManager} (see {@link #setSnapshotManager(SnapshotManager )}).
      *
      * @param range The range which keys must be fall into.
@@ -193,6 +240,19 @@ public interface Bucket {
      */
     public Keys keysInRange(Range range) throws StoreOperationException;
 
+    /**
+     * Get all values whose keys fall into the given range, sorted as determined by the given comparator, and whose
+     * values satisfy the given predicate (if not empty).<br>
+     * Keys are read from the same snapshot used by {@link #keysInRange(Range)}, and the range limit is applied
+     * to the values actually satisfying the predicate.
+     *
+     * @param range The range which keys must be fall into.
+     * @param predicate The predicate to evaluate (may be empty).
+     * @return The sorted values in range.
+     * @throws StoreOperationException If errors occur.
+     */
+    public Values valuesInRange(Range range, Predicate predicate) throws StoreOperationException;
+
     /**
      * Flush all key/value entries contained into this bucket.
      * <br>
@@ -204,9 +264,21 @@ public interface Bucket {
     public void flush(FlushStrategy flushStrategy, FlushCondition flushCondition);
 
     /**
-     * Set to true for compressing documents, false otherwise.
+     * Set the {@link terrastore.store.codec.CompressionPolicy} used to compress documents, or null for not compressing them.
      */
-    public void setCompressDocuments(boolean compressed);
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy);
+
+    /**
+     * Set the maximum size (in bytes) of the near cache holding decompressed documents for faster reads:
+     * zero or negative values disable the near cache.
+     */
+    public void setNearCacheSize(long nearCacheSize);
+
+    /**
+     * Set the {@link FlushCondition} identifying keys not owned by this node: such keys are never kept into the near cache,
+     * because their owner node may write them without invalidating it.
+     */
+    public void setFlushCondition(FlushCondition flushCondition);
 
     /**
      * Set the default {@link terrastore.store.operators.Comparator} used to compare keys when no other comparator is found.
@@ -257,6 +329,13 @@ public interface Bucket {
      */
     public void setLockManager(LockManager lockManager);
 
+    /**
+     * Set the definitions of secondary indexes to maintain for this bucket.
+     *
+     * @param indexes The list of index definitions.
+     */
+    public void setIndexes(List<IndexDefinition> indexes);
+
     /**
      * Set the {@link terrastore.event.EventBus} instance used for publishing events to {@link terrastore.event.EventListener}s.
      *
@@ -36,6 +36,7 @@ public class Key implements Comparable<Key>, MessagePackable, Serializable {
     private static final Charset CHARSET = Charset.forName("UTF-8");
     //
     private String key;
+    private transient int hash;
 
     public Key(String key) {
         this.key = key;
@@ -56,6 +57,7 @@ public class Key implements Comparable<Key>, MessagePackable, Serializable {
     @Override
     public void readFrom(Unpacker unpacker) throws IOException, MessageTypeException {
         key = MsgPackUtils.unpackString(unpacker);
+        hash = 0;
     }
 
     @Override
@@ -75,7 +77,13 @@ public class Key implements Comparable<Key>, MessagePackable, Serializable {
 
     @Override
     public int hashCode() {
-        return key.hashCode();
+        // Cache the hash code, as keys are hashed many times along their path (routing, locking, storing):
+        int h = hash;
+        if (h == 0) {
+            h = key.hashCode();
+            hash = h;
+        }
+        return h;
     }
 
     @Override
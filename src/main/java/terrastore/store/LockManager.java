@@ -15,6 +15,9 @@
  */
 package terrastore.store;
 
+import java.util.List;
+import java.util.Set;
+
 /**
  * Lock manager interface for locking read/write operations.
  *
@@ -54,6 +57,17 @@ public interface LockManager {
      */
     public void unlockWrite(String bucket, Key key);
 
+    /**
+     * Group the given keys by the lock they're assigned to, so that all keys in the same group can be locked at once
+     * by locking any one of them.<br>
+     * Groups are returned in the same, deterministic, order for all callers, so that they can be safely locked in sequence.
+     *
+     * @param bucket The bucket of the keys to group.
+     * @param keys The keys to group.
+     * @return The list of key groups sharing the same lock.
+     */
+    public List<Set<Key>> groupByLock(String bucket, Set<Key> keys);
+
     /**
      * Evict unused locks for the node identified by the given name.
      *
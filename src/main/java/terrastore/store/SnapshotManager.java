@@ -27,14 +27,38 @@ public interface SnapshotManager {
     /**
      * Get or compute a sorted snapshot of the given {@link Bucket} keys, using the given {@link java.util.Comparator}.<br/>
      * Every snapshot is identified and named by the <i>name</i> parameter.<br>
-     * The choice between retrieving an alredy stored snapshot, or computing a new one, is taken based on the <i>timeToLive</i>: snapshots
-     * with expired time to live will be recomputed.
+     * Snapshots are incrementally kept up to date with changes notified through {@link #keyAdded(Bucket, Key)} and
+     * {@link #keyRemoved(Bucket, Key)}, so an already stored snapshot is usually returned: however, snapshots
+     * older than the <i>timeToLive</i> will be fully recomputed.
      *
      * @param bucket The bucket for which taking a snapshot of the keys.
      * @param comparator The comparator to use for sorting keys.
      * @param name Name of the snapshot to retrieve or compute.
-     * @param timeToLive Snapshot required time to live.
+     * @param timeToLive Snapshot required time to live: 0 to always recompute it, or a negative value to never recompute it.
      * @return The {@link SortedSnapshot} instance.
      */
     public SortedSnapshot getOrComputeSortedSnapshot(Bucket bucket, Comparator<String> comparator, String name, long timeToLive);
+
+    /**
+     * Notify all snapshots of the given {@link Bucket} that the given key has been added.
+     *
+     * @param bucket The bucket the key has been added to.
+     * @param key The added key.
+     */
+    public void keyAdded(Bucket bucket, Key key);
+
+    /**
+     * Notify all snapshots of the given {@link Bucket} that the given key has been removed.
+     *
+     * @param bucket The bucket the key has been removed from.
+     * @param key The removed key.
+     */
+    public void keyRemoved(Bucket bucket, Key key);
+
+    /**
+     * Notify that the given {@link Bucket} has been cleared, discarding all its snapshots.
+     *
+     * @param bucket The cleared bucket.
+     */
+    public void bucketCleared(Bucket bucket);
 }
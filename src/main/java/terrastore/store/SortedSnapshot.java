@@ -15,199 +15,228 @@
  */
 package terrastore.store;
 
-import org.fusesource.hawtdb.api.TxPageFileFactory;
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.File;
-import java.io.IOException;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Map.Entry;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import org.fusesource.hawtbuf.codec.Codec;
-import org.fusesource.hawtbuf.codec.StringCodec;
-import org.fusesource.hawtdb.api.BTreeIndexFactory;
-import org.fusesource.hawtdb.api.SortedIndex;
-import org.fusesource.hawtdb.api.Transaction;
-import static terrastore.startup.Constants.*;
+import terrastore.store.snapshot.HawtDBSnapshotBackend;
+import terrastore.store.snapshot.SnapshotBackend;
+import terrastore.store.snapshot.SnapshotBackendFactory;
+import terrastore.util.collect.parallel.ParallelUtils;
+import terrastore.util.concurrent.GlobalExecutor;
 
 /**
- * Sorted snapshot of keys.
+ * Sorted snapshot of keys, stored into the {@link terrastore.store.snapshot.SnapshotBackend} created by the given
+ * {@link terrastore.store.snapshot.SnapshotBackendFactory} at first computation (defaulting to an HawtDB-based one),
+ * and replaced at later full computations if no longer suitable for the snapshot size (i.e. a memory-based one
+ * whose snapshot has grown too large).
+ * <br><br>
+ * Snapshots can be fully recomputed through {@link #update(java.util.Set)}, or incrementally maintained through
+ * {@link #add(Key)} and {@link #remove(Key)}: incremental changes notified while a full update is in progress
+ * (see {@link #beginUpdate()}) are buffered and applied right after the update completes, so that no change is lost.<br>
+ * If a full update fails, buffered changes are discarded and the snapshot expires regardless of its time to live,
+ * so that it gets fully recomputed at next access.
  *
  * @author Sergio Bossa
  */
 public class SortedSnapshot {
 
+    private static final SnapshotBackendFactory DEFAULT_BACKEND_FACTORY = new SnapshotBackendFactory() {
+
+        @Override
+        public SnapshotBackend create(String name, Comparator<String> comparator, int size) {
+            return new HawtDBSnapshotBackend(name, comparator);
+        }
+
+        @Override
+        public boolean isSuitable(SnapshotBackend backend, int size) {
+            return true;
+        }
+
+    };
+    //
     private final ReadWriteLock stateLock;
+    private final String name;
     private final Comparator<String> comparator;
-    private TxPageFileFactory pageFactory;
-    private BTreeIndexFactory<String, String> indexFactory;
+    private final SnapshotBackendFactory backendFactory;
+    private final List<Change> pendingChanges;
+    private SnapshotBackend backend;
+    private boolean updating;
+    private volatile boolean stale;
     private long timestamp;
 
+    public SortedSnapshot(String name, Comparator<String> comparator) {
+        this(name, comparator, DEFAULT_BACKEND_FACTORY);
+    }
+
     public SortedSnapshot(String name, Set<Key> keys, Comparator<String> comparator) {
+        this(name, comparator, DEFAULT_BACKEND_FACTORY);
+        update(keys);
+    }
+
+    public SortedSnapshot(String name, Comparator<String> comparator, SnapshotBackendFactory backendFactory) {
         this.stateLock = new ReentrantReadWriteLock();
+        this.name = name;
         this.comparator = comparator;
-        computeIndex(getFile(name), keys, comparator);
+        this.backendFactory = backendFactory;
+        this.pendingChanges = new LinkedList<Change>();
     }
 
     public Set<Key> keysInRange(Key start, Key end, int limit) {
         stateLock.readLock().lock();
         try {
-            return queryIndex(start, end, limit);
+            if (backend != null) {
+                return backend.keysInRange(start.toString(), end == null ? null : end.toString(), limit);
+            } else {
+                return Collections.emptySet();
+            }
         } finally {
             stateLock.readLock().unlock();
         }
     }
 
+    /**
+     * Determine if this snapshot has been fully computed more than the given time to live ago: so a time to live
+     * of 0 always expires the snapshot, while a negative time to live means the snapshot never expires, and is only
+     * kept up to date by incremental changes.
+     */
     public boolean isExpired(long timeToLive) {
         stateLock.readLock().lock();
         try {
             long now = System.currentTimeMillis();
-            return (now - timestamp) >= timeToLive;
+            return stale || (timeToLive >= 0 && (now - timestamp) >= timeToLive);
         } finally {
             stateLock.readLock().unlock();
         }
     }
 
-    public void update(Set<Key> keys) {
-        stateLock.writeLock().lock();
-        try {
-            recomputeIndex(keys);
-        } finally {
-            stateLock.writeLock().unlock();
+    public void add(Key key) {
+        change(new Change(key, true));
+    }
+
+    public void remove(Key key) {
+        change(new Change(key, false));
+    }
+
+    /**
+     * Start buffering incremental changes, up to the next call to {@link #update(java.util.Set)}: must be called
+     * <b>before</b> reading the keys to update the snapshot with.
+     */
+    public void beginUpdate() {
+        synchronized (pendingChanges) {
+            updating = true;
         }
     }
 
-    public void discard() {
-        stateLock.writeLock().lock();
+    public void update(Set<Key> keys) {
+        boolean updated = false;
         try {
-            Transaction tx = pageFactory.getTxPageFile().tx();
-            SortedIndex<String, String> index = indexFactory.openOrCreate(tx);
+            // Sort keys in parallel first, outside of the lock, so that backends can be loaded in order:
+            String[] sorted = new String[keys.size()];
+            int i = 0;
+            for (Key key : keys) {
+                sorted[i++] = key.toString();
+            }
+            ParallelUtils.parallelSort(sorted, comparator, GlobalExecutor.getForkJoinPool());
+            stateLock.writeLock().lock();
             try {
-                index.clear();
+                if (backend != null && !backendFactory.isSuitable(backend, sorted.length)) {
+                    backend.discard();
+                    backend = null;
+                }
+                getOrCreateBackend(sorted.length).load(sorted);
+                timestamp = System.currentTimeMillis();
+                synchronized (pendingChanges) {
+                    if (!pendingChanges.isEmpty()) {
+                        applyChanges(pendingChanges);
+                        pendingChanges.clear();
+                    }
+                    updating = false;
+                    stale = false;
+                }
+                updated = true;
             } finally {
-                tx.commit();
-                tx.flush();
+                stateLock.writeLock().unlock();
             }
         } finally {
-            stateLock.writeLock().unlock();
+            if (!updated) {
+                cancelUpdate();
+            }
         }
     }
 
-    private File getFile(String fileName) {
-        String homeDir = System.getenv(TERRASTORE_HOME) != null ? System.getenv(TERRASTORE_HOME) : System.getProperty(TERRASTORE_HOME);
-        homeDir = homeDir != null ? homeDir : System.getProperty("java.io.tmpdir");
-        if (homeDir != null) {
-            String separator = System.getProperty("file.separator");
-            File file = new File(homeDir + separator + SNAPSHOTS_DIR + separator + fileName + ".hdb");
-            file.delete();
-            return file;
-        } else {
-            throw new IllegalStateException("Terrastore home directory is not set!");
+    /**
+     * Stop buffering incremental changes without updating the snapshot, i.e. because the update failed or keys couldn't
+     * be read: buffered changes are discarded, and the snapshot is expired until successfully updated again.
+     */
+    public void cancelUpdate() {
+        synchronized (pendingChanges) {
+            pendingChanges.clear();
+            updating = false;
+            stale = true;
         }
     }
 
-    private void computeIndex(File file, Set<Key> keys, Comparator<String> comparator) {
-        pageFactory = new TxPageFileFactory();
-        pageFactory.setPageSize((short) 512);
-        pageFactory.setFile(file);
-        pageFactory.open();
-
-        indexFactory = new BTreeIndexFactory<String, String>();
-        indexFactory.setComparator(comparator);
-        indexFactory.setKeyCodec(StringCodec.INSTANCE);
-        indexFactory.setValueCodec(new Codec<String>() {
-
-            @Override
-            public void encode(String object, DataOutput dataOut) throws IOException {
-            }
-
-            @Override
-            public String decode(DataInput dataIn) throws IOException {
-                return "";
-            }
-
-            @Override
-            public int getFixedSize() {
-                return 0;
-            }
-
-            @Override
-            public int estimatedSize(String object) {
-                return 0;
-            }
-
-            @Override
-            public boolean isDeepCopySupported() {
-                return true;
-            }
-
-            @Override
-            public String deepCopy(String source) {
-                return "";
-            }
-
-            @Override
-            public boolean isEstimatedSizeSupported() {
-                return true;
-            }
-
-        });
-
-        Transaction tx = pageFactory.getTxPageFile().tx();
-        SortedIndex<String, String> index = indexFactory.openOrCreate(tx);
+    public void discard() {
+        stateLock.writeLock().lock();
         try {
-            for (Key key : keys) {
-                index.put(key.toString(), "");
+            if (backend != null) {
+                backend.discard();
+                backend = null;
             }
         } finally {
-            tx.commit();
-            tx.flush();
+            stateLock.writeLock().unlock();
         }
-
-        timestamp = System.currentTimeMillis();
     }
 
-    private void recomputeIndex(final Set<Key> keys) {
-        Transaction tx = pageFactory.getTxPageFile().tx();
-        SortedIndex<String, String> index = indexFactory.openOrCreate(tx);
-        try {
-            index.clear();
-            for (Key key : keys) {
-                index.put(key.toString(), "");
+    private void change(Change change) {
+        synchronized (pendingChanges) {
+            if (updating) {
+                pendingChanges.add(change);
+                return;
             }
+        }
+        stateLock.writeLock().lock();
+        try {
+            applyChanges(Collections.singletonList(change));
         } finally {
-            tx.commit();
-            tx.flush();
+            stateLock.writeLock().unlock();
         }
-
-        timestamp = System.currentTimeMillis();
     }
 
-    private Set<Key> queryIndex(Key start, Key end, int limit) {
-        String startString = start.toString();
-        String endString = end == null ? null : end.toString();
-        Transaction tx = pageFactory.getTxPageFile().tx();
-        SortedIndex<String, String> index = indexFactory.openOrCreate(tx);
-        try {
-            LinkedHashSet<Key> result = new LinkedHashSet<Key>();
-            Iterator<Entry<String, String>> entries = index.iterator(startString);
-            int counter = 1;
-            while (entries.hasNext()) {
-                Entry<String, String> entry = entries.next();
-                if ((endString == null || comparator.compare(entry.getKey(), endString) <= 0) && (limit == 0 || counter++ <= limit)) {
-                    result.add(new Key(entry.getKey()));
-                } else {
-                    break;
-                }
+    private void applyChanges(List<Change> changes) {
+        // Snapshots never loaded, or discarded, have nothing to maintain:
+        SnapshotBackend current = backend;
+        if (current == null) {
+            return;
+        }
+        for (Change change : changes) {
+            if (change.added) {
+                current.add(change.key.toString());
+            } else {
+                current.remove(change.key.toString());
             }
-            return result;
-        } finally {
-            tx.commit();
         }
     }
 
+    private SnapshotBackend getOrCreateBackend(int size) {
+        if (backend == null) {
+            backend = backendFactory.create(name, comparator, size);
+        }
+        return backend;
+    }
+
+    private static class Change {
+
+        private final Key key;
+        private final boolean added;
+
+        public Change(Key key, boolean added) {
+            this.key = key;
+            this.added = added;
+        }
+    }
 }
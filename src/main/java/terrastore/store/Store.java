@@ -20,8 +20,10 @@ import java.util.Map;
 import java.util.Set;
 import terrastore.event.EventBus;
 import terrastore.server.Buckets;
+import terrastore.store.codec.CompressionPolicy;
 import terrastore.store.features.Mapper;
 import terrastore.store.features.Reducer;
+import terrastore.store.index.IndexDefinition;
 import terrastore.store.operators.Aggregator;
 import terrastore.store.operators.Comparator;
 import terrastore.store.operators.Condition;
@@ -86,6 +88,16 @@ public interface Store {
      */
     public Value reduce(List<Map<String, Object>> values, Reducer reducer) throws StoreOperationException;
 
+    /**
+     * Deploy the given extension jar, registering all comparators, conditions, functions and aggregators it contains
+     * and replacing those previously deployed with the same extension name.
+     *
+     * @param name The extension name.
+     * @param jar The extension jar bytes.
+     * @throws StoreOperationException If errors occur while loading the extension.
+     */
+    public void deployExtension(String name, byte[] jar) throws StoreOperationException;
+
     /**
      * Flush all key/value entries of all buckets contained into this store.
      * <br>
@@ -97,10 +109,34 @@ public interface Store {
     public void flush(FlushStrategy flushStrategy, FlushCondition flushCondition);
 
     /**
-     * Set to true for compressing documents, false otherwise.
+     * Set to true for compressing documents of buckets with no specific compression policy, false otherwise.<br>
+     * Such documents are compressed with LZF if their size is at least equal to the configured compression threshold.
      */
     public void setCompressDocuments(boolean compressed);
 
+    /**
+     * Set the minimum size (in bytes) of documents compressed by buckets with no specific compression policy.
+     */
+    public void setCompressThreshold(int compressThreshold);
+
+    /**
+     * Set the {@link terrastore.store.codec.CompressionPolicy} used to compress documents, by bucket name.
+     *
+     * @param compressionPolicies A map of bucket names to their compression policy.
+     */
+    public void setCompressionPolicies(Map<String, CompressionPolicy> compressionPolicies);
+
+    /**
+     * Set the maximum size (in bytes) of the near cache holding decompressed documents of each bucket:
+     * zero or negative values disable the near cache.
+     */
+    public void setNearCacheSize(long nearCacheSize);
+
+    /**
+     * Set the {@link FlushCondition} identifying keys not owned by this node, which will not be kept into near caches.
+     */
+    public void setFlushCondition(FlushCondition flushCondition);
+
     /**
      * Set the default {@link terrastore.store.operators.Comparator} used to compare keys when no other comparator is found.
      *
@@ -150,6 +186,13 @@ public interface Store {
      */
     public void setReducers(Map<String, Aggregator> aggregators);
 
+    /**
+     * Set the definitions of secondary indexes to maintain, by bucket name.
+     *
+     * @param indexes A map of bucket names to the list of their index definitions.
+     */
+    public void setIndexes(Map<String, List<IndexDefinition>> indexes);
+
     /**
      * Set the {@link terrastore.event.EventBus} instance used for publishing events to {@link terrastore.event.EventListener}s.
      *
@@ -18,6 +18,7 @@ package terrastore.store;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.charset.Charset;
 import java.util.Arrays;
@@ -28,42 +29,75 @@ import org.msgpack.MessageTypeException;
 import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
+import terrastore.store.codec.Codec;
+import terrastore.store.codec.Codecs;
+import terrastore.store.codec.CompressionPolicy;
 import terrastore.store.features.Mapper;
 import terrastore.store.features.Predicate;
 import terrastore.store.features.Update;
 import terrastore.store.operators.Condition;
 import terrastore.store.operators.Function;
 import terrastore.store.operators.OperatorException;
-import terrastore.util.io.IOUtils;
 import terrastore.util.io.MsgPackUtils;
 import terrastore.util.json.JsonUtils;
 
 /**
- * Json value object contained by {@link Bucket} instances.
+ * Json value object contained by {@link Bucket} instances.<br>
+ * Values may hold raw Json bytes, or bytes encoded by a {@link terrastore.store.codec.Codec}, which are transparently
+ * decoded when reading the value contents.<br>
+ * Values built from client provided bytes must be created through {@link #fromJson(byte[])} or
+ * {@link #fromCompressed(terrastore.store.codec.Codec, byte[])}, so that client bytes are never mistaken for encoded ones.
  *
  * @author Sergio Bossa
  * @author Adriano Santos
  */
 public class Value implements MessagePackable, Serializable {
 
+    /**
+     * Version matching any existing value: it is never returned by {@link #getVersion()}.
+     */
+    public static final long ANY_VERSION = 0;
+    //
     private static final long serialVersionUID = 12345678901L;
     private static final Charset CHARSET = Charset.forName("UTF-8");
     //
     private byte[] bytes;
     private boolean compressed;
+    private transient volatile long version;
 
     public Value(byte[] bytes) {
-        this.bytes = bytes;
-        this.compressed = IOUtils.isCompressed(bytes);
+        this(bytes, Codecs.isEncoded(bytes));
     }
 
     public Value() {
     }
 
+    private Value(byte[] bytes, boolean compressed) {
+        this.bytes = bytes;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Create a value holding the given raw Json bytes, never interpreted as encoded by a codec, whatever their first byte.
+     */
+    public static Value fromJson(byte[] bytes) {
+        return new Value(bytes, false);
+    }
+
+    /**
+     * Create a value holding the given bytes, compressed by the given {@link terrastore.store.codec.Codec} but
+     * without the codec header: bytes are decompressed to validate them and compute the value checksum.
+     *
+     * @throws IOException If bytes cannot be decompressed by the given codec.
+     */
+    public static Value fromCompressed(Codec codec, byte[] compressed) throws IOException {
+        return new Value(Codecs.encodeCompressed(codec, compressed), true);
+    }
+
     public final byte[] getBytes() {
         try {
             if (compressed) {
-                return IOUtils.readCompressed(new ByteArrayInputStream(bytes));
+                return Codecs.decode(bytes);
             } else {
                 return bytes;
             }
@@ -72,22 +106,88 @@ public class Value implements MessagePackable, Serializable {
         }
     }
 
-    public final byte[] getCompressedBytes() {
+    /**
+     * Get the bytes of this value as encoded by the given {@link terrastore.store.codec.CompressionPolicy}: that is,
+     * compressed with the policy codec if the raw size exceeds the policy threshold and compression actually saves space
+     * (or the policy codec doesn't compress at all, but rather transforms), otherwise raw.<br>
+     * Values already compressed with the policy codec are returned as they are.
+     */
+    public final byte[] getEncodedBytes(CompressionPolicy policy) {
         try {
-            if (compressed) {
+            if (policy == null) {
+                return getBytes();
+            } else if (compressed && Codecs.isEncodedBy(policy.getCodec(), bytes)) {
                 return bytes;
             } else {
-                return IOUtils.readAndCompress(new ByteArrayInputStream(bytes));
+                byte[] raw = getBytes();
+                if (raw.length >= policy.getThreshold()) {
+                    byte[] encoded = Codecs.encode(policy.getCodec(), raw);
+                    return encoded.length < raw.length || !policy.getCodec().isCompressing() ? encoded : raw;
+                } else {
+                    return raw;
+                }
             }
         } catch (IOException ex) {
             throw new IllegalStateException(ex.getMessage(), ex);
         }
     }
 
+    /**
+     * Get the bytes of this value as they are, that is, possibly encoded by a {@link terrastore.store.codec.Codec}
+     * (see {@link #getCodec()}).
+     */
+    public final byte[] getEncodedBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the version of this value, computed as a 64 bits (FNV-1a) hash of its uncompressed contents, so that
+     * two values with the same contents always have the same version, and versions can be compared without parsing values.<br>
+     * Values compressed by a {@link terrastore.store.codec.Codec} carry their version into the codec header,
+     * so they don't need to be decompressed: such headers are always computed server side from decompressed contents,
+     * because client provided bytes are never taken as encoded (see {@link #fromJson(byte[])} and
+     * {@link #fromCompressed(terrastore.store.codec.Codec, byte[])}).<br>
+     * The returned version is never equal to {@link #ANY_VERSION}.
+     */
+    public final long getVersion() {
+        long current = version;
+        if (current == ANY_VERSION) {
+            if (compressed && Codecs.getCodec(bytes) != null) {
+                current = Codecs.getChecksum(bytes);
+            } else {
+                current = Codecs.checksum(getBytes());
+            }
+            if (current == ANY_VERSION) {
+                current = 1;
+            }
+            version = current;
+        }
+        return current;
+    }
+
+    /**
+     * Get the {@link terrastore.store.codec.Codec} used to compress this value bytes, or null if not compressed by any codec.
+     */
+    public final Codec getCodec() {
+        return compressed ? Codecs.getCodec(bytes) : null;
+    }
+
+    /**
+     * Write this value compressed bytes to the given stream, as produced by its {@link terrastore.store.codec.Codec}
+     * (see {@link #getCodec()}), hence without decompressing them.
+     */
+    public final void writeCompressedTo(OutputStream output) throws IOException {
+        if (getCodec() != null) {
+            Codecs.writeCompressed(bytes, output);
+        } else {
+            throw new IllegalStateException("Value not compressed by any codec!");
+        }
+    }
+
     public final InputStream getInputStream() {
         try {
             if (compressed) {
-                return IOUtils.getCompressedInputStream(bytes);
+                return Codecs.decoding(bytes);
             } else {
                 return new ByteArrayInputStream(bytes);
             }
@@ -118,7 +218,7 @@ public class Value implements MessagePackable, Serializable {
     }
 
     public final boolean dispatch(Key key, Predicate predicate, Condition condition) throws OperatorException {
-        return condition.isSatisfied(key.toString(), JsonUtils.toUnmodifiableMap(this), predicate.getConditionExpression());
+        return predicate.compile(condition).isSatisfied(key.toString(), JsonUtils.toUnmodifiableMap(this));
     }
 
     @Override
@@ -131,6 +231,7 @@ public class Value implements MessagePackable, Serializable {
     public void readFrom(Unpacker unpacker) throws IOException, MessageTypeException {
         bytes = MsgPackUtils.unpackBytes(unpacker);
         compressed = MsgPackUtils.unpackBoolean(unpacker);
+        version = 0;
     }
 
     @Override
@@ -154,7 +255,7 @@ public class Value implements MessagePackable, Serializable {
             if (!compressed) {
                 return new String(bytes, CHARSET);
             } else {
-                return new String(IOUtils.readCompressed(new ByteArrayInputStream(bytes)), CHARSET);
+                return new String(Codecs.decode(bytes), CHARSET);
             }
         } catch (IOException ex) {
             throw new IllegalStateException(ex.getMessage(), ex);
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.aggregators;
+
+import java.util.Map;
+import terrastore.common.ErrorMessage;
+import terrastore.store.operators.OperatorException;
+
+/**
+ * Parsing of numeric aggregator parameters, which may be provided either as numbers or strings.
+ *
+ * @author Sergio Bossa
+ */
+class AggregatorParameters {
+
+    static double getNumber(Map<String, Object> parameters, String name) throws OperatorException {
+        Object value = parameters.get(name);
+        try {
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            } else if (value != null) {
+                return Double.parseDouble(value.toString());
+            }
+        } catch (NumberFormatException ex) {
+        }
+        throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Bad or missing numeric parameter: " + name));
+    }
+
+    static double getNumber(Map<String, Object> parameters, String name, double defaultValue) throws OperatorException {
+        return parameters.get(name) != null ? getNumber(parameters, name) : defaultValue;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.aggregators;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import terrastore.common.ErrorMessage;
+import terrastore.store.functions.ValueMapper;
+import terrastore.store.operators.Accumulator;
+import terrastore.store.operators.IncrementalAggregator;
+import terrastore.store.operators.OperatorException;
+import terrastore.util.collect.sketch.HyperLogLog;
+import static terrastore.util.concurrent.ConcurrentUtils.*;
+
+/**
+ * {@link terrastore.store.operators.IncrementalAggregator} approximately counting distinct values extracted by
+ * {@link terrastore.store.functions.ValueMapper}, through a {@link terrastore.util.collect.sketch.HyperLogLog} sketch
+ * whose precision can be set by the "precision" parameter (defaults to 12, about 1.6% error and 4KB per sketch).<br>
+ * Results carry the serialized sketch along with the estimate, so they can be combined and reduced many times.
+ *
+ * @author Sergio Bossa
+ */
+public class DistinctCountAggregator implements IncrementalAggregator {
+
+    public static final String DISTINCT = "distinct";
+    public static final String SKETCH = "sketch";
+    public static final String PRECISION = "precision";
+    private static final int DEFAULT_PRECISION = 12;
+
+    @Override
+    public Map<String, Object> apply(List<Map<String, Object>> values, Map<String, Object> parameters) throws OperatorException {
+        Accumulator accumulator = newAccumulator(parameters);
+        for (Map<String, Object> value : values) {
+            exitOnTimeout();
+            accumulator.add(value);
+        }
+        return accumulator.result();
+    }
+
+    @Override
+    public Accumulator newAccumulator(Map<String, Object> parameters) throws OperatorException {
+        try {
+            return new DistinctCountAccumulator(new HyperLogLog((int) AggregatorParameters.getNumber(parameters, PRECISION, DEFAULT_PRECISION)));
+        } catch (IllegalArgumentException ex) {
+            throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, ex.getMessage()));
+        }
+    }
+
+    private static class DistinctCountAccumulator implements Accumulator {
+
+        private final HyperLogLog sketch;
+
+        public DistinctCountAccumulator(HyperLogLog sketch) {
+            this.sketch = sketch;
+        }
+
+        @Override
+        public void add(Map<String, Object> value) throws OperatorException {
+            if (value == null) {
+                return;
+            }
+            Object values = value.get(ValueMapper.VALUES);
+            Object partial = value.get(SKETCH);
+            try {
+                if (values instanceof String[]) {
+                    for (String v : (String[]) values) {
+                        sketch.add(v);
+                    }
+                } else if (values instanceof List) {
+                    for (Object v : (List) values) {
+                        sketch.add(v.toString());
+                    }
+                } else if (partial instanceof byte[]) {
+                    sketch.merge(HyperLogLog.fromByteArray((byte[]) partial));
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, ex.getMessage()));
+            }
+        }
+
+        @Override
+        public void merge(Accumulator other) {
+            sketch.merge(((DistinctCountAccumulator) other).sketch);
+        }
+
+        @Override
+        public Map<String, Object> result() {
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put(DISTINCT, sketch.estimate());
+            result.put(SKETCH, sketch.toByteArray());
+            return result;
+        }
+    }
+}
@@ -19,20 +19,40 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import terrastore.store.operators.Aggregator;
+import terrastore.store.operators.Accumulator;
+import terrastore.store.operators.IncrementalAggregator;
 import static terrastore.util.concurrent.ConcurrentUtils.*;
 
 /**
  * @author Sergio Bossa
  */
-public class KeysAggregator implements Aggregator {
+public class KeysAggregator implements IncrementalAggregator {
 
     @Override
     public Map<String, Object> apply(List<Map<String, Object>> keys, Map<String, Object> parameters) {
-        Map<String, Object> result = new HashMap<String, Object>(1, 100);
-        List<String> list = new ArrayList<String>(keys.size());
+        KeysAccumulator accumulator = new KeysAccumulator(keys.size());
         for (Map<String, Object> key : keys) {
             exitOnTimeout();
+            accumulator.add(key);
+        }
+        return accumulator.result();
+    }
+
+    @Override
+    public Accumulator newAccumulator(Map<String, Object> parameters) {
+        return new KeysAccumulator(16);
+    }
+
+    private static class KeysAccumulator implements Accumulator {
+
+        private final List<String> list;
+
+        public KeysAccumulator(int size) {
+            this.list = new ArrayList<String>(size);
+        }
+
+        @Override
+        public void add(Map<String, Object> key) {
             Object value = key.get("keys");
             if (value instanceof String) {
                 list.add((String) value);
@@ -40,8 +60,18 @@ public class KeysAggregator implements Aggregator {
                 list.addAll((List<String>) value);
             }
         }
-        result.put("keys", list);
-        return result;
+
+        @Override
+        public void merge(Accumulator other) {
+            list.addAll(((KeysAccumulator) other).list);
+        }
+
+        @Override
+        public Map<String, Object> result() {
+            Map<String, Object> result = new HashMap<String, Object>(1, 100);
+            result.put("keys", list);
+            return result;
+        }
     }
 
 }
@@ -0,0 +1,310 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.aggregators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import terrastore.common.ErrorMessage;
+import terrastore.store.functions.NumericMapper;
+import terrastore.store.operators.Accumulator;
+import terrastore.store.operators.IncrementalAggregator;
+import terrastore.store.operators.OperatorException;
+import static terrastore.util.concurrent.ConcurrentUtils.*;
+
+/**
+ * {@link terrastore.store.operators.IncrementalAggregator} computing a numeric statistic over values extracted by
+ * {@link terrastore.store.functions.NumericMapper}, to be used both as combiner and reducer.<br>
+ * Supported statistics are: count, sum, min, max, avg, variance (population variance) and histogram; the latter
+ * requires "from", "to" and "bins" parameters, and counts values outside the given range as underflow or overflow.<br>
+ * Aggregation results also carry the partial values needed to further aggregate them (i.e., count and sum for averages),
+ * so they can be safely combined and reduced many times; if the "groupBy" parameter is provided, results are
+ * grouped by name.
+ *
+ * @author Sergio Bossa
+ */
+public class NumericAggregator implements IncrementalAggregator {
+
+    public static final String COUNT = "count";
+    public static final String SUM = "sum";
+    public static final String MIN = "min";
+    public static final String MAX = "max";
+    public static final String AVG = "avg";
+    public static final String VARIANCE = "variance";
+    public static final String HISTOGRAM = "histogram";
+    //
+    private static final String M2 = "m2";
+    private static final String UNDERFLOW = "underflow";
+    private static final String OVERFLOW = "overflow";
+    private static final String FROM = "from";
+    private static final String TO = "to";
+    private static final String BINS = "bins";
+
+    private enum Statistic {
+
+        COUNT, SUM, MIN, MAX, AVG, VARIANCE, HISTOGRAM
+    }
+    //
+    private final Statistic statistic;
+
+    public NumericAggregator(String statistic) {
+        this.statistic = Statistic.valueOf(statistic.toUpperCase());
+    }
+
+    @Override
+    public Map<String, Object> apply(List<Map<String, Object>> values, Map<String, Object> parameters) throws OperatorException {
+        Accumulator accumulator = newAccumulator(parameters);
+        for (Map<String, Object> value : values) {
+            exitOnTimeout();
+            accumulator.add(value);
+        }
+        return accumulator.result();
+    }
+
+    @Override
+    public Accumulator newAccumulator(Map<String, Object> parameters) throws OperatorException {
+        if (statistic == Statistic.HISTOGRAM) {
+            double from = AggregatorParameters.getNumber(parameters, FROM);
+            double to = AggregatorParameters.getNumber(parameters, TO);
+            int bins = (int) AggregatorParameters.getNumber(parameters, BINS);
+            if (from >= to || bins <= 0) {
+                throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Bad histogram range or bins!"));
+            }
+            return parameters.get(NumericMapper.GROUP_BY) != null
+                    ? new GroupAccumulator(statistic, from, to, bins)
+                    : new StatisticAccumulator(statistic, from, to, bins);
+        } else {
+            return parameters.get(NumericMapper.GROUP_BY) != null
+                    ? new GroupAccumulator(statistic, 0, 0, 0)
+                    : new StatisticAccumulator(statistic, 0, 0, 0);
+        }
+    }
+
+    private static double toDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : 0;
+    }
+
+    private static long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0;
+    }
+
+    private static class StatisticAccumulator implements Accumulator {
+
+        private final Statistic statistic;
+        private final double from;
+        private final double width;
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double m2;
+        private long[] histogram;
+        private long underflow;
+        private long overflow;
+
+        public StatisticAccumulator(Statistic statistic, double from, double to, int bins) {
+            this.statistic = statistic;
+            this.from = from;
+            this.width = bins > 0 ? (to - from) / bins : 0;
+            this.histogram = new long[bins];
+        }
+
+        @Override
+        public void add(Map<String, Object> value) {
+            if (value == null) {
+                return;
+            }
+            Object values = value.get(NumericMapper.VALUES);
+            if (values instanceof double[]) {
+                for (double v : (double[]) values) {
+                    addValue(v);
+                }
+            } else if (values instanceof List) {
+                for (Object v : (List) values) {
+                    addValue(((Number) v).doubleValue());
+                }
+            } else if (!value.isEmpty()) {
+                addPartial(value);
+            }
+        }
+
+        @Override
+        public void merge(Accumulator other) {
+            StatisticAccumulator partial = (StatisticAccumulator) other;
+            mergePartial(partial.count, partial.sum, partial.min, partial.max, partial.m2);
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += partial.histogram[i];
+            }
+            underflow += partial.underflow;
+            overflow += partial.overflow;
+        }
+
+        @Override
+        public Map<String, Object> result() {
+            Map<String, Object> result = new HashMap<String, Object>();
+            switch (statistic) {
+                case COUNT:
+                    result.put(COUNT, count);
+                    break;
+                case SUM:
+                    result.put(SUM, sum);
+                    break;
+                case MIN:
+                    if (min != Double.POSITIVE_INFINITY) {
+                        result.put(MIN, min);
+                    }
+                    break;
+                case MAX:
+                    if (max != Double.NEGATIVE_INFINITY) {
+                        result.put(MAX, max);
+                    }
+                    break;
+                case AVG:
+                    result.put(COUNT, count);
+                    result.put(SUM, sum);
+                    if (count > 0) {
+                        result.put(AVG, sum / count);
+                    }
+                    break;
+                case VARIANCE:
+                    result.put(COUNT, count);
+                    result.put(SUM, sum);
+                    result.put(M2, m2);
+                    if (count > 0) {
+                        result.put(VARIANCE, m2 / count);
+                    }
+                    break;
+                case HISTOGRAM:
+                    List<Long> bins = new ArrayList<Long>(histogram.length);
+                    for (long bin : histogram) {
+                        bins.add(bin);
+                    }
+                    result.put(HISTOGRAM, bins);
+                    result.put(UNDERFLOW, underflow);
+                    result.put(OVERFLOW, overflow);
+                    break;
+            }
+            return result;
+        }
+
+        private void addValue(double value) {
+            if (statistic == Statistic.VARIANCE) {
+                // Welford's online update:
+                double previousMean = count > 0 ? sum / count : 0;
+                count++;
+                sum += value;
+                m2 += (value - previousMean) * (value - sum / count);
+            } else {
+                count++;
+                sum += value;
+            }
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (statistic == Statistic.HISTOGRAM) {
+                int bin = (int) Math.floor((value - from) / width);
+                if (value < from) {
+                    underflow++;
+                } else if (bin >= histogram.length) {
+                    overflow++;
+                } else {
+                    histogram[bin]++;
+                }
+            }
+        }
+
+        private void addPartial(Map<String, Object> partial) {
+            mergePartial(toLong(partial.get(COUNT)),
+                    toDouble(partial.get(SUM)),
+                    partial.containsKey(MIN) ? toDouble(partial.get(MIN)) : Double.POSITIVE_INFINITY,
+                    partial.containsKey(MAX) ? toDouble(partial.get(MAX)) : Double.NEGATIVE_INFINITY,
+                    toDouble(partial.get(M2)));
+            List bins = (List) partial.get(HISTOGRAM);
+            if (bins != null) {
+                for (int i = 0; i < histogram.length && i < bins.size(); i++) {
+                    histogram[i] += toLong(bins.get(i));
+                }
+                underflow += toLong(partial.get(UNDERFLOW));
+                overflow += toLong(partial.get(OVERFLOW));
+            }
+        }
+
+        private void mergePartial(long otherCount, double otherSum, double otherMin, double otherMax, double otherM2) {
+            if (statistic == Statistic.VARIANCE && count > 0 && otherCount > 0) {
+                // Chan's parallel update:
+                double delta = otherSum / otherCount - sum / count;
+                m2 += otherM2 + delta * delta * count * otherCount / (count + otherCount);
+            } else {
+                m2 += otherM2;
+            }
+            count += otherCount;
+            sum += otherSum;
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+        }
+    }
+
+    private static class GroupAccumulator implements Accumulator {
+
+        private final Map<String, StatisticAccumulator> groups = new HashMap<String, StatisticAccumulator>();
+        private final Statistic statistic;
+        private final double from;
+        private final double to;
+        private final int bins;
+
+        public GroupAccumulator(Statistic statistic, double from, double to, int bins) {
+            this.statistic = statistic;
+            this.from = from;
+            this.to = to;
+            this.bins = bins;
+        }
+
+        @Override
+        public void add(Map<String, Object> value) {
+            if (value == null) {
+                return;
+            }
+            for (Map.Entry<String, Object> group : value.entrySet()) {
+                getGroup(group.getKey()).add((Map<String, Object>) group.getValue());
+            }
+        }
+
+        @Override
+        public void merge(Accumulator other) {
+            for (Map.Entry<String, StatisticAccumulator> group : ((GroupAccumulator) other).groups.entrySet()) {
+                getGroup(group.getKey()).merge(group.getValue());
+            }
+        }
+
+        @Override
+        public Map<String, Object> result() {
+            Map<String, Object> result = new HashMap<String, Object>();
+            for (Map.Entry<String, StatisticAccumulator> group : groups.entrySet()) {
+                result.put(group.getKey(), group.getValue().result());
+            }
+            return result;
+        }
+
+        private StatisticAccumulator getGroup(String name) {
+            StatisticAccumulator group = groups.get(name);
+            if (group == null) {
+                group = new StatisticAccumulator(statistic, from, to, bins);
+                groups.put(name, group);
+            }
+            return group;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.aggregators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import terrastore.common.ErrorMessage;
+import terrastore.store.functions.NumericMapper;
+import terrastore.store.operators.Accumulator;
+import terrastore.store.operators.IncrementalAggregator;
+import terrastore.store.operators.OperatorException;
+import terrastore.util.collect.sketch.TDigest;
+import static terrastore.util.concurrent.ConcurrentUtils.*;
+
+/**
+ * {@link terrastore.store.operators.IncrementalAggregator} approximately computing quantiles of values extracted by
+ * {@link terrastore.store.functions.NumericMapper}, through a {@link terrastore.util.collect.sketch.TDigest} sketch.<br>
+ * Quantiles are passed through the "quantiles" parameter, either as a list or as a comma-separated string
+ * (defaults to 0.5, 0.9 and 0.99), while the sketch accuracy can be set by the "compression" parameter (defaults to 100).<br>
+ * Results carry the serialized sketch along with the estimates, so they can be combined and reduced many times.
+ *
+ * @author Sergio Bossa
+ */
+public class QuantilesAggregator implements IncrementalAggregator {
+
+    public static final String QUANTILES = "quantiles";
+    public static final String COUNT = "count";
+    public static final String SKETCH = "sketch";
+    public static final String COMPRESSION = "compression";
+    private static final double DEFAULT_COMPRESSION = 100;
+    private static final List<Object> DEFAULT_QUANTILES = Arrays.<Object>asList(0.5, 0.9, 0.99);
+
+    @Override
+    public Map<String, Object> apply(List<Map<String, Object>> values, Map<String, Object> parameters) throws OperatorException {
+        Accumulator accumulator = newAccumulator(parameters);
+        for (Map<String, Object> value : values) {
+            exitOnTimeout();
+            accumulator.add(value);
+        }
+        return accumulator.result();
+    }
+
+    @Override
+    public Accumulator newAccumulator(Map<String, Object> parameters) throws OperatorException {
+        try {
+            return new QuantilesAccumulator(
+                    new TDigest(AggregatorParameters.getNumber(parameters, COMPRESSION, DEFAULT_COMPRESSION)),
+                    getQuantiles(parameters));
+        } catch (IllegalArgumentException ex) {
+            throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, ex.getMessage()));
+        }
+    }
+
+    private double[] getQuantiles(Map<String, Object> parameters) {
+        Object value = parameters.get(QUANTILES);
+        List<Object> quantiles = value instanceof List
+                ? (List<Object>) value
+                : value != null ? Arrays.<Object>asList(value.toString().split(",")) : DEFAULT_QUANTILES;
+        double[] result = new double[quantiles.size()];
+        for (int i = 0; i < result.length; i++) {
+            Object quantile = quantiles.get(i);
+            result[i] = quantile instanceof Number ? ((Number) quantile).doubleValue() : Double.parseDouble(quantile.toString().trim());
+            if (result[i] < 0 || result[i] > 1) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1: " + result[i]);
+            }
+        }
+        return result;
+    }
+
+    private static class QuantilesAccumulator implements Accumulator {
+
+        private final TDigest sketch;
+        private final double[] quantiles;
+
+        public QuantilesAccumulator(TDigest sketch, double[] quantiles) {
+            this.sketch = sketch;
+            this.quantiles = quantiles;
+        }
+
+        @Override
+        public void add(Map<String, Object> value) throws OperatorException {
+            if (value == null) {
+                return;
+            }
+            Object values = value.get(NumericMapper.VALUES);
+            Object partial = value.get(SKETCH);
+            try {
+                if (values instanceof double[]) {
+                    for (double v : (double[]) values) {
+                        sketch.add(v);
+                    }
+                } else if (values instanceof List) {
+                    for (Object v : (List) values) {
+                        sketch.add(((Number) v).doubleValue());
+                    }
+                } else if (partial instanceof byte[]) {
+                    sketch.merge(TDigest.fromByteArray((byte[]) partial));
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, ex.getMessage()));
+            }
+        }
+
+        @Override
+        public void merge(Accumulator other) {
+            sketch.merge(((QuantilesAccumulator) other).sketch);
+        }
+
+        @Override
+        public Map<String, Object> result() {
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put(COUNT, sketch.count());
+            if (sketch.count() > 0) {
+                Map<String, Object> estimates = new LinkedHashMap<String, Object>();
+                for (double quantile : quantiles) {
+                    estimates.put(Double.toString(quantile), sketch.quantile(quantile));
+                }
+                result.put(QUANTILES, estimates);
+            }
+            result.put(SKETCH, sketch.toByteArray());
+            return result;
+        }
+    }
+}
@@ -18,23 +18,49 @@ package terrastore.store.aggregators;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import terrastore.store.operators.Aggregator;
+import terrastore.store.operators.Accumulator;
+import terrastore.store.operators.IncrementalAggregator;
 import static terrastore.util.concurrent.ConcurrentUtils.*;
 
 /**
  * @author Sergio Bossa
  */
-public class SizeAggregator implements Aggregator {
+public class SizeAggregator implements IncrementalAggregator {
 
     @Override
     public Map<String, Object> apply(List<Map<String, Object>> counts, Map<String, Object> parameters) {
-        int counter = 0;
+        SizeAccumulator accumulator = new SizeAccumulator();
         for (Map<String, Object> count : counts) {
             exitOnTimeout();
+            accumulator.add(count);
+        }
+        return accumulator.result();
+    }
+
+    @Override
+    public Accumulator newAccumulator(Map<String, Object> parameters) {
+        return new SizeAccumulator();
+    }
+
+    private static class SizeAccumulator implements Accumulator {
+
+        private int counter;
+
+        @Override
+        public void add(Map<String, Object> count) {
             counter += (Integer) count.get("size");
         }
-        Map<String, Object> size = new HashMap<String, Object>(1, 100);
-        size.put("size", counter);
-        return size;
+
+        @Override
+        public void merge(Accumulator other) {
+            counter += ((SizeAccumulator) other).counter;
+        }
+
+        @Override
+        public Map<String, Object> result() {
+            Map<String, Object> size = new HashMap<String, Object>(1, 100);
+            size.put("size", counter);
+            return size;
+        }
     }
 }
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.aggregators;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import terrastore.common.ErrorMessage;
+import terrastore.store.functions.ValueMapper;
+import terrastore.store.operators.Accumulator;
+import terrastore.store.operators.IncrementalAggregator;
+import terrastore.store.operators.OperatorException;
+import terrastore.util.collect.sketch.CountMinTopK;
+import static terrastore.util.concurrent.ConcurrentUtils.*;
+
+/**
+ * {@link terrastore.store.operators.IncrementalAggregator} approximately computing the most frequent values extracted by
+ * {@link terrastore.store.functions.ValueMapper}, through a {@link terrastore.util.collect.sketch.CountMinTopK} sketch.<br>
+ * The number of values to return is set by the "k" parameter (defaults to 10), while the sketch size can be set by the
+ * "depth" and "width" parameters (defaulting to 4 and 1024); frequencies are estimated by excess.<br>
+ * Results carry the serialized sketch along with the estimates, so they can be combined and reduced many times.
+ *
+ * @author Sergio Bossa
+ */
+public class TopKAggregator implements IncrementalAggregator {
+
+    public static final String TOP = "top";
+    public static final String SKETCH = "sketch";
+    public static final String K = "k";
+    public static final String DEPTH = "depth";
+    public static final String WIDTH = "width";
+    private static final int DEFAULT_K = 10;
+    private static final int DEFAULT_DEPTH = 4;
+    private static final int DEFAULT_WIDTH = 1024;
+    // Track more candidates than returned ones, to reduce the chance of missing heavy hitters:
+    private static final int CANDIDATES_PER_K = 4;
+
+    @Override
+    public Map<String, Object> apply(List<Map<String, Object>> values, Map<String, Object> parameters) throws OperatorException {
+        Accumulator accumulator = newAccumulator(parameters);
+        for (Map<String, Object> value : values) {
+            exitOnTimeout();
+            accumulator.add(value);
+        }
+        return accumulator.result();
+    }
+
+    @Override
+    public Accumulator newAccumulator(Map<String, Object> parameters) throws OperatorException {
+        int k = (int) AggregatorParameters.getNumber(parameters, K, DEFAULT_K);
+        int depth = (int) AggregatorParameters.getNumber(parameters, DEPTH, DEFAULT_DEPTH);
+        int width = (int) AggregatorParameters.getNumber(parameters, WIDTH, DEFAULT_WIDTH);
+        try {
+            return new TopKAccumulator(new CountMinTopK(depth, width, k * CANDIDATES_PER_K), k);
+        } catch (IllegalArgumentException ex) {
+            throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, ex.getMessage()));
+        }
+    }
+
+    private static class TopKAccumulator implements Accumulator {
+
+        private final CountMinTopK sketch;
+        private final int k;
+
+        public TopKAccumulator(CountMinTopK sketch, int k) {
+            this.sketch = sketch;
+            this.k = k;
+        }
+
+        @Override
+        public void add(Map<String, Object> value) throws OperatorException {
+            if (value == null) {
+                return;
+            }
+            Object values = value.get(ValueMapper.VALUES);
+            Object partial = value.get(SKETCH);
+            try {
+                if (values instanceof String[]) {
+                    for (String v : (String[]) values) {
+                        sketch.add(v);
+                    }
+                } else if (values instanceof List) {
+                    for (Object v : (List) values) {
+                        sketch.add(v.toString());
+                    }
+                } else if (partial instanceof byte[]) {
+                    sketch.merge(CountMinTopK.fromByteArray((byte[]) partial));
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, ex.getMessage()));
+            }
+        }
+
+        @Override
+        public void merge(Accumulator other) {
+            sketch.merge(((TopKAccumulator) other).sketch);
+        }
+
+        @Override
+        public Map<String, Object> result() {
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put(TOP, sketch.top(k));
+            result.put(SKETCH, sketch.toByteArray());
+            return result;
+        }
+    }
+}
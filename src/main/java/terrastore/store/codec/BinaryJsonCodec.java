@@ -0,0 +1,70 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import terrastore.util.json.BinaryJson;
+
+/**
+ * {@link Codec} implementation transforming Json documents into the {@link BinaryJson} format: documents are not compressed,
+ * but can be accessed by conditions, functions and indexes without being parsed, and are rendered back to Json
+ * only when returned to clients.<br>
+ * It is meant to be used with a zero threshold, so that all documents in a bucket share the same format.
+ *
+ * @author Sergio Bossa
+ */
+public class BinaryJsonCodec implements Codec {
+
+    public static final byte ID = 4;
+    public static final String NAME = "binary";
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isCompressing() {
+        return false;
+    }
+
+    @Override
+    public boolean isCompressedBy(byte[] data, int offset) {
+        return true;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) throws IOException {
+        return BinaryJson.encode(data);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset) throws IOException {
+        return BinaryJson.decode(data, offset);
+    }
+
+    @Override
+    public InputStream decompressing(byte[] data, int offset) throws IOException {
+        return new ByteArrayInputStream(decompress(data, offset));
+    }
+}
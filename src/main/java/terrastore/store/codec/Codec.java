@@ -0,0 +1,91 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Codec used to compress and decompress raw document bytes.<br>
+ * Encoded data always starts with the codec id (see {@link Codecs}), so that it can be decoded without knowing
+ * which codec was used to encode it, and without any magic number sniffing.
+ *
+ * @author Sergio Bossa
+ */
+public interface Codec {
+
+    /**
+     * Get the unique id of this codec, recorded as the first byte of encoded data: it must be between 1 and
+     * {@link Codecs#MAX_CODEC_ID}, which are never valid as first bytes of Json documents or msgpack frames.
+     *
+     * @return The codec id.
+     */
+    public byte getId();
+
+    /**
+     * Get the codec name, as used in configuration files.
+     *
+     * @return The codec name.
+     */
+    public String getName();
+
+    /**
+     * Determine if this codec actually compresses data, or rather transforms it into a different (and possibly larger)
+     * representation: compressed data is only kept if smaller than raw data, while transformed data is always kept.
+     *
+     * @return True if compressing, false otherwise.
+     */
+    public boolean isCompressing();
+
+    /**
+     * Determine if the given data, starting at the given offset (right after the codec header), has been compressed
+     * by this very codec configuration, rather than by another codec sharing the same id (i.e. with a different dictionary).
+     *
+     * @param data The compressed data.
+     * @param offset The offset of compressed data.
+     * @return True if compressed by this codec configuration, false otherwise.
+     */
+    public boolean isCompressedBy(byte[] data, int offset);
+
+    /**
+     * Compress the given raw data.
+     *
+     * @param data The data to compress.
+     * @return The compressed data, without the codec header.
+     * @throws IOException If errors occur.
+     */
+    public byte[] compress(byte[] data) throws IOException;
+
+    /**
+     * Decompress the given data, starting at the given offset (right after the codec header).
+     *
+     * @param data The data to decompress.
+     * @param offset The offset of compressed data.
+     * @return The decompressed data.
+     * @throws IOException If errors occur.
+     */
+    public byte[] decompress(byte[] data, int offset) throws IOException;
+
+    /**
+     * Open a stream decompressing the given data, starting at the given offset (right after the codec header).
+     *
+     * @param data The data to decompress.
+     * @param offset The offset of compressed data.
+     * @return The stream of decompressed data.
+     * @throws IOException If errors occur.
+     */
+    public InputStream decompressing(byte[] data, int offset) throws IOException;
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import terrastore.util.io.IOUtils;
+
+/**
+ * Registry of all known {@link Codec}s, encoding data as the codec id, followed by the (64 bits, FNV-1a) checksum
+ * of the raw data, followed by the compressed bytes: the checksum allows to identify the raw data contents without
+ * decompressing it.
+ * <br><br>
+ * Codec ids are between 1 and {@link #MAX_CODEC_ID}: such bytes are never valid as first bytes of Json documents
+ * (which can only start with whitespaces or printable characters) nor of msgpack frames (which start with a string type),
+ * so encoded data can always be told apart from raw data by looking at the first byte only.
+ *
+ * @author Sergio Bossa
+ */
+public class Codecs {
+
+    public static final byte MAX_CODEC_ID = 7;
+    public static final int HEADER_SIZE = 9;
+    public static final Codec LZF = new LZFCodec();
+    public static final Codec DEFLATE = new DeflateCodec();
+    public static final Codec BINARY_JSON = new BinaryJsonCodec();
+    //
+    private static final Codec[] CODECS = new Codec[MAX_CODEC_ID + 1];
+    // Documents LZF compressed by previous versions, starting with the LZF chunk signature:
+    private static final byte LEGACY_LZF = 'Z';
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    static {
+        register(LZF);
+        register(DEFLATE);
+        register(BINARY_JSON);
+    }
+
+    /**
+     * Register the given codec, so that data encoded with it can be later decoded: codecs with the same id
+     * are supposed to be able to decode each other data, so only the first registered one is actually kept.
+     */
+    public static synchronized void register(Codec codec) {
+        byte id = codec.getId();
+        if (id < 1 || id > MAX_CODEC_ID) {
+            throw new IllegalArgumentException("Bad codec id: " + id);
+        }
+        if (CODECS[id] == null) {
+            CODECS[id] = codec;
+        }
+    }
+
+    /**
+     * Get the codec with the given name, among the built-in ones.
+     */
+    public static Codec forName(String name) {
+        if (LZF.getName().equals(name)) {
+            return LZF;
+        } else if (DEFLATE.getName().equals(name)) {
+            return DEFLATE;
+        } else if (BINARY_JSON.getName().equals(name)) {
+            return BINARY_JSON;
+        } else {
+            throw new IllegalArgumentException("Unknown codec: " + name);
+        }
+    }
+
+    /**
+     * Get the codec used to encode the given data, or null if not encoded.
+     */
+    public static Codec getCodec(byte[] data) {
+        if (data.length > 0 && data[0] >= 1 && data[0] <= MAX_CODEC_ID) {
+            Codec codec = CODECS[data[0]];
+            if (codec != null) {
+                return codec;
+            } else {
+                throw new IllegalStateException("Unknown codec id: " + data[0]);
+            }
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Determine if the given data has been encoded by the given codec: that is, by a codec with the same id
+     * and the same configuration (i.e. the same dictionary), so that it can be used as is in place of encoding it again.
+     */
+    public static boolean isEncodedBy(Codec codec, byte[] data) {
+        Codec current = getCodec(data);
+        return current != null && current.getId() == codec.getId() && codec.isCompressedBy(data, HEADER_SIZE);
+    }
+
+    /**
+     * Determine if the given data has been encoded, either by a codec or by previous versions LZF compression.
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data.length > 0 && (data[0] >= 1 && data[0] <= MAX_CODEC_ID || data[0] == LEGACY_LZF);
+    }
+
+    /**
+     * Encode the given raw data with the given codec.
+     */
+    public static byte[] encode(Codec codec, byte[] data) throws IOException {
+        return frame(codec, codec.compress(data), checksum(data));
+    }
+
+    /**
+     * Encode the given data, already compressed by the given codec (i.e. as sent by clients), without compressing it again:
+     * data is validated by decompressing it, in order to compute the checksum of its raw contents, so it can only be
+     * compressed by the codec registered with the same id.
+     */
+    public static byte[] encodeCompressed(Codec codec, byte[] compressed) throws IOException {
+        if (CODECS[codec.getId()] != codec) {
+            throw new IOException("Unregistered codec: " + codec.getName());
+        }
+        return frame(codec, compressed, checksum(codec.decompress(compressed, 0)));
+    }
+
+    /**
+     * Compute the (64 bits, FNV-1a) checksum of the given raw data.
+     */
+    public static long checksum(byte[] data) {
+        long checksum = FNV_OFFSET_BASIS;
+        for (byte b : data) {
+            checksum ^= (b & 0xff);
+            checksum *= FNV_PRIME;
+        }
+        return checksum;
+    }
+
+    /**
+     * Get the checksum of the raw data, as recorded into the given data encoded by a codec.
+     */
+    public static long getChecksum(byte[] encoded) {
+        long checksum = 0;
+        for (int i = 1; i < HEADER_SIZE; i++) {
+            checksum = (checksum << 8) | (encoded[i] & 0xff);
+        }
+        return checksum;
+    }
+
+    /**
+     * Write the compressed bytes contained into the given data encoded by a codec, without the codec header.
+     */
+    public static void writeCompressed(byte[] encoded, OutputStream output) throws IOException {
+        output.write(encoded, HEADER_SIZE, encoded.length - HEADER_SIZE);
+    }
+
+    /**
+     * Decode the given data, returning it as is if not encoded.
+     */
+    public static byte[] decode(byte[] data) throws IOException {
+        Codec codec = getCodec(data);
+        if (codec != null) {
+            return codec.decompress(data, HEADER_SIZE);
+        } else if (data.length > 0 && data[0] == LEGACY_LZF) {
+            return IOUtils.readCompressed(new ByteArrayInputStream(data));
+        } else {
+            return data;
+        }
+    }
+
+    private static byte[] frame(Codec codec, byte[] compressed, long checksum) {
+        byte[] encoded = new byte[compressed.length + HEADER_SIZE];
+        encoded[0] = codec.getId();
+        for (int i = 8; i > 0; i--) {
+            encoded[i] = (byte) checksum;
+            checksum >>>= 8;
+        }
+        System.arraycopy(compressed, 0, encoded, HEADER_SIZE, compressed.length);
+        return encoded;
+    }
+
+    /**
+     * Open a stream decoding the given data, or simply reading it if not encoded.
+     */
+    public static InputStream decoding(byte[] data) throws IOException {
+        Codec codec = getCodec(data);
+        if (codec != null) {
+            return codec.decompressing(data, HEADER_SIZE);
+        } else if (data.length > 0 && data[0] == LEGACY_LZF) {
+            return IOUtils.getCompressedInputStream(new ByteArrayInputStream(data));
+        } else {
+            return new ByteArrayInputStream(data);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.codec;
+
+/**
+ * Compression policy of bucket documents: documents are compressed with the configured {@link Codec}
+ * only if their raw size is at least equal to the configured threshold (in bytes), as compressing small documents
+ * costs CPU time without actually saving memory.
+ *
+ * @author Sergio Bossa
+ */
+public class CompressionPolicy {
+
+    public static final int DEFAULT_THRESHOLD = 256;
+    //
+    private final Codec codec;
+    private final int threshold;
+
+    public CompressionPolicy(Codec codec) {
+        this(codec, DEFAULT_THRESHOLD);
+    }
+
+    public CompressionPolicy(Codec codec, int threshold) {
+        this.codec = codec;
+        this.threshold = threshold;
+        Codecs.register(codec);
+    }
+
+    public CompressionPolicy(String codec, int threshold) {
+        this(Codecs.forName(codec), threshold);
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public String toString() {
+        return codec.getName() + ":" + threshold;
+    }
+}
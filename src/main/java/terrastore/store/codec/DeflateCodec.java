@@ -0,0 +1,148 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link Codec} implementation based on the Deflate algorithm, producing zlib-formatted data: slower than LZF,
+ * but with better compression ratios.
+ *
+ * @author Sergio Bossa
+ */
+public class DeflateCodec implements Codec {
+
+    public static final byte ID = 2;
+    public static final String NAME = "deflate";
+    //
+    private final int level;
+
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public DeflateCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isCompressing() {
+        return true;
+    }
+
+    @Override
+    public boolean isCompressedBy(byte[] data, int offset) {
+        return true;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) throws IOException {
+        Deflater deflater = new Deflater(level);
+        try {
+            byte[] dictionary = getDictionary();
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            return deflate(deflater, data);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+            return inflate(inflater, data.length);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public InputStream decompressing(byte[] data, int offset) throws IOException {
+        return new InflaterInputStream(new ByteArrayInputStream(data, offset, data.length - offset));
+    }
+
+    /**
+     * Get the preset dictionary to compress data with, or null if none.
+     */
+    protected byte[] getDictionary() {
+        return null;
+    }
+
+    /**
+     * Get the preset dictionary with the given (Adler-32) checksum, required to decompress data, or null if unknown.
+     */
+    protected byte[] getDictionary(int checksum) {
+        return null;
+    }
+
+    private byte[] deflate(Deflater deflater, byte[] data) {
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 16);
+        byte[] buffer = new byte[Math.min(Math.max(data.length, 64), 8192)];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            output.write(buffer, 0, length);
+        }
+        return output.toByteArray();
+    }
+
+    private byte[] inflate(Inflater inflater, int sizeHint) throws IOException {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(sizeHint * 2);
+            byte[] buffer = new byte[Math.min(Math.max(sizeHint * 2, 64), 8192)];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length > 0) {
+                    output.write(buffer, 0, length);
+                } else if (inflater.needsDictionary()) {
+                    byte[] dictionary = getDictionary(inflater.getAdler());
+                    if (dictionary != null) {
+                        inflater.setDictionary(dictionary);
+                    } else {
+                        throw new IOException("Unable to decompress data compressed with unknown dictionary: " + Integer.toHexString(inflater.getAdler()));
+                    }
+                } else if (inflater.needsInput()) {
+                    throw new IOException("Unexpected end of compressed data!");
+                }
+            }
+            return output.toByteArray();
+        } catch (DataFormatException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+}
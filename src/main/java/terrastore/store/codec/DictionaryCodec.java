@@ -0,0 +1,227 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import terrastore.util.io.IOUtils;
+
+/**
+ * {@link Codec} implementation based on the Deflate algorithm with a preset dictionary, trained over sample documents
+ * (see {@link #train(Iterable, int)}): this gives much better compression ratios than plain Deflate for small documents
+ * sharing the same structure, as field names and common values are replaced by references to the dictionary.
+ * <br><br>
+ * Compressed data carries the dictionary checksum, so every dictionary ever configured is retained and used
+ * to decompress data compressed with it: dictionaries must hence be configured the same way on all nodes, and
+ * never be removed while data compressed with them is still stored.
+ *
+ * @author Sergio Bossa
+ */
+public class DictionaryCodec extends DeflateCodec {
+
+    public static final byte ID = 3;
+    public static final String NAME = "dictionary";
+    public static final int DEFAULT_DICTIONARY_SIZE = 16 * 1024;
+    //
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    private static final int MAX_TOKEN_SIZE = 256;
+    private static final ConcurrentMap<Integer, byte[]> DICTIONARIES = new ConcurrentHashMap<Integer, byte[]>();
+    //
+    private final byte[] dictionary;
+    private final int dictionaryChecksum;
+
+    public DictionaryCodec(byte[] dictionary) {
+        this(dictionary, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public DictionaryCodec(byte[] dictionary, int level) {
+        super(level);
+        if (dictionary.length == 0 || dictionary.length > MAX_DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Dictionary size must be between 1 and " + MAX_DICTIONARY_SIZE + " bytes!");
+        }
+        this.dictionary = dictionary;
+        this.dictionaryChecksum = checksum(dictionary);
+        DICTIONARIES.putIfAbsent(dictionaryChecksum, dictionary);
+    }
+
+    /**
+     * Create a codec whose dictionary is trained over all files (one document per file) contained into the given directory,
+     * relative to the Terrastore home.
+     */
+    public static DictionaryCodec fromSamples(String directory, int size) throws IOException {
+        File[] files = IOUtils.getFileFromTerrastoreHome(directory).listFiles();
+        if (files == null || files.length == 0) {
+            throw new IllegalArgumentException("No sample documents found in: " + directory);
+        }
+        List<byte[]> samples = new ArrayList<byte[]>(files.length);
+        for (File file : files) {
+            if (file.isFile()) {
+                InputStream input = new FileInputStream(file);
+                try {
+                    samples.add(IOUtils.read(input));
+                } finally {
+                    input.close();
+                }
+            }
+        }
+        return new DictionaryCodec(train(samples, size));
+    }
+
+    /**
+     * Train a dictionary of the given max size over the given sample documents.
+     * <br><br>
+     * Documents are split into Json tokens (quoted strings including the following colon, if any, and other
+     * values/punctuation sequences), and tokens are scored by the number of bytes they would save: the best scoring tokens
+     * are then put into the dictionary, with the best ones at the end, where Deflate references are shorter.
+     */
+    public static byte[] train(Iterable<byte[]> samples, int size) {
+        int max = Math.min(size, MAX_DICTIONARY_SIZE);
+        final Map<String, Integer> scores = new HashMap<String, Integer>();
+        for (byte[] sample : samples) {
+            for (String token : tokenize(new String(sample, CHARSET))) {
+                Integer score = scores.get(token);
+                scores.put(token, (score != null ? score : 0) + token.length());
+            }
+        }
+        List<String> tokens = new ArrayList<String>(scores.keySet());
+        Collections.sort(tokens, new java.util.Comparator<String>() {
+
+            @Override
+            public int compare(String t1, String t2) {
+                int result = scores.get(t2).compareTo(scores.get(t1));
+                return result != 0 ? result : t1.compareTo(t2);
+            }
+
+        });
+        LinkedList<byte[]> selected = new LinkedList<byte[]>();
+        int total = 0;
+        for (String token : tokens) {
+            // Skip tokens found only once, as they would save nothing:
+            if (scores.get(token) > token.length()) {
+                byte[] bytes = token.getBytes(CHARSET);
+                if (total + bytes.length <= max) {
+                    selected.addFirst(bytes);
+                    total += bytes.length;
+                }
+            }
+        }
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(total);
+        for (byte[] bytes : selected) {
+            dictionary.write(bytes, 0, bytes.length);
+        }
+        return dictionary.toByteArray();
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isCompressedBy(byte[] data, int offset) {
+        // The zlib header carries the dictionary checksum right after the two header bytes, if the dictionary flag is set:
+        if (data.length - offset >= 6 && (data[offset + 1] & 0x20) != 0) {
+            int checksum = 0;
+            for (int i = offset + 2; i < offset + 6; i++) {
+                checksum = (checksum << 8) | (data[i] & 0xff);
+            }
+            return checksum == dictionaryChecksum;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public InputStream decompressing(byte[] data, int offset) throws IOException {
+        // InflaterInputStream doesn't support preset dictionaries:
+        return new ByteArrayInputStream(decompress(data, offset));
+    }
+
+    @Override
+    protected byte[] getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    protected byte[] getDictionary(int checksum) {
+        return DICTIONARIES.get(checksum);
+    }
+
+    private static int checksum(byte[] dictionary) {
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return (int) adler.getValue();
+    }
+
+    private static List<String> tokenize(String document) {
+        List<String> tokens = new LinkedList<String>();
+        int length = document.length();
+        int i = 0;
+        while (i < length) {
+            char c = document.charAt(i);
+            int start = i;
+            if (c == '"') {
+                i++;
+                while (i < length && document.charAt(i) != '"') {
+                    if (document.charAt(i) == '\\') {
+                        i++;
+                    }
+                    i++;
+                }
+                i = Math.min(i + 1, length);
+                // Include the colon following field names:
+                while (i < length && Character.isWhitespace(document.charAt(i))) {
+                    i++;
+                }
+                if (i < length && document.charAt(i) == ':') {
+                    i++;
+                }
+            } else if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            } else {
+                while (i < length && document.charAt(i) != '"' && !Character.isWhitespace(document.charAt(i))) {
+                    i++;
+                }
+            }
+            if (i - start <= MAX_TOKEN_SIZE) {
+                tokens.add(document.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+}
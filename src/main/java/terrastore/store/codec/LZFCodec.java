@@ -0,0 +1,67 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import terrastore.util.io.IOUtils;
+
+/**
+ * {@link Codec} implementation based on the LZF algorithm: fast, but with moderate compression ratios.
+ *
+ * @author Sergio Bossa
+ */
+public class LZFCodec implements Codec {
+
+    public static final byte ID = 1;
+    public static final String NAME = "lzf";
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isCompressing() {
+        return true;
+    }
+
+    @Override
+    public boolean isCompressedBy(byte[] data, int offset) {
+        return true;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) throws IOException {
+        return IOUtils.readAndCompress(new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset) throws IOException {
+        return IOUtils.readCompressed(new ByteArrayInputStream(data, offset, data.length - offset));
+    }
+
+    @Override
+    public InputStream decompressing(byte[] data, int offset) throws IOException {
+        return IOUtils.getCompressedInputStream(new ByteArrayInputStream(data, offset, data.length - offset));
+    }
+}
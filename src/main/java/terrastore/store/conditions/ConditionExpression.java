@@ -0,0 +1,418 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.conditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled boolean expression over document fields, evaluated by {@link ExpressionCondition}.<br>
+ * Supported expressions are:
+ * <ul>
+ * <li>path op literal : compares the value at the given path with the given literal, where op is one of
+ * ==, !=, &lt;, &lt;=, &gt; and &gt;=.</li>
+ * <li>path in (literal, ...) : selects documents whose value at the given path is equal to one of the given literals.</li>
+ * <li>exists(path) : selects documents containing the given path, even if null.</li>
+ * <li>expression &amp;&amp; expression, expression || expression, !expression and parenthesized expressions.</li>
+ * </ul>
+ * Paths are dot separated field names, which can be quoted with backticks if not made up only by letters,
+ * digits and underscores; literals are numbers, single or double quoted strings, true, false and null.<br>
+ * Numbers are compared numerically and strings lexicographically, while values of different types are never equal
+ * nor ordered; if the value at the given path is a list, the comparison is satisfied if satisfied by any of its elements.
+ * <br><br>
+ * Here is an example:
+ * <pre>
+ * {@code
+ * age > 30 && (status == "active" || exists(address.city)) && role in ("admin", "owner")
+ * }
+ * </pre>
+ *
+ * @author Sergio Bossa
+ */
+public abstract class ConditionExpression {
+
+    /**
+     * Parse the given expression.
+     *
+     * @throws IllegalArgumentException If the expression is wrong.
+     */
+    public static ConditionExpression parse(String expression) {
+        Parser parser = new Parser(expression);
+        ConditionExpression result = parser.parseOr();
+        parser.skipWhitespaces();
+        if (parser.position < expression.length()) {
+            throw parser.error();
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate this expression over the given document, stopping as soon as the result is known.
+     */
+    public abstract boolean matches(Map<String, Object> document);
+
+    private static class Or extends ConditionExpression {
+
+        private final ConditionExpression left;
+        private final ConditionExpression right;
+
+        public Or(ConditionExpression left, ConditionExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> document) {
+            return left.matches(document) || right.matches(document);
+        }
+    }
+
+    private static class And extends ConditionExpression {
+
+        private final ConditionExpression left;
+        private final ConditionExpression right;
+
+        public And(ConditionExpression left, ConditionExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> document) {
+            return left.matches(document) && right.matches(document);
+        }
+    }
+
+    private static class Not extends ConditionExpression {
+
+        private final ConditionExpression expression;
+
+        public Not(ConditionExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> document) {
+            return !expression.matches(document);
+        }
+    }
+
+    private static class Exists extends ConditionExpression {
+
+        private final String[] path;
+
+        public Exists(String[] path) {
+            this.path = path;
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> document) {
+            Map<String, Object> parent = navigate(document, path);
+            return parent != null && parent.containsKey(path[path.length - 1]);
+        }
+    }
+
+    private static class Comparison extends ConditionExpression {
+
+        private final String[] path;
+        private final String operator;
+        private final Object literal;
+
+        public Comparison(String[] path, String operator, Object literal) {
+            this.path = path;
+            this.operator = operator;
+            this.literal = literal;
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> document) {
+            Map<String, Object> parent = navigate(document, path);
+            Object value = parent != null ? parent.get(path[path.length - 1]) : null;
+            if (value instanceof List) {
+                for (Object element : (List) value) {
+                    if (compare(element)) {
+                        return true;
+                    }
+                }
+                return false;
+            } else {
+                return compare(value);
+            }
+        }
+
+        private boolean compare(Object value) {
+            if (operator.equals("==")) {
+                return same(value, literal);
+            } else if (operator.equals("!=")) {
+                return !same(value, literal);
+            } else if (value instanceof Number && literal instanceof Number) {
+                return ordered(Double.compare(((Number) value).doubleValue(), ((Number) literal).doubleValue()));
+            } else if (value instanceof String && literal instanceof String) {
+                return ordered(((String) value).compareTo((String) literal));
+            } else {
+                return false;
+            }
+        }
+
+        private boolean ordered(int comparison) {
+            if (operator.equals("<")) {
+                return comparison < 0;
+            } else if (operator.equals("<=")) {
+                return comparison <= 0;
+            } else if (operator.equals(">")) {
+                return comparison > 0;
+            } else {
+                return comparison >= 0;
+            }
+        }
+    }
+
+    private static class In extends ConditionExpression {
+
+        private final String[] path;
+        private final List<Object> literals;
+
+        public In(String[] path, List<Object> literals) {
+            this.path = path;
+            this.literals = literals;
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> document) {
+            Map<String, Object> parent = navigate(document, path);
+            Object value = parent != null ? parent.get(path[path.length - 1]) : null;
+            if (value instanceof List) {
+                for (Object element : (List) value) {
+                    if (contains(element)) {
+                        return true;
+                    }
+                }
+                return false;
+            } else {
+                return contains(value);
+            }
+        }
+
+        private boolean contains(Object value) {
+            for (Object literal : literals) {
+                if (same(value, literal)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static Map<String, Object> navigate(Map<String, Object> document, String[] path) {
+        Map<String, Object> current = document;
+        for (int i = 0; i < path.length - 1; i++) {
+            Object next = current.get(path[i]);
+            if (next instanceof Map) {
+                current = (Map<String, Object>) next;
+            } else {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    private static boolean same(Object value, Object literal) {
+        if (value == null || literal == null) {
+            return value == literal;
+        } else if (value instanceof Number && literal instanceof Number) {
+            return ((Number) value).doubleValue() == ((Number) literal).doubleValue();
+        } else {
+            return value.equals(literal);
+        }
+    }
+
+    private static class Parser {
+
+        private final String expression;
+        private int position;
+
+        public Parser(String expression) {
+            this.expression = expression;
+        }
+
+        public ConditionExpression parseOr() {
+            ConditionExpression result = parseAnd();
+            while (accept("||")) {
+                result = new Or(result, parseAnd());
+            }
+            return result;
+        }
+
+        private ConditionExpression parseAnd() {
+            ConditionExpression result = parseUnary();
+            while (accept("&&")) {
+                result = new And(result, parseUnary());
+            }
+            return result;
+        }
+
+        private ConditionExpression parseUnary() {
+            if (accept("!")) {
+                return new Not(parseUnary());
+            } else if (accept("(")) {
+                ConditionExpression result = parseOr();
+                expect(")");
+                return result;
+            } else {
+                int start = position;
+                if (acceptWord("exists") && accept("(")) {
+                    String[] path = parsePath();
+                    expect(")");
+                    return new Exists(path);
+                }
+                position = start;
+                String[] path = parsePath();
+                if (acceptWord("in")) {
+                    expect("(");
+                    List<Object> literals = new ArrayList<Object>();
+                    do {
+                        literals.add(parseLiteral());
+                    } while (accept(","));
+                    expect(")");
+                    return new In(path, literals);
+                } else {
+                    for (String operator : new String[]{"==", "!=", "<=", ">=", "<", ">"}) {
+                        if (accept(operator)) {
+                            return new Comparison(path, operator, parseLiteral());
+                        }
+                    }
+                    throw error();
+                }
+            }
+        }
+
+        private String[] parsePath() {
+            List<String> path = new ArrayList<String>();
+            boolean more = true;
+            while (more) {
+                skipWhitespaces();
+                if (position < expression.length() && expression.charAt(position) == '`') {
+                    int end = expression.indexOf('`', position + 1);
+                    if (end < 0) {
+                        throw error();
+                    }
+                    path.add(expression.substring(position + 1, end));
+                    position = end + 1;
+                } else {
+                    int start = position;
+                    while (position < expression.length() && isWordCharacter(expression.charAt(position))) {
+                        position++;
+                    }
+                    if (start == position) {
+                        throw error();
+                    }
+                    path.add(expression.substring(start, position));
+                }
+                more = position < expression.length() && expression.charAt(position) == '.';
+                if (more) {
+                    position++;
+                }
+            }
+            return path.toArray(new String[path.size()]);
+        }
+
+        private Object parseLiteral() {
+            skipWhitespaces();
+            if (position < expression.length()) {
+                char first = expression.charAt(position);
+                if (first == '"' || first == '\'') {
+                    return parseString(first);
+                } else if (acceptWord("true")) {
+                    return Boolean.TRUE;
+                } else if (acceptWord("false")) {
+                    return Boolean.FALSE;
+                } else if (acceptWord("null")) {
+                    return null;
+                } else {
+                    int start = position;
+                    while (position < expression.length() && "+-.0123456789eE".indexOf(expression.charAt(position)) >= 0) {
+                        position++;
+                    }
+                    try {
+                        return Double.valueOf(expression.substring(start, position));
+                    } catch (NumberFormatException ex) {
+                        position = start;
+                    }
+                }
+            }
+            throw error();
+        }
+
+        private String parseString(char quote) {
+            StringBuilder result = new StringBuilder();
+            position++;
+            while (position < expression.length() && expression.charAt(position) != quote) {
+                char current = expression.charAt(position++);
+                if (current == '\\' && position < expression.length()) {
+                    current = expression.charAt(position++);
+                }
+                result.append(current);
+            }
+            if (position == expression.length()) {
+                throw error();
+            }
+            position++;
+            return result.toString();
+        }
+
+        private boolean accept(String token) {
+            skipWhitespaces();
+            if (expression.startsWith(token, position)) {
+                position += token.length();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        private boolean acceptWord(String word) {
+            skipWhitespaces();
+            int end = position + word.length();
+            if (expression.startsWith(word, position) && (end == expression.length() || !isWordCharacter(expression.charAt(end)))) {
+                position = end;
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw error();
+            }
+        }
+
+        private void skipWhitespaces() {
+            while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean isWordCharacter(char candidate) {
+            return Character.isLetterOrDigit(candidate) || candidate == '_';
+        }
+
+        private IllegalArgumentException error() {
+            return new IllegalArgumentException("Wrong condition expression at position " + position + ": " + expression);
+        }
+    }
+}
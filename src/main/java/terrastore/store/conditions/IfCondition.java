@@ -15,51 +15,55 @@
  */
 package terrastore.store.conditions;
 
-import java.util.HashMap;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import terrastore.store.operators.Condition;
+import terrastore.store.operators.CompilableCondition;
+import terrastore.store.operators.CompiledCondition;
 
 /**
+ * {@link terrastore.store.operators.Condition} implementation evaluating "absent()" and "matches(field,value)" expressions.
+ *
  * @author Sergio Bossa
  */
-public class IfCondition implements Condition {
+public class IfCondition implements CompilableCondition {
 
     private static final Logger LOG = LoggerFactory.getLogger(IfCondition.class);
     //
-    private final static Map<String, Condition> CONDITIONS = new HashMap<String, Condition>();
-
-    {
-        CONDITIONS.put("absent", new Condition() {
-
-            @Override
-            public boolean isSatisfied(String key, Map<String, Object> value, String expression) {
-                return false;
-            }
+    private static final IfCompiledCondition ABSENT = new IfCompiledCondition() {
 
-        });
-
-        CONDITIONS.put("matches", new Condition() {
-
-            @Override
-            public boolean isSatisfied(String key, Map<String, Object> map, String expression) {
-                String candidate = expression.substring(expression.indexOf('(') + 1, expression.indexOf(','));
-                String test = expression.substring(expression.indexOf(',') + 1, expression.indexOf(')'));
-                String value = map.get(candidate).toString();
-                return value != null && value.equals(test);
-            }
+        @Override
+        public boolean isSatisfied(String key, Map<String, Object> value) {
+            return false;
+        }
+    };
 
-        });
+    @Override
+    public boolean isSatisfied(String key, Map<String, Object> value, String expression) {
+        return doCompile(expression).isSatisfied(key, value);
     }
 
     @Override
-    public boolean isSatisfied(String key, Map<String, Object> value, String expression) {
+    public CompiledCondition compile(String expression) {
+        return doCompile(expression);
+    }
+
+    private IfCompiledCondition doCompile(String expression) {
         try {
             String name = expression.substring(0, expression.indexOf('('));
-            Condition actualCondition = CONDITIONS.get(name);
-            if (actualCondition != null) {
-                return actualCondition.isSatisfied(key, value, expression);
+            if (name.equals("absent")) {
+                return ABSENT;
+            } else if (name.equals("matches")) {
+                final String candidate = expression.substring(expression.indexOf('(') + 1, expression.indexOf(','));
+                final String test = expression.substring(expression.indexOf(',') + 1, expression.indexOf(')'));
+                return new IfCompiledCondition() {
+
+                    @Override
+                    public boolean isSatisfied(String key, Map<String, Object> map) {
+                        Object value = map.get(candidate);
+                        return value != null && value.toString().equals(test);
+                    }
+                };
             } else {
                 throw new IllegalStateException("Wrong condition expression: " + expression);
             }
@@ -69,4 +73,9 @@ public class IfCondition implements Condition {
         }
     }
 
+    private static abstract class IfCompiledCondition implements CompiledCondition {
+
+        @Override
+        public abstract boolean isSatisfied(String key, Map<String, Object> value);
+    }
 }
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.conditions;
+
+import java.util.Map;
+import terrastore.common.ErrorMessage;
+import terrastore.store.index.IndexQuery;
+import terrastore.store.operators.CompilableCondition;
+import terrastore.store.operators.CompiledCondition;
+import terrastore.store.operators.OperatorException;
+
+/**
+ * {@link terrastore.store.operators.Condition} implementation evaluating {@link terrastore.store.index.IndexQuery}
+ * expressions over bucket values.<br>
+ * Predicate queries using this condition are answered by bucket secondary indexes, if any is defined over the queried path,
+ * and fall back to evaluating the expression on every document otherwise.<br/>
+ * Keys are ignored.
+ *
+ * @author Sergio Bossa
+ */
+public class IndexCondition implements CompilableCondition {
+
+    public static final String TYPE = "index";
+
+    @Override
+    public boolean isSatisfied(String key, Map<String, Object> value, String expression) throws OperatorException {
+        return compile(expression).isSatisfied(key, value);
+    }
+
+    @Override
+    public CompiledCondition compile(String expression) throws OperatorException {
+        try {
+            final IndexQuery query = IndexQuery.parse(expression);
+            return new CompiledCondition() {
+
+                @Override
+                public boolean isSatisfied(String key, Map<String, Object> value) {
+                    return query.matches(value);
+                }
+            };
+        } catch (IllegalArgumentException ex) {
+            throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, ex.getMessage()));
+        }
+    }
+}
@@ -16,13 +16,11 @@
 package terrastore.store.conditions;
 
 import java.util.Map;
-import javax.script.Invocable;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import terrastore.store.operators.Condition;
-import terrastore.util.json.JsonUtils;
+import terrastore.store.js.JSEnginePool;
+import terrastore.store.operators.CompilableCondition;
+import terrastore.store.operators.CompiledCondition;
 
 /**
  * {@link terrastore.store.operators.Condition} implementation evaluating a JavaScript conditional expression over the key or value object.
@@ -39,53 +37,55 @@ import terrastore.util.json.JsonUtils;
  * value.'id' == '123'
  * }
  * </pre>
+ * The conditional expression is compiled into a JavaScript function only once per query and engine
+ * (see {@link terrastore.store.js.JSEnginePool}), and values are passed to it as JavaScript objects.
  *
  * @author Giuseppe Santoro
  * @author Sergio Bossa
  */
-public class JSCondition implements Condition {
+public class JSCondition implements CompilableCondition {
 
     private static final Logger LOG = LoggerFactory.getLogger(JSCondition.class);
-    private static final String WRAPPER = ""
-            + "   function wrapper(key, value, conditionFn) { "
-            + "      if(conditionFn(key, value)) {"
-            + "         return true;"
-            + "      }"
-            + "      return false; "
-            + "   }";
-    //
-    private static final ScriptEngine ENGINE;
-    private static IllegalStateException EXCEPTION;
-    static {
-        ENGINE = new ScriptEngineManager().getEngineByName("JavaScript");
+
+    @Override
+    public boolean isSatisfied(String key, Map<String, Object> value, String expression) {
+        return doCompile(expression).isSatisfied(key, value);
+    }
+
+    @Override
+    public CompiledCondition compile(String expression) {
+        return doCompile(expression);
+    }
+
+    private JSCompiledCondition doCompile(String expression) {
         try {
-            if (ENGINE == null) {
-                EXCEPTION = new IllegalStateException("No JavaScript engine found.");
-            } else if (!ENGINE.getFactory().getParameter("THREADING").equals("MULTITHREADED")) {
-                EXCEPTION = new IllegalStateException("The JavaScript engine is not thread-safe.");
-            } else {
-                ENGINE.eval(WRAPPER);
-            }
+            String conditionFn = "function(key, value) { return " + expression + "; }";
+            JSEnginePool.getInstance().compile(conditionFn);
+            return new JSCompiledCondition(conditionFn);
+        } catch (IllegalStateException ex) {
+            throw ex;
         } catch (Exception ex) {
-            EXCEPTION = new IllegalStateException("Error in script execution.", ex);
+            LOG.error("Error in script execution.", ex);
+            throw new IllegalStateException("Error in script execution.", ex);
         }
     }
 
-    @Override
-    public boolean isSatisfied(String key, Map<String, Object> value, String expression) {
-        if (EXCEPTION == null) {
+    private static class JSCompiledCondition implements CompiledCondition {
+
+        private final String conditionFn;
+
+        public JSCompiledCondition(String conditionFn) {
+            this.conditionFn = conditionFn;
+        }
+
+        @Override
+        public boolean isSatisfied(String key, Map<String, Object> value) {
             try {
-                return (Boolean) ((Invocable) ENGINE).invokeFunction(
-                        "wrapper",
-                        key,
-                        ENGINE.eval("(" + JsonUtils.fromMap(value).toString() + ")"),
-                        ENGINE.eval("(function(key, value) { return " + expression + "; })"));
+                return (Boolean) JSEnginePool.getInstance().invoke("invokeCondition", conditionFn, key, value);
             } catch (Exception ex) {
                 LOG.error("Error in script execution.", ex);
                 throw new IllegalStateException("Error in script execution.", ex);
             }
-        } else {
-            throw EXCEPTION;
         }
     }
 }
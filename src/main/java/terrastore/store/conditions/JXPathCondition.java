@@ -15,25 +15,47 @@
  */
 package terrastore.store.conditions;
 
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import org.apache.commons.jxpath.CompiledExpression;
 import org.apache.commons.jxpath.JXPathContext;
-import terrastore.store.operators.Condition;
+import org.apache.commons.jxpath.JXPathException;
+import terrastore.common.ErrorMessage;
+import terrastore.store.operators.CompilableCondition;
+import terrastore.store.operators.CompiledCondition;
+import terrastore.store.operators.OperatorException;
 
 /**
  * {@link terrastore.store.operators.Condition} implementation evaluating JXPath expressions
  * (see http://commons.apache.org/jxpath) over bucket values.<br/>
+ * Expressions are compiled once per query (see {@link terrastore.store.operators.CompilableCondition}).<br/>
  * Keys are ignored.
  *
  * @author Sergio Bossa
  */
-public class JXPathCondition implements Condition {
+public class JXPathCondition implements CompilableCondition {
 
     @Override
-    public boolean isSatisfied(String key, Map<String, Object> value, String expression) {
-        JXPathContext context = JXPathContext.newContext(value);
-        context.setLenient(true);
-        List selection = context.selectNodes(expression);
-        return selection != null && selection.size() > 0;
+    public boolean isSatisfied(String key, Map<String, Object> value, String expression) throws OperatorException {
+        return compile(expression).isSatisfied(key, value);
+    }
+
+    @Override
+    public CompiledCondition compile(String expression) throws OperatorException {
+        try {
+            final CompiledExpression compiled = JXPathContext.compile(expression);
+            return new CompiledCondition() {
+
+                @Override
+                public boolean isSatisfied(String key, Map<String, Object> value) {
+                    JXPathContext context = JXPathContext.newContext(value);
+                    context.setLenient(true);
+                    Iterator selection = compiled.iterate(context);
+                    return selection.hasNext();
+                }
+            };
+        } catch (JXPathException ex) {
+            throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Wrong JXPath expression: " + expression));
+        }
     }
 }
@@ -29,7 +29,8 @@ import org.msgpack.unpacker.Unpacker;
 import terrastore.util.io.MsgPackUtils;
 
 /**
- * Mapper object carrying data about the mapper and combiner functions, their timeout and parameters.
+ * Mapper object carrying data about the mapper and combiner functions, their timeout and parameters,
+ * and the optional memory budget of the combine phase (see {@link terrastore.store.impl.SpillingAggregator}).
  *
  * @author Sergio Bossa
  * @author Adriano Santos
@@ -42,12 +43,18 @@ public class Mapper implements MessagePackable, Serializable {
     private String combinerName;
     private long timeoutInMillis;
     private Map<String, Object> parameters;
+    private long memoryBudget;
 
     public Mapper(String mapperName, String combinerName, long timeoutInMillis, Map<String, Object> parameters) {
+        this(mapperName, combinerName, timeoutInMillis, parameters, 0);
+    }
+
+    public Mapper(String mapperName, String combinerName, long timeoutInMillis, Map<String, Object> parameters, long memoryBudget) {
         this.mapperName = mapperName;
         this.combinerName = combinerName;
         this.timeoutInMillis = timeoutInMillis;
         this.parameters = parameters;
+        this.memoryBudget = memoryBudget;
     }
 
     public Mapper() {
@@ -69,12 +76,20 @@ public class Mapper implements MessagePackable, Serializable {
         return parameters;
     }
 
+    /**
+     * Get the estimated size, in bytes, of values which can be kept in memory while combining, or zero if unbounded.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
     @Override
     public void writeTo(Packer packer) throws IOException {
         MsgPackUtils.packString(packer, mapperName);
         MsgPackUtils.packString(packer, combinerName);
         MsgPackUtils.packLong(packer, timeoutInMillis);
         MsgPackUtils.packGenericMap(packer, parameters);
+        MsgPackUtils.packLong(packer, memoryBudget);
     }
 
     @Override
@@ -83,6 +98,7 @@ public class Mapper implements MessagePackable, Serializable {
         combinerName = MsgPackUtils.unpackString(unpacker);
         timeoutInMillis = MsgPackUtils.unpackLong(unpacker);
         parameters = MsgPackUtils.unpackGenericMap(unpacker);
+        memoryBudget = MsgPackUtils.unpackLong(unpacker);
     }
 
     @Override
@@ -93,6 +109,7 @@ public class Mapper implements MessagePackable, Serializable {
                     append(this.combinerName, other.combinerName).
                     append(this.timeoutInMillis, other.timeoutInMillis).
                     append(this.parameters, other.parameters).
+                    append(this.memoryBudget, other.memoryBudget).
                     isEquals();
         } else {
             return false;
@@ -105,6 +122,7 @@ public class Mapper implements MessagePackable, Serializable {
                 append(combinerName).
                 append(timeoutInMillis).
                 append(parameters).
+                append(memoryBudget).
                 toHashCode();
     }
 
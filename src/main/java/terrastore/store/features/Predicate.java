@@ -25,6 +25,10 @@ import org.msgpack.MessageTypeException;
 import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
+import terrastore.store.operators.CompiledCondition;
+import terrastore.store.operators.CompiledConditions;
+import terrastore.store.operators.Condition;
+import terrastore.store.operators.OperatorException;
 import terrastore.util.io.MsgPackUtils;
 
 /**
@@ -43,6 +47,7 @@ public class Predicate implements MessagePackable, Serializable {
     private boolean empty;
     private String conditionType;
     private String conditionExpression;
+    private transient volatile Compiled compiled;
 
     public Predicate(String predicate) {
         if (predicate != null) {
@@ -75,6 +80,20 @@ public class Predicate implements MessagePackable, Serializable {
         return conditionExpression;
     }
 
+    /**
+     * Get the compiled form of this predicate expression for the given condition: the expression is compiled
+     * (see {@link terrastore.store.operators.CompiledConditions}) only the first time, and then kept along with this predicate,
+     * so that it's evaluated over all queried values with no further parsing.
+     */
+    public CompiledCondition compile(Condition condition) throws OperatorException {
+        Compiled current = compiled;
+        if (current == null || current.condition != condition) {
+            current = new Compiled(condition, CompiledConditions.compile(condition, conditionExpression));
+            compiled = current;
+        }
+        return current.compiledCondition;
+    }
+
     @Override
     public void writeTo(Packer packer) throws IOException {
         MsgPackUtils.packBoolean(packer, empty);
@@ -112,4 +131,14 @@ public class Predicate implements MessagePackable, Serializable {
         }
     }
 
+    private static class Compiled {
+
+        private final Condition condition;
+        private final CompiledCondition compiledCondition;
+
+        public Compiled(Condition condition, CompiledCondition compiledCondition) {
+            this.condition = condition;
+            this.compiledCondition = compiledCondition;
+        }
+    }
 }
@@ -29,7 +29,10 @@ import org.msgpack.unpacker.Unpacker;
 import terrastore.util.io.MsgPackUtils;
 
 /**
- * Reducer object carrying data about the reducer function and its timeout.
+ * Reducer object carrying data about the reducer function and its timeout.<br>
+ * Tree reducers are executed in several levels, each one reducing results of the previous one:
+ * so they must be able to reduce their own outputs.<br>
+ * Reducers may also have a memory budget (see {@link terrastore.store.impl.SpillingAggregator}).
  *
  * @author Sergio Bossa
  * @author Adriano Santos
@@ -41,11 +44,23 @@ public class Reducer implements MessagePackable, Serializable {
     private String reducerName;
     private long timeoutInMillis;
     private Map<String, Object> parameters;
+    private boolean tree;
+    private long memoryBudget;
 
     public Reducer(String reducerName, long timeoutInMillis, Map<String, Object> parameters) {
+        this(reducerName, timeoutInMillis, parameters, false, 0);
+    }
+
+    public Reducer(String reducerName, long timeoutInMillis, Map<String, Object> parameters, boolean tree) {
+        this(reducerName, timeoutInMillis, parameters, tree, 0);
+    }
+
+    public Reducer(String reducerName, long timeoutInMillis, Map<String, Object> parameters, boolean tree, long memoryBudget) {
         this.reducerName = reducerName;
         this.timeoutInMillis = timeoutInMillis;
         this.parameters = parameters;
+        this.tree = tree;
+        this.memoryBudget = memoryBudget;
     }
 
     public Reducer() {
@@ -63,11 +78,24 @@ public class Reducer implements MessagePackable, Serializable {
         return parameters;
     }
 
+    public boolean isTree() {
+        return tree;
+    }
+
+    /**
+     * Get the estimated size, in bytes, of values which can be kept in memory while reducing, or zero if unbounded.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
     @Override
     public void writeTo(Packer packer) throws IOException {
         MsgPackUtils.packString(packer, reducerName);
         MsgPackUtils.packLong(packer, timeoutInMillis);
         MsgPackUtils.packGenericMap(packer, parameters);
+        MsgPackUtils.packBoolean(packer, tree);
+        MsgPackUtils.packLong(packer, memoryBudget);
     }
 
     @Override
@@ -75,6 +103,8 @@ public class Reducer implements MessagePackable, Serializable {
         reducerName = MsgPackUtils.unpackString(unpacker);
         timeoutInMillis = MsgPackUtils.unpackLong(unpacker);
         parameters = MsgPackUtils.unpackGenericMap(unpacker);
+        tree = MsgPackUtils.unpackBoolean(unpacker);
+        memoryBudget = MsgPackUtils.unpackLong(unpacker);
     }
 
     @Override
@@ -83,6 +113,8 @@ public class Reducer implements MessagePackable, Serializable {
             Reducer other = (Reducer) obj;
             return new EqualsBuilder().append(this.reducerName, other.reducerName).
                     append(this.timeoutInMillis, other.timeoutInMillis).append(this.parameters, other.parameters).
+                    append(this.tree, other.tree).
+                    append(this.memoryBudget, other.memoryBudget).
                     isEquals();
         } else {
             return false;
@@ -93,6 +125,8 @@ public class Reducer implements MessagePackable, Serializable {
     public int hashCode() {
         return new HashCodeBuilder().append(reducerName).
                 append(timeoutInMillis).append(parameters).
+                append(tree).
+                append(memoryBudget).
                 toHashCode();
     }
 
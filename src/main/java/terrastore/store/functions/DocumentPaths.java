@@ -0,0 +1,40 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.functions;
+
+import java.util.Map;
+
+/**
+ * Navigation of slash-separated document paths, as in "/order/amount", shared by built-in mappers.
+ *
+ * @author Sergio Bossa
+ */
+class DocumentPaths {
+
+    static Object navigate(Map<String, Object> document, String path) {
+        Object current = document;
+        int start = 0;
+        while (current != null && start < path.length()) {
+            int end = path.indexOf('/', start);
+            end = end == -1 ? path.length() : end;
+            if (end > start) {
+                current = current instanceof Map ? ((Map) current).get(path.substring(start, end)) : null;
+            }
+            start = end + 1;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.functions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import terrastore.common.ErrorMessage;
+import terrastore.store.operators.Function;
+import terrastore.store.operators.OperatorException;
+import static terrastore.util.concurrent.ConcurrentUtils.*;
+
+/**
+ * {@link terrastore.store.operators.Function} extracting the numeric values found at the given path
+ * of bucket documents, to be aggregated by {@link terrastore.store.aggregators.NumericAggregator}s.<br>
+ * Paths are expressed as slash-separated field names, as in "/order/amount", and passed through the "path" parameter;
+ * lists found along the path are flattened, while non numeric values are ignored.<br>
+ * If a "groupBy" path parameter is also provided, values are grouped by the (string representation of the) value found
+ * at such a path, and documents without it are ignored.
+ *
+ * @author Sergio Bossa
+ */
+public class NumericMapper implements Function {
+
+    public static final String PATH = "path";
+    public static final String GROUP_BY = "groupBy";
+    public static final String VALUES = "values";
+    private static final double[] NO_VALUES = new double[0];
+
+    @Override
+    public Map<String, Object> apply(String key, Map<String, Object> value, Map<String, Object> parameters) throws OperatorException {
+        exitOnTimeout();
+        Object path = parameters.get(PATH);
+        if (path == null) {
+            throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "No path parameter provided!"));
+        }
+        double[] values = extractNumbers(value, path.toString());
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (values.length > 0) {
+            Object groupBy = parameters.get(GROUP_BY);
+            if (groupBy != null) {
+                Map<String, Object> grouped = new HashMap<String, Object>();
+                grouped.put(VALUES, values);
+                for (Object group : extractValues(value, groupBy.toString())) {
+                    if (group != null && !(group instanceof Map) && !(group instanceof List)) {
+                        result.put(group.toString(), grouped);
+                    }
+                }
+            } else {
+                result.put(VALUES, values);
+            }
+        }
+        return result;
+    }
+
+    private double[] extractNumbers(Map<String, Object> document, String path) {
+        Object current = DocumentPaths.navigate(document, path);
+        if (current instanceof Number) {
+            return new double[]{((Number) current).doubleValue()};
+        } else if (current instanceof List) {
+            double[] values = new double[((List) current).size()];
+            int size = 0;
+            for (Object element : (List) current) {
+                if (element instanceof Number) {
+                    values[size++] = ((Number) element).doubleValue();
+                }
+            }
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        } else {
+            return NO_VALUES;
+        }
+    }
+
+    private Object[] extractValues(Map<String, Object> document, String path) {
+        Object current = DocumentPaths.navigate(document, path);
+        if (current instanceof List) {
+            return ((List) current).toArray();
+        } else if (current != null && !(current instanceof Map)) {
+            return new Object[]{current};
+        } else {
+            return new Object[0];
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.functions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import terrastore.common.ErrorMessage;
+import terrastore.store.operators.Function;
+import terrastore.store.operators.OperatorException;
+import static terrastore.util.concurrent.ConcurrentUtils.*;
+
+/**
+ * {@link terrastore.store.operators.Function} extracting the (string representation of) scalar values found at the
+ * given path of bucket documents, to be aggregated by sketch aggregators such as
+ * {@link terrastore.store.aggregators.DistinctCountAggregator} and {@link terrastore.store.aggregators.TopKAggregator}.<br>
+ * Paths are expressed as slash-separated field names, as in "/order/customer", and passed through the "path" parameter;
+ * lists found along the path are flattened, while nested documents and null values are ignored.
+ *
+ * @author Sergio Bossa
+ */
+public class ValueMapper implements Function {
+
+    public static final String PATH = "path";
+    public static final String VALUES = "values";
+
+    @Override
+    public Map<String, Object> apply(String key, Map<String, Object> value, Map<String, Object> parameters) throws OperatorException {
+        exitOnTimeout();
+        Object path = parameters.get(PATH);
+        if (path == null) {
+            throw new OperatorException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "No path parameter provided!"));
+        }
+        Object current = DocumentPaths.navigate(value, path.toString());
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (current instanceof List) {
+            String[] values = new String[((List) current).size()];
+            int size = 0;
+            for (Object element : (List) current) {
+                if (isScalar(element)) {
+                    values[size++] = element.toString();
+                }
+            }
+            if (size > 0) {
+                result.put(VALUES, size == values.length ? values : Arrays.copyOf(values, size));
+            }
+        } else if (isScalar(current)) {
+            result.put(VALUES, new String[]{current.toString()});
+        }
+        return result;
+    }
+
+    private boolean isScalar(Object value) {
+        return value != null && !(value instanceof Map) && !(value instanceof List);
+    }
+}
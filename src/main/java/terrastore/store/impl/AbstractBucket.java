@@ -0,0 +1,786 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import terrastore.common.ErrorMessage;
+import terrastore.event.EventBus;
+import terrastore.event.impl.ValueChangedEvent;
+import terrastore.event.impl.ValueRemovedEvent;
+import terrastore.server.Keys;
+import terrastore.server.Values;
+import terrastore.store.Bucket;
+import terrastore.store.FlushCondition;
+import terrastore.store.Key;
+import terrastore.store.LockManager;
+import terrastore.store.SnapshotManager;
+import terrastore.store.SortedSnapshot;
+import terrastore.store.StoreOperationException;
+import terrastore.store.ValidationException;
+import terrastore.store.Value;
+import terrastore.store.codec.CompressionPolicy;
+import terrastore.store.comparators.LexicographicalComparator;
+import terrastore.store.conditions.IndexCondition;
+import terrastore.store.features.Mapper;
+import terrastore.store.features.Predicate;
+import terrastore.store.features.Range;
+import terrastore.store.features.Update;
+import terrastore.store.index.BucketIndexes;
+import terrastore.store.index.IndexDefinition;
+import terrastore.store.index.IndexQuery;
+import terrastore.store.operators.Comparator;
+import terrastore.store.operators.Condition;
+import terrastore.store.operators.Function;
+import terrastore.store.operators.OperatorException;
+import terrastore.util.collect.WeightedCache;
+import terrastore.util.concurrent.GlobalExecutor;
+
+/**
+ * Base {@link terrastore.store.Bucket} implementation providing locking, eventing and operators dispatching
+ * on top of the raw storage primitives implemented by subclasses.
+ *
+ * @author Sergio Bossa
+ * @author Adriano Santos
+ */
+public abstract class AbstractBucket implements Bucket {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractBucket.class);
+    private static final int RANGE_BATCH_SIZE = 1000;
+    //
+    protected final String name;
+    private volatile CompressionPolicy compressionPolicy;
+    private EventBus eventBus;
+    private SnapshotManager snapshotManager;
+    private LockManager lockManager;
+    private Comparator defaultComparator = new LexicographicalComparator(true);
+    private final Map<String, Comparator> comparators = new ConcurrentHashMap<String, Comparator>();
+    private final Map<String, Condition> conditions = new ConcurrentHashMap<String, Condition>();
+    private final Map<String, Function> updaters = new ConcurrentHashMap<String, Function>();
+    private final Map<String, Function> mappers = new ConcurrentHashMap<String, Function>();
+    private volatile WeightedCache<Key, Value> nearCache;
+    private volatile FlushCondition flushCondition;
+    private volatile BucketIndexes indexes;
+
+    public AbstractBucket(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void put(Key key, Value value) {
+        // Use explicit locking to put and publish on the same "transactional" boundary and keep ordering under concurrency.
+        lockWrite(key);
+        try {
+            Value old = load(key);
+            doPut(key, value);
+            invalidate(key);
+            index(key, old, value);
+            snapshot(key, old, value);
+            if (eventBus.isEnabled()) {
+                eventBus.publish(new ValueChangedEvent(name, key.toString(), old, value));
+            }
+        } finally {
+            unlockWrite(key);
+        }
+    }
+
+    public void putAll(Map<Key, Value> values) {
+        for (Set<Key> group : lockManager.groupByLock(name, values.keySet())) {
+            // Lock all keys in the group at once, by locking the first one:
+            Key groupLock = group.iterator().next();
+            lockWrite(groupLock);
+            try {
+                // Old values are only needed for publishing events and updating secondary indexes, while
+                // snapshots tolerate keys being added more than once:
+                boolean readOld = eventBus.isEnabled() || indexes != null;
+                Map<Key, Value> olds = new HashMap<Key, Value>();
+                Map<Key, Value> batch = new LinkedHashMap<Key, Value>();
+                for (Key key : group) {
+                    if (readOld) {
+                        olds.put(key, load(key));
+                    }
+                    batch.put(key, values.get(key));
+                }
+                doPutAll(batch);
+                for (Map.Entry<Key, Value> entry : batch.entrySet()) {
+                    Key key = entry.getKey();
+                    Value value = entry.getValue();
+                    Value old = olds.get(key);
+                    invalidate(key);
+                    index(key, old, value);
+                    snapshot(key, old, value);
+                    if (eventBus.isEnabled()) {
+                        eventBus.publish(new ValueChangedEvent(name, key.toString(), old, value));
+                    }
+                }
+            } finally {
+                unlockWrite(groupLock);
+            }
+        }
+    }
+
+    public boolean conditionalPut(Key key, Value value, Predicate predicate) throws StoreOperationException {
+        // Use explicit locking to put and publish on the same "transactional" boundary and keep ordering under concurrency.
+        lockWrite(key);
+        try {
+            Condition condition = getCondition(predicate.getConditionType());
+            Value old = load(key);
+            if (old == null || old.dispatch(key, predicate, condition)) {
+                doPut(key, value);
+                invalidate(key);
+                index(key, old, value);
+                snapshot(key, old, value);
+                if (eventBus.isEnabled()) {
+                    eventBus.publish(new ValueChangedEvent(name, key.toString(), old, value));
+                }
+                return true;
+            } else {
+                return false;
+            }
+        } catch (OperatorException ex) {
+            throw new StoreOperationException(ex.getErrorMessage());
+        } finally {
+            unlockWrite(key);
+        }
+    }
+
+    public boolean putIfVersion(Key key, Value value, long version) {
+        // Versions are compared under the write lock, in order to keep ordering with events and indexes,
+        // but old values don't need to be parsed:
+        lockWrite(key);
+        try {
+            Value old = load(key);
+            if (old != null && (version == Value.ANY_VERSION || old.getVersion() == version)) {
+                doPut(key, value);
+                invalidate(key);
+                index(key, old, value);
+                snapshot(key, old, value);
+                if (eventBus.isEnabled()) {
+                    eventBus.publish(new ValueChangedEvent(name, key.toString(), old, value));
+                }
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            unlockWrite(key);
+        }
+    }
+
+    public boolean removeIfVersion(Key key, long version) {
+        lockWrite(key);
+        try {
+            Value value = load(key);
+            if (value != null && (version == Value.ANY_VERSION || value.getVersion() == version)) {
+                doRemove(key);
+                invalidate(key);
+                index(key, value, null);
+                snapshot(key, value, null);
+                if (eventBus.isEnabled()) {
+                    eventBus.publish(new ValueRemovedEvent(name, key.toString(), value));
+                }
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            unlockWrite(key);
+        }
+    }
+
+    public boolean conditionalRemove(Key key, Predicate predicate) throws StoreOperationException {
+        // Use explicit locking to make sure we see a consistent state while examining, removing and publishing.
+        lockWrite(key);
+        try {
+            Condition condition = getCondition(predicate.getConditionType());
+            Value value = load(key);
+            if (value != null && value.dispatch(key, predicate, condition)) {
+                doRemove(key);
+                invalidate(key);
+                index(key, value, null);
+                snapshot(key, value, null);
+                if (eventBus.isEnabled()) {
+                    eventBus.publish(new ValueRemovedEvent(name, key.toString(), value));
+                }
+                return true;
+            } else {
+                return false;
+            }
+        } catch (OperatorException ex) {
+            throw new StoreOperationException(ex.getErrorMessage());
+        } finally {
+            unlockWrite(key);
+        }
+    }
+
+    public Value get(Key key) throws StoreOperationException {
+        Value value = load(key);
+        if (value != null) {
+            return value;
+        } else {
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.NOT_FOUND_ERROR_CODE, "Key not found: " + key));
+        }
+    }
+
+    @Override
+    public Values get(Set<Key> keys) throws StoreOperationException {
+        Map<Key, Value> result = new HashMap<Key, Value>(keys.size());
+        for (Key key : keys) {
+            Value value = load(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return new Values(result);
+    }
+
+    @Override
+    public Value conditionalGet(Key key, Predicate predicate) throws StoreOperationException {
+        Value value = load(key);
+        if (value != null) {
+            try {
+                Condition condition = getCondition(predicate.getConditionType());
+                if (value.dispatch(key, predicate, condition)) {
+                    return value;
+                } else {
+                    return null;
+                }
+            } catch (OperatorException ex) {
+                throw new StoreOperationException(ex.getErrorMessage());
+            }
+        } else {
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.NOT_FOUND_ERROR_CODE, "Key not found: " + key));
+        }
+    }
+
+    @Override
+    public Values conditionalGet(Set<Key> keys, Predicate predicate) throws StoreOperationException {
+        Map<Key, Value> result = new HashMap<Key, Value>(keys.size());
+        for (Key key : keys) {
+            try {
+                Value value = load(key);
+                Condition condition = getCondition(predicate.getConditionType());
+                if (value.dispatch(key, predicate, condition)) {
+                    result.put(key, value);
+                }
+            } catch (OperatorException ex) {
+                throw new StoreOperationException(ex.getErrorMessage());
+            }
+        }
+        return new Values(result);
+    }
+
+    public void remove(Key key) throws StoreOperationException {
+        // Use explicit locking to remove and publish on the same "transactional" boundary and keep ordering under concurrency.
+        lockWrite(key);
+        try {
+            Value removed = load(key);
+            doRemove(key);
+            invalidate(key);
+            index(key, removed, null);
+            snapshot(key, removed, null);
+            if (removed != null) {
+                if (eventBus.isEnabled()) {
+                    eventBus.publish(new ValueRemovedEvent(name, key.toString(), removed));
+                }
+            }
+        } finally {
+            unlockWrite(key);
+        }
+    }
+
+    @Override
+    public Value update(final Key key, final Update update) throws StoreOperationException {
+        long timeout = update.getTimeoutInMillis();
+        Future<Value> task = null;
+        // Use explicit locking to update and block concurrent operations on the same key,
+        // and also publish on the same "transactional" boundary and keep ordering under concurrency.
+        lockWrite(key);
+        try {
+            final Value value = load(key);
+            if (value != null) {
+                final Function function = getFunction(updaters, update.getFunctionName());
+                task = GlobalExecutor.getUpdateExecutor().submit(new Callable<Value>() {
+
+                    @Override
+                    public Value call() {
+                        try {
+                            return value.dispatch(key, update, function);
+                        } catch (OperatorException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+
+                });
+                Value result = task.get(timeout, TimeUnit.MILLISECONDS);
+                doPut(key, result);
+                invalidate(key);
+                index(key, value, result);
+                snapshot(key, value, result);
+                if (eventBus.isEnabled()) {
+                    eventBus.publish(new ValueChangedEvent(name, key.toString(), value, result));
+                }
+                return result;
+            } else {
+                throw new StoreOperationException(new ErrorMessage(ErrorMessage.NOT_FOUND_ERROR_CODE, "Key not found: " + key));
+            }
+        } catch (StoreOperationException ex) {
+            throw ex;
+        } catch (TimeoutException ex) {
+            task.cancel(true);
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, "Update cancelled due to long execution time."));
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException && ex.getCause().getCause() instanceof OperatorException) {
+                throw new StoreOperationException(((OperatorException) ex.getCause().getCause()).getErrorMessage());
+            } else {
+                throw new StoreOperationException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, ex.getMessage()));
+            }
+        } catch (Exception ex) {
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, ex.getMessage()));
+        } finally {
+            unlockWrite(key);
+        }
+    }
+
+    @Override
+    public Value merge(Key key, Value value) throws StoreOperationException {
+        // Use explicit locking to update and block concurrent operations on the same key,
+        // and also publish on the same "transactional" boundary and keep ordering under concurrency.
+        lockWrite(key);
+        try {
+            Value old = load(key);
+            Value result = null;
+            if (old != null) {
+                result = old.merge(value);
+                doPut(key, result);
+                invalidate(key);
+                index(key, old, result);
+                snapshot(key, old, result);
+                if (eventBus.isEnabled()) {
+                    eventBus.publish(new ValueChangedEvent(name, key.toString(), old, result));
+                }
+                return result;
+            } else {
+                throw new StoreOperationException(new ErrorMessage(ErrorMessage.NOT_FOUND_ERROR_CODE, "Key not found: " + key));
+            }
+        } catch (StoreOperationException ex) {
+            throw ex;
+        } catch (ValidationException ex) {
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, ex.getMessage()));
+        } finally {
+            unlockWrite(key);
+        }
+    }
+
+    public Map<String, Object> map(final Key key, final Mapper mapper) throws StoreOperationException {
+        Value value = load(key);
+        if (value != null) {
+            try {
+                Function function = getFunction(mappers, mapper.getMapperName());
+                return value.dispatch(key, mapper, function);
+            } catch (OperatorException ex) {
+                throw new StoreOperationException(ex.getErrorMessage());
+            }
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Values queryByIndex(Predicate predicate) throws StoreOperationException {
+        BucketIndexes current = indexes;
+        if (current != null) {
+            try {
+                Condition condition = getCondition(predicate.getConditionType());
+                if (condition instanceof IndexCondition) {
+                    Set<Key> candidates = current.lookup(IndexQuery.parse(predicate.getConditionExpression()));
+                    if (candidates != null) {
+                        // Verify candidates, as indexes may be stale in case of writes made by other nodes:
+                        Map<Key, Value> result = new HashMap<Key, Value>();
+                        for (Key key : candidates) {
+                            Value value = load(key);
+                            if (value != null && value.dispatch(key, predicate, condition)) {
+                                result.put(key, value);
+                            }
+                        }
+                        return new Values(result);
+                    }
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new StoreOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, ex.getMessage()));
+            } catch (OperatorException ex) {
+                throw new StoreOperationException(ex.getErrorMessage());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        doClear();
+        clearNearCache();
+        if (snapshotManager != null) {
+            snapshotManager.bucketCleared(this);
+        }
+        BucketIndexes current = indexes;
+        if (current != null) {
+            current.clear();
+        }
+    }
+
+    @Override
+    public Keys keysInRange(Range keyRange) throws StoreOperationException {
+        Comparator keyComparator = getComparator(keyRange.getKeyComparatorName());
+        SortedSnapshot snapshot = snapshotManager.getOrComputeSortedSnapshot(this, keyComparator, keyRange.getKeyComparatorName(), keyRange.getTimeToLive());
+        return new Keys(snapshot.keysInRange(keyRange.getStartKey(), keyRange.getEndKey(), keyRange.getLimit()));
+    }
+
+    @Override
+    public Values valuesInRange(Range keyRange, Predicate predicate) throws StoreOperationException {
+        try {
+            Comparator keyComparator = getComparator(keyRange.getKeyComparatorName());
+            Condition condition = predicate.isEmpty() ? null : getCondition(predicate.getConditionType());
+            SortedSnapshot snapshot = snapshotManager.getOrComputeSortedSnapshot(this, keyComparator, keyRange.getKeyComparatorName(), keyRange.getTimeToLive());
+            Map<Key, Value> result = new LinkedHashMap<Key, Value>();
+            int limit = keyRange.getLimit();
+            Key start = keyRange.getStartKey();
+            Key last = null;
+            // Walk the snapshot in batches, restarting from the last key, so that no more keys than needed are read:
+            while (true) {
+                Set<Key> batch = snapshot.keysInRange(start, keyRange.getEndKey(), RANGE_BATCH_SIZE);
+                Key next = null;
+                for (Key key : batch) {
+                    next = key;
+                    if (last == null || !key.equals(last)) {
+                        Value value = load(key);
+                        if (value != null && (condition == null || value.dispatch(key, predicate, condition))) {
+                            result.put(key, value);
+                            if (limit > 0 && result.size() == limit) {
+                                return new Values(result);
+                            }
+                        }
+                    }
+                }
+                if (batch.size() < RANGE_BATCH_SIZE) {
+                    return new Values(result);
+                } else {
+                    last = next;
+                    start = next;
+                }
+            }
+        } catch (OperatorException ex) {
+            throw new StoreOperationException(ex.getErrorMessage());
+        }
+    }
+
+    @Override
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    @Override
+    public void setNearCacheSize(long nearCacheSize) {
+        if (nearCacheSize > 0) {
+            this.nearCache = new WeightedCache<Key, Value>(nearCacheSize, new ValueWeigher());
+        } else {
+            this.nearCache = null;
+        }
+    }
+
+    @Override
+    public void setFlushCondition(FlushCondition flushCondition) {
+        this.flushCondition = flushCondition;
+    }
+
+    @Override
+    public void setIndexes(List<IndexDefinition> definitions) {
+        if (definitions != null && !definitions.isEmpty()) {
+            final BucketIndexes created = new BucketIndexes(definitions);
+            this.indexes = created;
+            GlobalExecutor.getActionExecutor().submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    buildIndexes(created);
+                }
+
+            });
+        } else {
+            this.indexes = null;
+        }
+    }
+
+    /**
+     * Get the secondary indexes of this bucket, or null if none.
+     */
+    public BucketIndexes getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * Get the near cache holding decompressed documents, or null if disabled.
+     */
+    public WeightedCache<Key, Value> getNearCache() {
+        return nearCache;
+    }
+
+    @Override
+    public void setEventBus(EventBus eventBus) {
+        this.eventBus = eventBus;
+    }
+
+    @Override
+    public void setSnapshotManager(SnapshotManager snapshotManager) {
+        this.snapshotManager = snapshotManager;
+    }
+
+    @Override
+    public void setLockManager(LockManager lockManager) {
+        this.lockManager = lockManager;
+    }
+
+    @Override
+    public void setDefaultComparator(Comparator defaultComparator) {
+        this.defaultComparator = defaultComparator;
+    }
+
+    @Override
+    public void setComparators(Map<String, Comparator> comparators) {
+        // Put before retaining, so that operators can be safely swapped while in use:
+        this.comparators.putAll(comparators);
+        this.comparators.keySet().retainAll(comparators.keySet());
+    }
+
+    @Override
+    public void setUpdaters(Map<String, Function> functions) {
+        this.updaters.putAll(functions);
+        this.updaters.keySet().retainAll(functions.keySet());
+    }
+
+    @Override
+    public void setMappers(Map<String, Function> functions) {
+        this.mappers.putAll(functions);
+        this.mappers.keySet().retainAll(functions.keySet());
+    }
+
+    @Override
+    public void setConditions(Map<String, Condition> conditions) {
+        this.conditions.putAll(conditions);
+        this.conditions.keySet().retainAll(conditions.keySet());
+    }
+
+    private Comparator getComparator(String comparatorName) throws StoreOperationException {
+        if (comparators.containsKey(comparatorName)) {
+            return comparators.get(comparatorName);
+        } else if (StringUtils.isBlank(comparatorName)) {
+            return defaultComparator;
+        } else {
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Wrong comparator name: " + comparatorName));
+        }
+    }
+
+    private Function getFunction(Map<String, Function> functions, String functionName) throws StoreOperationException {
+        if (functions.containsKey(functionName)) {
+            return functions.get(functionName);
+        } else {
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Wrong function name: " + functionName));
+        }
+    }
+
+    private Condition getCondition(String conditionType) throws StoreOperationException {
+        if (conditions.containsKey(conditionType)) {
+            return conditions.get(conditionType);
+        } else {
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Wrong condition type: " + conditionType));
+        }
+    }
+
+    /**
+     * Get the value for the given key, first looking into the near cache if enabled.
+     * <br><br>
+     * Values are cached decompressed (but binary Json values are cached as they are, being directly readable),
+     * and only if no invalidation happened while loading them, in order
+     * to avoid caching stale values.<br>
+     * Values of keys owned by other nodes are never cached, as they may be written by their owner: the near cache is
+     * anyways cleared on flush, that is, when keys ownership changes.
+     */
+    private Value load(Key key) {
+        WeightedCache<Key, Value> cache = nearCache;
+        if (cache != null) {
+            Value value = cache.get(key);
+            if (value == null) {
+                long stamp = cache.stamp(key);
+                value = doGet(key);
+                if (value != null && isOwned(key)) {
+                    if (value.getCodec() == null || value.getCodec().isCompressing()) {
+                        value = Value.fromJson(value.getBytes());
+                    }
+                    cache.put(key, value, stamp);
+                }
+            }
+            return value;
+        } else {
+            return doGet(key);
+        }
+    }
+
+    private boolean isOwned(Key key) {
+        FlushCondition condition = flushCondition;
+        return condition == null || !condition.isSatisfied(this, key);
+    }
+
+    /**
+     * Invalidate the near cache entry for the given key: must be called after the key has been written,
+     * while still holding its write lock.
+     */
+    private void invalidate(Key key) {
+        WeightedCache<Key, Value> cache = nearCache;
+        if (cache != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Update secondary indexes for the given key: must be called after the key has been written,
+     * while still holding its write lock.
+     */
+    private void index(Key key, Value oldValue, Value newValue) {
+        BucketIndexes current = indexes;
+        if (current != null) {
+            current.update(key, oldValue, newValue);
+        }
+    }
+
+    /**
+     * Notify the snapshot manager about added or removed keys: must be called after the key has been written,
+     * while still holding its write lock, so that notifications are ordered as writes.
+     */
+    private void snapshot(Key key, Value oldValue, Value newValue) {
+        if (snapshotManager != null) {
+            if (oldValue == null && newValue != null) {
+                snapshotManager.keyAdded(this, key);
+            } else if (oldValue != null && newValue == null) {
+                snapshotManager.keyRemoved(this, key);
+            }
+        }
+    }
+
+    /**
+     * Build the given indexes out of all bucket documents: every document is read and indexed while holding
+     * its key read lock, so that concurrent writes are correctly ordered with respect to the index build.
+     */
+    private void buildIndexes(BucketIndexes target) {
+        try {
+            for (Key key : keys()) {
+                lockRead(key);
+                try {
+                    Value value = doGet(key);
+                    if (value != null) {
+                        target.update(key, null, value);
+                    }
+                } finally {
+                    unlockRead(key);
+                }
+            }
+            target.setReady(true);
+        } catch (Exception ex) {
+            LOG.error("Error building indexes for bucket: " + name, ex);
+        }
+    }
+
+    protected void clearNearCache() {
+        WeightedCache<Key, Value> cache = nearCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    protected void lockRead(Key key) {
+        lockManager.lockRead(name, key);
+    }
+
+    protected void unlockRead(Key key) {
+        lockManager.unlockRead(name, key);
+    }
+
+    protected void lockWrite(Key key) {
+        lockManager.lockWrite(name, key);
+    }
+
+    protected void unlockWrite(Key key) {
+        lockManager.unlockWrite(name, key);
+    }
+
+    protected byte[] valueToBytes(Value value) {
+        if (value != null) {
+            return value.getEncodedBytes(compressionPolicy);
+        } else {
+            return null;
+        }
+    }
+
+    protected Value bytesToValue(byte[] bytes) {
+        if (bytes != null) {
+            return new Value(bytes);
+        } else {
+            return null;
+        }
+    }
+
+    protected abstract void doClear();
+
+    protected abstract Value doGet(Key key);
+
+    protected abstract void doRemove(Key key);
+
+    protected abstract void doPut(Key key, Value value);
+
+    /**
+     * Put all the given key/value pairs, while holding their write locks: subclasses may override to write them in a single batch.
+     */
+    protected void doPutAll(Map<Key, Value> values) {
+        for (Map.Entry<Key, Value> entry : values.entrySet()) {
+            doPut(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static class ValueWeigher implements WeightedCache.Weigher<Value> {
+
+        @Override
+        public int weigh(Value value) {
+            // Weigh the bytes actually held, as binary Json values are cached as they are:
+            return value.getEncodedBytes().length;
+        }
+
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import terrastore.store.Key;
+import terrastore.store.LockManager;
+
+/**
+ * Base lock manager implementation, assigning each bucket/key pair to one of a fixed number of lock stripes,
+ * determined by the concurrency level.
+ *
+ * @author Sergio Bossa
+ */
+public abstract class AbstractLockManager implements LockManager {
+
+    protected final int concurrencyLevel;
+
+    protected AbstractLockManager(int concurrencyLevel) {
+        this.concurrencyLevel = concurrencyLevel;
+    }
+
+    @Override
+    public List<Set<Key>> groupByLock(String bucket, Set<Key> keys) {
+        // Sort groups by lock index, so that locks are always acquired in the same order:
+        SortedMap<Integer, Set<Key>> groups = new TreeMap<Integer, Set<Key>>();
+        for (Key key : keys) {
+            int index = lockIndexFor(bucket, key);
+            Set<Key> group = groups.get(index);
+            if (group == null) {
+                group = new HashSet<Key>();
+                groups.put(index, group);
+            }
+            group.add(key);
+        }
+        return new ArrayList<Set<Key>>(groups.values());
+    }
+
+    protected final int lockIndexFor(String bucket, Key key) {
+        // Combine bucket and key hashes, rather than hashing their concatenation, to avoid allocating on every lock/unlock:
+        return ((31 * bucket.hashCode() + key.hashCode()) & Integer.MAX_VALUE) % concurrencyLevel;
+    }
+}
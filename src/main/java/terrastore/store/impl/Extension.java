@@ -0,0 +1,131 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import terrastore.store.operators.Aggregator;
+import terrastore.store.operators.Comparator;
+import terrastore.store.operators.Condition;
+import terrastore.store.operators.Function;
+import terrastore.util.annotation.AnnotationScanner;
+
+/**
+ * Jar of {@link terrastore.store.operators.Comparator}s, {@link terrastore.store.operators.Condition}s,
+ * {@link terrastore.store.operators.Function}s and {@link terrastore.store.operators.Aggregator}s deployed at runtime,
+ * loaded by its own class loader (so that different extensions, and different versions of the same extension,
+ * are isolated from each other).<br>
+ * Operators are detected as for the server classpath, that is, by looking for {@link terrastore.annotation.AutoDetect}
+ * annotated classes.
+ *
+ * @author Sergio Bossa
+ */
+public class Extension {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Extension.class);
+    //
+    private final String name;
+    private final File jar;
+    private final URLClassLoader classLoader;
+    private final Map<String, Comparator> comparators;
+    private final Map<String, Condition> conditions;
+    private final Map<String, Function> functions;
+    private final Map<String, Aggregator> aggregators;
+
+    private Extension(String name, File jar, URLClassLoader classLoader, Map<String, Comparator> comparators, Map<String, Condition> conditions, Map<String, Function> functions, Map<String, Aggregator> aggregators) {
+        this.name = name;
+        this.jar = jar;
+        this.classLoader = classLoader;
+        this.comparators = comparators;
+        this.conditions = conditions;
+        this.functions = functions;
+        this.aggregators = aggregators;
+    }
+
+    /**
+     * Load the extension contained into the given jar bytes.
+     */
+    public static Extension load(String name, byte[] jar) throws IOException {
+        File file = File.createTempFile("terrastore-" + name + "-", ".jar");
+        file.deleteOnExit();
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(jar);
+        } finally {
+            output.close();
+        }
+        URL[] archives = new URL[]{file.toURI().toURL()};
+        URLClassLoader classLoader = new URLClassLoader(archives, Extension.class.getClassLoader());
+        try {
+            AnnotationScanner scanner = new AnnotationScanner(archives, classLoader);
+            return new Extension(name, file, classLoader,
+                    scanner.scanByType(Comparator.class),
+                    scanner.scanByType(Condition.class),
+                    scanner.scanByType(Function.class),
+                    scanner.scanByType(Aggregator.class));
+        } catch (RuntimeException ex) {
+            classLoader.close();
+            file.delete();
+            throw ex;
+        }
+    }
+
+    /**
+     * Discard this extension: close its class loader, releasing the jar file handle, and delete the jar.<br>
+     * Classes already loaded stay available to operations still using them, and are garbage collected along
+     * with their class loader.
+     */
+    public void discard() {
+        try {
+            classLoader.close();
+        } catch (IOException ex) {
+            LOG.warn("Unable to close class loader of extension: " + name, ex);
+        } finally {
+            jar.delete();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Comparator> getComparators() {
+        return comparators;
+    }
+
+    public Map<String, Condition> getConditions() {
+        return conditions;
+    }
+
+    public Map<String, Function> getFunctions() {
+        return functions;
+    }
+
+    public Map<String, Aggregator> getAggregators() {
+        return aggregators;
+    }
+
+    public boolean isEmpty() {
+        return comparators.isEmpty() && conditions.isEmpty() && functions.isEmpty() && aggregators.isEmpty();
+    }
+}
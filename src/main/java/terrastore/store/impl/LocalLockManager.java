@@ -0,0 +1,158 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import terrastore.store.Key;
+
+/**
+ * Lock manager implementation based on plain JVM striped locks, to use when locked data is local to the node
+ * (as with the {@link LogStore}), so that locks don't need to be clustered.
+ * <br>
+ * Each bucket/key pair is assigned a lock by combining the bucket and (cached) key hash codes, with no allocation;
+ * the number of times each lock has been found already held when acquiring it is tracked, in order to detect
+ * contention hot spots (see {@link #getContentions()}), and contentions occurred since the last report are periodically
+ * logged, together with the most contended stripe (see {@link #reportContentions()}).
+ *
+ * @author Sergio Bossa
+ */
+public class LocalLockManager extends AbstractLockManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocalLockManager.class);
+    //
+    public static final long DEFAULT_REPORT_PERIOD = 60;
+    //
+    private static final ScheduledExecutorService REPORTER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "LocalLockManager-Reporter");
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    });
+    //
+    private final ReentrantReadWriteLock[] locks;
+    private final AtomicLongArray contentions;
+    private final long[] reported;
+
+    public LocalLockManager(String node, int concurrencyLevel) {
+        this(node, concurrencyLevel, DEFAULT_REPORT_PERIOD);
+    }
+
+    public LocalLockManager(String node, int concurrencyLevel, long reportPeriodInSeconds) {
+        super(concurrencyLevel);
+        this.locks = new ReentrantReadWriteLock[concurrencyLevel];
+        this.contentions = new AtomicLongArray(concurrencyLevel);
+        this.reported = new long[concurrencyLevel];
+        for (int i = 0; i < concurrencyLevel; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        if (reportPeriodInSeconds > 0) {
+            REPORTER.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        reportContentions();
+                    } catch (Exception ex) {
+                        LOG.error(ex.getMessage(), ex);
+                    }
+                }
+
+            }, reportPeriodInSeconds, reportPeriodInSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void lockRead(String bucket, Key key) {
+        int index = lockIndexFor(bucket, key);
+        ReentrantReadWriteLock.ReadLock lock = locks[index].readLock();
+        if (!lock.tryLock()) {
+            contentions.incrementAndGet(index);
+            lock.lock();
+        }
+    }
+
+    @Override
+    public void unlockRead(String bucket, Key key) {
+        locks[lockIndexFor(bucket, key)].readLock().unlock();
+    }
+
+    @Override
+    public void lockWrite(String bucket, Key key) {
+        int index = lockIndexFor(bucket, key);
+        ReentrantReadWriteLock.WriteLock lock = locks[index].writeLock();
+        if (!lock.tryLock()) {
+            contentions.incrementAndGet(index);
+            lock.lock();
+        }
+    }
+
+    @Override
+    public void unlockWrite(String bucket, Key key) {
+        locks[lockIndexFor(bucket, key)].writeLock().unlock();
+    }
+
+    @Override
+    public void evictLocks(String node) {
+        // Locks are local to this node, so there's nothing to evict.
+    }
+
+    /**
+     * Get, for each lock stripe, the number of times the lock was found already held when trying to acquire it.
+     */
+    public long[] getContentions() {
+        long[] result = new long[concurrencyLevel];
+        for (int i = 0; i < concurrencyLevel; i++) {
+            result[i] = contentions.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Log the number of contentions occurred since the last report, if any, together with the most contended stripe.
+     *
+     * @return The number of contentions occurred since the last report.
+     */
+    public synchronized long reportContentions() {
+        long total = 0;
+        long hottest = 0;
+        int hottestIndex = -1;
+        for (int i = 0; i < concurrencyLevel; i++) {
+            long current = contentions.get(i);
+            long delta = current - reported[i];
+            reported[i] = current;
+            total += delta;
+            if (delta > hottest) {
+                hottest = delta;
+                hottestIndex = i;
+            }
+        }
+        if (total > 0) {
+            LOG.info("Lock contentions since last report: {}, most contended stripe: {} ({} contentions)", new Object[]{total, hottestIndex, hottest});
+        }
+        return total;
+    }
+}
@@ -16,6 +16,8 @@
 package terrastore.store.impl;
 
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -24,18 +26,32 @@ import terrastore.store.Bucket;
 import terrastore.store.Key;
 import terrastore.store.SnapshotManager;
 import terrastore.store.SortedSnapshot;
+import terrastore.store.snapshot.DefaultSnapshotBackendFactory;
+import terrastore.store.snapshot.SnapshotBackendFactory;
 
 /**
+ * {@link terrastore.store.SnapshotManager} implementation keeping snapshots in the local node, and incrementally
+ * maintaining them by applying the key additions and removals notified by the bucket write path.<br>
+ * Snapshots are computed under a lock per snapshot name, so that different snapshots can be concurrently computed.<br>
+ * Snapshot keys are stored into backends created by the {@link terrastore.store.snapshot.SnapshotBackendFactory} configured
+ * for the snapshot comparator name, or by the default one.
+ *
  * @author Sergio Bossa
  */
 public class LocalSnapshotManager implements SnapshotManager {
 
     private ConcurrentMap<String, SortedSnapshot> snapshots;
-    private ReentrantLock computationLock;
+    private ConcurrentMap<String, ConcurrentMap<String, SortedSnapshot>> bucketSnapshots;
+    private ConcurrentMap<String, ReentrantLock> computationLocks;
+    private volatile SnapshotBackendFactory defaultBackendFactory;
+    private volatile Map<String, SnapshotBackendFactory> backendFactories;
 
     public LocalSnapshotManager() {
         this.snapshots = new ConcurrentHashMap<String, SortedSnapshot>();
-        this.computationLock = new ReentrantLock(true);
+        this.bucketSnapshots = new ConcurrentHashMap<String, ConcurrentMap<String, SortedSnapshot>>();
+        this.computationLocks = new ConcurrentHashMap<String, ReentrantLock>();
+        this.defaultBackendFactory = new DefaultSnapshotBackendFactory();
+        this.backendFactories = new HashMap<String, SnapshotBackendFactory>();
     }
 
     @Override
@@ -45,9 +61,9 @@ public class LocalSnapshotManager implements SnapshotManager {
         boolean expired = false;
         while (snapshot == null || (expired = snapshot.isExpired(timeToLive)) == true) {
             if (snapshot != null && expired) {
-                snapshot = tryUpdatingSnapshot(snapshot, bucket);
+                snapshot = tryUpdatingSnapshot(snapshotName, snapshot, bucket);
             } else if (snapshot == null) {
-                snapshot = tryComputingSnapshot(snapshotName, bucket, comparator);
+                snapshot = tryComputingSnapshot(snapshotName, bucket, comparator, getBackendFactory(name));
             } else {
                 break;
             }
@@ -60,6 +76,56 @@ public class LocalSnapshotManager implements SnapshotManager {
         return snapshot;
     }
 
+    @Override
+    public void keyAdded(Bucket bucket, Key key) {
+        Map<String, SortedSnapshot> current = bucketSnapshots.get(bucket.getName());
+        if (current != null) {
+            for (SortedSnapshot snapshot : current.values()) {
+                snapshot.add(key);
+            }
+        }
+    }
+
+    @Override
+    public void keyRemoved(Bucket bucket, Key key) {
+        Map<String, SortedSnapshot> current = bucketSnapshots.get(bucket.getName());
+        if (current != null) {
+            for (SortedSnapshot snapshot : current.values()) {
+                snapshot.remove(key);
+            }
+        }
+    }
+
+    @Override
+    public void bucketCleared(Bucket bucket) {
+        Map<String, SortedSnapshot> removed = bucketSnapshots.remove(bucket.getName());
+        if (removed != null) {
+            for (Map.Entry<String, SortedSnapshot> entry : removed.entrySet()) {
+                snapshots.remove(entry.getKey(), entry.getValue());
+                entry.getValue().discard();
+            }
+        }
+    }
+
+    /**
+     * Set the {@link SnapshotBackendFactory} used for all snapshots whose comparator has no specific factory.
+     */
+    public void setDefaultBackendFactory(SnapshotBackendFactory defaultBackendFactory) {
+        this.defaultBackendFactory = defaultBackendFactory;
+    }
+
+    /**
+     * Set the {@link SnapshotBackendFactory}s to use for snapshots of specific comparators, keyed by comparator name.
+     */
+    public void setBackendFactories(Map<String, SnapshotBackendFactory> backendFactories) {
+        this.backendFactories = new HashMap<String, SnapshotBackendFactory>(backendFactories);
+    }
+
+    private SnapshotBackendFactory getBackendFactory(String name) {
+        SnapshotBackendFactory factory = name != null ? backendFactories.get(name) : null;
+        return factory != null ? factory : defaultBackendFactory;
+    }
+
     private String getSnapshotName(Bucket bucket, String name) {
         if (name != null && !name.isEmpty()) {
             return bucket.getName() + "-" + name;
@@ -68,12 +134,30 @@ public class LocalSnapshotManager implements SnapshotManager {
         }
     }
 
-    private SortedSnapshot tryComputingSnapshot(String snapshotName, Bucket bucket, Comparator<String> comparator) {
-        boolean locked = this.computationLock.tryLock();
+    private SortedSnapshot tryComputingSnapshot(String snapshotName, Bucket bucket, Comparator<String> comparator, SnapshotBackendFactory backendFactory) {
+        ReentrantLock computationLock = getComputationLock(snapshotName);
+        boolean locked = computationLock.tryLock();
         if (locked) {
             try {
-                Set<Key> keys = bucket.keys();
-                SortedSnapshot snapshot = new SortedSnapshot(snapshotName, keys, comparator);
+                // Double check, as the snapshot may have been computed right before acquiring the lock:
+                SortedSnapshot snapshot = snapshots.get(snapshotName);
+                if (snapshot != null) {
+                    return snapshot;
+                }
+                // Start receiving changes before reading keys, so that no change happening in between gets lost:
+                snapshot = new SortedSnapshot(snapshotName, comparator, backendFactory);
+                snapshot.beginUpdate();
+                getBucketSnapshots(bucket).put(snapshotName, snapshot);
+                try {
+                    Set<Key> keys = bucket.keys();
+                    snapshot.update(keys);
+                } catch (RuntimeException ex) {
+                    // Stop notifying changes to the failed snapshot, which will be computed again at next access:
+                    getBucketSnapshots(bucket).remove(snapshotName, snapshot);
+                    snapshot.cancelUpdate();
+                    snapshot.discard();
+                    throw ex;
+                }
                 snapshots.put(snapshotName, snapshot);
                 return snapshot;
             } finally {
@@ -84,11 +168,18 @@ public class LocalSnapshotManager implements SnapshotManager {
         }
     }
 
-    private SortedSnapshot tryUpdatingSnapshot(SortedSnapshot snapshot, Bucket bucket) {
-        boolean locked = this.computationLock.tryLock();
+    private SortedSnapshot tryUpdatingSnapshot(String snapshotName, SortedSnapshot snapshot, Bucket bucket) {
+        ReentrantLock computationLock = getComputationLock(snapshotName);
+        boolean locked = computationLock.tryLock();
         if (locked) {
             try {
-                snapshot.update(bucket.keys());
+                snapshot.beginUpdate();
+                try {
+                    snapshot.update(bucket.keys());
+                } catch (RuntimeException ex) {
+                    snapshot.cancelUpdate();
+                    throw ex;
+                }
                 return snapshot;
             } finally {
                 computationLock.unlock();
@@ -99,11 +190,36 @@ public class LocalSnapshotManager implements SnapshotManager {
     }
 
     private SortedSnapshot waitForSnapshot(String snapshotName) {
-        this.computationLock.lock();
+        ReentrantLock computationLock = getComputationLock(snapshotName);
+        computationLock.lock();
         try {
             return snapshots.get(snapshotName);
         } finally {
             computationLock.unlock();
         }
     }
+
+    private ReentrantLock getComputationLock(String snapshotName) {
+        ReentrantLock lock = computationLocks.get(snapshotName);
+        if (lock == null) {
+            ReentrantLock created = new ReentrantLock(true);
+            lock = computationLocks.putIfAbsent(snapshotName, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    private ConcurrentMap<String, SortedSnapshot> getBucketSnapshots(Bucket bucket) {
+        ConcurrentMap<String, SortedSnapshot> current = bucketSnapshots.get(bucket.getName());
+        if (current == null) {
+            ConcurrentMap<String, SortedSnapshot> created = new ConcurrentHashMap<String, SortedSnapshot>();
+            current = bucketSnapshots.putIfAbsent(bucket.getName(), created);
+            if (current == null) {
+                current = created;
+            }
+        }
+        return current;
+    }
 }
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import terrastore.server.Keys;
+import terrastore.store.FlushCondition;
+import terrastore.store.FlushStrategy;
+import terrastore.store.Key;
+import terrastore.store.Value;
+import terrastore.store.impl.log.SegmentedLog;
+import terrastore.util.io.IOUtils;
+
+/**
+ * {@link terrastore.store.Bucket} implementation storing documents into a local, log-structured
+ * {@link terrastore.store.impl.log.SegmentedLog}.
+ *
+ * @author Sergio Bossa
+ */
+public class LogBucket extends AbstractBucket {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogBucket.class);
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    //
+    private final File directory;
+    private final SegmentedLog log;
+
+    public LogBucket(String name, File directory) {
+        super(name);
+        try {
+            this.directory = directory;
+            this.log = new SegmentedLog(directory);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    protected void doClear() {
+        try {
+            log.clear();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public long size() {
+        return log.size();
+    }
+
+    @Override
+    public Keys keys() {
+        List<byte[]> raw = log.keys();
+        Set<Key> keys = new HashSet<Key>(raw.size());
+        for (byte[] key : raw) {
+            keys.add(new Key(new String(key, CHARSET)));
+        }
+        return new Keys(keys);
+    }
+
+    @Override
+    public void flush(FlushStrategy flushStrategy, FlushCondition flushCondition) {
+        LOG.debug("Syncing bucket {} to disk.", name);
+        log.sync();
+    }
+
+    /**
+     * Close the underlying log and delete all its data.
+     */
+    public void destroy() {
+        try {
+            log.close();
+            IOUtils.deleteRecursively(directory);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    protected Value doGet(Key key) {
+        return bytesToValue(log.get(key.getBytes()));
+    }
+
+    @Override
+    protected void doRemove(Key key) {
+        try {
+            log.remove(key.getBytes());
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    protected void doPut(Key key, Value value) {
+        try {
+            log.put(key.getBytes(), valueToBytes(value));
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    protected void doPutAll(Map<Key, Value> values) {
+        try {
+            Map<byte[], byte[]> entries = new LinkedHashMap<byte[], byte[]>(values.size());
+            for (Map.Entry<Key, Value> entry : values.entrySet()) {
+                entries.put(entry.getKey().getBytes(), valueToBytes(entry.getValue()));
+            }
+            log.putAll(entries);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+}
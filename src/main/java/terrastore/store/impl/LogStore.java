@@ -0,0 +1,93 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import terrastore.store.Bucket;
+import terrastore.util.io.IOUtils;
+import static terrastore.startup.Constants.*;
+
+/**
+ * {@link terrastore.store.Store} implementation keeping bucket documents into local, log-structured and memory-mapped files
+ * (see {@link LogBucket}), rather than into the Terracotta clustered map.
+ * <br><br>
+ * Buckets data is stored under the given data directory (defaulting to the TERRASTORE_HOME data directory), one sub-directory
+ * per bucket, and is recovered at startup: as data is local to the node, this store is meant for single node deployments,
+ * not connected to any Terracotta master.
+ *
+ * @author Sergio Bossa
+ */
+public class LogStore extends TCStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogStore.class);
+    private static final String ENCODING = "UTF-8";
+    //
+    private final File dataDirectory;
+
+    public LogStore() {
+        this(IOUtils.getFileFromTerrastoreHome(DATA_DIR));
+    }
+
+    public LogStore(File dataDirectory) {
+        super();
+        this.dataDirectory = dataDirectory;
+        if (!dataDirectory.exists() && !dataDirectory.mkdirs()) {
+            throw new IllegalStateException("Cannot create data directory: " + dataDirectory.getAbsolutePath());
+        }
+        for (File bucketDirectory : dataDirectory.listFiles()) {
+            if (bucketDirectory.isDirectory()) {
+                String bucket = decode(bucketDirectory.getName());
+                LOG.info("Recovering bucket {}", bucket);
+                register(bucket);
+            }
+        }
+    }
+
+    @Override
+    public void remove(String bucket) {
+        Bucket instance = get(bucket);
+        if (instance != null) {
+            super.remove(bucket);
+            ((LogBucket) instance).destroy();
+        }
+    }
+
+    @Override
+    protected Bucket createBucket(String bucket) {
+        return new LogBucket(bucket, new File(dataDirectory, encode(bucket)));
+    }
+
+    private String encode(String bucket) {
+        try {
+            return URLEncoder.encode(bucket, ENCODING);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    private String decode(String directory) {
+        try {
+            return URLDecoder.decode(directory, ENCODING);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import terrastore.common.ErrorMessage;
+import terrastore.store.operators.Accumulator;
+import terrastore.store.operators.Aggregator;
+import terrastore.store.operators.IncrementalAggregator;
+import terrastore.store.operators.OperatorException;
+import static terrastore.util.concurrent.ConcurrentUtils.*;
+
+/**
+ * {@link terrastore.store.operators.IncrementalAggregator} decorator bounding the memory used by aggregations
+ * of the decorated {@link terrastore.store.operators.Aggregator}.<br>
+ * Values are grouped by name in memory until their estimated size exceeds the memory budget: then they're sorted and
+ * spilled to a temporary file, and all spilled files are finally merged through an external k-way merge.<br>
+ * As a consequence, the decorated aggregator is applied separately to each group of values with the same name,
+ * so it must aggregate each name independently from the others, as with group-by style aggregations.
+ *
+ * @author Sergio Bossa
+ */
+public class SpillingAggregator implements IncrementalAggregator {
+
+    private final Aggregator aggregator;
+    private final long memoryBudget;
+    private final File directory;
+
+    /**
+     * @param aggregator The aggregator to decorate.
+     * @param memoryBudget The estimated size, in bytes, of values kept in memory by each accumulator.
+     * @param directory The directory where to spill values.
+     */
+    public SpillingAggregator(Aggregator aggregator, long memoryBudget, File directory) {
+        this.aggregator = aggregator;
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+    }
+
+    @Override
+    public Map<String, Object> apply(List<Map<String, Object>> values, Map<String, Object> parameters) throws OperatorException {
+        Accumulator accumulator = newAccumulator(parameters);
+        for (Map<String, Object> value : values) {
+            exitOnTimeout();
+            accumulator.add(value);
+        }
+        return accumulator.result();
+    }
+
+    @Override
+    public Accumulator newAccumulator(Map<String, Object> parameters) {
+        return new SpillingAccumulator(parameters);
+    }
+
+    static long estimateSize(Object value) {
+        if (value instanceof String) {
+            return 40 + 2 * ((String) value).length();
+        } else if (value instanceof Map) {
+            long size = 48;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        } else if (value instanceof List) {
+            long size = 40;
+            for (Object element : (List<?>) value) {
+                size += 8 + estimateSize(element);
+            }
+            return size;
+        } else {
+            return 24;
+        }
+    }
+
+    private class SpillingAccumulator implements Accumulator {
+
+        private final Map<String, Object> parameters;
+        private final List<File> runs = new LinkedList<File>();
+        private TreeMap<String, List<Object>> buffer = new TreeMap<String, List<Object>>();
+        private long bufferSize;
+
+        public SpillingAccumulator(Map<String, Object> parameters) {
+            this.parameters = parameters;
+        }
+
+        @Override
+        public void add(Map<String, Object> partial) throws OperatorException {
+            for (Map.Entry<String, Object> entry : partial.entrySet()) {
+                buffer(entry.getKey(), entry.getValue());
+            }
+        }
+
+        @Override
+        public void merge(Accumulator other) throws OperatorException {
+            SpillingAccumulator spilling = (SpillingAccumulator) other;
+            runs.addAll(spilling.runs);
+            spilling.runs.clear();
+            for (Map.Entry<String, List<Object>> group : spilling.buffer.entrySet()) {
+                for (Object value : group.getValue()) {
+                    buffer(group.getKey(), value);
+                }
+            }
+            spilling.buffer.clear();
+        }
+
+        @Override
+        public Map<String, Object> result() throws OperatorException {
+            List<Run> sources = new ArrayList<Run>(runs.size() + 1);
+            try {
+                int order = 0;
+                for (File file : runs) {
+                    sources.add(new FileRun(file, order++));
+                }
+                sources.add(new BufferRun(buffer, order));
+                buffer = new TreeMap<String, List<Object>>();
+                return mergeRuns(sources);
+            } catch (IOException ex) {
+                throw new OperatorException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, "Error while merging spilled values: " + ex.getMessage()));
+            } finally {
+                for (Run source : sources) {
+                    source.close();
+                }
+                for (File file : runs) {
+                    file.delete();
+                }
+                runs.clear();
+            }
+        }
+
+        private void buffer(String name, Object value) throws OperatorException {
+            List<Object> group = buffer.get(name);
+            if (group == null) {
+                group = new LinkedList<Object>();
+                buffer.put(name, group);
+                bufferSize += estimateSize(name);
+            }
+            group.add(value);
+            bufferSize += 8 + estimateSize(value);
+            if (bufferSize > memoryBudget) {
+                spill();
+            }
+        }
+
+        private void spill() throws OperatorException {
+            ObjectOutputStream output = null;
+            try {
+                directory.mkdirs();
+                File file = File.createTempFile("terrastore-spill-", ".run", directory);
+                file.deleteOnExit();
+                runs.add(file);
+                output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                for (Map.Entry<String, List<Object>> group : buffer.entrySet()) {
+                    for (Object value : group.getValue()) {
+                        output.writeBoolean(true);
+                        output.writeObject(group.getKey());
+                        output.writeObject(value);
+                        // Reset in order to not retain references to written values:
+                        output.reset();
+                    }
+                }
+                output.writeBoolean(false);
+                buffer.clear();
+                bufferSize = 0;
+            } catch (IOException ex) {
+                throw new OperatorException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, "Error while spilling values: " + ex.getMessage()));
+            } finally {
+                if (output != null) {
+                    try {
+                        output.close();
+                    } catch (IOException ex) {
+                    }
+                }
+            }
+        }
+
+        private Map<String, Object> mergeRuns(List<Run> sources) throws IOException, OperatorException {
+            Map<String, Object> result = new HashMap<String, Object>();
+            PriorityQueue<Run> queue = new PriorityQueue<Run>(sources.size());
+            for (Run source : sources) {
+                if (source.next()) {
+                    queue.add(source);
+                }
+            }
+            while (!queue.isEmpty()) {
+                exitOnTimeout();
+                String name = queue.peek().name;
+                List<Map<String, Object>> group = new LinkedList<Map<String, Object>>();
+                while (!queue.isEmpty() && queue.peek().name.equals(name)) {
+                    Run source = queue.poll();
+                    group.add(Collections.singletonMap(name, source.value));
+                    if (source.next()) {
+                        queue.add(source);
+                    }
+                }
+                result.putAll(aggregator.apply(group, parameters));
+            }
+            return result;
+        }
+    }
+
+    private static abstract class Run implements Comparable<Run> {
+
+        protected final int order;
+        protected String name;
+        protected Object value;
+
+        protected Run(int order) {
+            this.order = order;
+        }
+
+        public abstract boolean next() throws IOException;
+
+        public abstract void close();
+
+        @Override
+        public int compareTo(Run other) {
+            int compared = name.compareTo(other.name);
+            return compared != 0 ? compared : order - other.order;
+        }
+    }
+
+    private static class FileRun extends Run {
+
+        private final ObjectInputStream input;
+
+        public FileRun(File file, int order) throws IOException {
+            super(order);
+            this.input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (input.readBoolean()) {
+                try {
+                    name = (String) input.readObject();
+                    value = input.readObject();
+                    return true;
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException(ex.getMessage());
+                }
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                input.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+
+    private static class BufferRun extends Run {
+
+        private final Iterator<Map.Entry<String, List<Object>>> groups;
+        private Iterator<Object> values;
+
+        public BufferRun(TreeMap<String, List<Object>> buffer, int order) {
+            super(order);
+            this.groups = buffer.entrySet().iterator();
+        }
+
+        @Override
+        public boolean next() {
+            while (values == null || !values.hasNext()) {
+                if (groups.hasNext()) {
+                    Map.Entry<String, List<Object>> group = groups.next();
+                    name = group.getKey();
+                    values = group.getValue().iterator();
+                } else {
+                    return false;
+                }
+            }
+            value = values.next();
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
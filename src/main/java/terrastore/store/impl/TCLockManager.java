@@ -25,7 +25,6 @@ import org.terracotta.collections.ClusteredMap;
 
 import terrastore.internal.tc.TCMaster;
 import terrastore.store.Key;
-import terrastore.store.LockManager;
 
 /**
  * Distributed lock manager implementation based on per-node striped Terracotta locks.
@@ -36,15 +35,14 @@ import terrastore.store.LockManager;
  *
  * @author Sergio Bossa
  */
-public class TCLockManager implements LockManager {
+public class TCLockManager extends AbstractLockManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(TCLockManager.class);
     //
-    private final int concurrencyLevel;
     private final ReadWriteLock[] locks;
 
     public TCLockManager(String node, int concurrencyLevel) {
-        this.concurrencyLevel = concurrencyLevel;
+        super(concurrencyLevel);
         this.locks = new ReadWriteLock[concurrencyLevel];
         initLocks(node, concurrencyLevel);
     }
@@ -91,8 +89,7 @@ public class TCLockManager implements LockManager {
     }
 
     private ReadWriteLock lockFor(String bucket, Key key) {
-        String name = bucket + ":" + key;
-        return locks[(name.hashCode() & Integer.MAX_VALUE) % concurrencyLevel];
+        return locks[lockIndexFor(bucket, key)];
     }
 
     private void initLocks(String node, int concurrencyLevel) {
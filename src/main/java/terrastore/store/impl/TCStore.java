@@ -15,6 +15,8 @@
  */
 package terrastore.store.impl;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -37,6 +39,9 @@ import terrastore.common.ErrorMessage;
 import terrastore.internal.tc.TCMaster;
 import terrastore.event.EventBus;
 import terrastore.server.Buckets;
+import terrastore.startup.Constants;
+import terrastore.store.codec.Codecs;
+import terrastore.store.codec.CompressionPolicy;
 import terrastore.store.comparators.LexicographicalComparator;
 import terrastore.store.Bucket;
 import terrastore.store.FlushCondition;
@@ -49,16 +54,21 @@ import terrastore.store.StoreOperationException;
 import terrastore.store.Value;
 import terrastore.store.features.Mapper;
 import terrastore.store.features.Reducer;
+import terrastore.store.index.IndexDefinition;
+import terrastore.store.operators.Accumulator;
 import terrastore.store.operators.Aggregator;
 import terrastore.store.operators.Comparator;
 import terrastore.store.operators.Condition;
 import terrastore.store.operators.Function;
+import terrastore.store.operators.IncrementalAggregator;
 import terrastore.store.operators.OperatorException;
+import terrastore.util.collect.parallel.FoldTask;
 import terrastore.util.collect.parallel.MapCollector;
 import terrastore.util.collect.parallel.MapTask;
 import terrastore.util.collect.parallel.ParallelExecutionException;
 import terrastore.util.collect.parallel.ParallelUtils;
 import terrastore.util.concurrent.GlobalExecutor;
+import terrastore.util.io.IOUtils;
 import terrastore.util.json.JsonUtils;
 
 /**
@@ -73,17 +83,23 @@ public class TCStore implements Store {
     //
     private final ClusteredMap<String, String> buckets;
     private final ConcurrentMap<String, Bucket> instances;
-    private final Map<String, Comparator> comparators = new HashMap<String, Comparator>();
-    private final Map<String, Condition> conditions = new HashMap<String, Condition>();
-    private final Map<String, Function> updaters = new HashMap<String, Function>();
-    private final Map<String, Function> mappers = new HashMap<String, Function>();
-    private final Map<String, Aggregator> combiners = new HashMap<String, Aggregator>();
-    private final Map<String, Aggregator> reducers = new HashMap<String, Aggregator>();
+    private final ConcurrentMap<String, Comparator> comparators = new ConcurrentHashMap<String, Comparator>();
+    private final ConcurrentMap<String, Condition> conditions = new ConcurrentHashMap<String, Condition>();
+    private final ConcurrentMap<String, Function> updaters = new ConcurrentHashMap<String, Function>();
+    private final ConcurrentMap<String, Function> mappers = new ConcurrentHashMap<String, Function>();
+    private final ConcurrentMap<String, Aggregator> combiners = new ConcurrentHashMap<String, Aggregator>();
+    private final ConcurrentMap<String, Aggregator> reducers = new ConcurrentHashMap<String, Aggregator>();
+    private final Map<String, Extension> extensions = new HashMap<String, Extension>();
+    private final Map<String, List<IndexDefinition>> indexes = new HashMap<String, List<IndexDefinition>>();
+    private final Map<String, CompressionPolicy> compressionPolicies = new HashMap<String, CompressionPolicy>();
     private Comparator defaultComparator = new LexicographicalComparator(true);
     private SnapshotManager snapshotManager;
     private LockManager lockManager;
     private EventBus eventBus;
     private boolean compressedDocuments;
+    private int compressThreshold = CompressionPolicy.DEFAULT_THRESHOLD;
+    private long nearCacheSize;
+    private FlushCondition flushCondition;
 
     public TCStore() {
         buckets = TCMaster.getInstance().getAutolockedMap(TCStore.class.getName() + ".buckets");
@@ -97,7 +113,7 @@ public class TCStore implements Store {
             buckets.lockEntry(bucket);
             try {
                 if (!instances.containsKey(bucket)) {
-                    Bucket created = new TCBucket(bucket);
+                    Bucket created = createBucket(bucket);
                     hydrateBucket(created);
                     instances.put(bucket, created);
                     if (!buckets.containsKey(bucket) || buckets.get(bucket).equals(TOMBSTONE)) {
@@ -122,7 +138,7 @@ public class TCStore implements Store {
             try {
                 if (!instances.containsKey(bucket)) {
                     if (buckets.containsKey(bucket)) {
-                        Bucket created = new TCBucket(bucket);
+                        Bucket created = createBucket(bucket);
                         hydrateBucket(created);
                         instances.put(bucket, created);
                         requested = created;
@@ -145,7 +161,7 @@ public class TCStore implements Store {
             if (removed != null) {
                 removed.clear();
             } else {
-                Bucket instance = new TCBucket(bucket);
+                Bucket instance = createBucket(bucket);
                 hydrateBucket(instance);
                 instance.clear();
             }
@@ -168,7 +184,7 @@ public class TCStore implements Store {
                 } else {
                     Bucket instance = instances.get(bucket);
                     if (instance == null) {
-                        instance = new TCBucket(bucket);
+                        instance = createBucket(bucket);
                         hydrateBucket(instance);
                         instances.put(bucket, instance);
                     }
@@ -188,9 +204,18 @@ public class TCStore implements Store {
     public Map<String, Object> map(final String bucketName, final Set<Key> keys, final Mapper mapper) throws StoreOperationException {
         Bucket bucket = get(bucketName);
         if (bucket != null) {
-            List<Map<String, Object>> mapResults = doMap(bucket, keys, mapper);
             Aggregator aggregator = getAggregator(combiners, mapper.getCombinerName());
-            return doAggregate(mapResults, aggregator, mapper.getTimeoutInMillis(), mapper.getParameters());
+            if (mapper.getMemoryBudget() > 0) {
+                // The budget is shared among accumulators of concurrently mapped slices:
+                long memoryBudget = Math.max(1, mapper.getMemoryBudget() / Runtime.getRuntime().availableProcessors());
+                aggregator = new SpillingAggregator(aggregator, memoryBudget, getSpillDirectory());
+            }
+            if (aggregator instanceof IncrementalAggregator) {
+                return doFold(bucket, keys, mapper, (IncrementalAggregator) aggregator);
+            } else {
+                List<Map<String, Object>> mapResults = doMap(bucket, keys, mapper);
+                return doAggregate(mapResults, aggregator, mapper.getTimeoutInMillis(), mapper.getParameters());
+            }
         } else {
             throw new StoreOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "No bucket found with name: " + bucketName));
         }
@@ -199,10 +224,45 @@ public class TCStore implements Store {
     @Override
     public Value reduce(List<Map<String, Object>> values, Reducer reducer) throws StoreOperationException {
         Aggregator aggregator = getAggregator(reducers, reducer.getReducerName());
+        if (reducer.getMemoryBudget() > 0) {
+            aggregator = new SpillingAggregator(aggregator, reducer.getMemoryBudget(), getSpillDirectory());
+        }
         Map<String, Object> aggregation = doAggregate(values, aggregator, reducer.getTimeoutInMillis(), reducer.getParameters());
         return JsonUtils.fromMap(aggregation);
     }
 
+    @Override
+    public synchronized void deployExtension(String name, byte[] jar) throws StoreOperationException {
+        Extension extension = null;
+        try {
+            extension = Extension.load(name, jar);
+        } catch (IOException ex) {
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "Bad extension jar: " + name));
+        }
+        if (!extension.isEmpty()) {
+            Extension old = extensions.put(name, extension);
+            comparators.putAll(extension.getComparators());
+            conditions.putAll(extension.getConditions());
+            updaters.putAll(extension.getFunctions());
+            mappers.putAll(extension.getFunctions());
+            combiners.putAll(extension.getAggregators());
+            reducers.putAll(extension.getAggregators());
+            if (old != null) {
+                undeploy(old);
+            }
+            for (Bucket bucket : instances.values()) {
+                bucket.setComparators(comparators);
+                bucket.setConditions(conditions);
+                bucket.setUpdaters(updaters);
+                bucket.setMappers(mappers);
+            }
+            LOG.info("Deployed extension {}", name);
+        } else {
+            extension.discard();
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.BAD_REQUEST_ERROR_CODE, "No operators found in extension: " + name));
+        }
+    }
+
     @Override
     public void flush(FlushStrategy flushStrategy, FlushCondition flushCondition) {
         for (Bucket bucket : instances.values()) {
@@ -215,6 +275,27 @@ public class TCStore implements Store {
         this.compressedDocuments = compressed;
     }
 
+    @Override
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public void setCompressionPolicies(Map<String, CompressionPolicy> compressionPolicies) {
+        this.compressionPolicies.clear();
+        this.compressionPolicies.putAll(compressionPolicies);
+    }
+
+    @Override
+    public void setNearCacheSize(long nearCacheSize) {
+        this.nearCacheSize = nearCacheSize;
+    }
+
+    @Override
+    public void setFlushCondition(FlushCondition flushCondition) {
+        this.flushCondition = flushCondition;
+    }
+
     @Override
     public void setDefaultComparator(Comparator defaultComparator) {
         this.defaultComparator = defaultComparator;
@@ -256,6 +337,12 @@ public class TCStore implements Store {
         this.reducers.putAll(aggregators);
     }
 
+    @Override
+    public void setIndexes(Map<String, List<IndexDefinition>> indexes) {
+        this.indexes.clear();
+        this.indexes.putAll(indexes);
+    }
+
     @Override
     public void setSnapshotManager(SnapshotManager snapshotManager) {
         this.snapshotManager = snapshotManager;
@@ -271,9 +358,37 @@ public class TCStore implements Store {
         this.eventBus = eventBus;
     }
 
+    /**
+     * Create a new, not hydrated, {@link terrastore.store.Bucket} instance with the given name:
+     * subclasses may override this to provide different bucket implementations.
+     */
+    protected Bucket createBucket(String bucket) {
+        return new TCBucket(bucket);
+    }
+
+    /**
+     * Register the given bucket name as existent, without creating its instance.
+     */
+    protected void register(String bucket) {
+        buckets.lockEntry(bucket);
+        try {
+            if (!buckets.containsKey(bucket)) {
+                buckets.putNoReturn(bucket, bucket);
+            }
+        } finally {
+            buckets.unlockEntry(bucket);
+        }
+    }
+
     private void hydrateBucket(Bucket bucket) {
         // We need to manually set all of this because of TC not supporting injection ...
-        bucket.setCompressDocuments(compressedDocuments);
+        if (compressionPolicies.containsKey(bucket.getName())) {
+            bucket.setCompressionPolicy(compressionPolicies.get(bucket.getName()));
+        } else if (compressedDocuments) {
+            bucket.setCompressionPolicy(new CompressionPolicy(Codecs.LZF, compressThreshold));
+        }
+        bucket.setNearCacheSize(nearCacheSize);
+        bucket.setFlushCondition(flushCondition);
         bucket.setDefaultComparator(defaultComparator);
         bucket.setComparators(comparators);
         bucket.setConditions(conditions);
@@ -282,9 +397,33 @@ public class TCStore implements Store {
         bucket.setSnapshotManager(snapshotManager);
         bucket.setLockManager(lockManager);
         bucket.setEventBus(eventBus);
+        if (indexes.containsKey(bucket.getName())) {
+            bucket.setIndexes(indexes.get(bucket.getName()));
+        }
         // TODO: verify this is not a perf problem.
     }
 
+    private void undeploy(Extension extension) {
+        // Only remove operators not replaced by the new extension, that is, still pointing to the old instance:
+        removeOperators(comparators, extension.getComparators());
+        removeOperators(conditions, extension.getConditions());
+        removeOperators(updaters, extension.getFunctions());
+        removeOperators(mappers, extension.getFunctions());
+        removeOperators(combiners, extension.getAggregators());
+        removeOperators(reducers, extension.getAggregators());
+        extension.discard();
+    }
+
+    private <T> void removeOperators(ConcurrentMap<String, T> operators, Map<String, T> removed) {
+        for (Entry<String, T> operator : removed.entrySet()) {
+            operators.remove(operator.getKey(), operator.getValue());
+        }
+    }
+
+    private File getSpillDirectory() {
+        return IOUtils.getFileFromTerrastoreHome(Constants.SPILL_DIR);
+    }
+
     private Aggregator getAggregator(Map<String, Aggregator> aggregators, String aggregatorName) throws StoreOperationException {
         if (aggregators.containsKey(aggregatorName)) {
             return aggregators.get(aggregatorName);
@@ -351,6 +490,89 @@ public class TCStore implements Store {
         }
     }
 
+    private Map<String, Object> doFold(final Bucket bucket, final Set<Key> keys, final Mapper mapper, final IncrementalAggregator aggregator) throws StoreOperationException {
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        Future<Accumulator> task = null;
+        try {
+            task = GlobalExecutor.getQueryExecutor().submit(new Callable<Accumulator>() {
+
+                @Override
+                public Accumulator call() throws Exception {
+                    Accumulator result = ParallelUtils.parallelSliceFold(
+                            keys, 1000, // FIXME: make the slice size configurable
+                            new MapTask<Key, Map<String, Object>>() {
+
+                        @Override
+                        public Map<String, Object> map(Key input) throws ParallelExecutionException {
+                            try {
+                                if (cancelled.get()) {
+                                    throw new ParallelExecutionException(new InterruptedException("Interrupted due to timeout!"));
+                                } else {
+                                    return bucket.map(input, mapper);
+                                }
+                            } catch (StoreOperationException ex) {
+                                throw new ParallelExecutionException(ex);
+                            }
+                        }
+
+                    }, new FoldTask<Map<String, Object>, Accumulator>() {
+
+                        @Override
+                        public Accumulator newAccumulator() throws ParallelExecutionException {
+                            try {
+                                return aggregator.newAccumulator(mapper.getParameters());
+                            } catch (OperatorException ex) {
+                                throw new ParallelExecutionException(ex);
+                            }
+                        }
+
+                        @Override
+                        public Accumulator fold(Accumulator accumulator, Map<String, Object> output) throws ParallelExecutionException {
+                            try {
+                                accumulator.add(output);
+                                return accumulator;
+                            } catch (OperatorException ex) {
+                                throw new ParallelExecutionException(ex);
+                            }
+                        }
+
+                        @Override
+                        public Accumulator merge(Accumulator first, Accumulator second) throws ParallelExecutionException {
+                            try {
+                                first.merge(second);
+                                return first;
+                            } catch (OperatorException ex) {
+                                throw new ParallelExecutionException(ex);
+                            }
+                        }
+
+                    },
+                            GlobalExecutor.getQueryExecutor());
+                    return result;
+                }
+
+            });
+            return task.get(mapper.getTimeoutInMillis(), TimeUnit.MILLISECONDS).result();
+        } catch (TimeoutException ex) {
+            task.cancel(true);
+            cancelled.set(true);
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, "Map cancelled due to long execution time."));
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() instanceof ParallelExecutionException ? ex.getCause().getCause() : ex.getCause();
+            if (cause instanceof StoreOperationException) {
+                throw (StoreOperationException) cause;
+            } else if (cause instanceof OperatorException) {
+                throw new StoreOperationException(((OperatorException) cause).getErrorMessage());
+            } else {
+                throw new StoreOperationException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, ex.getMessage()));
+            }
+        } catch (OperatorException ex) {
+            throw new StoreOperationException(ex.getErrorMessage());
+        } catch (Exception ex) {
+            throw new StoreOperationException(new ErrorMessage(ErrorMessage.INTERNAL_SERVER_ERROR_CODE, ex.getMessage()));
+        }
+    }
+
     private Map<String, Object> doAggregate(final List<Map<String, Object>> values, final Aggregator aggregator, final long timeout, final Map<String, Object> parameters) throws StoreOperationException {
         Future<Map<String, Object>> task = null;
         try {
@@ -0,0 +1,237 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped file holding key/value records.
+ * <br><br>
+ * Each record is laid out as: key length (int), value length (int, -1 for tombstones), CRC-32 checksum (int) of lengths,
+ * key and value, key bytes, value bytes.<br>
+ * A zero key length marks the end of written data, as newly mapped files are zero-filled, while records with bad lengths
+ * or checksums (i.e. partially written because of a crash) mark the end of valid data on recovery.
+ *
+ * @author Sergio Bossa
+ */
+public class LogSegment {
+
+    public static final int HEADER_SIZE = 12;
+    public static final int TOMBSTONE = -1;
+    //
+    private final int id;
+    private final File file;
+    private final int capacity;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final AtomicLong garbage;
+    private volatile int position;
+
+    public LogSegment(int id, File file, int capacity) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        if (raf.length() < capacity) {
+            raf.setLength(capacity);
+        }
+        this.capacity = (int) raf.length();
+        this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        this.garbage = new AtomicLong(0);
+        this.position = 0;
+    }
+
+    public static int sizeOf(byte[] key, byte[] value) {
+        return HEADER_SIZE + key.length + (value != null ? value.length : 0);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public long getGarbage() {
+        return garbage.get();
+    }
+
+    public void addGarbage(int bytes) {
+        garbage.addAndGet(bytes);
+    }
+
+    public double getGarbageRatio() {
+        return position > 0 ? (double) garbage.get() / position : 0;
+    }
+
+    /**
+     * Append the given record, returning its offset, or -1 if the segment has no room left.
+     */
+    public synchronized int append(byte[] key, byte[] value) {
+        int size = sizeOf(key, value);
+        if (position + size <= capacity) {
+            int offset = position;
+            ByteBuffer writer = buffer.duplicate();
+            writer.position(offset);
+            writer.putInt(key.length);
+            writer.putInt(value != null ? value.length : TOMBSTONE);
+            writer.putInt(checksum(key, value));
+            writer.put(key);
+            if (value != null) {
+                writer.put(value);
+            }
+            position = offset + size;
+            return offset;
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Scan written records starting from the beginning of the segment, and move the write position
+     * right after the last valid record.
+     */
+    public synchronized void recover(RecordVisitor visitor) {
+        int offset = 0;
+        while (offset <= capacity - HEADER_SIZE) {
+            int keyLength = buffer.getInt(offset);
+            int valueLength = buffer.getInt(offset + 4);
+            int checksum = buffer.getInt(offset + 8);
+            // Compare lengths against the available room, rather than summing them, so that bad lengths can't overflow:
+            int available = capacity - offset - HEADER_SIZE;
+            if (keyLength > 0 && keyLength <= available && valueLength >= TOMBSTONE && valueLength <= available - keyLength) {
+                byte[] key = readKey(offset);
+                byte[] value = readValue(offset);
+                if (checksum == checksum(key, value)) {
+                    visitor.visit(this, offset, key, value == null);
+                    offset += HEADER_SIZE + keyLength + (value != null ? valueLength : 0);
+                } else {
+                    break;
+                }
+            } else {
+                break;
+            }
+        }
+        position = offset;
+    }
+
+    public void scan(RecordVisitor visitor) {
+        int limit = position;
+        int offset = 0;
+        while (offset < limit) {
+            int keyLength = buffer.getInt(offset);
+            int valueLength = buffer.getInt(offset + 4);
+            visitor.visit(this, offset, readKey(offset), valueLength == TOMBSTONE);
+            offset += HEADER_SIZE + keyLength + (valueLength > 0 ? valueLength : 0);
+        }
+    }
+
+    public int recordSize(int offset) {
+        int keyLength = buffer.getInt(offset);
+        int valueLength = buffer.getInt(offset + 4);
+        return HEADER_SIZE + keyLength + (valueLength > 0 ? valueLength : 0);
+    }
+
+    public boolean keyEquals(int offset, byte[] key) {
+        int keyLength = buffer.getInt(offset);
+        if (keyLength == key.length) {
+            int start = offset + HEADER_SIZE;
+            for (int i = 0; i < keyLength; i++) {
+                if (buffer.get(start + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public byte[] readKey(int offset) {
+        int keyLength = buffer.getInt(offset);
+        byte[] key = new byte[keyLength];
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(offset + HEADER_SIZE);
+        reader.get(key);
+        return key;
+    }
+
+    public byte[] readValue(int offset) {
+        int keyLength = buffer.getInt(offset);
+        int valueLength = buffer.getInt(offset + 4);
+        if (valueLength != TOMBSTONE) {
+            byte[] value = new byte[valueLength];
+            ByteBuffer reader = buffer.duplicate();
+            reader.position(offset + HEADER_SIZE + keyLength);
+            reader.get(value);
+            return value;
+        } else {
+            return null;
+        }
+    }
+
+    public void sync() {
+        buffer.force();
+    }
+
+    public void close() throws IOException {
+        sync();
+        raf.close();
+    }
+
+    public void delete() throws IOException {
+        raf.close();
+        file.delete();
+    }
+
+    private static int checksum(byte[] key, byte[] value) {
+        CRC32 crc = new CRC32();
+        updateChecksum(crc, key.length);
+        updateChecksum(crc, value != null ? value.length : TOMBSTONE);
+        crc.update(key);
+        if (value != null) {
+            crc.update(value);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void updateChecksum(CRC32 crc, int length) {
+        crc.update(length >>> 24);
+        crc.update(length >>> 16);
+        crc.update(length >>> 8);
+        crc.update(length);
+    }
+
+    public interface RecordVisitor {
+
+        public void visit(LogSegment segment, int offset, byte[] key, boolean tombstone);
+    }
+}
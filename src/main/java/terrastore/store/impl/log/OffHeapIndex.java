@@ -0,0 +1,207 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl.log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Open-addressing hash index living in direct (off-heap) memory, mapping keys to record locations.
+ * <br><br>
+ * Each slot holds the 64 bits key hash and the record location, encoded as segment id (high 32 bits) and
+ * offset (low 32 bits): keys themselves are not stored, but compared against the segment data through
+ * a {@link KeyResolver}.<br>
+ * This class is not thread-safe: callers must provide proper synchronization.
+ *
+ * @author Sergio Bossa
+ */
+public class OffHeapIndex {
+
+    private static final int SLOT_SIZE = 16;
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+    private static final float LOAD_FACTOR = 0.6f;
+    //
+    private final KeyResolver resolver;
+    private ByteBuffer table;
+    private int capacity;
+    private int size;
+    private int used;
+
+    public OffHeapIndex(int initialCapacity, KeyResolver resolver) {
+        this.resolver = resolver;
+        this.capacity = nextPowerOfTwo(Math.max(initialCapacity, 16));
+        this.table = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+    }
+
+    public static long location(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    public static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    public static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    public static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the location of the given key, or -1 if not found.
+     */
+    public long get(byte[] key) {
+        int slot = find(key, hash(key));
+        return slot >= 0 ? locationAt(slot) : -1;
+    }
+
+    /**
+     * Put the given key location, returning the previous one, or -1 if none.
+     */
+    public long put(byte[] key, long location) {
+        long hash = hash(key);
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            long previous = locationAt(slot);
+            table.putLong(slot * SLOT_SIZE + 8, location);
+            return previous;
+        } else {
+            if (used + 1 > capacity * LOAD_FACTOR) {
+                resize(size + 1 > capacity * LOAD_FACTOR / 2 ? capacity * 2 : capacity);
+            }
+            insert(hash, location);
+            size++;
+            return -1;
+        }
+    }
+
+    /**
+     * Update the given key location only if currently equal to the expected one.
+     */
+    public boolean replace(byte[] key, long expected, long update) {
+        int slot = find(key, hash(key));
+        if (slot >= 0 && locationAt(slot) == expected) {
+            table.putLong(slot * SLOT_SIZE + 8, update);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Remove the given key, returning its location, or -1 if not found.
+     */
+    public long remove(byte[] key) {
+        int slot = find(key, hash(key));
+        if (slot >= 0) {
+            long previous = locationAt(slot);
+            table.putLong(slot * SLOT_SIZE + 8, DELETED);
+            size--;
+            return previous;
+        } else {
+            return -1;
+        }
+    }
+
+    public void forEach(LocationVisitor visitor) {
+        for (int slot = 0; slot < capacity; slot++) {
+            long location = locationAt(slot);
+            if (location != EMPTY && location != DELETED) {
+                visitor.visit(location);
+            }
+        }
+    }
+
+    public void clear() {
+        table = ByteBuffer.allocateDirect(16 * SLOT_SIZE);
+        capacity = 16;
+        size = 0;
+        used = 0;
+    }
+
+    private int find(byte[] key, long hash) {
+        int mask = capacity - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        for (int probes = 0; probes < capacity; probes++) {
+            long location = locationAt(slot);
+            if (location == EMPTY) {
+                return -1;
+            } else if (location != DELETED && table.getLong(slot * SLOT_SIZE) == hash && resolver.keyMatches(location, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long hash, long location) {
+        int mask = capacity - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (locationAt(slot) != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table.putLong(slot * SLOT_SIZE, hash);
+        table.putLong(slot * SLOT_SIZE + 8, location);
+        used++;
+    }
+
+    private void resize(int newCapacity) {
+        ByteBuffer old = table;
+        int oldCapacity = capacity;
+        table = ByteBuffer.allocateDirect(newCapacity * SLOT_SIZE);
+        capacity = newCapacity;
+        used = 0;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long location = old.getLong(slot * SLOT_SIZE + 8);
+            if (location != EMPTY && location != DELETED) {
+                insert(old.getLong(slot * SLOT_SIZE), location);
+            }
+        }
+    }
+
+    private long locationAt(int slot) {
+        return table.getLong(slot * SLOT_SIZE + 8);
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        int result = 1;
+        while (result < value) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    public interface KeyResolver {
+
+        public boolean keyMatches(long location, byte[] key);
+    }
+
+    public interface LocationVisitor {
+
+        public void visit(long location);
+    }
+}
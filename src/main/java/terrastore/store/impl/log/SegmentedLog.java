@@ -0,0 +1,375 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl.log;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log-structured key/value storage made of append-only, memory-mapped {@link LogSegment}s, indexed by an {@link OffHeapIndex}.
+ * <br><br>
+ * Updates and removals are always appended to the active segment, so older segments accumulate garbage which is periodically
+ * reclaimed by a background compaction process, copying live records forward and deleting the old segment files.
+ *
+ * @author Sergio Bossa
+ */
+public class SegmentedLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentedLog.class);
+    //
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+    public static final long DEFAULT_COMPACTION_PERIOD = 60;
+    //
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int COMPACTION_BATCH = 1000;
+    private static final ScheduledExecutorService COMPACTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "SegmentedLog-Compactor");
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    });
+    //
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final File directory;
+    private final int segmentSize;
+    private final double compactionThreshold;
+    private final TreeMap<Integer, LogSegment> segments;
+    private final OffHeapIndex index;
+    private final ScheduledFuture<?> compaction;
+    private volatile LogSegment active;
+
+    public SegmentedLog(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACTION_THRESHOLD, DEFAULT_COMPACTION_PERIOD);
+    }
+
+    public SegmentedLog(File directory, int segmentSize, double compactionThreshold, long compactionPeriodInSeconds) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.segments = new TreeMap<Integer, LogSegment>();
+        this.index = new OffHeapIndex(1024, new SegmentKeyResolver());
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + directory.getAbsolutePath());
+        }
+        recover();
+        if (compactionPeriodInSeconds > 0) {
+            this.compaction = COMPACTOR.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (Exception ex) {
+                        LOG.error(ex.getMessage(), ex);
+                    }
+                }
+
+            }, compactionPeriodInSeconds, compactionPeriodInSeconds, TimeUnit.SECONDS);
+        } else {
+            this.compaction = null;
+        }
+    }
+
+    public byte[] get(byte[] key) {
+        lock.readLock().lock();
+        try {
+            long location = index.get(key);
+            if (location != -1) {
+                return segments.get(OffHeapIndex.segmentOf(location)).readValue(OffHeapIndex.offsetOf(location));
+            } else {
+                return null;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(byte[] key, byte[] value) throws IOException {
+        lock.writeLock().lock();
+        try {
+            long location = append(key, value);
+            long previous = index.put(key, location);
+            if (previous != -1) {
+                discard(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append all the given key/value pairs while holding the log lock only once: the given map is only iterated,
+     * so it may be keyed by arrays identity.
+     */
+    public void putAll(Map<byte[], byte[]> entries) throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+                long location = append(entry.getKey(), entry.getValue());
+                long previous = index.put(entry.getKey(), location);
+                if (previous != -1) {
+                    discard(previous);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(byte[] key) throws IOException {
+        lock.writeLock().lock();
+        try {
+            long previous = index.remove(key);
+            if (previous != -1) {
+                discard(previous);
+                long tombstone = append(key, null);
+                discard(tombstone);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<byte[]> keys() {
+        lock.readLock().lock();
+        try {
+            final List<byte[]> keys = new ArrayList<byte[]>(index.size());
+            index.forEach(new OffHeapIndex.LocationVisitor() {
+
+                @Override
+                public void visit(long location) {
+                    keys.add(segments.get(OffHeapIndex.segmentOf(location)).readKey(OffHeapIndex.offsetOf(location)));
+                }
+
+            });
+            return keys;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (LogSegment segment : segments.values()) {
+                segment.delete();
+            }
+            segments.clear();
+            index.clear();
+            active = newSegment(1, segmentSize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void sync() {
+        lock.readLock().lock();
+        try {
+            for (LogSegment segment : segments.values()) {
+                segment.sync();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        if (compaction != null) {
+            compaction.cancel(false);
+        }
+        lock.writeLock().lock();
+        try {
+            for (LogSegment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+            index.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compact all non-active segments whose garbage ratio exceeds the configured threshold, by copying their live records
+     * to the active segment and deleting them afterwards.<br>
+     * Copy happens in small batches, so that concurrent readers and writers are blocked only for short periods.
+     */
+    public void compact() throws IOException {
+        List<LogSegment> candidates = new LinkedList<LogSegment>();
+        lock.readLock().lock();
+        try {
+            for (LogSegment segment : segments.values()) {
+                if (segment != active && segment.getGarbageRatio() >= compactionThreshold) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (LogSegment segment : candidates) {
+            compact(segment);
+        }
+    }
+
+    private void compact(final LogSegment segment) throws IOException {
+        LOG.debug("Compacting segment {}", segment.getFile().getAbsolutePath());
+        final List<Integer> offsets = new ArrayList<Integer>();
+        segment.scan(new LogSegment.RecordVisitor() {
+
+            @Override
+            public void visit(LogSegment source, int offset, byte[] key, boolean tombstone) {
+                offsets.add(offset);
+            }
+
+        });
+        int current = 0;
+        while (current < offsets.size()) {
+            lock.writeLock().lock();
+            try {
+                int end = Math.min(current + COMPACTION_BATCH, offsets.size());
+                for (; current < end; current++) {
+                    int offset = offsets.get(current);
+                    byte[] key = segment.readKey(offset);
+                    long location = OffHeapIndex.location(segment.getId(), offset);
+                    if (index.get(key) == location) {
+                        long moved = append(key, segment.readValue(offset));
+                        index.replace(key, location, moved);
+                    } else if (index.get(key) == -1 && isTombstone(segment, offset) && !isOldest(segment)) {
+                        // Tombstones must be carried forward until no older segment may still hold the removed key:
+                        long moved = append(key, null);
+                        discard(moved);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            segments.remove(segment.getId());
+            segment.delete();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+
+        });
+        Map<Integer, File> ordered = new TreeMap<Integer, File>();
+        for (File file : files) {
+            String name = file.getName();
+            ordered.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+        }
+        for (Map.Entry<Integer, File> entry : ordered.entrySet()) {
+            LogSegment segment = new LogSegment(entry.getKey(), entry.getValue(), 0);
+            segments.put(segment.getId(), segment);
+            segment.recover(new LogSegment.RecordVisitor() {
+
+                @Override
+                public void visit(LogSegment source, int offset, byte[] key, boolean tombstone) {
+                    long location = OffHeapIndex.location(source.getId(), offset);
+                    long previous = tombstone ? index.remove(key) : index.put(key, location);
+                    if (previous != -1) {
+                        discard(previous);
+                    }
+                    if (tombstone) {
+                        source.addGarbage(source.recordSize(offset));
+                    }
+                }
+
+            });
+            active = segment;
+        }
+        if (active == null) {
+            active = newSegment(1, segmentSize);
+        }
+    }
+
+    private long append(byte[] key, byte[] value) throws IOException {
+        int offset = active.append(key, value);
+        if (offset == -1) {
+            active.sync();
+            active = newSegment(active.getId() + 1, Math.max(segmentSize, LogSegment.sizeOf(key, value)));
+            offset = active.append(key, value);
+        }
+        return OffHeapIndex.location(active.getId(), offset);
+    }
+
+    private void discard(long location) {
+        LogSegment segment = segments.get(OffHeapIndex.segmentOf(location));
+        segment.addGarbage(segment.recordSize(OffHeapIndex.offsetOf(location)));
+    }
+
+    private boolean isTombstone(LogSegment segment, int offset) {
+        return segment.readValue(offset) == null;
+    }
+
+    private boolean isOldest(LogSegment segment) {
+        return segments.firstKey() == segment.getId();
+    }
+
+    private LogSegment newSegment(int id, int size) throws IOException {
+        LogSegment segment = new LogSegment(id, new File(directory, SEGMENT_PREFIX + id + SEGMENT_SUFFIX), size);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private class SegmentKeyResolver implements OffHeapIndex.KeyResolver {
+
+        @Override
+        public boolean keyMatches(long location, byte[] key) {
+            LogSegment segment = segments.get(OffHeapIndex.segmentOf(location));
+            return segment != null && segment.keyEquals(OffHeapIndex.offsetOf(location), key);
+        }
+
+    }
+}
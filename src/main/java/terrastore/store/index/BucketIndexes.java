@@ -0,0 +1,91 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.index;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import terrastore.store.Key;
+import terrastore.store.Value;
+import terrastore.util.json.JsonUtils;
+
+/**
+ * Set of {@link SecondaryIndex}es defined over a given bucket.
+ * <br><br>
+ * Indexes must be updated by the bucket write path while holding the written key lock, and must be
+ * marked as ready once initially built out of all the bucket documents: only ready indexes are used for lookups.
+ *
+ * @author Sergio Bossa
+ */
+public class BucketIndexes {
+
+    private final List<SecondaryIndex> indexes;
+    private volatile boolean ready;
+
+    public BucketIndexes(List<IndexDefinition> definitions) {
+        this.indexes = new LinkedList<SecondaryIndex>();
+        for (IndexDefinition definition : definitions) {
+            indexes.add(new SecondaryIndex(definition));
+        }
+    }
+
+    public void update(Key key, Value oldValue, Value newValue) {
+        if (oldValue != null) {
+            Map<String, Object> document = JsonUtils.toUnmodifiableMap(oldValue);
+            for (SecondaryIndex index : indexes) {
+                index.remove(key, document);
+            }
+        }
+        if (newValue != null) {
+            Map<String, Object> document = JsonUtils.toUnmodifiableMap(newValue);
+            for (SecondaryIndex index : indexes) {
+                index.add(key, document);
+            }
+        }
+    }
+
+    /**
+     * Lookup the keys of documents possibly matching the given query: returned keys may be a superset of
+     * the actually matching ones, so documents should always be verified against the query.
+     *
+     * @return The set of candidate keys, or null if no ready index supports the given query.
+     */
+    public Set<Key> lookup(IndexQuery query) {
+        if (ready) {
+            for (SecondaryIndex index : indexes) {
+                if (index.supports(query)) {
+                    return index.lookup(query);
+                }
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        for (SecondaryIndex index : indexes) {
+            index.clear();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.index;
+
+/**
+ * Definition of a secondary index over the values found at the given path of bucket documents.<br>
+ * Paths are expressed as slash-separated field names, as in "/address/city".
+ *
+ * @author Sergio Bossa
+ */
+public class IndexDefinition {
+
+    public enum Type {
+
+        HASH, SORTED
+    }
+    //
+    private final String path;
+    private final Type type;
+
+    public IndexDefinition(String path, Type type) {
+        this.path = path;
+        this.type = type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + path;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.index;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Query over a document path, which may be answered by a secondary index, or evaluated directly over documents.<br>
+ * Supported expressions are:
+ * <ul>
+ * <li>eq(path,value) : selects documents whose value at the given path is equal to the given one.</li>
+ * <li>range(path,from,to) : selects documents whose value at the given path is between the given, inclusive, bounds;
+ * empty bounds are unbounded.</li>
+ * </ul>
+ * Values which can be parsed as numbers are compared numerically against numeric document values, and
+ * as strings against all others.
+ *
+ * @author Sergio Bossa
+ */
+public class IndexQuery {
+
+    public enum Operator {
+
+        EQ, RANGE
+    }
+    //
+    private static final IndexValueComparator COMPARATOR = new IndexValueComparator();
+    //
+    private final String path;
+    private final Operator operator;
+    private final String from;
+    private final String to;
+
+    private IndexQuery(String path, Operator operator, String from, String to) {
+        this.path = path;
+        this.operator = operator;
+        this.from = from;
+        this.to = to;
+    }
+
+    public static IndexQuery parse(String expression) {
+        try {
+            String name = expression.substring(0, expression.indexOf('(')).trim();
+            String arguments = expression.substring(expression.indexOf('(') + 1, expression.lastIndexOf(')'));
+            String path = arguments.substring(0, arguments.indexOf(',')).trim();
+            if (name.equals("eq")) {
+                String value = arguments.substring(arguments.indexOf(',') + 1);
+                return new IndexQuery(path, Operator.EQ, value, value);
+            } else if (name.equals("range")) {
+                String bounds = arguments.substring(arguments.indexOf(',') + 1);
+                String from = bounds.substring(0, bounds.lastIndexOf(','));
+                String to = bounds.substring(bounds.lastIndexOf(',') + 1);
+                return new IndexQuery(path, Operator.RANGE, from.length() > 0 ? from : null, to.length() > 0 ? to : null);
+            }
+        } catch (Exception ex) {
+        }
+        throw new IllegalArgumentException("Wrong index query expression: " + expression);
+    }
+
+    /**
+     * Extract all indexable values found at the given path of the given document: lists are expanded
+     * into their elements, while nested maps and null values are ignored.
+     */
+    public static List<Object> extract(Map<String, Object> document, String path) {
+        Object current = document;
+        for (String field : path.split("/")) {
+            if (field.length() > 0) {
+                if (current instanceof Map) {
+                    current = ((Map) current).get(field);
+                } else {
+                    return Collections.emptyList();
+                }
+            }
+        }
+        List<Object> result = new LinkedList<Object>();
+        if (current instanceof List) {
+            for (Object element : (List) current) {
+                addNormalized(result, element);
+            }
+        } else {
+            addNormalized(result, current);
+        }
+        return result;
+    }
+
+    public static Comparator<Object> getComparator() {
+        return COMPARATOR;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * Get the lower bound of this query, as typed value to be looked up into indexes, or null if unbounded.
+     */
+    public Object getFrom() {
+        return from != null ? typed(from, to) : null;
+    }
+
+    /**
+     * Get the upper bound of this query, as typed value to be looked up into indexes, or null if unbounded.
+     */
+    public Object getTo() {
+        return to != null ? typed(to, from) : null;
+    }
+
+    /**
+     * Get all values equal to the equality value of this query, one for each type it can be interpreted as.
+     */
+    public List<Object> getEqualityValues() {
+        List<Object> values = new LinkedList<Object>();
+        values.add(from);
+        Double number = toNumber(from);
+        if (number != null) {
+            values.add(number);
+        }
+        if (from.equals("true") || from.equals("false")) {
+            values.add(Boolean.valueOf(from));
+        }
+        return values;
+    }
+
+    public boolean matches(Map<String, Object> document) {
+        for (Object candidate : extract(document, path)) {
+            if (operator == Operator.EQ) {
+                if (getEqualityValues().contains(candidate)) {
+                    return true;
+                }
+            } else {
+                Object lower = getFrom();
+                Object upper = getTo();
+                if ((lower == null || sameKind(candidate, lower) && COMPARATOR.compare(candidate, lower) >= 0)
+                        && (upper == null || sameKind(candidate, upper) && COMPARATOR.compare(candidate, upper) <= 0)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void addNormalized(List<Object> result, Object value) {
+        if (value instanceof Number) {
+            result.add(((Number) value).doubleValue());
+        } else if (value instanceof String || value instanceof Boolean) {
+            result.add(value);
+        }
+    }
+
+    private static Object typed(String value, String other) {
+        // Bounds are numeric only if both (when present) can be parsed as numbers:
+        Double number = toNumber(value);
+        if (number != null && (other == null || toNumber(other) != null)) {
+            return number;
+        } else {
+            return value;
+        }
+    }
+
+    private static Double toNumber(String value) {
+        try {
+            return Double.valueOf(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static boolean sameKind(Object first, Object second) {
+        return first.getClass().equals(second.getClass());
+    }
+
+    private static class IndexValueComparator implements Comparator<Object> {
+
+        @Override
+        public int compare(Object first, Object second) {
+            int rank = rankOf(first) - rankOf(second);
+            if (rank == 0) {
+                return ((Comparable) first).compareTo(second);
+            } else {
+                return rank;
+            }
+        }
+
+        private int rankOf(Object value) {
+            if (value instanceof Boolean) {
+                return 0;
+            } else if (value instanceof Double) {
+                return 1;
+            } else {
+                return 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.index;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import terrastore.store.Key;
+
+/**
+ * Secondary index mapping values found at a given document path to the keys of the documents containing them.<br>
+ * Hash indexes support equality queries only, while sorted indexes also support range queries.
+ * <br><br>
+ * Lookups are lock-free, while modifications are serialized.
+ *
+ * @author Sergio Bossa
+ */
+public class SecondaryIndex {
+
+    private final IndexDefinition definition;
+    private final ConcurrentMap<Object, Set<Key>> entries;
+
+    public SecondaryIndex(IndexDefinition definition) {
+        this.definition = definition;
+        if (definition.getType() == IndexDefinition.Type.SORTED) {
+            this.entries = new ConcurrentSkipListMap<Object, Set<Key>>(IndexQuery.getComparator());
+        } else {
+            this.entries = new ConcurrentHashMap<Object, Set<Key>>();
+        }
+    }
+
+    public IndexDefinition getDefinition() {
+        return definition;
+    }
+
+    public boolean supports(IndexQuery query) {
+        return definition.getPath().equals(query.getPath())
+                && (query.getOperator() == IndexQuery.Operator.EQ || definition.getType() == IndexDefinition.Type.SORTED);
+    }
+
+    public synchronized void add(Key key, Map<String, Object> document) {
+        for (Object value : IndexQuery.extract(document, definition.getPath())) {
+            Set<Key> keys = entries.get(value);
+            if (keys == null) {
+                keys = Collections.newSetFromMap(new ConcurrentHashMap<Key, Boolean>());
+                entries.put(value, keys);
+            }
+            keys.add(key);
+        }
+    }
+
+    public synchronized void remove(Key key, Map<String, Object> document) {
+        for (Object value : IndexQuery.extract(document, definition.getPath())) {
+            Set<Key> keys = entries.get(value);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    entries.remove(value);
+                }
+            }
+        }
+    }
+
+    public Set<Key> lookup(IndexQuery query) {
+        Set<Key> result = new HashSet<Key>();
+        if (query.getOperator() == IndexQuery.Operator.EQ) {
+            for (Object value : query.getEqualityValues()) {
+                Set<Key> keys = entries.get(value);
+                if (keys != null) {
+                    result.addAll(keys);
+                }
+            }
+        } else {
+            NavigableMap<Object, Set<Key>> sorted = (NavigableMap<Object, Set<Key>>) entries;
+            Object from = query.getFrom();
+            Object to = query.getTo();
+            Class kind = from != null ? from.getClass() : (to != null ? to.getClass() : null);
+            if (from != null && to != null) {
+                sorted = sorted.subMap(from, true, to, true);
+            } else if (from != null) {
+                sorted = sorted.tailMap(from, true);
+            } else if (to != null) {
+                sorted = sorted.headMap(to, true);
+            }
+            for (Map.Entry<Object, Set<Key>> entry : sorted.entrySet()) {
+                if (kind == null || entry.getKey().getClass().equals(kind)) {
+                    result.addAll(entry.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.js;
+
+import java.io.InputStreamReader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+/**
+ * Bounded pool of JavaScript engines, each one used by a single thread at a time (so engines don't need to be thread-safe),
+ * and each one caching the functions it compiled, keyed by their source.
+ * <br><br>
+ * Every engine defines the following bridge functions, which take the function to invoke as first argument,
+ * convert Java maps and lists into JavaScript objects and arrays (and back for results), with no Json text involved:
+ * <ul>
+ * <li>invokeFunction(fn, key, value, params)</li>
+ * <li>invokeAggregator(fn, values, params)</li>
+ * <li>invokeCondition(fn, key, value)</li>
+ * </ul>
+ * Java objects returned by functions are kept as they are, while JavaScript dates are converted into ISO-8601 strings,
+ * as in Json.<br>
+ * The Rhino engine is preferred over other JavaScript engines, if available.
+ *
+ * @author Sergio Bossa
+ */
+public class JSEnginePool {
+
+    public static final int DEFAULT_SIZE = Runtime.getRuntime().availableProcessors();
+    public static final int MAX_FUNCTIONS = 256;
+    //
+    private static final String BRIDGE = ""
+            + "function toJS(o) { "
+            + "   if (o instanceof java.util.Map) { "
+            + "      var m = {}; "
+            + "      var it = o.entrySet().iterator(); "
+            + "      while (it.hasNext()) { var e = it.next(); m[String(e.getKey())] = toJS(e.getValue()); } "
+            + "      return m; "
+            + "   } else if (o instanceof java.util.List) { "
+            + "      var a = []; "
+            + "      var it = o.iterator(); "
+            + "      while (it.hasNext()) { a.push(toJS(it.next())); } "
+            + "      return a; "
+            + "   } else if (o instanceof java.lang.String) { "
+            + "      return String(o); "
+            + "   } else if (o instanceof java.lang.Number) { "
+            + "      return Number(o); "
+            + "   } else if (o instanceof java.lang.Boolean) { "
+            + "      return o.booleanValue() == true; "
+            + "   } else { "
+            + "      return o; "
+            + "   } "
+            + "} "
+            + "function isJava(o) { "
+            + "   return typeof o == 'object' && o instanceof java.lang.Object && typeof o.getClass == 'function'; "
+            + "} "
+            + "function fromJS(o) { "
+            + "   if (o === null || o === undefined) { "
+            + "      return null; "
+            + "   } else if (isJava(o)) { "
+            + "      return o; "
+            + "   } else if (o instanceof Array) { "
+            + "      var l = new java.util.ArrayList(); "
+            + "      for (var i = 0; i < o.length; i++) { l.add(fromJS(o[i])); } "
+            + "      return l; "
+            + "   } else if (o instanceof Date) { "
+            + "      return isNaN(o.getTime()) ? null : String(o.toISOString()); "
+            + "   } else if (typeof o == 'object') { "
+            + "      var m = new java.util.LinkedHashMap(); "
+            + "      for (var k in o) { if (o.hasOwnProperty(k) && typeof o[k] != 'function') { m.put(k, fromJS(o[k])); } } "
+            + "      return m; "
+            + "   } else if (typeof o == 'number') { "
+            + "      if (o % 1 == 0 && o >= -2147483648 && o <= 2147483647) { return new java.lang.Integer(o); } "
+            + "      else if (o % 1 == 0 && Math.abs(o) <= 9007199254740992) { return new java.lang.Long(o); } "
+            + "      else { return new java.lang.Double(o); } "
+            + "   } else if (typeof o == 'string') { "
+            + "      return new java.lang.String(o); "
+            + "   } else { "
+            + "      return o; "
+            + "   } "
+            + "} "
+            + "function invokeFunction(fn, key, value, params) { "
+            + "   return fromJS(fn(String(key), toJS(value), toJS(params))); "
+            + "} "
+            + "function invokeAggregator(fn, values, params) { "
+            + "   return fromJS(fn(toJS(values), toJS(params))); "
+            + "} "
+            + "function invokeCondition(fn, key, value) { "
+            + "   return fn(String(key), toJS(value)) ? true : false; "
+            + "}";
+    //
+    private static volatile JSEnginePool INSTANCE;
+    //
+    private final int size;
+    private final BlockingQueue<PooledEngine> idle;
+    private final List<PooledEngine> all;
+    private final AtomicInteger created;
+    private final Set<String> precompiled;
+
+    /**
+     * Get the pool shared by all JavaScript operators.
+     */
+    public static JSEnginePool getInstance() {
+        if (INSTANCE == null) {
+            synchronized (JSEnginePool.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new JSEnginePool(DEFAULT_SIZE);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    public JSEnginePool(int size) {
+        this.size = size;
+        this.idle = new LinkedBlockingQueue<PooledEngine>();
+        this.all = new CopyOnWriteArrayList<PooledEngine>();
+        this.created = new AtomicInteger(0);
+        this.precompiled = new CopyOnWriteArraySet<String>();
+    }
+
+    /**
+     * Invoke the given bridge function, passing the function with the given source, compiled only the first time
+     * it's used by the actual engine, followed by the given arguments.
+     */
+    public Object invoke(String bridge, String source, Object... arguments) throws ScriptException, NoSuchMethodException {
+        PooledEngine engine = acquire();
+        try {
+            return engine.invoke(bridge, source, arguments);
+        } finally {
+            idle.offer(engine);
+        }
+    }
+
+    /**
+     * Compile the function with the given source, so that compilation errors can be detected before invoking it.
+     */
+    public void compile(String source) throws ScriptException {
+        PooledEngine engine = acquire();
+        try {
+            engine.getFunction(source);
+        } finally {
+            idle.offer(engine);
+        }
+    }
+
+    /**
+     * Compile the function with the given source into all engines, current and future ones.
+     */
+    public void precompile(String source) throws ScriptException {
+        if (precompiled.add(source)) {
+            for (PooledEngine engine : all) {
+                engine.getFunction(source);
+            }
+        }
+    }
+
+    private PooledEngine acquire() throws ScriptException {
+        PooledEngine engine = idle.poll();
+        if (engine == null) {
+            if (created.incrementAndGet() <= size) {
+                try {
+                    engine = new PooledEngine();
+                    all.add(engine);
+                } catch (ScriptException ex) {
+                    created.decrementAndGet();
+                    throw ex;
+                } catch (RuntimeException ex) {
+                    created.decrementAndGet();
+                    throw ex;
+                }
+            } else {
+                created.decrementAndGet();
+                try {
+                    engine = idle.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a JavaScript engine.", ex);
+                }
+            }
+        }
+        return engine;
+    }
+
+    private class PooledEngine {
+
+        private final ScriptEngine engine;
+        private final Map<String, Object> functions;
+
+        public PooledEngine() throws ScriptException {
+            ScriptEngineManager manager = new ScriptEngineManager();
+            ScriptEngine rhino = manager.getEngineByName("rhino");
+            this.engine = rhino != null ? rhino : manager.getEngineByName("JavaScript");
+            if (engine == null) {
+                throw new IllegalStateException("No JavaScript engine found.");
+            }
+            this.engine.eval(new InputStreamReader(Thread.currentThread().getContextClassLoader().getResourceAsStream("json.js")));
+            this.engine.eval(BRIDGE);
+            this.functions = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    return size() > MAX_FUNCTIONS;
+                }
+            };
+            for (String source : precompiled) {
+                getFunction(source);
+            }
+        }
+
+        public synchronized Object invoke(String bridge, String source, Object... arguments) throws ScriptException, NoSuchMethodException {
+            Object[] actualArguments = new Object[arguments.length + 1];
+            actualArguments[0] = getFunction(source);
+            System.arraycopy(arguments, 0, actualArguments, 1, arguments.length);
+            return ((Invocable) engine).invokeFunction(bridge, actualArguments);
+        }
+
+        public synchronized Object getFunction(String source) throws ScriptException {
+            Object function = functions.get(source);
+            if (function == null) {
+                if (engine instanceof Compilable) {
+                    function = ((Compilable) engine).compile("(" + source + ")").eval();
+                } else {
+                    function = engine.eval("(" + source + ")");
+                }
+                functions.put(source, function);
+            }
+            return function;
+        }
+    }
+}
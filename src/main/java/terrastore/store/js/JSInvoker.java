@@ -20,17 +20,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import terrastore.store.operators.Function;
-import javax.script.Invocable;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import org.codehaus.jackson.map.ObjectMapper;
 import terrastore.store.operators.Aggregator;
 import terrastore.util.io.IOUtils;
 import static terrastore.startup.Constants.*;
@@ -66,7 +61,9 @@ import static terrastore.startup.Constants.*;
  *     return {};
  * }
  * </pre>
- * 
+ * Functions are compiled once per engine of the shared {@link JSEnginePool}, and functions declared on files
+ * under the Terrastore home javascript directory are loaded when the invoker is created, and precompiled by every engine.
+ *
  * @author Giuseppe Santoro
  * @author Sergio Bossa
  */
@@ -74,104 +71,76 @@ public class JSInvoker implements Aggregator, Function {
 
     private static final Logger LOG = LoggerFactory.getLogger(JSInvoker.class);
     //
-    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
-    //
     private static final String JS_SUFFIX = ".js";
     private static final String FUNCTION_PREFIX = "function";
     private static final String REFRESH = "refresh";
-    private static final String AGGREGATOR_WRAPPER = ""
-            + "function invokeAggregator(fn, values, params) { "
-            + "   return JSON.stringify(fn(values, params)); "
-            + "}";
-    private static final String FUNCTION_WRAPPER = ""
-            + "function invokeFunction(fn, key, value, params) { "
-            + "   return JSON.stringify(fn(key, value, params)); "
-            + "}";
     //
-    private static final ScriptEngine ENGINE;
-    private static IllegalStateException EXCEPTION;
-
-    static {
-        ENGINE = new ScriptEngineManager().getEngineByName("JavaScript");
-        try {
-            if (ENGINE != null && ENGINE.getFactory().getParameter("THREADING").equals("MULTITHREADED")) {
-                ENGINE.eval(new InputStreamReader(Thread.currentThread().getContextClassLoader().getResourceAsStream("json.js")));
-                ENGINE.eval(AGGREGATOR_WRAPPER);
-                ENGINE.eval(FUNCTION_WRAPPER);
-            } else if (ENGINE == null) {
-                EXCEPTION = new IllegalStateException("No JavaScript engine found.");
-            } else {
-                EXCEPTION = new IllegalStateException("The JavaScript engine is not thread-safe.");
-            }
-        } catch (Exception ex) {
-            EXCEPTION = new IllegalStateException(ex.getMessage(), ex);
-        }
-    }
-    //
-
     private final String name;
     private final ConcurrentMap<String, String> fnCache;
 
     public JSInvoker(String name) {
         this.name = name;
         this.fnCache = new ConcurrentHashMap<String, String>();
+        precompileFunctions();
     }
 
     @Override
     public Map<String, Object> apply(List<Map<String, Object>> values, Map<String, Object> parameters) {
-        if (EXCEPTION == null) {
-            try {
-                boolean refresh = hasRefresh(parameters);
-                String fn = getFunction(parameters.get(name).toString(), refresh);
-                if (fn != null) {
-                    Object result = ((Invocable) ENGINE).invokeFunction("invokeAggregator",
-                            ENGINE.eval("(" + fn.toString() + ")"),
-                            ENGINE.eval("(" + JSON_MAPPER.writeValueAsString(values) + ")"),
-                            ENGINE.eval("(" + JSON_MAPPER.writeValueAsString(parameters) + ")"));
-                    return JSON_MAPPER.readValue(result.toString(), Map.class);
-                } else {
-                    throw new IllegalStateException("No aggregator provided in client parameters!");
-                }
-            } catch (IllegalStateException ex) {
-                throw ex;
-            } catch (IOException ex) {
-                LOG.error(ex.getMessage(), ex);
-                throw new IllegalStateException(ex.getMessage(), ex);
-            } catch (Exception ex) {
-                LOG.error("Error in script execution.", ex);
-                throw new IllegalStateException("Error in script execution.", ex);
+        try {
+            boolean refresh = hasRefresh(parameters);
+            String fn = getFunction(parameters.get(name).toString(), refresh);
+            if (fn != null) {
+                return (Map<String, Object>) JSEnginePool.getInstance().invoke("invokeAggregator", fn, values, parameters);
+            } else {
+                throw new IllegalStateException("No aggregator provided in client parameters!");
             }
-        } else {
-            throw EXCEPTION;
+        } catch (IllegalStateException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            LOG.error(ex.getMessage(), ex);
+            throw new IllegalStateException(ex.getMessage(), ex);
+        } catch (Exception ex) {
+            LOG.error("Error in script execution.", ex);
+            throw new IllegalStateException("Error in script execution.", ex);
         }
     }
 
     public Map<String, Object> apply(String key, Map<String, Object> value, Map<String, Object> parameters) {
-        if (EXCEPTION == null) {
-            try {
-                boolean refresh = hasRefresh(parameters);
-                String fn = getFunction(parameters.get(name).toString(), refresh);
-                if (fn != null) {
-                    Object result = ((Invocable) ENGINE).invokeFunction("invokeFunction",
-                            ENGINE.eval("(" + fn.toString() + ")"),
-                            key,
-                            ENGINE.eval("(" + JSON_MAPPER.writeValueAsString(value) + ")"),
-                            ENGINE.eval("(" + JSON_MAPPER.writeValueAsString(parameters) + ")"));
-                    return JSON_MAPPER.readValue(result.toString(), Map.class);
-                } else {
-                    throw new IllegalStateException("No function provided in client parameters!");
+        try {
+            boolean refresh = hasRefresh(parameters);
+            String fn = getFunction(parameters.get(name).toString(), refresh);
+            if (fn != null) {
+                return (Map<String, Object>) JSEnginePool.getInstance().invoke("invokeFunction", fn, key, value, parameters);
+            } else {
+                throw new IllegalStateException("No function provided in client parameters!");
+            }
+        } catch (IllegalStateException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            LOG.error(ex.getMessage(), ex);
+            throw new IllegalStateException(ex.getMessage(), ex);
+        } catch (Exception ex) {
+            LOG.error("Error in script execution.", ex);
+            throw new IllegalStateException("Error in script execution.", ex);
+        }
+    }
+
+    private void precompileFunctions() {
+        try {
+            File[] files = IOUtils.getFileFromTerrastoreHome(JAVASCRIPT_DIR).listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (isDeclaredOnFile(file.getName())) {
+                        String fn = Files.toString(file, Charset.forName("UTF-8"));
+                        fnCache.put(file.getName(), fn);
+                        JSEnginePool.getInstance().precompile(fn);
+                    }
                 }
-            } catch (IllegalStateException ex) {
-                throw ex;
-            } catch (IOException ex) {
-                LOG.error(ex.getMessage(), ex);
-                throw new IllegalStateException(ex.getMessage(), ex);
-            } catch (Exception ex) {
-                LOG.error("Error in script execution.", ex);
-                throw new IllegalStateException("Error in script execution.", ex);
             }
-        } else {
-            throw EXCEPTION;
+        } catch (IllegalStateException ex) {
+            LOG.debug("Not precompiling JavaScript functions: " + ex.getMessage());
+        } catch (Exception ex) {
+            LOG.warn("Error while precompiling JavaScript functions!", ex);
         }
     }
 
@@ -184,7 +153,7 @@ public class JSInvoker implements Aggregator, Function {
         if (isDeclaredOnFile(declaration)) {
             if (!fnCache.containsKey(declaration) || refresh) {
                 fn = loadFunction(declaration);
-                fnCache.putIfAbsent(declaration, fn);
+                fnCache.put(declaration, fn);
             } else {
                 fn = fnCache.get(declaration);
             }
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.operators;
+
+import java.util.Map;
+
+/**
+ * Mutable, incrementally computed, aggregation state of an {@link IncrementalAggregator}.<br>
+ * Accumulators are confined to a single thread while adding values, and are handed over
+ * (with proper synchronization) to other threads only for merging.
+ *
+ * @author Sergio Bossa
+ */
+public interface Accumulator {
+
+    /**
+     * Add the given partial value, represented as a map of name -> value pairs, to this aggregation.
+     *
+     * @param partial The value to add.
+     * @throws {@link OperatorException} if something wrong happens during execution.
+     */
+    public void add(Map<String, Object> partial) throws OperatorException;
+
+    /**
+     * Merge the aggregation state of the given accumulator, created by the same aggregator, into this one.
+     *
+     * @param other The accumulator to merge.
+     * @throws {@link OperatorException} if something wrong happens during execution.
+     */
+    public void merge(Accumulator other) throws OperatorException;
+
+    /**
+     * Get the aggregation result.
+     *
+     * @return A map of aggregated values.
+     * @throws {@link OperatorException} if something wrong happens during execution.
+     */
+    public Map<String, Object> result() throws OperatorException;
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.operators;
+
+/**
+ * {@link Condition} whose expressions can be compiled once, and then evaluated on several bucket values:
+ * conditions evaluated by predicate queries over many values should implement this interface, so that
+ * expressions are parsed only once per query (see {@link CompiledConditions}).
+ *
+ * @author Sergio Bossa
+ */
+public interface CompilableCondition extends Condition {
+
+    /**
+     * Compile the given condition expression.<br>
+     * Compiled conditions are cached and shared between threads, so they must be thread-safe.
+     *
+     * @param expression The condition expression.
+     * @return The compiled condition.
+     * @throws {@link OperatorException} if the expression is wrong.
+     */
+    public CompiledCondition compile(String expression) throws OperatorException;
+}
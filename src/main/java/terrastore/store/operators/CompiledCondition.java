@@ -0,0 +1,38 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.operators;
+
+import java.util.Map;
+
+/**
+ * Condition expression compiled by a {@link CompilableCondition}, ready to be evaluated on bucket values
+ * without parsing the expression again.
+ *
+ * @author Sergio Bossa
+ */
+public interface CompiledCondition {
+
+    /**
+     * Evaluate this compiled condition on the given value, represented as a map of name -> value pairs
+     * (see {@link Condition#isSatisfied(String, Map, String)}).
+     *
+     * @param key The key of the value.
+     * @param value The value to evaluate condition on.
+     * @return True if satisfied, false otherwise.
+     * @throws {@link OperatorException} if something wrong happens during execution.
+     */
+    public boolean isSatisfied(String key, Map<String, Object> value) throws OperatorException;
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.operators;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of {@link CompiledCondition}s, keyed by condition and expression, so that the same expressions
+ * used by different queries are compiled only once.<br>
+ * Conditions not implementing {@link CompilableCondition} are adapted to evaluate their (uncompiled) expression every time.
+ *
+ * @author Sergio Bossa
+ */
+public class CompiledConditions {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    //
+    private static volatile Map<CacheKey, CompiledCondition> CACHE = makeCache(DEFAULT_MAX_SIZE);
+
+    /**
+     * Set the max number of compiled conditions to cache, discarding the currently cached ones.
+     */
+    public static void setMaxSize(int maxSize) {
+        CACHE = makeCache(maxSize);
+    }
+
+    /**
+     * Get the compiled form of the given expression for the given condition, compiling it only if not already cached.
+     */
+    public static CompiledCondition compile(Condition condition, String expression) throws OperatorException {
+        if (condition instanceof CompilableCondition) {
+            Map<CacheKey, CompiledCondition> cache = CACHE;
+            CacheKey key = new CacheKey(condition, expression);
+            CompiledCondition compiled = cache.get(key);
+            if (compiled == null) {
+                // Concurrent compilations of the same expression are harmless, being compiled conditions stateless:
+                compiled = ((CompilableCondition) condition).compile(expression);
+                cache.put(key, compiled);
+            }
+            return compiled;
+        } else {
+            return new UncompiledCondition(condition, expression);
+        }
+    }
+
+    private static Map<CacheKey, CompiledCondition> makeCache(final int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<CacheKey, CompiledCondition>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CompiledCondition> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    private static class CacheKey {
+
+        private final Condition condition;
+        private final String expression;
+
+        public CacheKey(Condition condition, String expression) {
+            this.condition = condition;
+            this.expression = expression;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof CacheKey) {
+                CacheKey other = (CacheKey) obj;
+                return this.condition == other.condition && this.expression.equals(other.expression);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(condition) * 31 + expression.hashCode();
+        }
+    }
+
+    private static class UncompiledCondition implements CompiledCondition {
+
+        private final Condition condition;
+        private final String expression;
+
+        public UncompiledCondition(Condition condition, String expression) {
+            this.condition = condition;
+            this.expression = expression;
+        }
+
+        @Override
+        public boolean isSatisfied(String key, Map<String, Object> value) throws OperatorException {
+            return condition.isSatisfied(key, value, expression);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.operators;
+
+import java.util.Map;
+
+/**
+ * {@link Aggregator} which can aggregate values one at a time, as they're produced, rather than all at once:
+ * combiners used by map operations over many values should implement this interface, so that map outputs
+ * are folded while mapping rather than held in memory until the end.
+ *
+ * @author Sergio Bossa
+ */
+public interface IncrementalAggregator extends Aggregator {
+
+    /**
+     * Create a new, empty, accumulator, optionally taking into account given parameters.<br>
+     * Adding a list of values to a new accumulator must give the same result as {@link #apply(java.util.List, java.util.Map)}.
+     *
+     * @param parameters Optional parameters.
+     * @return The new accumulator.
+     * @throws {@link OperatorException} if something wrong happens during execution.
+     */
+    public Accumulator newAccumulator(Map<String, Object> parameters) throws OperatorException;
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.snapshot;
+
+import java.util.Comparator;
+
+/**
+ * {@link SnapshotBackendFactory} implementation creating a {@link MemorySnapshotBackend} for snapshots whose size doesn't exceed
+ * the configured memory threshold, and an {@link HawtDBSnapshotBackend} for larger ones.<br>
+ * A memory threshold of 0 always creates disk-based backends, while a negative one always creates memory-based backends.
+ *
+ * @author Sergio Bossa
+ */
+public class DefaultSnapshotBackendFactory implements SnapshotBackendFactory {
+
+    public static final int DEFAULT_MEMORY_THRESHOLD = 100000;
+    //
+    private volatile int memoryThreshold;
+
+    public DefaultSnapshotBackendFactory() {
+        this(DEFAULT_MEMORY_THRESHOLD);
+    }
+
+    public DefaultSnapshotBackendFactory(int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    @Override
+    public SnapshotBackend create(String name, Comparator<String> comparator, int size) {
+        if (isInMemory(size)) {
+            return new MemorySnapshotBackend(comparator);
+        } else {
+            return new HawtDBSnapshotBackend(name, comparator);
+        }
+    }
+
+    @Override
+    public boolean isSuitable(SnapshotBackend backend, int size) {
+        return isInMemory(size) ? backend instanceof MemorySnapshotBackend : backend instanceof HawtDBSnapshotBackend;
+    }
+
+    public void setMemoryThreshold(int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    private boolean isInMemory(int size) {
+        return memoryThreshold < 0 || size <= memoryThreshold && memoryThreshold > 0;
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.snapshot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.fusesource.hawtbuf.codec.Codec;
+import org.fusesource.hawtbuf.codec.StringCodec;
+import org.fusesource.hawtdb.api.BTreeIndexFactory;
+import org.fusesource.hawtdb.api.SortedIndex;
+import org.fusesource.hawtdb.api.Transaction;
+import org.fusesource.hawtdb.api.TxPageFileFactory;
+import terrastore.store.Key;
+import terrastore.util.io.IOUtils;
+import static terrastore.startup.Constants.*;
+
+/**
+ * {@link SnapshotBackend} implementation keeping keys into an HawtDB B-tree, stored into a page file
+ * under the snapshots directory, and hence suitable for snapshots too large to be kept in memory.
+ *
+ * @author Sergio Bossa
+ */
+public class HawtDBSnapshotBackend implements SnapshotBackend {
+
+    private static final int FLUSH_THRESHOLD = 1000;
+    //
+    private final Comparator<String> comparator;
+    private final File file;
+    private final TxPageFileFactory pageFactory;
+    private final BTreeIndexFactory<String, String> indexFactory;
+    private int unflushedChanges;
+
+    public HawtDBSnapshotBackend(String name, Comparator<String> comparator) {
+        this.comparator = comparator;
+        this.file = getFile(name);
+        this.pageFactory = new TxPageFileFactory();
+        this.pageFactory.setPageSize((short) 512);
+        this.pageFactory.setFile(file);
+        this.pageFactory.open();
+        this.indexFactory = new BTreeIndexFactory<String, String>();
+        this.indexFactory.setComparator(comparator);
+        this.indexFactory.setKeyCodec(StringCodec.INSTANCE);
+        this.indexFactory.setValueCodec(new EmptyCodec());
+    }
+
+    @Override
+    public void load(String[] sortedKeys) {
+        Transaction tx = pageFactory.getTxPageFile().tx();
+        SortedIndex<String, String> index = indexFactory.openOrCreate(tx);
+        try {
+            index.clear();
+            // Keys are inserted in order, touching B-tree pages sequentially rather than randomly:
+            for (String key : sortedKeys) {
+                index.put(key, "");
+            }
+        } finally {
+            tx.commit();
+            tx.flush();
+            unflushedChanges = 0;
+        }
+    }
+
+    @Override
+    public void add(String key) {
+        Transaction tx = pageFactory.getTxPageFile().tx();
+        SortedIndex<String, String> index = indexFactory.openOrCreate(tx);
+        try {
+            index.put(key, "");
+        } finally {
+            commit(tx);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        Transaction tx = pageFactory.getTxPageFile().tx();
+        SortedIndex<String, String> index = indexFactory.openOrCreate(tx);
+        try {
+            index.remove(key);
+        } finally {
+            commit(tx);
+        }
+    }
+
+    @Override
+    public Set<Key> keysInRange(String start, String end, int limit) {
+        Transaction tx = pageFactory.getTxPageFile().tx();
+        SortedIndex<String, String> index = indexFactory.openOrCreate(tx);
+        try {
+            LinkedHashSet<Key> result = new LinkedHashSet<Key>();
+            Iterator<Entry<String, String>> entries = index.iterator(start);
+            int counter = 1;
+            while (entries.hasNext()) {
+                Entry<String, String> entry = entries.next();
+                if ((end == null || comparator.compare(entry.getKey(), end) <= 0) && (limit == 0 || counter++ <= limit)) {
+                    result.add(new Key(entry.getKey()));
+                } else {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            // Read-only transaction, nothing to commit:
+            tx.rollback();
+        }
+    }
+
+    @Override
+    public void discard() {
+        // Close and delete the page file, as the backend may be discarded while its snapshot is kept into another backend:
+        try {
+            pageFactory.close();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void commit(Transaction tx) {
+        tx.commit();
+        // Flush to disk only periodically, as committed changes are already visible to readers:
+        if (++unflushedChanges >= FLUSH_THRESHOLD) {
+            tx.flush();
+            unflushedChanges = 0;
+        }
+    }
+
+    private File getFile(String fileName) {
+        File file = IOUtils.getFileFromTerrastoreHome(SNAPSHOTS_DIR + File.separator + fileName + ".hdb");
+        file.delete();
+        return file;
+    }
+
+    private static class EmptyCodec implements Codec<String> {
+
+        @Override
+        public void encode(String object, DataOutput dataOut) throws IOException {
+        }
+
+        @Override
+        public String decode(DataInput dataIn) throws IOException {
+            return "";
+        }
+
+        @Override
+        public int getFixedSize() {
+            return 0;
+        }
+
+        @Override
+        public int estimatedSize(String object) {
+            return 0;
+        }
+
+        @Override
+        public boolean isDeepCopySupported() {
+            return true;
+        }
+
+        @Override
+        public String deepCopy(String source) {
+            return "";
+        }
+
+        @Override
+        public boolean isEstimatedSizeSupported() {
+            return true;
+        }
+
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.snapshot;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import terrastore.store.Key;
+
+/**
+ * {@link SnapshotBackend} implementation keeping keys into an in-memory concurrent skip list,
+ * so that range queries never hit the disk.
+ *
+ * @author Sergio Bossa
+ */
+public class MemorySnapshotBackend implements SnapshotBackend {
+
+    private final Comparator<String> comparator;
+    private volatile ConcurrentSkipListSet<String> keys;
+
+    public MemorySnapshotBackend(Comparator<String> comparator) {
+        this.comparator = comparator;
+        this.keys = new ConcurrentSkipListSet<String>(comparator);
+    }
+
+    @Override
+    public void load(String[] sortedKeys) {
+        ConcurrentSkipListSet<String> loaded = new ConcurrentSkipListSet<String>(comparator);
+        loaded.addAll(Arrays.asList(sortedKeys));
+        keys = loaded;
+    }
+
+    @Override
+    public void add(String key) {
+        keys.add(key);
+    }
+
+    @Override
+    public void remove(String key) {
+        keys.remove(key);
+    }
+
+    @Override
+    public Set<Key> keysInRange(String start, String end, int limit) {
+        LinkedHashSet<Key> result = new LinkedHashSet<Key>();
+        Iterator<String> range = keys.tailSet(start, true).iterator();
+        int counter = 1;
+        while (range.hasNext()) {
+            String key = range.next();
+            if ((end == null || comparator.compare(key, end) <= 0) && (limit == 0 || counter++ <= limit)) {
+                result.add(new Key(key));
+            } else {
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void discard() {
+        keys.clear();
+    }
+}
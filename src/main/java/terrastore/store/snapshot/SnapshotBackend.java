@@ -0,0 +1,64 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.snapshot;
+
+import java.util.Set;
+import terrastore.store.Key;
+
+/**
+ * Storage backend for {@link terrastore.store.SortedSnapshot} keys.<br>
+ * Implementations don't need to be thread safe, as concurrent access is managed by the owning snapshot.
+ *
+ * @author Sergio Bossa
+ */
+public interface SnapshotBackend {
+
+    /**
+     * Replace all backend keys with the given ones.
+     *
+     * @param sortedKeys Keys to load, already sorted by the snapshot comparator.
+     */
+    public void load(String[] sortedKeys);
+
+    /**
+     * Add the given key.
+     *
+     * @param key The key to add.
+     */
+    public void add(String key);
+
+    /**
+     * Remove the given key.
+     *
+     * @param key The key to remove.
+     */
+    public void remove(String key);
+
+    /**
+     * Get all keys falling into the given range, sorted by the snapshot comparator.
+     *
+     * @param start First key in range.
+     * @param end Last key in range (inclusive), or null for no upper bound.
+     * @param limit Max number of keys to return, or 0 for no limit.
+     * @return The sorted set of keys in range.
+     */
+    public Set<Key> keysInRange(String start, String end, int limit);
+
+    /**
+     * Discard all keys and release backend resources.
+     */
+    public void discard();
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.snapshot;
+
+import java.util.Comparator;
+
+/**
+ * Factory for {@link SnapshotBackend}s, choosing the backend implementation to use for the snapshot to create.
+ *
+ * @author Sergio Bossa
+ */
+public interface SnapshotBackendFactory {
+
+    /**
+     * Create a new {@link SnapshotBackend}.
+     *
+     * @param name The name of the snapshot.
+     * @param comparator The comparator used to sort keys.
+     * @param size The number of keys the snapshot is going to be initially loaded with.
+     * @return The created backend.
+     */
+    public SnapshotBackend create(String name, Comparator<String> comparator, int size);
+
+    /**
+     * Determine if the given backend, previously created by this factory, is still the right choice for a snapshot
+     * going to be fully reloaded with the given number of keys: if not, the backend is discarded and a new one created.
+     *
+     * @param backend The backend to check.
+     * @param size The number of keys the snapshot is going to be loaded with.
+     * @return True if the backend can be kept, false otherwise.
+     */
+    public boolean isSuitable(SnapshotBackend backend, int size);
+}
@@ -15,6 +15,7 @@
  */
 package terrastore.util.annotation;
 
+import java.net.URL;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
@@ -37,15 +38,24 @@ public class AnnotationScanner {
     private static final Logger LOG = LoggerFactory.getLogger(AnnotationScanner.class);
     //
     private final AnnotationDB annotations;
+    private final ClassLoader classLoader;
 
     public AnnotationScanner() {
+        this(ClasspathUrlFinder.findClassPaths(), null);
+    }
+
+    /**
+     * Scan only the given archives, loading classes with the given class loader (or the context class loader if null).
+     */
+    public AnnotationScanner(URL[] archives, ClassLoader classLoader) {
+        this.classLoader = classLoader;
         annotations = new AnnotationDB();
         annotations.setScanClassAnnotations(true);
         annotations.setScanFieldAnnotations(false);
         annotations.setScanMethodAnnotations(false);
         annotations.setScanParameterAnnotations(false);
         try {
-            annotations.scanArchives(ClasspathUrlFinder.findClassPaths());
+            annotations.scanArchives(archives);
         } catch (Exception ex) {
             LOG.warn("Error while scanning for Autowired objects!", ex);
         }
@@ -64,7 +74,7 @@ public class AnnotationScanner {
         if (autowiredObjects != null) {
             for (String name : autowiredObjects) {
                 try {
-                    Class candidateClass = Class.forName(name, false, Thread.currentThread().getContextClassLoader());
+                    Class candidateClass = Class.forName(name, false, classLoader != null ? classLoader : Thread.currentThread().getContextClassLoader());
                     if (type.isAssignableFrom(candidateClass)) {
                         Object object = makeInstance(candidateClass);
                         AutoDetect annotation = object.getClass().getAnnotation(AutoDetect.class);
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.collect;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent cache bounded by the total weight of its values, evicting by a W-TinyLFU-like policy:
+ * new entries are first kept into a small LRU admission window, and then admitted into the main LRU space
+ * only if estimated to be accessed more frequently than the entry they would evict.
+ * <br><br>
+ * Access frequencies are estimated through a small count-min sketch, periodically aged by halving its counters.<br>
+ * The cache is split into independently locked segments to reduce contention.<br>
+ * In order to avoid caching stale values loaded concurrently with an invalidation, values must be put
+ * by providing the stamp obtained (through {@link #stamp(Object)}) before loading them: if the related key has been
+ * invalidated in the meantime, the value will not be cached.
+ *
+ * @author Sergio Bossa
+ */
+public class WeightedCache<K, V> {
+
+    private static final int SEGMENTS = 16;
+    private static final float WINDOW_RATIO = 0.01f;
+    //
+    private final Segment[] segments;
+    private final Weigher<V> weigher;
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    @SuppressWarnings("unchecked")
+    public WeightedCache(long maxWeight, Weigher<V> weigher) {
+        this.segments = new WeightedCache.Segment[SEGMENTS];
+        this.weigher = weigher;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxWeight / SEGMENTS);
+        }
+    }
+
+    public V get(K key) {
+        V value = segmentFor(key).get(key);
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    public long stamp(K key) {
+        return segmentFor(key).stamp();
+    }
+
+    public void put(K key, V value, long stamp) {
+        segmentFor(key).put(key, value, weigher.weigh(value), stamp);
+    }
+
+    public void invalidate(K key) {
+        segmentFor(key).invalidate(key);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private Segment segmentFor(K key) {
+        return segments[spread(key.hashCode()) & (SEGMENTS - 1)];
+    }
+
+    private static int spread(int hash) {
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        hash ^= (hash >>> 13);
+        return hash;
+    }
+
+    public interface Weigher<V> {
+
+        public int weigh(V value);
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final int weight;
+
+        public Entry(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private class Segment {
+
+        private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+        private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+        private final FrequencySketch sketch = new FrequencySketch();
+        private final long maxWindowWeight;
+        private final long maxMainWeight;
+        private long windowWeight;
+        private long mainWeight;
+        private long generation;
+
+        public Segment(long maxWeight) {
+            this.maxWindowWeight = Math.max(1, (long) (maxWeight * WINDOW_RATIO));
+            this.maxMainWeight = Math.max(0, maxWeight - maxWindowWeight);
+        }
+
+        public synchronized V get(K key) {
+            sketch.increment(key.hashCode());
+            Entry<V> entry = window.get(key);
+            if (entry == null) {
+                entry = main.get(key);
+            }
+            return entry != null ? entry.value : null;
+        }
+
+        public synchronized long stamp() {
+            return generation;
+        }
+
+        public synchronized void put(K key, V value, int weight, long stamp) {
+            if (stamp == generation && weight <= maxMainWeight && !window.containsKey(key) && !main.containsKey(key)) {
+                window.put(key, new Entry<V>(value, weight));
+                windowWeight += weight;
+                while (windowWeight > maxWindowWeight) {
+                    Iterator<Map.Entry<K, Entry<V>>> it = window.entrySet().iterator();
+                    Map.Entry<K, Entry<V>> candidate = it.next();
+                    it.remove();
+                    windowWeight -= candidate.getValue().weight;
+                    admit(candidate.getKey(), candidate.getValue());
+                }
+            }
+        }
+
+        public synchronized void invalidate(K key) {
+            generation++;
+            Entry<V> entry = window.remove(key);
+            if (entry != null) {
+                windowWeight -= entry.weight;
+            } else {
+                entry = main.remove(key);
+                if (entry != null) {
+                    mainWeight -= entry.weight;
+                }
+            }
+        }
+
+        public synchronized void clear() {
+            generation++;
+            window.clear();
+            main.clear();
+            windowWeight = 0;
+            mainWeight = 0;
+        }
+
+        public synchronized int size() {
+            return window.size() + main.size();
+        }
+
+        private void admit(K key, Entry<V> candidate) {
+            Iterator<Map.Entry<K, Entry<V>>> it = main.entrySet().iterator();
+            if (mainWeight + candidate.weight > maxMainWeight) {
+                int candidateFrequency = sketch.frequency(key.hashCode());
+                int victimFrequency = it.hasNext() ? sketch.frequency(main.entrySet().iterator().next().getKey().hashCode()) : 0;
+                if (candidateFrequency > victimFrequency) {
+                    while (mainWeight + candidate.weight > maxMainWeight && it.hasNext()) {
+                        Map.Entry<K, Entry<V>> victim = it.next();
+                        it.remove();
+                        mainWeight -= victim.getValue().weight;
+                        evictions.incrementAndGet();
+                    }
+                } else {
+                    evictions.incrementAndGet();
+                    return;
+                }
+            }
+            main.put(key, candidate);
+            mainWeight += candidate.weight;
+        }
+    }
+
+    private static class FrequencySketch {
+
+        private static final int ROWS = 4;
+        private static final int WIDTH = 1024;
+        private static final int MAX_COUNT = 15;
+        private static final int SAMPLE_SIZE = WIDTH * 10;
+        private static final int[] SEEDS = new int[]{0x97cb3127, 0xb7b5d2a1, 0x2f3b9c45, 0x6d2b79f5};
+        //
+        private final byte[][] counters = new byte[ROWS][WIDTH];
+        private int additions;
+
+        public void increment(int hash) {
+            boolean incremented = false;
+            for (int i = 0; i < ROWS; i++) {
+                int index = indexOf(hash, i);
+                if (counters[i][index] < MAX_COUNT) {
+                    counters[i][index]++;
+                    incremented = true;
+                }
+            }
+            if (incremented && ++additions >= SAMPLE_SIZE) {
+                reset();
+            }
+        }
+
+        public int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < ROWS; i++) {
+                frequency = Math.min(frequency, counters[i][indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (int i = 0; i < ROWS; i++) {
+                for (int j = 0; j < WIDTH; j++) {
+                    counters[i][j] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & (WIDTH - 1);
+        }
+    }
+}
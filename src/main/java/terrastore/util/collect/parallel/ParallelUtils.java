@@ -16,8 +16,11 @@
 package terrastore.util.collect.parallel;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -38,6 +41,9 @@ import com.google.common.collect.Iterables;
  */
 public class ParallelUtils {
 
+    // Twice the size of executors used for queries, so that they're kept busy while slices are merged:
+    private static final int MAX_RUNNING_SLICES = Runtime.getRuntime().availableProcessors() * 4;
+
     public static <E extends Comparable> Set<E> parallelMerge(List<Set<E>> sets, ForkJoinPool fjPool) throws ParallelExecutionException {
         ParallelMergeTask task = new ParallelMergeTask<E>(sets);
         fjPool.execute(task);
@@ -45,6 +51,18 @@ public class ParallelUtils {
         return task.getMerged();
     }
 
+    /**
+     * Sort the given array in place by the given comparator, through a parallel merge sort executed on the given fork/join pool.
+     */
+    public static <E> void parallelSort(E[] elements, Comparator<? super E> comparator, ForkJoinPool fjPool) {
+        if (elements.length <= ParallelSortTask.THRESHOLD) {
+            Arrays.sort(elements, comparator);
+        } else {
+            E[] buffer = Arrays.copyOf(elements, elements.length);
+            fjPool.invoke(new ParallelSortTask<E>(elements, buffer, 0, elements.length, comparator));
+        }
+    }
+
     public static <I, O, C extends Collection> C parallelMap(final Collection<I> input, final MapTask<I, O> mapper, final MapCollector<O, C> collector, ExecutorService executor) throws ParallelExecutionException {
         try {
             List<Callable<O>> tasks = new ArrayList<Callable<O>>(input.size());
@@ -120,6 +138,136 @@ public class ParallelUtils {
         }
     }
 
+    /**
+     * Map the given input in slices, folding outputs into one accumulator per slice as soon as they're produced,
+     * and merging slice accumulators pairwise as soon as slices complete: only a bounded number of slices is running
+     * (or waiting for merge) at any given time, so only a few accumulators are kept in memory, rather than all outputs.
+     */
+    public static <I, O, A> A parallelSliceFold(final Collection<I> input, int sliceSize, final MapTask<I, O> mapper, final FoldTask<O, A> folder, ExecutorService executor) throws ParallelExecutionException {
+        try {
+            Iterator<List<I>> slices = Iterables.partition(input, sliceSize).iterator();
+            // Slices are submitted in input order, and a new one is submitted only when the oldest one is taken for merge,
+            // so that completed slices don't pile up waiting for a slow one:
+            LinkedList<Future<A>> running = new LinkedList<Future<A>>();
+            while (running.size() < MAX_RUNNING_SLICES && slices.hasNext()) {
+                running.add(executor.submit(newSliceTask(slices.next(), mapper, folder)));
+            }
+            // Slice accumulators are merged pairwise as soon as they're taken, in input order, like a binary counter:
+            // so only a logarithmic number of them is kept waiting for merge.
+            LinkedList<A> accumulators = new LinkedList<A>();
+            LinkedList<Integer> ranks = new LinkedList<Integer>();
+            try {
+                while (!running.isEmpty()) {
+                    A accumulator = running.removeFirst().get();
+                    if (slices.hasNext()) {
+                        running.add(executor.submit(newSliceTask(slices.next(), mapper, folder)));
+                    }
+                    int rank = 0;
+                    while (!ranks.isEmpty() && ranks.getLast() == rank) {
+                        accumulator = folder.merge(accumulators.removeLast(), accumulator);
+                        ranks.removeLast();
+                        rank++;
+                    }
+                    accumulators.add(accumulator);
+                    ranks.add(rank);
+                }
+            } finally {
+                for (Future<A> future : running) {
+                    future.cancel(true);
+                }
+            }
+            if (accumulators.isEmpty()) {
+                return folder.newAccumulator();
+            }
+            A accumulator = accumulators.removeLast();
+            while (!accumulators.isEmpty()) {
+                accumulator = folder.merge(accumulators.removeLast(), accumulator);
+            }
+            return accumulator;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ParallelExecutionException) {
+                throw (ParallelExecutionException) ex.getCause();
+            } else {
+                throw new ParallelExecutionException(ex.getCause());
+            }
+        } catch (InterruptedException ex) {
+            throw new ParallelExecutionException(ex.getCause());
+        }
+    }
+
+    private static <I, O, A> Callable<A> newSliceTask(final List<I> slice, final MapTask<I, O> mapper, final FoldTask<O, A> folder) {
+        return new Callable<A>() {
+
+            @Override
+            public A call() throws ParallelExecutionException {
+                A accumulator = folder.newAccumulator();
+                for (I current : slice) {
+                    O result = mapper.map(current);
+                    if (result != null) {
+                        accumulator = folder.fold(accumulator, result);
+                    }
+                }
+                return accumulator;
+            }
+
+        };
+    }
+
+    private static class ParallelSortTask<E> extends RecursiveAction {
+
+        private static final int THRESHOLD = 8192;
+        //
+        private final E[] elements;
+        private final E[] buffer;
+        private final int from;
+        private final int to;
+        private final Comparator<? super E> comparator;
+
+        public ParallelSortTask(E[] elements, E[] buffer, int from, int to, Comparator<? super E> comparator) {
+            this.elements = elements;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                Arrays.sort(elements, from, to, comparator);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParallelSortTask<E>(elements, buffer, from, middle, comparator), new ParallelSortTask<E>(elements, buffer, middle, to, comparator));
+                merge(middle);
+            }
+        }
+
+        private void merge(int middle) {
+            // Halves already in order don't need merging:
+            if (comparator.compare(elements[middle - 1], elements[middle]) <= 0) {
+                return;
+            }
+            System.arraycopy(elements, from, buffer, from, to - from);
+            int left = from;
+            int right = middle;
+            int current = from;
+            while (left < middle && right < to) {
+                if (comparator.compare(buffer[left], buffer[right]) <= 0) {
+                    elements[current++] = buffer[left++];
+                } else {
+                    elements[current++] = buffer[right++];
+                }
+            }
+            while (left < middle) {
+                elements[current++] = buffer[left++];
+            }
+            while (right < to) {
+                elements[current++] = buffer[right++];
+            }
+        }
+
+    }
+
     private static class ParallelMergeTask<E extends Comparable> extends RecursiveAction {
 
         private final List<Set<E>> sets;
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.collect.sketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Count-Min sketch estimating (by excess) the frequency of the values added to it, using depth rows of width counters,
+ * and tracking a bounded number of heavy hitter candidates in order to answer top-k queries.<br>
+ * Sketches with the same depth, width and capacity can be merged: counters are summed, and candidates re-estimated.
+ *
+ * @author Sergio Bossa
+ */
+public class CountMinTopK {
+
+    private final int depth;
+    private final int width;
+    private final int capacity;
+    private final long[] counters;
+    private final Map<String, Long> candidates;
+    private long minCandidate;
+
+    public CountMinTopK(int depth, int width, int capacity) {
+        if (depth <= 0 || width <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Depth, width and capacity must be greater than zero");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.capacity = capacity;
+        this.counters = new long[depth * width];
+        this.candidates = new HashMap<String, Long>(capacity * 2);
+    }
+
+    public void add(String value) {
+        long hash = Hashes.hash64(value);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int cell = row * width + index(hash, row);
+            estimate = Math.min(estimate, ++counters[cell]);
+        }
+        offer(value, estimate);
+    }
+
+    public long estimate(String value) {
+        long hash = Hashes.hash64(value);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    public void merge(CountMinTopK other) {
+        if (other.depth != depth || other.width != width || other.capacity != capacity) {
+            throw new IllegalArgumentException("Cannot merge sketches with different depth, width or capacity");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        List<String> values = new ArrayList<String>(candidates.keySet());
+        values.addAll(other.candidates.keySet());
+        candidates.clear();
+        minCandidate = 0;
+        for (String value : values) {
+            offer(value, estimate(value));
+        }
+    }
+
+    public Map<String, Long> top(int k) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(candidates.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+
+            @Override
+            public int compare(Map.Entry<String, Long> first, Map.Entry<String, Long> second) {
+                int comparison = second.getValue().compareTo(first.getValue());
+                return comparison != 0 ? comparison : first.getKey().compareTo(second.getKey());
+            }
+        });
+        Map<String, Long> top = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(k, entries.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    public byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + counters.length * 8);
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(depth);
+            output.writeInt(width);
+            output.writeInt(capacity);
+            for (long counter : counters) {
+                output.writeLong(counter);
+            }
+            output.writeInt(candidates.size());
+            for (String candidate : candidates.keySet()) {
+                output.writeUTF(candidate);
+            }
+            output.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    public static CountMinTopK fromByteArray(byte[] bytes) {
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            CountMinTopK sketch = new CountMinTopK(input.readInt(), input.readInt(), input.readInt());
+            for (int i = 0; i < sketch.counters.length; i++) {
+                sketch.counters[i] = input.readLong();
+            }
+            int candidates = input.readInt();
+            for (int i = 0; i < candidates; i++) {
+                String candidate = input.readUTF();
+                sketch.offer(candidate, sketch.estimate(candidate));
+            }
+            return sketch;
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Bad sketch: " + ex.getMessage(), ex);
+        }
+    }
+
+    private int index(long hash, int row) {
+        // Derive row hashes from the two halves of the 64 bits hash (Kirsch-Mitzenmacher):
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return (combined & Integer.MAX_VALUE) % width;
+    }
+
+    private void offer(String value, long estimate) {
+        if (candidates.containsKey(value) || candidates.size() < capacity) {
+            candidates.put(value, estimate);
+        } else if (estimate > minCandidate) {
+            // The minimum is only a lower bound, as candidate estimates grow, so look for the actual one:
+            Map.Entry<String, Long> min = null;
+            for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+                if (min == null || candidate.getValue() < min.getValue()) {
+                    min = candidate;
+                }
+            }
+            minCandidate = min.getValue();
+            if (estimate > minCandidate) {
+                candidates.remove(min.getKey());
+                candidates.put(value, estimate);
+            }
+        }
+    }
+}
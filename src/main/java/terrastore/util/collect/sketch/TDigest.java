@@ -0,0 +1,209 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.collect.sketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Merging t-digest sketch estimating quantiles of the values added to it, keeping at most about
+ * compression centroids whose size is bounded by the arcsine scale function, hence more accurate at extreme quantiles.<br>
+ * Added values are buffered and periodically sorted and merged into centroids; sketches can be merged together.
+ *
+ * @author Sergio Bossa
+ */
+public class TDigest {
+
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int size;
+    private double[] buffer;
+    private int buffered;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("Compression must be at least 10");
+        }
+        this.compression = compression;
+        this.means = new double[(int) Math.ceil(compression) + 1];
+        this.weights = new double[means.length];
+        this.buffer = new double[5 * means.length];
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (buffered == buffer.length) {
+            compress();
+        }
+        buffer[buffered++] = value;
+        totalWeight++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(TDigest other) {
+        compress();
+        other.compress();
+        merge(other.means, other.weights, other.size);
+        totalWeight += other.totalWeight;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        }
+        compress();
+        if (size == 0) {
+            return Double.NaN;
+        } else if (size == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double cumulative = weights[0] / 2;
+        for (int i = 0; i < size - 1; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (cumulative + step > index) {
+                return means[i] + (means[i + 1] - means[i]) * (index - cumulative) / step;
+            }
+            cumulative += step;
+        }
+        double last = weights[size - 1] / 2;
+        return means[size - 1] + (max - means[size - 1]) * Math.min(1, (index - cumulative) / last);
+    }
+
+    public long count() {
+        return (long) totalWeight;
+    }
+
+    public byte[] toByteArray() {
+        compress();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(36 + size * 16);
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeDouble(compression);
+            output.writeDouble(min);
+            output.writeDouble(max);
+            output.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                output.writeDouble(means[i]);
+                output.writeDouble(weights[i]);
+            }
+            output.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    public static TDigest fromByteArray(byte[] bytes) {
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            TDigest digest = new TDigest(input.readDouble());
+            digest.min = input.readDouble();
+            digest.max = input.readDouble();
+            int size = input.readInt();
+            double[] means = new double[size];
+            double[] weights = new double[size];
+            for (int i = 0; i < size; i++) {
+                means[i] = input.readDouble();
+                weights[i] = input.readDouble();
+                digest.totalWeight += weights[i];
+            }
+            digest.merge(means, weights, size);
+            return digest;
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Bad sketch: " + ex.getMessage(), ex);
+        }
+    }
+
+    private void compress() {
+        if (buffered > 0) {
+            Arrays.sort(buffer, 0, buffered);
+            double[] unit = new double[buffered];
+            Arrays.fill(unit, 1);
+            int count = buffered;
+            buffered = 0;
+            merge(buffer, unit, count);
+        }
+    }
+
+    private void merge(double[] otherMeans, double[] otherWeights, int otherSize) {
+        // Merge the two sorted centroid sequences, then collapse adjacent centroids within scale limits:
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += weights[i];
+        }
+        for (int i = 0; i < otherSize; i++) {
+            total += otherWeights[i];
+        }
+        double[] mergedMeans = new double[Math.max(means.length, size + otherSize)];
+        double[] mergedWeights = new double[mergedMeans.length];
+        int merged = -1;
+        double weightSoFar = 0;
+        double limit = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < otherSize) {
+            double mean;
+            double weight;
+            if (j >= otherSize || (i < size && means[i] <= otherMeans[j])) {
+                mean = means[i];
+                weight = weights[i++];
+            } else {
+                mean = otherMeans[j];
+                weight = otherWeights[j++];
+            }
+            if (merged >= 0 && weightSoFar + mergedWeights[merged] + weight <= limit) {
+                mergedWeights[merged] += weight;
+                mergedMeans[merged] += (mean - mergedMeans[merged]) * weight / mergedWeights[merged];
+            } else {
+                if (merged >= 0) {
+                    weightSoFar += mergedWeights[merged];
+                }
+                limit = total * inverseScale(scale(weightSoFar / total) + 1);
+                merged++;
+                mergedMeans[merged] = mean;
+                mergedWeights[merged] = weight;
+            }
+        }
+        means = mergedMeans;
+        weights = mergedWeights;
+        size = merged + 1;
+    }
+
+    private double scale(double q) {
+        return compression * Math.asin(2 * Math.min(1, q) - 1) / (2 * Math.PI);
+    }
+
+    private double inverseScale(double k) {
+        return k >= compression / 4 ? 1 : (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.io;
+
+/**
+ * Implemented by objects whose serialized form may be already compressed, and hence not worth compressing again
+ * by compressing {@link Serializer}s.
+ *
+ * @author Sergio Bossa
+ */
+public interface Compressible {
+
+    /**
+     * Determine if this object serialized form is worth compressing.
+     *
+     * @return True if worth compressing, false otherwise.
+     */
+    public boolean isCompressible();
+}
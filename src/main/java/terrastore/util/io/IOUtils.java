@@ -17,7 +17,6 @@ package terrastore.util.io;
 
 import com.ning.compress.lzf.LZFInputStream;
 import com.ning.compress.lzf.LZFOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -41,6 +40,17 @@ public class IOUtils {
         }
     }
 
+    public static void deleteRecursively(File file) throws IOException {
+        if (file.isDirectory()) {
+            for (File child : file.listFiles()) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete: " + file.getAbsolutePath());
+        }
+    }
+
     public static byte[] read(InputStream input) throws IOException {
         ByteArrayOutputStream output = new ByteArrayOutputStream();
         read(input, output);
@@ -108,31 +118,8 @@ public class IOUtils {
         }
     }
 
-    public static boolean isCompressed(byte[] data) {
-        return data[0] == 'Z' && data[1] == 'V';
-    }
-
-    public static boolean isCompressed(InputStream stream) {
-        try {
-            boolean available = stream.available() >= 2;
-            boolean markSupported = stream.markSupported();
-            if (available && markSupported) {
-                stream.mark(2);
-                boolean compressed = stream.read() == 'Z' && stream.read() == 'V';
-                stream.reset();
-                return compressed;
-            } else if (!available) {
-                throw new IllegalStateException("Not enough bytes to determine stream compression!");
-            } else {
-                throw new IllegalStateException("Unable to determine stream compression!");
-            }
-        } catch (IOException ex) {
-            throw new IllegalStateException(ex.getMessage(), ex);
-        }
-    }
-
-    public static InputStream getCompressedInputStream(byte[] bytes) throws IOException {
-        return new LZFInputStream(new ByteArrayInputStream(bytes));
+    public static InputStream getCompressedInputStream(InputStream input) throws IOException {
+        return new LZFInputStream(input);
     }
 
 }
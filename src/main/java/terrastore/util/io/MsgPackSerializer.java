@@ -19,7 +19,6 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 
 import org.msgpack.MessagePack;
 import org.msgpack.packer.Packer;
@@ -27,8 +26,8 @@ import org.msgpack.unpacker.Unpacker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.ning.compress.lzf.LZFInputStream;
-import com.ning.compress.lzf.LZFOutputStream;
+import terrastore.store.codec.Codecs;
+import terrastore.store.codec.CompressionPolicy;
 
 /**
  * @author Sergio Bossa
@@ -38,48 +37,74 @@ public class MsgPackSerializer<T> implements Serializer<T> {
 
     private static final Logger LOG = LoggerFactory.getLogger(MsgPackSerializer.class);
     //
-    private final boolean compressed;
+    private final CompressionPolicy compression;
     
     private final MessagePack msgpack = new MessagePack();
 
 
     public MsgPackSerializer(boolean compressed) {
-        this.compressed = compressed;
+        this(compressed ? new CompressionPolicy(Codecs.LZF) : null);
+    }
+
+    /**
+     * Serializer compressing frames as determined by the given {@link terrastore.store.codec.CompressionPolicy},
+     * or never compressing if null.
+     */
+    public MsgPackSerializer(CompressionPolicy compression) {
+        if (compression != null && !compression.getCodec().isCompressing()) {
+            throw new IllegalArgumentException("Not a compressing codec: " + compression.getCodec().getName());
+        }
+        this.compression = compression;
     }
 
     @Override
     public byte[] serialize(T object) {
         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-        OutputStream stream = null;
-        if (compressed) {
-            stream = new LZFOutputStream(bytes);
+        doSerialize(object, bytes);
+        byte[] serialized = bytes.toByteArray();
+        if (compression != null && serialized.length >= compression.getThreshold() && isCompressible(object)) {
+            try {
+                byte[] encoded = Codecs.encode(compression.getCodec(), serialized);
+                return encoded.length < serialized.length ? encoded : serialized;
+            } catch (IOException ex) {
+                LOG.error(ex.getMessage(), ex);
+                throw new RuntimeException(ex.getMessage(), ex);
+            }
         } else {
-            stream = bytes;
+            return serialized;
         }
-        doSerialize(object, stream);
-        return bytes.toByteArray();
     }
 
     @Override
     public T deserialize(byte[] serialized) {
-        return deserialize(new ByteArrayInputStream(serialized));
+        try {
+            // Frames starting with a codec id are compressed, otherwise they start with the msgpack class name:
+            if (Codecs.getCodec(serialized) != null) {
+                return doDeserialize(Codecs.decoding(serialized));
+            } else {
+                return doDeserialize(new ByteArrayInputStream(serialized));
+            }
+        } catch (IOException ex) {
+            LOG.error(ex.getMessage(), ex);
+            throw new RuntimeException(ex.getMessage(), ex);
+        }
     }
 
     @Override
     public T deserialize(InputStream serialized) {
-        if (IOUtils.isCompressed(serialized)) {
-            try {
-                return doDeserialize(new LZFInputStream(serialized));
-            } catch (IOException ex) {
-                LOG.error(ex.getMessage(), ex);
-                throw new RuntimeException(ex.getMessage(), ex);
-            }
-        } else {
-            return doDeserialize(serialized);
+        try {
+            return deserialize(IOUtils.read(serialized));
+        } catch (IOException ex) {
+            LOG.error(ex.getMessage(), ex);
+            throw new RuntimeException(ex.getMessage(), ex);
         }
     }
 
-    private void doSerialize(T object, OutputStream stream) {
+    private boolean isCompressible(T object) {
+        return !(object instanceof Compressible) || ((Compressible) object).isCompressible();
+    }
+
+    private void doSerialize(T object, ByteArrayOutputStream stream) {
         try {
             Packer packer = msgpack.createPacker(stream);
             packer.write(object.getClass().getName());
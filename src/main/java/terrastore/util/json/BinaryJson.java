@@ -0,0 +1,366 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Binary Json format, where documents are encoded as tag-length-value structures whose objects carry a table of field offsets,
+ * sorted by field name hash, and whose arrays carry a table of element offsets: this way, fields and elements can be directly
+ * looked up without parsing (or even scanning) the whole document.
+ * <br><br>
+ * Values are encoded as a one byte tag followed by:
+ * <ul>
+ * <li>Nothing, for nulls and booleans.</li>
+ * <li>An eight bytes long, for integers fitting into a long.</li>
+ * <li>The four bytes length and the UTF-8 bytes of their text, for strings, floats and big integers (so that numbers
+ * are kept exactly as written).</li>
+ * <li>The four bytes length of the following data, the four bytes count of fields, the table of fields
+ * (four bytes name hash and four bytes offset) sorted by hash, and the fields (four bytes name length, UTF-8 name bytes and value)
+ * in their original order, for objects.</li>
+ * <li>The four bytes length of the following data, the four bytes count of elements, the table of elements offsets
+ * and the elements, for arrays.</li>
+ * </ul>
+ *
+ * @author Sergio Bossa
+ */
+public class BinaryJson {
+
+    static final byte NULL = 0;
+    static final byte FALSE = 1;
+    static final byte TRUE = 2;
+    static final byte INT = 3;
+    static final byte FLOAT = 4;
+    static final byte BIG_INT = 5;
+    static final byte STRING = 6;
+    static final byte ARRAY = 7;
+    static final byte OBJECT = 8;
+    //
+    static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Encode the given Json document into binary format.
+     */
+    public static byte[] encode(byte[] json) throws IOException {
+        JsonParser parser = JSON_FACTORY.createJsonParser(json);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length);
+            DataOutputStream output = new DataOutputStream(bytes);
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new IOException("Empty Json document!");
+            }
+            encodeValue(parser, token, output);
+            output.flush();
+            return bytes.toByteArray();
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode the binary document starting at the given offset of the given data, into its Json representation.
+     */
+    public static byte[] decode(byte[] data, int offset) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 2);
+        render(data, offset, output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Render the binary document starting at the given offset of the given data, as Json into the given stream.
+     */
+    public static void render(byte[] data, int offset, OutputStream output) throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createJsonGenerator(output, JsonEncoding.UTF8);
+        renderValue(data, offset, generator);
+        generator.close();
+    }
+
+    /**
+     * Get an unmodifiable map view of the binary object starting at the given offset of the given data: nested objects and arrays
+     * are returned as views too, so that no data is copied nor parsed until actually accessed.
+     */
+    public static Map<String, Object> toUnmodifiableMap(byte[] data, int offset) {
+        return new BinaryJsonMap(data, offset);
+    }
+
+    /**
+     * Get a modifiable map copy of the binary object starting at the given offset of the given data.
+     */
+    public static Map<String, Object> toModifiableMap(byte[] data, int offset) {
+        return (Map<String, Object>) readModifiableValue(data, offset);
+    }
+
+    static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+    static long readLong(byte[] data, int offset) {
+        return ((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xffffffffL);
+    }
+
+    static String readString(byte[] data, int offset) {
+        return new String(data, offset + 4, readInt(data, offset), CHARSET);
+    }
+
+    /**
+     * Get the offset right after the value starting at the given offset.
+     */
+    static int skipValue(byte[] data, int offset) {
+        switch (data[offset]) {
+            case NULL:
+            case FALSE:
+            case TRUE:
+                return offset + 1;
+            case INT:
+                return offset + 9;
+            default:
+                return offset + 5 + readInt(data, offset + 1);
+        }
+    }
+
+    /**
+     * Read the value starting at the given offset, with the same types used by {@link JsonStreamingMap}:
+     * objects and arrays are returned as views.
+     */
+    static Object readValue(byte[] data, int offset) {
+        switch (data[offset]) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INT:
+                return readLong(data, offset + 1);
+            case FLOAT:
+                return Float.parseFloat(readString(data, offset + 1));
+            case BIG_INT:
+                return new BigInteger(readString(data, offset + 1));
+            case STRING:
+                return readString(data, offset + 1);
+            case ARRAY:
+                return new BinaryJsonList(data, offset);
+            case OBJECT:
+                return new BinaryJsonMap(data, offset);
+            default:
+                throw new IllegalStateException("Unknown binary Json tag: " + data[offset]);
+        }
+    }
+
+    /**
+     * Read the value starting at the given offset, with the same types used by Jackson untyped deserialization.
+     */
+    private static Object readModifiableValue(byte[] data, int offset) {
+        switch (data[offset]) {
+            case INT: {
+                long value = readLong(data, offset + 1);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                } else {
+                    return value;
+                }
+            }
+            case FLOAT:
+                return Double.parseDouble(readString(data, offset + 1));
+            case ARRAY: {
+                int count = readInt(data, offset + 5);
+                int elements = offset + 9 + 4 * count;
+                List<Object> result = new ArrayList<Object>(count);
+                for (int i = 0; i < count; i++) {
+                    result.add(readModifiableValue(data, elements + readInt(data, offset + 9 + 4 * i)));
+                }
+                return result;
+            }
+            case OBJECT: {
+                int count = readInt(data, offset + 5);
+                int field = offset + 9 + 8 * count;
+                Map<String, Object> result = new LinkedHashMap<String, Object>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    String name = readString(data, field);
+                    int value = field + 4 + readInt(data, field);
+                    result.put(name, readModifiableValue(data, value));
+                    field = skipValue(data, value);
+                }
+                return result;
+            }
+            default:
+                return readValue(data, offset);
+        }
+    }
+
+    private static void encodeValue(JsonParser parser, JsonToken token, DataOutputStream output) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                encodeObject(parser, output);
+                break;
+            case START_ARRAY:
+                encodeArray(parser, output);
+                break;
+            case VALUE_STRING:
+                output.writeByte(STRING);
+                writeString(parser.getText(), output);
+                break;
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    output.writeByte(BIG_INT);
+                    writeString(parser.getText(), output);
+                } else {
+                    output.writeByte(INT);
+                    output.writeLong(parser.getLongValue());
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                output.writeByte(FLOAT);
+                writeString(parser.getText(), output);
+                break;
+            case VALUE_TRUE:
+                output.writeByte(TRUE);
+                break;
+            case VALUE_FALSE:
+                output.writeByte(FALSE);
+                break;
+            case VALUE_NULL:
+                output.writeByte(NULL);
+                break;
+            default:
+                throw new IOException("Unexpected Json token: " + token);
+        }
+    }
+
+    private static void encodeObject(JsonParser parser, DataOutputStream output) throws IOException {
+        ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+        DataOutputStream fields = new DataOutputStream(fieldBytes);
+        long[] index = new long[8];
+        int count = 0;
+        JsonToken token = parser.nextToken();
+        while (token != JsonToken.END_OBJECT) {
+            String name = parser.getCurrentName();
+            if (count == index.length) {
+                index = Arrays.copyOf(index, count * 2);
+            }
+            // Sort entries by hash first, and offset then, so that the first of duplicated fields is found first:
+            index[count++] = ((long) name.hashCode() << 32) | fields.size();
+            writeString(name, fields);
+            encodeValue(parser, parser.nextToken(), fields);
+            token = parser.nextToken();
+        }
+        Arrays.sort(index, 0, count);
+        fields.flush();
+        output.writeByte(OBJECT);
+        output.writeInt(4 + 8 * count + fieldBytes.size());
+        output.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            output.writeLong(index[i]);
+        }
+        fieldBytes.writeTo(output);
+    }
+
+    private static void encodeArray(JsonParser parser, DataOutputStream output) throws IOException {
+        ByteArrayOutputStream elementBytes = new ByteArrayOutputStream();
+        DataOutputStream elements = new DataOutputStream(elementBytes);
+        int[] offsets = new int[8];
+        int count = 0;
+        JsonToken token = parser.nextToken();
+        while (token != JsonToken.END_ARRAY) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = elements.size();
+            encodeValue(parser, token, elements);
+            token = parser.nextToken();
+        }
+        elements.flush();
+        output.writeByte(ARRAY);
+        output.writeInt(4 + 4 * count + elementBytes.size());
+        output.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            output.writeInt(offsets[i]);
+        }
+        elementBytes.writeTo(output);
+    }
+
+    private static void writeString(String value, DataOutputStream output) throws IOException {
+        byte[] bytes = value.getBytes(CHARSET);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static void renderValue(byte[] data, int offset, JsonGenerator generator) throws IOException {
+        switch (data[offset]) {
+            case NULL:
+                generator.writeNull();
+                break;
+            case FALSE:
+                generator.writeBoolean(false);
+                break;
+            case TRUE:
+                generator.writeBoolean(true);
+                break;
+            case INT:
+                generator.writeNumber(readLong(data, offset + 1));
+                break;
+            case FLOAT:
+            case BIG_INT:
+                generator.writeNumber(readString(data, offset + 1));
+                break;
+            case STRING:
+                generator.writeString(readString(data, offset + 1));
+                break;
+            case ARRAY: {
+                int count = readInt(data, offset + 5);
+                int elements = offset + 9 + 4 * count;
+                generator.writeStartArray();
+                for (int i = 0; i < count; i++) {
+                    renderValue(data, elements + readInt(data, offset + 9 + 4 * i), generator);
+                }
+                generator.writeEndArray();
+                break;
+            }
+            case OBJECT: {
+                int count = readInt(data, offset + 5);
+                int field = offset + 9 + 8 * count;
+                generator.writeStartObject();
+                for (int i = 0; i < count; i++) {
+                    generator.writeFieldName(readString(data, field));
+                    int value = field + 4 + readInt(data, field);
+                    renderValue(data, value, generator);
+                    field = skipValue(data, value);
+                }
+                generator.writeEndObject();
+                break;
+            }
+            default:
+                throw new IOException("Unknown binary Json tag: " + data[offset]);
+        }
+    }
+}
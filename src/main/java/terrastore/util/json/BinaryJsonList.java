@@ -0,0 +1,53 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.json;
+
+import java.util.AbstractList;
+
+/**
+ * Unmodifiable list view over a {@link BinaryJson} array, looking up elements through the offsets table.
+ *
+ * @author Sergio Bossa
+ */
+public class BinaryJsonList extends AbstractList<Object> {
+
+    private final byte[] data;
+    private final int offset;
+    private final int count;
+
+    public BinaryJsonList(byte[] data, int offset) {
+        if (data[offset] != BinaryJson.ARRAY) {
+            throw new IllegalArgumentException("Not a binary Json array!");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.count = BinaryJson.readInt(data, offset + 5);
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        int elements = offset + 9 + 4 * count;
+        return BinaryJson.readValue(data, elements + BinaryJson.readInt(data, offset + 9 + 4 * index));
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Unmodifiable map view over a {@link BinaryJson} object, looking up fields by binary search over the fields table.
+ *
+ * @author Sergio Bossa
+ */
+public class BinaryJsonMap extends AbstractMap<String, Object> {
+
+    private final byte[] data;
+    private final int offset;
+    private final int count;
+
+    public BinaryJsonMap(byte[] data, int offset) {
+        if (data[offset] != BinaryJson.OBJECT) {
+            throw new IllegalArgumentException("Not a binary Json object!");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.count = BinaryJson.readInt(data, offset + 5);
+    }
+
+    @Override
+    public Object get(Object key) {
+        int value = find(key);
+        return value >= 0 ? BinaryJson.readValue(data, value) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    private int find(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        int hash = key.hashCode();
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = hashAt(middle);
+            if (current < hash) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (low < count && hashAt(low) == hash) {
+            byte[] name = ((String) key).getBytes(BinaryJson.CHARSET);
+            int fields = offset + 9 + 8 * count;
+            for (int i = low; i < count && hashAt(i) == hash; i++) {
+                int field = fields + BinaryJson.readInt(data, offset + 13 + 8 * i);
+                if (nameEquals(field, name)) {
+                    return field + 4 + name.length;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int hashAt(int i) {
+        return BinaryJson.readInt(data, offset + 9 + 8 * i);
+    }
+
+    private boolean nameEquals(int field, byte[] name) {
+        if (BinaryJson.readInt(data, field) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (data[field + 4 + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private int field = offset + 9 + 8 * count;
+        private int read = 0;
+
+        @Override
+        public boolean hasNext() {
+            return read < count;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (read < count) {
+                String name = BinaryJson.readString(data, field);
+                int value = field + 4 + BinaryJson.readInt(data, field);
+                field = BinaryJson.skipValue(data, value);
+                read++;
+                return new SimpleImmutableEntry<String, Object>(name, BinaryJson.readValue(data, value));
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.json;
+
+import java.nio.charset.Charset;
+
+/**
+ * Scanner over (already validated) UTF-8 encoded Json bytes, used by {@link JsonStreamingMap} and {@link JsonStreamingList}
+ * to locate values boundaries in a single pass, and to decode scalar values only when actually accessed.
+ *
+ * @author Sergio Bossa
+ */
+class JsonScanner {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Get the position of the first non whitespace byte starting from the given position.
+     */
+    static int skipWhitespaces(byte[] data, int position, int end) {
+        while (position < end && (data[position] == ' ' || data[position] == '\t' || data[position] == '\n' || data[position] == '\r')) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Get the position right after the value starting at the given position.
+     */
+    static int skipValue(byte[] data, int position, int end) {
+        byte first = data[position];
+        if (first == '"') {
+            return skipString(data, position);
+        } else if (first == '{' || first == '[') {
+            int depth = 0;
+            while (position < end) {
+                byte current = data[position];
+                if (current == '"') {
+                    position = skipString(data, position);
+                    continue;
+                } else if (current == '{' || current == '[') {
+                    depth++;
+                } else if (current == '}' || current == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return position + 1;
+                    }
+                }
+                position++;
+            }
+            throw new IllegalStateException("Unterminated Json structure!");
+        } else {
+            while (position < end && data[position] != ',' && data[position] != '}' && data[position] != ']'
+                    && data[position] != ' ' && data[position] != '\t' && data[position] != '\n' && data[position] != '\r') {
+                position++;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Get the value contained between the given start and end positions: objects and arrays are returned as views sharing
+     * the same data.
+     */
+    static Object readValue(byte[] data, int start, int end) {
+        switch (data[start]) {
+            case '{':
+                return new JsonStreamingMap(data, start, end);
+            case '[':
+                return new JsonStreamingList(data, start, end);
+            case '"':
+                return readString(data, start, end);
+            case 't':
+                return Boolean.TRUE;
+            case 'f':
+                return Boolean.FALSE;
+            case 'n':
+                return null;
+            default:
+                String number = new String(data, start, end - start, CHARSET);
+                if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+                    return Float.parseFloat(number);
+                } else {
+                    return Long.parseLong(number);
+                }
+        }
+    }
+
+    /**
+     * Get the string contained between the given start and end positions, quotes included.
+     */
+    static String readString(byte[] data, int start, int end) {
+        int escape = start + 1;
+        while (escape < end - 1 && data[escape] != '\\') {
+            escape++;
+        }
+        if (escape == end - 1) {
+            return new String(data, start + 1, end - start - 2, CHARSET);
+        } else {
+            StringBuilder result = new StringBuilder(end - start);
+            int position = start + 1;
+            while (position < end - 1) {
+                if (data[position] == '\\') {
+                    byte escaped = data[position + 1];
+                    switch (escaped) {
+                        case 'b':
+                            result.append('\b');
+                            break;
+                        case 'f':
+                            result.append('\f');
+                            break;
+                        case 'n':
+                            result.append('\n');
+                            break;
+                        case 'r':
+                            result.append('\r');
+                            break;
+                        case 't':
+                            result.append('\t');
+                            break;
+                        case 'u':
+                            result.append((char) Integer.parseInt(new String(data, position + 2, 4, CHARSET), 16));
+                            position += 4;
+                            break;
+                        default:
+                            result.append((char) escaped);
+                    }
+                    position += 2;
+                } else {
+                    int next = position;
+                    while (next < end - 1 && data[next] != '\\') {
+                        next++;
+                    }
+                    result.append(new String(data, position, next - position, CHARSET));
+                    position = next;
+                }
+            }
+            return result.toString();
+        }
+    }
+
+    private static int skipString(byte[] data, int position) {
+        position++;
+        while (data[position] != '"') {
+            if (data[position] == '\\') {
+                position += 2;
+            } else {
+                position++;
+            }
+        }
+        return position + 1;
+    }
+}
@@ -15,123 +15,75 @@
  */
 package terrastore.util.json;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.AbstractList;
-import org.codehaus.jackson.JsonEncoding;
-import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonGenerator;
-import org.codehaus.jackson.JsonParser;
-import org.codehaus.jackson.JsonToken;
+import java.util.Arrays;
 import terrastore.store.Value;
 
 /**
+ * Unmodifiable list view over a Json array, scanned only once (and only when first accessed) to build an index of elements
+ * positions: elements are then decoded only when accessed, and nested objects and arrays are returned as views
+ * sharing the same bytes.
+ *
  * @author Sergio Bossa
  */
 public class JsonStreamingList extends AbstractList {
 
-    private final Value json;
+    private final byte[] data;
+    private final int start;
+    private final int end;
+    private volatile int[] index;
 
     public JsonStreamingList(Value json) {
-        this.json = json;
-    }
-
-    @Override
-    public Object get(int index) {
-        try {
-            JsonFactory factory = new JsonFactory();
-            JsonParser parser = makeParser(factory);
-            JsonToken token = advanceParser(parser, index);
-            if (token != null) {
-                if (token.equals(JsonToken.START_OBJECT)) {
-                    return extractObject(factory, parser);
-                } else if (token.equals(JsonToken.START_ARRAY)) {
-                    return extractArray(factory, parser);
-                } else if (token.toString().startsWith("VALUE_")) {
-                    if (token.equals(JsonToken.VALUE_STRING)) {
-                        return parser.getText();
-                    } else if (token.equals(JsonToken.VALUE_NUMBER_FLOAT)) {
-                        return parser.getFloatValue();
-                    } else if (token.equals(JsonToken.VALUE_NUMBER_INT)) {
-                        return parser.getLongValue();
-                    } else if (token.equals(JsonToken.VALUE_TRUE) || token.equals(JsonToken.VALUE_FALSE)) {
-                        return parser.getBooleanValue();
-                    } else {
-                        return null;
-                    }
-                } else {
-                    throw new IndexOutOfBoundsException("Out of bounds: " + index);
-                }
-            } else {
-                throw new IndexOutOfBoundsException("Out of bounds: " + index);
-            }
-        } catch (IndexOutOfBoundsException ex) {
-            throw ex;
-        } catch (Exception ex) {
-            throw new RuntimeException(ex.getMessage(), ex);
-        }
+        this(json.getBytes());
     }
 
-    @Override
-    public int size() {
-        try {
-            JsonFactory factory = new JsonFactory();
-            JsonParser parser = makeParser(factory);
-            return calculateSize(parser);
-        } catch (Exception ex) {
-            throw new RuntimeException(ex.getMessage(), ex);
-        }
+    private JsonStreamingList(byte[] data) {
+        this(data, JsonScanner.skipWhitespaces(data, 0, data.length), data.length);
     }
 
-    private JsonParser makeParser(JsonFactory factory) throws IOException {
-        JsonParser parser = factory.createJsonParser(json.getInputStream());
-        parser.nextToken();
-        return parser;
+    JsonStreamingList(byte[] data, int start, int end) {
+        this.data = data;
+        this.start = start;
+        this.end = end;
     }
 
-    private JsonToken advanceParser(JsonParser parser, int index) throws IOException {
-        JsonToken token = parser.nextValue();
-        for (int i = 0; i < index && token != null; i++) {
-            if (token.equals(JsonToken.START_OBJECT) || token.equals(JsonToken.START_ARRAY)) {
-                parser.skipChildren();
-                token = parser.nextValue();
-            } else if (token.toString().startsWith("VALUE_")) {
-                token = parser.nextValue();
-            } else {
-                token = null;
-            }
+    @Override
+    public Object get(int index) {
+        int[] positions = getIndex();
+        if (index >= 0 && index < positions.length / 2) {
+            return JsonScanner.readValue(data, positions[index * 2], positions[index * 2 + 1]);
+        } else {
+            throw new IndexOutOfBoundsException("Out of bounds: " + index);
         }
-        return token;
-    }
-
-    private Object extractArray(JsonFactory factory, JsonParser parser) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        JsonGenerator generator = factory.createJsonGenerator(out, JsonEncoding.UTF8);
-        generator.copyCurrentStructure(parser);
-        generator.close();
-        return new JsonStreamingList(new Value(out.toByteArray()));
     }
 
-    private Object extractObject(JsonFactory factory, JsonParser parser) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        JsonGenerator generator = factory.createJsonGenerator(out, JsonEncoding.UTF8);
-        generator.copyCurrentStructure(parser);
-        generator.close();
-        return new JsonStreamingMap(new Value(out.toByteArray()));
+    @Override
+    public int size() {
+        return getIndex().length / 2;
     }
 
-    private int calculateSize(JsonParser parser) throws IOException {
-        int size = 0;
-        JsonToken token = parser.nextValue();
-        while (true) {
-            if (token.equals(JsonToken.START_OBJECT) || token.equals(JsonToken.START_ARRAY)) {
-                parser.skipChildren();
-            } else if (token.equals(JsonToken.END_ARRAY)) {
-                break;
+    private int[] getIndex() {
+        int[] current = index;
+        if (current == null) {
+            int count = 0;
+            current = new int[16];
+            int position = JsonScanner.skipWhitespaces(data, start + 1, end);
+            while (position < end && data[position] != ']') {
+                if (data[position] == ',') {
+                    position = JsonScanner.skipWhitespaces(data, position + 1, end);
+                }
+                int elementEnd = JsonScanner.skipValue(data, position, end);
+                if (count * 2 == current.length) {
+                    current = Arrays.copyOf(current, count * 4);
+                }
+                current[count * 2] = position;
+                current[count * 2 + 1] = elementEnd;
+                count++;
+                position = JsonScanner.skipWhitespaces(data, elementEnd, end);
             }
-            size++;
-            token = parser.nextValue();
+            current = Arrays.copyOf(current, count * 2);
+            index = current;
         }
-        return size;
+        return current;
     }
 }
@@ -15,57 +15,63 @@
  */
 package terrastore.util.json;
 
-import com.google.common.collect.AbstractIterator;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import org.codehaus.jackson.JsonEncoding;
-import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonGenerator;
-import org.codehaus.jackson.JsonParser;
-import org.codehaus.jackson.JsonToken;
 import terrastore.store.Value;
 
 /**
+ * Unmodifiable map view over a Json object, scanned only once (and only when first accessed) to build an index of fields
+ * positions: values are then decoded only when accessed, and nested objects and arrays are returned as views
+ * sharing the same bytes, so that nothing is ever copied.
+ *
  * @author Sergio Bossa
  */
 public class JsonStreamingMap extends AbstractMap<String, Object> {
 
-    private final Value json;
+    private final byte[] data;
+    private final int start;
+    private final int end;
+    private volatile Index index;
 
     public JsonStreamingMap(Value json) {
-        this.json = json;
+        this(json.getBytes());
+    }
+
+    private JsonStreamingMap(byte[] data) {
+        this(data, JsonScanner.skipWhitespaces(data, 0, data.length), data.length);
+    }
+
+    JsonStreamingMap(byte[] data, int start, int end) {
+        this.data = data;
+        this.start = start;
+        this.end = end;
     }
 
     @Override
     public final Object get(Object candidate) {
-        try {
-            JsonFactory factory = new JsonFactory();
-            JsonParser parser = factory.createJsonParser(json.getInputStream());
-            String key = navigateToKey(parser, candidate.toString());
-            if (key != null) {
-                return getObjectValue(factory, parser);
-            } else {
-                return null;
-            }
-        } catch (Exception ex) {
-            throw new IllegalStateException(ex.getMessage(), ex);
+        Index current = getIndex();
+        Integer field = current.positions.get(candidate.toString());
+        if (field != null) {
+            return JsonScanner.readValue(data, current.starts[field], current.ends[field]);
+        } else {
+            return null;
         }
     }
 
     @Override
     public final boolean containsKey(Object candidate) {
-        try {
-            JsonFactory factory = new JsonFactory();
-            JsonParser parser = factory.createJsonParser(json.getInputStream());
-            return navigateToKey(parser, candidate.toString()) != null;
-        } catch (Exception ex) {
-            throw new IllegalStateException(ex.getMessage(), ex);
-        }
+        return getIndex().positions.containsKey(candidate.toString());
+    }
+
+    @Override
+    public final int size() {
+        return getIndex().names.length;
     }
 
     @Override
@@ -73,168 +79,91 @@ public class JsonStreamingMap extends AbstractMap<String, Object> {
         return new JsonStreamingSet();
     }
 
-    private String navigateToKey(JsonParser parser, String candidate) throws IOException {
-        JsonToken token = parser.nextToken();
-        while (token != null && (!token.equals(JsonToken.FIELD_NAME) || !parser.getCurrentName().equals(candidate))) {
-            token = parser.nextToken();
-            if (token != null && (token.equals(JsonToken.START_OBJECT) || token.equals(JsonToken.START_ARRAY))) {
-                parser.skipChildren();
-            }
+    private Index getIndex() {
+        Index current = index;
+        if (current == null) {
+            current = new Index();
+            index = current;
         }
-        return parser.getCurrentName();
+        return current;
     }
 
-    private Object getObjectValue(JsonFactory factory, JsonParser parser) throws IOException {
-        JsonToken token = parser.nextToken();
-        Object value = null;
-        if (token != null) {
-            if (token.equals(JsonToken.START_OBJECT)) {
-                value = extractObject(factory, parser);
-            } else if (token.equals(JsonToken.START_ARRAY)) {
-                value = extractArray(factory, parser);
-            } else if (token.toString().startsWith("VALUE_")) {
-                if (token.equals(JsonToken.VALUE_STRING)) {
-                    value = parser.getText();
-                } else if (token.equals(JsonToken.VALUE_NUMBER_FLOAT)) {
-                    value = parser.getFloatValue();
-                } else if (token.equals(JsonToken.VALUE_NUMBER_INT)) {
-                    value = parser.getLongValue();
-                } else if (token.equals(JsonToken.VALUE_TRUE) || token.equals(JsonToken.VALUE_FALSE)) {
-                    value = parser.getBooleanValue();
-                } else {
-                    value = null;
+    private class Index {
+
+        private final String[] names;
+        private final int[] starts;
+        private final int[] ends;
+        private final Map<String, Integer> positions;
+
+        public Index() {
+            int count = 0;
+            String[] currentNames = new String[8];
+            int[] currentStarts = new int[8];
+            int[] currentEnds = new int[8];
+            int position = JsonScanner.skipWhitespaces(data, start + 1, end);
+            while (position < end && data[position] != '}') {
+                if (data[position] == ',') {
+                    position = JsonScanner.skipWhitespaces(data, position + 1, end);
+                }
+                int nameEnd = JsonScanner.skipValue(data, position, end);
+                int valueStart = JsonScanner.skipWhitespaces(data, JsonScanner.skipWhitespaces(data, nameEnd, end) + 1, end);
+                int valueEnd = JsonScanner.skipValue(data, valueStart, end);
+                if (count == currentNames.length) {
+                    currentNames = Arrays.copyOf(currentNames, count * 2);
+                    currentStarts = Arrays.copyOf(currentStarts, count * 2);
+                    currentEnds = Arrays.copyOf(currentEnds, count * 2);
                 }
-            } else {
-                return null;
+                currentNames[count] = JsonScanner.readString(data, position, nameEnd);
+                currentStarts[count] = valueStart;
+                currentEnds[count] = valueEnd;
+                count++;
+                position = JsonScanner.skipWhitespaces(data, valueEnd, end);
+            }
+            this.names = Arrays.copyOf(currentNames, count);
+            this.starts = currentStarts;
+            this.ends = currentEnds;
+            this.positions = new HashMap<String, Integer>(count * 2);
+            // Iterate backwards so that the first of duplicated fields wins:
+            for (int i = count - 1; i >= 0; i--) {
+                positions.put(names[i], i);
             }
-            return value;
-        } else {
-            return null;
         }
     }
 
-    private Object extractArray(JsonFactory factory, JsonParser parser) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        JsonGenerator generator = factory.createJsonGenerator(out, JsonEncoding.UTF8);
-        generator.copyCurrentStructure(parser);
-        generator.close();
-        return new JsonStreamingList(new Value(out.toByteArray()));
-    }
-
-    private Object extractObject(JsonFactory factory, JsonParser parser) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        JsonGenerator generator = factory.createJsonGenerator(out, JsonEncoding.UTF8);
-        generator.copyCurrentStructure(parser);
-        generator.close();
-        return new JsonStreamingMap(new Value(out.toByteArray()));
-    }
-
     private class JsonStreamingSet extends AbstractSet<Map.Entry<String, Object>> {
 
         @Override
         public Iterator<Map.Entry<String, Object>> iterator() {
-            try {
-                return new JsonStreamingIterator();
-            } catch (IOException ex) {
-                return new AbstractIterator<Entry<String, Object>>() {
-
-                    @Override
-                    protected Entry computeNext() {
-                        return endOfData();
-                    }
-                };
-            }
-        }
+            final Index current = getIndex();
+            return new Iterator<Map.Entry<String, Object>>() {
 
-        @Override
-        public int size() {
-            try {
-                int size = 0;
-                Iterator it = new JsonStreamingIterator();
-                while (it.hasNext()) {
-                    it.next();
-                    size++;
-                }
-                return size;
-            } catch (Exception ex) {
-                throw new RuntimeException(ex.getMessage(), ex);
-            }
-        }
-
-        private class JsonStreamingIterator extends AbstractIterator<Map.Entry<String, Object>> {
-
-            private final JsonFactory factory;
-            private final JsonParser parser;
-
-            public JsonStreamingIterator() throws IOException {
-                this.factory = new JsonFactory();
-                this.parser = factory.createJsonParser(json.getInputStream());
-                this.parser.nextToken();
-            }
-
-            @Override
-            protected Map.Entry<String, Object> computeNext() {
-                try {
-                    JsonToken token = parser.nextToken();
-                    String key = parser.getText();
-                    Object value = null;
-                    //
-                    token = parser.nextToken();
-                    if (token != null) {
-                        if (token.equals(JsonToken.START_OBJECT)) {
-                            value = extractObject(factory, parser);
-                        } else if (token.equals(JsonToken.START_ARRAY)) {
-                            value = extractArray(factory, parser);
-                        } else if (token.toString().startsWith("VALUE_")) {
-                            if (token.equals(JsonToken.VALUE_STRING)) {
-                                value = parser.getText();
-                            } else if (token.equals(JsonToken.VALUE_NUMBER_FLOAT)) {
-                                value = parser.getFloatValue();
-                            } else if (token.equals(JsonToken.VALUE_NUMBER_INT)) {
-                                value = parser.getLongValue();
-                            } else if (token.equals(JsonToken.VALUE_TRUE) || token.equals(JsonToken.VALUE_FALSE)) {
-                                value = parser.getBooleanValue();
-                            } else {
-                                value = null;
-                            }
-                        } else {
-                            return endOfData();
-                        }
-                        return new JsonEntry(key, value);
-                    } else {
-                        return endOfData();
-                    }
-                } catch (Exception ex) {
-                    throw new RuntimeException(ex.getMessage(), ex);
-                }
-            }
-
-            private class JsonEntry implements Map.Entry<String, Object> {
-
-                private String key;
-                private Object value;
-
-                public JsonEntry(String key, Object value) {
-                    this.key = key;
-                    this.value = value;
-                }
+                private int field = 0;
 
                 @Override
-                public String getKey() {
-                    return key;
+                public boolean hasNext() {
+                    return field < current.names.length;
                 }
 
                 @Override
-                public Object getValue() {
-                    return value;
+                public Map.Entry<String, Object> next() {
+                    if (field < current.names.length) {
+                        Object value = JsonScanner.readValue(data, current.starts[field], current.ends[field]);
+                        return new SimpleImmutableEntry<String, Object>(current.names[field++], value);
+                    } else {
+                        throw new NoSuchElementException();
+                    }
                 }
 
                 @Override
-                public Object setValue(Object value) {
-                    throw new UnsupportedOperationException("This entry is unmodifiable!");
+                public void remove() {
+                    throw new UnsupportedOperationException("This map is unmodifiable!");
                 }
+            };
+        }
 
-            }
+        @Override
+        public int size() {
+            return getIndex().names.length;
         }
     }
 }
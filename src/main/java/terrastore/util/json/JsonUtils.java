@@ -49,6 +49,8 @@ import terrastore.server.Parameters;
 import terrastore.server.Values;
 import terrastore.store.Key;
 import terrastore.store.Value;
+import terrastore.store.codec.BinaryJsonCodec;
+import terrastore.store.codec.Codecs;
 
 /**
  * @author Sergio Bossa
@@ -68,6 +70,9 @@ public class JsonUtils {
 
     public static Map<String, Object> toModifiableMap(Value value) {
         try {
+            if (value.getCodec() instanceof BinaryJsonCodec) {
+                return BinaryJson.toModifiableMap(value.getEncodedBytes(), Codecs.HEADER_SIZE);
+            }
             return JSON_MAPPER.readValue(value.getInputStream(), Map.class);
         } catch (Exception ex) {
             throw new IllegalStateException("Value should have been already validated!");
@@ -76,6 +81,9 @@ public class JsonUtils {
 
     public static Map<String, Object> toUnmodifiableMap(Value value) {
         try {
+            if (value.getCodec() instanceof BinaryJsonCodec) {
+                return BinaryJson.toUnmodifiableMap(value.getEncodedBytes(), Codecs.HEADER_SIZE);
+            }
             return new JsonStreamingMap(value);
         } catch (Exception ex) {
             throw new IllegalStateException("Value should have been already validated!");
@@ -16,6 +16,8 @@
 package terrastore.server.impl;
 
 import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
+import java.util.zip.InflaterInputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -26,6 +28,7 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
@@ -36,9 +39,11 @@ import org.junit.Test;
 import terrastore.common.ClusterStats;
 import terrastore.common.ErrorMessage;
 import terrastore.server.Buckets;
+import terrastore.server.Continuation;
 import terrastore.server.Keys;
 import terrastore.server.Values;
 import terrastore.service.BackupService;
+import terrastore.service.ExtensionService;
 import terrastore.service.QueryService;
 import terrastore.service.StatsService;
 import terrastore.service.UpdateOperationException;
@@ -48,10 +53,12 @@ import terrastore.store.features.Predicate;
 import terrastore.store.features.Update;
 import terrastore.store.features.Range;
 import terrastore.store.Value;
+import terrastore.store.codec.Codecs;
 import terrastore.store.features.Mapper;
 import terrastore.store.features.Reducer;
 import terrastore.util.collect.Maps;
 import terrastore.util.collect.Sets;
+import terrastore.util.io.IOUtils;
 import terrastore.util.json.JsonUtils;
 import static org.easymock.classextension.EasyMock.*;
 import static org.junit.Assert.*;
@@ -307,6 +314,121 @@ public class JsonHttpServerTest {
         verify(updateService, queryService, backupService, statsService);
     }
 
+    @Test
+    public void testPutValueIfMatch() throws Exception {
+        UpdateService updateService = createMock(UpdateService.class);
+        QueryService queryService = createMock(QueryService.class);
+        BackupService backupService = createMock(BackupService.class);
+        StatsService statsService = createMock(StatsService.class);
+
+        long version = new Value(JSON_VALUE.getBytes()).getVersion();
+        updateService.putValueIfVersion(eq("bucket"), eq(new Key("test1")), EasyMock.<Value>anyObject(), eq(version));
+        expectLastCall().once();
+
+        replay(updateService, queryService, backupService, statsService);
+
+        JsonHttpServer server = startServerWith(updateService, queryService, backupService, statsService);
+
+        HttpClient client = new HttpClient();
+        PutMethod method = new PutMethod("http://localhost:8080/bucket/test1");
+        method.setRequestHeader("Content-Type", "application/json");
+        method.setRequestHeader("If-Match", "\"" + Long.toHexString(version) + "\"");
+        method.setRequestEntity(new StringRequestEntity(JSON_VALUE, "application/json", null));
+        client.executeMethod(method);
+
+        assertEquals(HttpStatus.SC_NO_CONTENT, method.getStatusCode());
+        assertEquals("\"" + Long.toHexString(version) + "\"", method.getResponseHeader("ETag").getValue());
+
+        method.releaseConnection();
+
+        stopServer(server);
+
+        verify(updateService, queryService, backupService, statsService);
+    }
+
+    @Test
+    public void testRemoveValueIfMatch() throws Exception {
+        UpdateService updateService = createMock(UpdateService.class);
+        QueryService queryService = createMock(QueryService.class);
+        BackupService backupService = createMock(BackupService.class);
+        StatsService statsService = createMock(StatsService.class);
+
+        updateService.removeValueIfVersion("bucket", new Key("test1"), 0xff00ff00ff00ff00L);
+        expectLastCall().once();
+
+        replay(updateService, queryService, backupService, statsService);
+
+        JsonHttpServer server = startServerWith(updateService, queryService, backupService, statsService);
+
+        HttpClient client = new HttpClient();
+        DeleteMethod method = new DeleteMethod("http://localhost:8080/bucket/test1");
+        method.setRequestHeader("If-Match", "\"ff00ff00ff00ff00\"");
+        client.executeMethod(method);
+
+        assertEquals(HttpStatus.SC_NO_CONTENT, method.getStatusCode());
+
+        method.releaseConnection();
+
+        stopServer(server);
+
+        verify(updateService, queryService, backupService, statsService);
+    }
+
+    @Test
+    public void testPutValueIfMatchAny() throws Exception {
+        UpdateService updateService = createMock(UpdateService.class);
+        QueryService queryService = createMock(QueryService.class);
+        BackupService backupService = createMock(BackupService.class);
+        StatsService statsService = createMock(StatsService.class);
+
+        updateService.putValueIfVersion(eq("bucket"), eq(new Key("test1")), EasyMock.<Value>anyObject(), eq(Value.ANY_VERSION));
+        expectLastCall().once();
+
+        replay(updateService, queryService, backupService, statsService);
+
+        JsonHttpServer server = startServerWith(updateService, queryService, backupService, statsService);
+
+        HttpClient client = new HttpClient();
+        PutMethod method = new PutMethod("http://localhost:8080/bucket/test1");
+        method.setRequestHeader("Content-Type", "application/json");
+        method.setRequestHeader("If-Match", "*");
+        method.setRequestEntity(new StringRequestEntity(JSON_VALUE, "application/json", null));
+        client.executeMethod(method);
+
+        assertEquals(HttpStatus.SC_NO_CONTENT, method.getStatusCode());
+
+        method.releaseConnection();
+
+        stopServer(server);
+
+        verify(updateService, queryService, backupService, statsService);
+    }
+
+    @Test
+    public void testRemoveValueIfMatchWithWeakTag() throws Exception {
+        UpdateService updateService = createMock(UpdateService.class);
+        QueryService queryService = createMock(QueryService.class);
+        BackupService backupService = createMock(BackupService.class);
+        StatsService statsService = createMock(StatsService.class);
+
+        replay(updateService, queryService, backupService, statsService);
+
+        JsonHttpServer server = startServerWith(updateService, queryService, backupService, statsService);
+
+        HttpClient client = new HttpClient();
+        DeleteMethod method = new DeleteMethod("http://localhost:8080/bucket/test1");
+        method.setRequestHeader("If-Match", "W/\"ff00ff00ff00ff00\"");
+        client.executeMethod(method);
+
+        assertEquals(HttpStatus.SC_PRECONDITION_FAILED, method.getStatusCode());
+
+        method.releaseConnection();
+
+        stopServer(server);
+
+        verify(updateService, queryService, backupService, statsService);
+    }
+
     @Test
     public void testRemoveValue() throws Exception {
         UpdateService updateService = createMock(UpdateService.class);
@@ -472,6 +594,69 @@ public class JsonHttpServerTest {
         assertEquals(HttpStatus.SC_OK, method.getStatusCode());
         System.err.println(method.getResponseBodyAsString());
         assertEquals(JSON_VALUE, method.getResponseBodyAsString());
+        assertEquals("\"" + Long.toHexString(new Value(JSON_VALUE.getBytes()).getVersion()) + "\"", method.getResponseHeader("ETag").getValue());
+
+        method.releaseConnection();
+
+        stopServer(server);
+
+        verify(updateService, queryService, backupService, statsService);
+    }
+
+    @Test
+    public void testGetCompressedValueWithAcceptedEncoding() throws Exception {
+        UpdateService updateService = createMock(UpdateService.class);
+        QueryService queryService = createMock(QueryService.class);
+        BackupService backupService = createMock(BackupService.class);
+        StatsService statsService = createMock(StatsService.class);
+
+        queryService.getValue(eq("bucket"), eq(new Key("test1")), eq(new Predicate(null)));
+        expectLastCall().andReturn(new Value(Codecs.encode(Codecs.DEFLATE, JSON_VALUE.getBytes()))).once();
+
+        replay(updateService, queryService, backupService, statsService);
+
+        JsonHttpServer server = startServerWith(updateService, queryService, backupService, statsService);
+
+        HttpClient client = new HttpClient();
+        GetMethod method = new GetMethod("http://localhost:8080/bucket/test1");
+        method.setRequestHeader("Content-Type", "application/json");
+        method.setRequestHeader("Accept-Encoding", "gzip, deflate");
+        client.executeMethod(method);
+
+        assertEquals(HttpStatus.SC_OK, method.getStatusCode());
+        assertEquals("deflate", method.getResponseHeader("Content-Encoding").getValue());
+        assertEquals(JSON_VALUE, new String(IOUtils.read(new InflaterInputStream(method.getResponseBodyAsStream()))));
+
+        method.releaseConnection();
+
+        stopServer(server);
+
+        verify(updateService, queryService, backupService, statsService);
+    }
+
+    @Test
+    public void testGetCompressedValueWithNoAcceptedEncoding() throws Exception {
+        UpdateService updateService = createMock(UpdateService.class);
+        QueryService queryService = createMock(QueryService.class);
+        BackupService backupService = createMock(BackupService.class);
+        StatsService statsService = createMock(StatsService.class);
+
+        queryService.getValue(eq("bucket"), eq(new Key("test1")), eq(new Predicate(null)));
+        expectLastCall().andReturn(new Value(Codecs.encode(Codecs.DEFLATE, JSON_VALUE.getBytes()))).once();
+
+        replay(updateService, queryService, backupService, statsService);
+
+        JsonHttpServer server = startServerWith(updateService, queryService, backupService, statsService);
+
+        HttpClient client = new HttpClient();
+        GetMethod method = new GetMethod("http://localhost:8080/bucket/test1");
+        method.setRequestHeader("Content-Type", "application/json");
+        method.setRequestHeader("Accept-Encoding", "deflate;q=0");
+        client.executeMethod(method);
+
+        assertEquals(HttpStatus.SC_OK, method.getStatusCode());
+        assertNull(method.getResponseHeader("Content-Encoding"));
+        assertEquals(JSON_VALUE, method.getResponseBodyAsString());
 
         method.releaseConnection();
 
@@ -520,7 +705,7 @@ public class JsonHttpServerTest {
         UpdateService updateService = createMock(UpdateService.class);
         QueryService queryService = createMock(QueryService.class);
 
-        queryService.getAllValues(eq("bucket"), eq(0));
+        queryService.getAllValues(eq("bucket"), eq(0), eq(Long.parseLong(JsonHttpServer.DEFAULT_PAGE_TIME_TO_LIVE)), (Continuation) isNull());
         expectLastCall().andReturn(new Values(values)).once();
 
         replay(updateService, queryService, backupService, statsService);
@@ -543,6 +728,41 @@ public class JsonHttpServerTest {
         verify(updateService, queryService, backupService, statsService);
     }
 
+    @Test
+    public void testGetAllValuesWithContinuation() throws Exception {
+        SortedMap<Key, Value> values = new TreeMap<Key, Value>();
+        values.put(new Key("test"), new Value(JSON_VALUE.getBytes()));
+        Continuation continuation = new Continuation("", Maps.hash(new String[]{"cluster"}, new Key[]{new Key("test")}));
+        Continuation next = new Continuation("", Maps.hash(new String[]{"cluster"}, new Key[]{new Key("test2")}));
+        BackupService backupService = createMock(BackupService.class);
+        StatsService statsService = createMock(StatsService.class);
+
+        UpdateService updateService = createMock(UpdateService.class);
+        QueryService queryService = createMock(QueryService.class);
+
+        queryService.getAllValues(eq("bucket"), eq(1), eq(10000L), eq(continuation));
+        expectLastCall().andReturn(new Values(values, next)).once();
+
+        replay(updateService, queryService, backupService, statsService);
+
+        JsonHttpServer server = startServerWith(updateService, queryService, backupService, statsService);
+
+        HttpClient client = new HttpClient();
+        GetMethod method = new GetMethod("http://localhost:8080/bucket?limit=1&timeToLive=10000&continuation=" + URLEncoder.encode(continuation.toToken(), "UTF-8"));
+        method.setRequestHeader("Content-Type", "application/json");
+        client.executeMethod(method);
+
+        assertEquals(HttpStatus.SC_OK, method.getStatusCode());
+        assertEquals(JSON_VALUES, method.getResponseBodyAsString());
+        assertEquals(next.toToken(), method.getResponseHeader(JsonHttpServer.CONTINUATION_HEADER).getValue());
+
+        method.releaseConnection();
+
+        stopServer(server);
+
+        verify(updateService, queryService, backupService, statsService);
+    }
+
     @Test
     public void testGetBuckets() throws Exception {
         Set<String> buckets = new LinkedHashSet<String>();
@@ -588,7 +808,7 @@ public class JsonHttpServerTest {
         BackupService backupService = createMock(BackupService.class);
         StatsService statsService = createMock(StatsService.class);
 
-        queryService.queryByRange(eq("bucket"), eq(new Range(new Key("test1"), new Key("test2"), 0, "", 0)), eq(new Predicate(null)));
+        queryService.queryByRange(eq("bucket"), eq(new Range(new Key("test1"), new Key("test2"), 0, "", 0)), eq(new Predicate(null)), (Continuation) isNull());
         expectLastCall().andReturn(new Values(values)).once();
 
         replay(updateService, queryService, backupService, statsService);
@@ -622,7 +842,7 @@ public class JsonHttpServerTest {
         BackupService backupService = createMock(BackupService.class);
         StatsService statsService = createMock(StatsService.class);
 
-        queryService.queryByRange(eq("bucket"), eq(new Range(new Key("test1"), new Key("test2"), 2, "order", 0)), eq(new Predicate(null)));
+        queryService.queryByRange(eq("bucket"), eq(new Range(new Key("test1"), new Key("test2"), 2, "order", 0)), eq(new Predicate(null)), (Continuation) isNull());
         expectLastCall().andReturn(new Values(values)).once();
 
         replay(updateService, queryService, backupService, statsService);
@@ -656,7 +876,7 @@ public class JsonHttpServerTest {
         BackupService backupService = createMock(BackupService.class);
         StatsService statsService = createMock(StatsService.class);
 
-        queryService.queryByRange(eq("bucket"), eq(new Range(new Key("test1"), new Key("test2"), 0, "order", 0)), eq(new Predicate(null)));
+        queryService.queryByRange(eq("bucket"), eq(new Range(new Key("test1"), new Key("test2"), 0, "order", 0)), eq(new Predicate(null)), (Continuation) isNull());
         expectLastCall().andReturn(new Values(values)).once();
 
         replay(updateService, queryService, backupService, statsService);
@@ -690,7 +910,7 @@ public class JsonHttpServerTest {
         BackupService backupService = createMock(BackupService.class);
         StatsService statsService = createMock(StatsService.class);
 
-        queryService.queryByRange(eq("bucket"), eq(new Range(new Key("test1"), new Key("test2"), 0, "order", 0)), eq(new Predicate("test:condition")));
+        queryService.queryByRange(eq("bucket"), eq(new Range(new Key("test1"), new Key("test2"), 0, "order", 0)), eq(new Predicate("test:condition")), (Continuation) isNull());
         expectLastCall().andReturn(new Values(values)).once();
 
         replay(updateService, queryService, backupService, statsService);
@@ -883,6 +1103,37 @@ public class JsonHttpServerTest {
         verify(updateService, queryService, backupService, statsService);
     }
 
+    @Test
+    public void testDeployExtension() throws Exception {
+        byte[] jar = new byte[]{'P', 'K', 3, 4};
+
+        UpdateService updateService = createMock(UpdateService.class);
+        QueryService queryService = createMock(QueryService.class);
+        BackupService backupService = createMock(BackupService.class);
+        StatsService statsService = createMock(StatsService.class);
+        ExtensionService extensionService = createMock(ExtensionService.class);
+
+        extensionService.deployExtension(eq("extension"), aryEq(jar), eq("secret"));
+        expectLastCall().once();
+
+        replay(updateService, queryService, backupService, statsService, extensionService);
+
+        JsonHttpServer server = startServerWith(updateService, queryService, backupService, statsService, extensionService);
+
+        HttpClient client = new HttpClient();
+        PutMethod method = new PutMethod("http://localhost:8080/_extensions/extension?secret=secret");
+        method.setRequestEntity(new ByteArrayRequestEntity(jar, "application/octet-stream"));
+        client.executeMethod(method);
+
+        assertEquals(HttpStatus.SC_NO_CONTENT, method.getStatusCode());
+
+        method.releaseConnection();
+
+        stopServer(server);
+
+        verify(updateService, queryService, backupService, statsService, extensionService);
+    }
+
     @Test
     public void testJsonErrorMessageOnInternalFail() throws Exception {
         UpdateService updateService = createMock(UpdateService.class);
@@ -913,7 +1164,11 @@ public class JsonHttpServerTest {
     }
 
     private JsonHttpServer startServerWith(UpdateService updateService, QueryService queryService, BackupService backupService, StatsService statsService) throws Exception {
-        JsonHttpServer server = new JsonHttpServer(new CoreServer(updateService, queryService, backupService, statsService));
+        return startServerWith(updateService, queryService, backupService, statsService, createMock(ExtensionService.class));
+    }
+
+    private JsonHttpServer startServerWith(UpdateService updateService, QueryService queryService, BackupService backupService, StatsService statsService, ExtensionService extensionService) throws Exception {
+        JsonHttpServer server = new JsonHttpServer(new CoreServer(updateService, queryService, backupService, statsService, extensionService));
         server.start("127.0.0.1", 8080, Maps.hash(new String[]{JsonHttpServer.CORS_ALLOWED_ORIGINS_CONFIGURATION_PARAMETER, JsonHttpServer.HTTP_THREADS_CONFIGURATION_PARAMETER}, new String[]{"*", "10"}));
 
         Thread.sleep(1000);
@@ -17,8 +17,12 @@ package terrastore.server.impl.support;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedMap;
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
 import org.junit.Test;
 import terrastore.store.Value;
+import terrastore.store.codec.Codecs;
 import static org.junit.Assert.*;
 
 /**
@@ -38,6 +42,52 @@ public class JsonValueProviderTest {
         assertArrayEquals(JSON_VALUE.getBytes(), value.getBytes());
     }
 
+    @Test
+    public void testReadNeverDecodesRawBytes() throws Exception {
+        JsonValueProvider provider = new JsonValueProvider();
+
+        byte[] framed = Codecs.encode(Codecs.DEFLATE, JSON_VALUE.getBytes());
+        ByteArrayInputStream stream = new ByteArrayInputStream(framed);
+        Value value = provider.readFrom(null, null, null, null, null, stream);
+
+        assertNull(value.getCodec());
+        assertArrayEquals(framed, value.getBytes());
+    }
+
+    @Test
+    public void testReadDeflateEncoded() throws Exception {
+        JsonValueProvider provider = new JsonValueProvider();
+
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl<String, String>();
+        headers.putSingle("Content-Encoding", "deflate");
+        ByteArrayInputStream stream = new ByteArrayInputStream(Codecs.DEFLATE.compress(JSON_VALUE.getBytes()));
+        Value value = provider.readFrom(null, null, null, null, headers, stream);
+
+        assertSame(Codecs.DEFLATE, value.getCodec());
+        assertArrayEquals(JSON_VALUE.getBytes(), value.getBytes());
+        assertEquals(Codecs.checksum(JSON_VALUE.getBytes()), value.getVersion());
+    }
+
+    @Test(expected = WebApplicationException.class)
+    public void testReadBadDeflateEncoded() throws Exception {
+        JsonValueProvider provider = new JsonValueProvider();
+
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl<String, String>();
+        headers.putSingle("Content-Encoding", "deflate");
+        ByteArrayInputStream stream = new ByteArrayInputStream(JSON_VALUE.getBytes());
+        provider.readFrom(null, null, null, null, headers, stream);
+    }
+
+    @Test(expected = WebApplicationException.class)
+    public void testReadUnsupportedEncoding() throws Exception {
+        JsonValueProvider provider = new JsonValueProvider();
+
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl<String, String>();
+        headers.putSingle("Content-Encoding", "gzip");
+        ByteArrayInputStream stream = new ByteArrayInputStream(JSON_VALUE.getBytes());
+        provider.readFrom(null, null, null, null, headers, stream);
+    }
+
     @Test
     public void testWrite() throws Exception {
         JsonValueProvider provider = new JsonValueProvider();
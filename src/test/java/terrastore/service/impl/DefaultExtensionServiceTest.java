@@ -0,0 +1,121 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.service.impl;
+
+import java.util.Set;
+import org.easymock.classextension.EasyMock;
+import org.junit.Test;
+import terrastore.common.ErrorMessage;
+import terrastore.communication.Cluster;
+import terrastore.communication.CommunicationException;
+import terrastore.communication.Node;
+import terrastore.communication.protocol.DeployExtensionCommand;
+import terrastore.router.Router;
+import terrastore.service.ExtensionOperationException;
+import terrastore.util.collect.Maps;
+import terrastore.util.collect.Sets;
+import static org.easymock.classextension.EasyMock.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class DefaultExtensionServiceTest {
+
+    @Test
+    public void testDeployExtensionOnAllNodes() throws Exception {
+        Cluster cluster1 = createMock(Cluster.class);
+        Cluster cluster2 = createMock(Cluster.class);
+        Node node1 = createMock(Node.class);
+        Node node2 = createMock(Node.class);
+        Node node3 = createMock(Node.class);
+        Router router = createMock(Router.class);
+
+        router.broadcastRoute();
+        expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Sets.linked(node1, node2), Sets.hash(node3)})).once();
+        node1.send(EasyMock.<DeployExtensionCommand>anyObject());
+        expectLastCall().andReturn(null).once();
+        node2.send(EasyMock.<DeployExtensionCommand>anyObject());
+        expectLastCall().andReturn(null).once();
+        node3.send(EasyMock.<DeployExtensionCommand>anyObject());
+        expectLastCall().andReturn(null).once();
+
+        replay(cluster1, cluster2, node1, node2, node3, router);
+
+        DefaultExtensionService service = new DefaultExtensionService(router, "secret");
+        service.deployExtension("extension", new byte[0], "secret");
+
+        verify(cluster1, cluster2, node1, node2, node3, router);
+    }
+
+    @Test(expected = CommunicationException.class)
+    public void testDeployExtensionFailsOnUnreachableNodes() throws Exception {
+        Cluster cluster1 = createMock(Cluster.class);
+        Node node1 = createMock(Node.class);
+        Node node2 = createMock(Node.class);
+        Router router = createMock(Router.class);
+
+        router.broadcastRoute();
+        expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.linked(node1, node2)})).once();
+        node1.send(EasyMock.<DeployExtensionCommand>anyObject());
+        expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).once();
+        node2.send(EasyMock.<DeployExtensionCommand>anyObject());
+        expectLastCall().andReturn(null).once();
+
+        replay(cluster1, node1, node2, router);
+
+        DefaultExtensionService service = new DefaultExtensionService(router, "secret");
+        try {
+            service.deployExtension("extension", new byte[0], "secret");
+        } finally {
+            verify(cluster1, node1, node2, router);
+        }
+    }
+
+    @Test(expected = ExtensionOperationException.class)
+    public void testDeployExtensionWithBadSecret() throws Exception {
+        Router router = createMock(Router.class);
+
+        replay(router);
+
+        DefaultExtensionService service = new DefaultExtensionService(router, "secret");
+        try {
+            service.deployExtension("extension", new byte[0], "bad");
+        } finally {
+            verify(router);
+        }
+    }
+
+    @Test(expected = ExtensionOperationException.class)
+    public void testDeployExtensionIsDisabledWithoutSecret() throws Exception {
+        Router router = createMock(Router.class);
+
+        replay(router);
+
+        DefaultExtensionService service = new DefaultExtensionService(router, "");
+        try {
+            service.deployExtension("extension", new byte[0], "");
+        } finally {
+            verify(router);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPlaceholderSecretIsRejected() throws Exception {
+        Router router = createMock(Router.class);
+
+        new DefaultExtensionService(router, DefaultExtensionService.PLACEHOLDER_SECRET);
+    }
+}
@@ -20,8 +20,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import org.easymock.Capture;
 import org.easymock.classextension.EasyMock;
 import org.junit.Test;
 import terrastore.common.ErrorMessage;
@@ -35,8 +37,14 @@ import terrastore.communication.protocol.GetBucketsCommand;
 import terrastore.communication.protocol.GetValueCommand;
 import terrastore.communication.protocol.GetValuesCommand;
 import terrastore.communication.protocol.MapCommand;
+import terrastore.communication.protocol.QueryByIndexCommand;
+import terrastore.communication.protocol.RangeQueryCommand;
 import terrastore.communication.protocol.ReduceCommand;
+import terrastore.communication.protocol.ScanMapCommand;
+import terrastore.communication.protocol.ScanValuesCommand;
+import terrastore.communication.protocol.TreeReduceCommand;
 import terrastore.router.Router;
+import terrastore.server.Continuation;
 import terrastore.server.Keys;
 import terrastore.server.Values;
 import terrastore.service.QueryOperationException;
@@ -265,9 +273,7 @@ public class DefaultQueryServiceTest {
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
         Router router = createMock(Router.class);
-        Map<Node, Set<Key>> nodeToKeys = new HashMap<Node, Set<Key>>();
-        nodeToKeys.put(node1, new HashSet<Key>(Arrays.asList(new Key("test1"))));
-        nodeToKeys.put(node2, new HashSet<Key>(Arrays.asList(new Key("test2"))));
+        makeThreadSafe(router, true);
         Map<Key, Value> values1 = new HashMap<Key, Value>();
         values1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
         Map<Key, Value> values2 = new HashMap<Key, Value>();
@@ -275,25 +281,31 @@ public class DefaultQueryServiceTest {
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Sets.hash(node1), Sets.hash(node2)})).once();
+        router.routeToLocalNode();
+        expectLastCall().andReturn(node1).anyTimes();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
 
+        // Node 1 is the local node, so it scans its own keys, skipping those owned by other nodes:
         node1.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test1"))).once();
-        node2.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test2"))).once();
-
-        router.routeToNodesFor("bucket", Sets.hash(new Key("test1"), new Key("test2")));
-        expectLastCall().andReturn(nodeToKeys).once();
-
+        expectLastCall().andReturn(Sets.hash(new Key("test1"), new Key("test3"))).once();
+        router.routeToNodeFor("bucket", new Key("test1"));
+        expectLastCall().andReturn(node1).once();
+        router.routeToNodeFor("bucket", new Key("test3"));
+        expectLastCall().andReturn(node2).once();
         node1.send(EasyMock.<GetValuesCommand>anyObject());
         expectLastCall().andReturn(values1).once();
-        node2.send(EasyMock.<GetValuesCommand>anyObject());
+        // Node 2 is remote, so it's sent the scan command:
+        node2.send(EasyMock.<ScanValuesCommand>anyObject());
         expectLastCall().andReturn(values2).once();
 
         replay(cluster1, cluster2, node1, node2, router);
 
         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
-        Map<Key, Value> result = service.getAllValues("bucket", 0);
+        Map<Key, Value> result = service.getAllValues("bucket", 0, 0, null);
         assertEquals(2, result.size());
         assertEquals(JSON_VALUE, new String(result.get(new Key("test1")).getBytes()));
         assertEquals(JSON_VALUE, new String(result.get(new Key("test2")).getBytes()));
@@ -308,32 +320,33 @@ public class DefaultQueryServiceTest {
         makeThreadSafe(node1, true);
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
+        Node localNode = createMock(Node.class);
         Router router = createMock(Router.class);
-        Map<Node, Set<Key>> nodeToKeys = new HashMap<Node, Set<Key>>();
-        nodeToKeys.put(node2, new HashSet<Key>(Arrays.asList(new Key("test1"), new Key("test2"))));
+        makeThreadSafe(router, true);
         Map<Key, Value> values = new HashMap<Key, Value>();
         values.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
         values.put(new Key("test2"), new Value(JSON_VALUE.getBytes()));
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.linked(node1, node2)})).once();
-
-        node1.send(EasyMock.<GetKeysCommand>anyObject());
+        router.routeToLocalNode();
+        expectLastCall().andReturn(localNode).once();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
+
+        // Node 2 scans both its own keys and keys owned by the failing node 1:
+        node1.send(EasyMock.<ScanValuesCommand>anyObject());
         expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).once();
-        node2.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test1"), new Key("test2"))).once();
-
-        router.routeToNodesFor("bucket", Sets.hash(new Key("test1"), new Key("test2")));
-        expectLastCall().andReturn(nodeToKeys).once();
-
-        node2.send(EasyMock.<GetValuesCommand>anyObject());
-        expectLastCall().andReturn(values).once();
+        node2.send(EasyMock.<ScanValuesCommand>anyObject());
+        expectLastCall().andReturn(values).times(2);
 
         replay(cluster1, node1, node2, router);
 
         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
-        Map<Key, Value> result = service.getAllValues("bucket", 0);
+        Map<Key, Value> result = service.getAllValues("bucket", 0, 0, null);
         assertEquals(2, result.size());
         assertEquals(JSON_VALUE, new String(result.get(new Key("test1")).getBytes()));
         assertEquals(JSON_VALUE, new String(result.get(new Key("test2")).getBytes()));
@@ -348,20 +361,30 @@ public class DefaultQueryServiceTest {
         makeThreadSafe(node1, true);
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
+        Node localNode = createMock(Node.class);
         Router router = createMock(Router.class);
+        makeThreadSafe(router, true);
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.linked(node1, node2)})).once();
+        router.routeToLocalNode();
+        expectLastCall().andReturn(localNode).once();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
 
-        node1.send(EasyMock.<GetKeysCommand>anyObject());
+        node1.send(EasyMock.<ScanValuesCommand>anyObject());
         expectLastCall().andThrow(new ProcessingException(new ErrorMessage(0, ""))).once();
+        node2.send(EasyMock.<ScanValuesCommand>anyObject());
+        expectLastCall().andReturn(Collections.EMPTY_MAP).anyTimes();
 
         replay(cluster1, node1, node2, router);
 
         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
         try {
-            Map<Key, Value> result = service.getAllValues("bucket", 0);
+            Map<Key, Value> result = service.getAllValues("bucket", 0, 0, null);
         } finally {
             verify(cluster1, node1, node2, router);
         }
@@ -374,24 +397,30 @@ public class DefaultQueryServiceTest {
         makeThreadSafe(node1, true);
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
+        Node localNode = createMock(Node.class);
         Router router = createMock(Router.class);
+        makeThreadSafe(router, true);
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.linked(node1, node2)})).once();
-
-        node1.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).once();
-        node2.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).once();
-
-        router.routeToNodesFor("bucket", Sets.<Key>hash());
-        expectLastCall().andReturn(Maps.hash(new Node[0], new Set[0])).once();
+        router.routeToLocalNode();
+        expectLastCall().andReturn(localNode).once();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
+
+        // Every node is tried once for its own keys, and once for the keys of the other one:
+        node1.send(EasyMock.<ScanValuesCommand>anyObject());
+        expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).times(2);
+        node2.send(EasyMock.<ScanValuesCommand>anyObject());
+        expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).times(2);
 
         replay(cluster1, node1, node2, router);
 
         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
-        assertTrue(service.getAllValues("bucket", 0).isEmpty());
+        assertTrue(service.getAllValues("bucket", 0, 0, null).isEmpty());
 
         verify(cluster1, node1, node2, router);
     }
@@ -404,10 +433,9 @@ public class DefaultQueryServiceTest {
         makeThreadSafe(node1, true);
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
+        Node localNode = createMock(Node.class);
         Router router = createMock(Router.class);
-        Map<Node, Set<Key>> nodeToKeys = new HashMap<Node, Set<Key>>();
-        nodeToKeys.put(node1, new HashSet<Key>(Arrays.asList(new Key("test1"))));
-        nodeToKeys.put(node2, new HashSet<Key>(Arrays.asList(new Key("test2"))));
+        makeThreadSafe(router, true);
         Map<Key, Value> values1 = new HashMap<Key, Value>();
         values1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
         Map<Key, Value> values2 = new HashMap<Key, Value>();
@@ -415,23 +443,23 @@ public class DefaultQueryServiceTest {
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Collections.emptySet(), Sets.linked(node1, node2)})).once();
+        router.routeToLocalNode();
+        expectLastCall().andReturn(localNode).once();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
 
-        node1.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test1"), new Key("test2"))).once();
-
-        router.routeToNodesFor("bucket", Sets.hash(new Key("test1"), new Key("test2")));
-        expectLastCall().andReturn(nodeToKeys).once();
-
-        node1.send(EasyMock.<GetValuesCommand>anyObject());
+        node1.send(EasyMock.<ScanValuesCommand>anyObject());
         expectLastCall().andReturn(values1).once();
-        node2.send(EasyMock.<GetValuesCommand>anyObject());
+        node2.send(EasyMock.<ScanValuesCommand>anyObject());
         expectLastCall().andReturn(values2).once();
 
         replay(cluster1, cluster2, node1, node2, router);
 
         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
-        Map<Key, Value> result = service.getAllValues("bucket", 0);
+        Map<Key, Value> result = service.getAllValues("bucket", 0, 0, null);
         assertEquals(2, result.size());
         assertEquals(JSON_VALUE, new String(result.get(new Key("test1")).getBytes()));
         assertEquals(JSON_VALUE, new String(result.get(new Key("test2")).getBytes()));
@@ -448,35 +476,24 @@ public class DefaultQueryServiceTest {
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
         Router router = createMock(Router.class);
-        Map<Node, Set<Key>> nodeToKeys = new HashMap<Node, Set<Key>>();
-        nodeToKeys.put(node1, new HashSet<Key>(Arrays.asList(new Key("test1"))));
-        nodeToKeys.put(node2, new HashSet<Key>(Arrays.asList(new Key("test2"))));
-        Map<Key, Value> values1 = new HashMap<Key, Value>();
+        Map<Key, Value> values1 = new LinkedHashMap<Key, Value>();
         values1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
-        Map<Key, Value> values2 = new HashMap<Key, Value>();
+        Map<Key, Value> values2 = new LinkedHashMap<Key, Value>();
         values2.put(new Key("test2"), new Value(JSON_VALUE.getBytes()));
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Sets.hash(node1), Sets.hash(node2)})).once();
 
-        node1.send(EasyMock.<KeysInRangeCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test1"))).once();
-        node2.send(EasyMock.<KeysInRangeCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test2"))).once();
-
-        router.routeToNodesFor("bucket", Sets.hash(new Key("test1"), new Key("test2")));
-        expectLastCall().andReturn(nodeToKeys).once();
-
-        node1.send(EasyMock.<GetValuesCommand>anyObject());
+        node1.send(EasyMock.<RangeQueryCommand>anyObject());
         expectLastCall().andReturn(values1).once();
-        node2.send(EasyMock.<GetValuesCommand>anyObject());
+        node2.send(EasyMock.<RangeQueryCommand>anyObject());
         expectLastCall().andReturn(values2).once();
 
         replay(cluster1, cluster2, node1, node2, router);
 
         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
-        Map<Key, Value> result = service.queryByRange("bucket", new Range(new Key("test1"), new Key("test2"), 0, "order", 0), new Predicate(null));
+        Map<Key, Value> result = service.queryByRange("bucket", new Range(new Key("test1"), new Key("test2"), 0, "order", 0), new Predicate(null), null);
         assertEquals(2, result.size());
         assertEquals(new Key("test1"), result.keySet().toArray()[0]);
         assertEquals(new Key("test2"), result.keySet().toArray()[1]);
@@ -484,6 +501,135 @@ public class DefaultQueryServiceTest {
         verify(cluster1, cluster2, node1, node2, router);
     }
 
+    @Test
+    public void testQueryByRangeMergesSortedValuesUpToLimit() throws Exception {
+        Cluster cluster1 = new Cluster("cluster1", false);
+        Cluster cluster2 = new Cluster("cluster2", false);
+        Node node1 = createMock(Node.class);
+        makeThreadSafe(node1, true);
+        Node node2 = createMock(Node.class);
+        makeThreadSafe(node2, true);
+        Router router = createMock(Router.class);
+        Map<Key, Value> values1 = new LinkedHashMap<Key, Value>();
+        values1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
+        values1.put(new Key("test3"), new Value(JSON_VALUE.getBytes()));
+        Map<Key, Value> values2 = new LinkedHashMap<Key, Value>();
+        values2.put(new Key("test2"), new Value(JSON_VALUE.getBytes()));
+        values2.put(new Key("test4"), new Value(JSON_VALUE.getBytes()));
+
+        router.broadcastRoute();
+        expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Sets.hash(node1), Sets.hash(node2)})).once();
+
+        node1.send(EasyMock.<RangeQueryCommand>anyObject());
+        expectLastCall().andReturn(values1).once();
+        node2.send(EasyMock.<RangeQueryCommand>anyObject());
+        expectLastCall().andReturn(values2).once();
+
+        replay(node1, node2, router);
+
+        DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
+
+        Map<Key, Value> result = service.queryByRange("bucket", new Range(new Key("test1"), new Key("test4"), 3, "order", 0), new Predicate(null), null);
+        assertEquals(3, result.size());
+        assertEquals(new Key("test1"), result.keySet().toArray()[0]);
+        assertEquals(new Key("test2"), result.keySet().toArray()[1]);
+        assertEquals(new Key("test3"), result.keySet().toArray()[2]);
+
+        verify(node1, node2, router);
+    }
+
+    @Test
+    public void testQueryByRangeWithContinuation() throws Exception {
+        Cluster cluster1 = new Cluster("cluster1", false);
+        Cluster cluster2 = new Cluster("cluster2", false);
+        Node node1 = createMock(Node.class);
+        makeThreadSafe(node1, true);
+        Node node2 = createMock(Node.class);
+        makeThreadSafe(node2, true);
+        Router router = createMock(Router.class);
+        Map<Key, Value> values1 = new LinkedHashMap<Key, Value>();
+        values1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
+        values1.put(new Key("test3"), new Value(JSON_VALUE.getBytes()));
+        Map<Key, Value> values2 = new LinkedHashMap<Key, Value>();
+        values2.put(new Key("test2"), new Value(JSON_VALUE.getBytes()));
+        values2.put(new Key("test4"), new Value(JSON_VALUE.getBytes()));
+        Map<Key, Value> nextValues1 = new LinkedHashMap<Key, Value>();
+        nextValues1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
+        nextValues1.put(new Key("test3"), new Value(JSON_VALUE.getBytes()));
+        Map<Key, Value> nextValues2 = new LinkedHashMap<Key, Value>();
+        nextValues2.put(new Key("test2"), new Value(JSON_VALUE.getBytes()));
+        nextValues2.put(new Key("test4"), new Value(JSON_VALUE.getBytes()));
+
+        router.broadcastRoute();
+        expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Sets.hash(node1), Sets.hash(node2)})).times(2);
+
+        node1.send(EasyMock.<RangeQueryCommand>anyObject());
+        expectLastCall().andReturn(values1).once().andReturn(nextValues1).once();
+        node2.send(EasyMock.<RangeQueryCommand>anyObject());
+        expectLastCall().andReturn(values2).once().andReturn(nextValues2).once();
+
+        replay(node1, node2, router);
+
+        DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
+
+        Range range = new Range(new Key("test1"), new Key("test4"), 2, "order", 0);
+        Values first = service.queryByRange("bucket", range, new Predicate(null), null);
+        assertEquals(2, first.size());
+        assertEquals(new Key("test1"), first.keySet().toArray()[0]);
+        assertEquals(new Key("test2"), first.keySet().toArray()[1]);
+        assertNotNull(first.getContinuation());
+        assertEquals(new Key("test1"), first.getContinuation().getPosition("cluster1"));
+        assertEquals(new Key("test2"), first.getContinuation().getPosition("cluster2"));
+        Values second = service.queryByRange("bucket", range, new Predicate(null), Continuation.fromToken(first.getContinuation().toToken()));
+        assertEquals(2, second.size());
+        assertEquals(new Key("test3"), second.keySet().toArray()[0]);
+        assertEquals(new Key("test4"), second.keySet().toArray()[1]);
+        assertNull(second.getContinuation());
+
+        verify(node1, node2, router);
+    }
+
+    @Test(expected = QueryOperationException.class)
+    public void testQueryByRangeFailsWithContinuationForDifferentComparator() throws Exception {
+        Router router = createMock(Router.class);
+
+        replay(router);
+
+        DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
+
+        try {
+            service.queryByRange("bucket", new Range(new Key("test1"), new Key("test4"), 2, "order", 0), new Predicate(null), new Continuation("other", new HashMap<String, Key>()));
+        } finally {
+            verify(router);
+        }
+    }
+
+    @Test
+    public void testGetAllValuesWithLimitScansNodes() throws Exception {
+        Cluster cluster1 = new Cluster("cluster1", false);
+        Node node1 = createMock(Node.class);
+        makeThreadSafe(node1, true);
+        Router router = createMock(Router.class);
+        Map<Key, Value> values = new LinkedHashMap<Key, Value>();
+        values.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
+
+        router.broadcastRoute();
+        expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.hash(node1)})).once();
+
+        node1.send(EasyMock.<RangeQueryCommand>anyObject());
+        expectLastCall().andReturn(values).once();
+
+        replay(node1, router);
+
+        DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
+
+        Values result = service.getAllValues("bucket", 2, 60000, null);
+        assertEquals(1, result.size());
+        assertNull(result.getContinuation());
+
+        verify(node1, router);
+    }
+
     @Test(expected = QueryOperationException.class)
     public void testQueryByRangeFailsInCaseOfProcessingException() throws Exception {
         Cluster cluster1 = createMock(Cluster.class);
@@ -496,7 +642,7 @@ public class DefaultQueryServiceTest {
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.linked(node1, node2)})).once();
 
-        node1.send(EasyMock.<KeysInRangeCommand>anyObject());
+        node1.send(EasyMock.<RangeQueryCommand>anyObject());
         expectLastCall().andThrow(new ProcessingException(new ErrorMessage(0, ""))).once();
 
         replay(cluster1, node1, node2, router);
@@ -504,7 +650,7 @@ public class DefaultQueryServiceTest {
         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
         try {
-            Map<Key, Value> result = service.queryByRange("bucket", new Range(new Key("test1"), new Key("test2"), 0, "order", 0), new Predicate(null));
+            Map<Key, Value> result = service.queryByRange("bucket", new Range(new Key("test1"), new Key("test2"), 0, "order", 0), new Predicate(null), null);
         } finally {
             verify(cluster1, node1, node2, router);
         }
@@ -518,24 +664,16 @@ public class DefaultQueryServiceTest {
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
         Router router = createMock(Router.class);
-        Map<Node, Set<Key>> nodeToKeys = new HashMap<Node, Set<Key>>();
-        nodeToKeys.put(node2, new HashSet<Key>(Arrays.asList(new Key("test1"), new Key("test2"))));
-        Map<Key, Value> values = new HashMap<Key, Value>();
+        Map<Key, Value> values = new LinkedHashMap<Key, Value>();
         values.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
         values.put(new Key("test2"), new Value(JSON_VALUE.getBytes()));
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.linked(node1, node2)})).once();
 
-        node1.send(EasyMock.<KeysInRangeCommand>anyObject());
+        node1.send(EasyMock.<RangeQueryCommand>anyObject());
         expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).once();
-        node2.send(EasyMock.<KeysInRangeCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test1"), new Key("test2"))).once();
-
-        router.routeToNodesFor("bucket", Sets.hash(new Key("test1"), new Key("test2")));
-        expectLastCall().andReturn(nodeToKeys).once();
-
-        node2.send(EasyMock.<GetValuesCommand>anyObject());
+        node2.send(EasyMock.<RangeQueryCommand>anyObject());
         expectLastCall().andReturn(values).once();
 
         replay(cluster1, node1, node2, router);
@@ -543,7 +681,7 @@ public class DefaultQueryServiceTest {
 
         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
-        Map<Key, Value> result = service.queryByRange("bucket", new Range(new Key("test1"), new Key("test2"), 0, "order", 0), new Predicate(null));
+        Map<Key, Value> result = service.queryByRange("bucket", new Range(new Key("test1"), new Key("test2"), 0, "order", 0), new Predicate(null), null);
         assertEquals(2, result.size());
         assertEquals(JSON_VALUE, new String(result.get(new Key("test1")).getBytes()));
         assertEquals(JSON_VALUE, new String(result.get(new Key("test2")).getBytes()));
@@ -563,19 +701,16 @@ public class DefaultQueryServiceTest {
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.linked(node1, node2)})).once();
 
-        node1.send(EasyMock.<KeysInRangeCommand>anyObject());
+        node1.send(EasyMock.<RangeQueryCommand>anyObject());
         expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).once();
-        node2.send(EasyMock.<KeysInRangeCommand>anyObject());
+        node2.send(EasyMock.<RangeQueryCommand>anyObject());
         expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).once();
 
-        router.routeToNodesFor("bucket", Sets.<Key>hash());
-        expectLastCall().andReturn(Maps.hash(new Node[0], new Set[0])).once();
-
         replay(cluster1, node1, node2, router);
 
         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
-        assertTrue(service.queryByRange("bucket", new Range(new Key("test1"), new Key("test2"), 0, "order", 0), new Predicate(null)).isEmpty());
+        assertTrue(service.queryByRange("bucket", new Range(new Key("test1"), new Key("test2"), 0, "order", 0), new Predicate(null), null).isEmpty());
 
         verify(cluster1, node1, node2, router);
     }
@@ -589,33 +724,21 @@ public class DefaultQueryServiceTest {
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
         Router router = createMock(Router.class);
-        Map<Node, Set<Key>> nodeToKeys = new HashMap<Node, Set<Key>>();
-        nodeToKeys.put(node1, new HashSet<Key>(Arrays.asList(new Key("test1"))));
-        nodeToKeys.put(node2, new HashSet<Key>(Arrays.asList(new Key("test2"))));
-        Map<Key, Value> values1 = new HashMap<Key, Value>();
-        values1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
-        Map<Key, Value> values2 = new HashMap<Key, Value>();
-        values2.put(new Key("test2"), new Value(JSON_VALUE.getBytes()));
+        Map<Key, Value> values = new LinkedHashMap<Key, Value>();
+        values.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
+        values.put(new Key("test2"), new Value(JSON_VALUE.getBytes()));
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Collections.emptySet(), Sets.linked(node1, node2)})).once();
 
-        node1.send(EasyMock.<KeysInRangeCommand>anyObject());
-        expectLastCall().andReturn(Sets.linked(new Key("test1"), new Key("test2"))).once();
-
-        router.routeToNodesFor("bucket", Sets.hash(new Key("test1"), new Key("test2")));
-        expectLastCall().andReturn(nodeToKeys).once();
-
-        node1.send(EasyMock.<GetValuesCommand>anyObject());
-        expectLastCall().andReturn(values1).once();
-        node2.send(EasyMock.<GetValuesCommand>anyObject());
-        expectLastCall().andReturn(values2).once();
+        node1.send(EasyMock.<RangeQueryCommand>anyObject());
+        expectLastCall().andReturn(values).once();
 
         replay(cluster1, cluster2, node1, node2, router);
 
         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
-        Map<Key, Value> result = service.queryByRange("bucket", new Range(new Key("test1"), new Key("test2"), 0, "order", 0), new Predicate(null));
+        Map<Key, Value> result = service.queryByRange("bucket", new Range(new Key("test1"), new Key("test2"), 0, "order", 0), new Predicate(null), null);
         assertEquals(2, result.size());
         assertEquals(new Key("test1"), result.keySet().toArray()[0]);
         assertEquals(new Key("test2"), result.keySet().toArray()[1]);
@@ -632,9 +755,7 @@ public class DefaultQueryServiceTest {
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
         Router router = createMock(Router.class);
-        Map<Node, Set<Key>> nodeToKeys = new HashMap<Node, Set<Key>>();
-        nodeToKeys.put(node1, new HashSet<Key>(Arrays.asList(new Key("test1"))));
-        nodeToKeys.put(node2, new HashSet<Key>(Arrays.asList(new Key("test2"))));
+        makeThreadSafe(router, true);
         Map<Key, Value> values1 = new HashMap<Key, Value>();
         values1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
         Map<Key, Value> values2 = new HashMap<Key, Value>();
@@ -642,18 +763,24 @@ public class DefaultQueryServiceTest {
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Sets.hash(node1), Sets.hash(node2)})).once();
+        router.routeToLocalNode();
+        expectLastCall().andReturn(node1).anyTimes();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
 
+        // Node 1 is the local node, so it scans its own keys, skipping those owned by other nodes:
         node1.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test1"))).once();
-        node2.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test2"))).once();
-
-        router.routeToNodesFor("bucket", Sets.hash(new Key("test1"), new Key("test2")));
-        expectLastCall().andReturn(nodeToKeys).once();
-
+        expectLastCall().andReturn(Sets.hash(new Key("test1"), new Key("test3"))).once();
+        router.routeToNodeFor("bucket", new Key("test1"));
+        expectLastCall().andReturn(node1).once();
+        router.routeToNodeFor("bucket", new Key("test3"));
+        expectLastCall().andReturn(node2).once();
         node1.send(EasyMock.<GetValuesCommand>anyObject());
         expectLastCall().andReturn(values1).once();
-        node2.send(EasyMock.<GetValuesCommand>anyObject());
+        // Node 2 is remote, so it's sent the scan command:
+        node2.send(EasyMock.<ScanValuesCommand>anyObject());
         expectLastCall().andReturn(values2).once();
 
         replay(cluster1, cluster2, node1, node2, router);
@@ -662,8 +789,8 @@ public class DefaultQueryServiceTest {
 
         Map<Key, Value> result = service.queryByPredicate("bucket", new Predicate("test:true"));
         assertEquals(2, result.size());
-        assertTrue(result.containsKey(new Key("test1")));
-        assertTrue(result.containsKey(new Key("test2")));
+        assertEquals(JSON_VALUE, new String(result.get(new Key("test1")).getBytes()));
+        assertEquals(JSON_VALUE, new String(result.get(new Key("test2")).getBytes()));
 
         verify(cluster1, cluster2, node1, node2, router);
     }
@@ -675,30 +802,31 @@ public class DefaultQueryServiceTest {
         makeThreadSafe(node1, true);
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
+        Node localNode = createMock(Node.class);
         Router router = createMock(Router.class);
-        Map<Node, Set<Key>> nodeToKeys = new HashMap<Node, Set<Key>>();
-        nodeToKeys.put(node2, new HashSet<Key>(Arrays.asList(new Key("test1"), new Key("test2"))));
+        makeThreadSafe(router, true);
         Map<Key, Value> values = new HashMap<Key, Value>();
         values.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
         values.put(new Key("test2"), new Value(JSON_VALUE.getBytes()));
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.linked(node1, node2)})).once();
-
-        node1.send(EasyMock.<GetKeysCommand>anyObject());
+        router.routeToLocalNode();
+        expectLastCall().andReturn(localNode).once();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
+
+        // Node 2 scans both its own keys and keys owned by the failing node 1:
+        node1.send(EasyMock.<ScanValuesCommand>anyObject());
         expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).once();
-        node2.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test1"), new Key("test2"))).once();
-
-        router.routeToNodesFor("bucket", Sets.hash(new Key("test1"), new Key("test2")));
-        expectLastCall().andReturn(nodeToKeys).once();
-
-        node2.send(EasyMock.<GetValuesCommand>anyObject());
-        expectLastCall().andReturn(values).once();
+        node2.send(EasyMock.<ScanValuesCommand>anyObject());
+        expectLastCall().andReturn(values).times(2);
 
         replay(cluster1, node1, node2, router);
 
-         DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
+        DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
 
         Map<Key, Value> result = service.queryByPredicate("bucket", new Predicate("test:true"));
         assertEquals(2, result.size());
@@ -715,18 +843,24 @@ public class DefaultQueryServiceTest {
         makeThreadSafe(node1, true);
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
+        Node localNode = createMock(Node.class);
         Router router = createMock(Router.class);
+        makeThreadSafe(router, true);
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.linked(node1, node2)})).once();
-
-        node1.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).once();
-        node2.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).once();
-
-        router.routeToNodesFor("bucket", Sets.<Key>hash());
-        expectLastCall().andReturn(Maps.hash(new Node[0], new Set[0])).once();
+        router.routeToLocalNode();
+        expectLastCall().andReturn(localNode).once();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
+
+        // Every node is tried once for its own keys, and once for the keys of the other one:
+        node1.send(EasyMock.<ScanValuesCommand>anyObject());
+        expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).times(2);
+        node2.send(EasyMock.<ScanValuesCommand>anyObject());
+        expectLastCall().andThrow(new CommunicationException(new ErrorMessage(0, ""))).times(2);
 
         replay(cluster1, node1, node2, router);
 
@@ -745,10 +879,9 @@ public class DefaultQueryServiceTest {
         makeThreadSafe(node1, true);
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
+        Node localNode = createMock(Node.class);
         Router router = createMock(Router.class);
-        Map<Node, Set<Key>> nodeToKeys = new HashMap<Node, Set<Key>>();
-        nodeToKeys.put(node1, new HashSet<Key>(Arrays.asList(new Key("test1"))));
-        nodeToKeys.put(node2, new HashSet<Key>(Arrays.asList(new Key("test2"))));
+        makeThreadSafe(router, true);
         Map<Key, Value> values1 = new HashMap<Key, Value>();
         values1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
         Map<Key, Value> values2 = new HashMap<Key, Value>();
@@ -756,16 +889,16 @@ public class DefaultQueryServiceTest {
 
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Collections.emptySet(), Sets.linked(node1, node2)})).once();
+        router.routeToLocalNode();
+        expectLastCall().andReturn(localNode).once();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
 
-        node1.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test1"), new Key("test2"))).once();
-
-        router.routeToNodesFor("bucket", Sets.hash(new Key("test1"), new Key("test2")));
-        expectLastCall().andReturn(nodeToKeys).once();
-
-        node1.send(EasyMock.<GetValuesCommand>anyObject());
+        node1.send(EasyMock.<ScanValuesCommand>anyObject());
         expectLastCall().andReturn(values1).once();
-        node2.send(EasyMock.<GetValuesCommand>anyObject());
+        node2.send(EasyMock.<ScanValuesCommand>anyObject());
         expectLastCall().andReturn(values2).once();
 
         replay(cluster1, cluster2, node1, node2, router);
@@ -780,6 +913,73 @@ public class DefaultQueryServiceTest {
         verify(cluster1, cluster2, node1, node2, router);
     }
 
+    @Test
+    public void testQueryByPredicateAnsweredByIndexes() throws Exception {
+        Cluster cluster1 = createMock(Cluster.class);
+        Node node1 = createMock(Node.class);
+        makeThreadSafe(node1, true);
+        Node node2 = createMock(Node.class);
+        makeThreadSafe(node2, true);
+        Router router = createMock(Router.class);
+        Map<Key, Value> values1 = new HashMap<Key, Value>();
+        values1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
+        Map<Key, Value> values2 = new HashMap<Key, Value>();
+        values2.put(new Key("test2"), new Value(JSON_VALUE.getBytes()));
+
+        router.broadcastRoute();
+        expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.linked(node1, node2)})).once();
+
+        node1.send(EasyMock.<QueryByIndexCommand>anyObject());
+        expectLastCall().andReturn(values1).once();
+        node2.send(EasyMock.<QueryByIndexCommand>anyObject());
+        expectLastCall().andReturn(values2).once();
+
+        replay(cluster1, node1, node2, router);
+
+        DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
+
+        Map<Key, Value> result = service.queryByPredicate("bucket", new Predicate("index:eq(/test,test)"));
+        assertEquals(2, result.size());
+        assertTrue(result.containsKey(new Key("test1")));
+        assertTrue(result.containsKey(new Key("test2")));
+
+        verify(cluster1, node1, node2, router);
+    }
+
+    @Test
+    public void testQueryByPredicateFallsBackToFullScanIfIndexesCannotAnswer() throws Exception {
+        Cluster cluster1 = createMock(Cluster.class);
+        Node node1 = createMock(Node.class);
+        makeThreadSafe(node1, true);
+        Node localNode = createMock(Node.class);
+        Router router = createMock(Router.class);
+        makeThreadSafe(router, true);
+        Map<Key, Value> values1 = new HashMap<Key, Value>();
+        values1.put(new Key("test1"), new Value(JSON_VALUE.getBytes()));
+
+        router.broadcastRoute();
+        expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1}, new Set[]{Sets.hash(node1)})).times(2);
+        router.routeToLocalNode();
+        expectLastCall().andReturn(localNode).once();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+
+        node1.send(EasyMock.<QueryByIndexCommand>anyObject());
+        expectLastCall().andReturn(null).once();
+        node1.send(EasyMock.<ScanValuesCommand>anyObject());
+        expectLastCall().andReturn(values1).once();
+
+        replay(cluster1, node1, router);
+
+        DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
+
+        Map<Key, Value> result = service.queryByPredicate("bucket", new Predicate("index:eq(/test,test)"));
+        assertEquals(1, result.size());
+        assertTrue(result.containsKey(new Key("test1")));
+
+        verify(cluster1, node1, router);
+    }
+
     @Test
     public void testQueryByMapReduceWithRange() throws Exception {
         Cluster cluster1 = createMock(Cluster.class);
@@ -840,9 +1040,7 @@ public class DefaultQueryServiceTest {
         Node node2 = createMock(Node.class);
         makeThreadSafe(node2, true);
         Router router = createMock(Router.class);
-        Map<Node, Set<Key>> nodeToKeys = new HashMap<Node, Set<Key>>();
-        nodeToKeys.put(node1, Sets.hash(new Key("test1")));
-        nodeToKeys.put(node2, Sets.hash(new Key("test2")));
+        makeThreadSafe(router, true);
         Map<String, Object> mapResult1 = new HashMap<String, Object>();
         mapResult1.put("k1", "v1");
         Map<String, Object> mapResult2 = new HashMap<String, Object>();
@@ -852,19 +1050,19 @@ public class DefaultQueryServiceTest {
         router.broadcastRoute();
         expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Sets.hash(node1), Sets.hash(node2)})).once();
         router.routeToLocalNode();
-        expectLastCall().andReturn(node1).once();
+        expectLastCall().andReturn(node1).anyTimes();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
 
         node1.send(EasyMock.<GetKeysCommand>anyObject());
         expectLastCall().andReturn(Sets.hash(new Key("test1"))).once();
-        node2.send(EasyMock.<GetKeysCommand>anyObject());
-        expectLastCall().andReturn(Sets.hash(new Key("test2"))).once();
-
-        router.routeToNodesFor("bucket", Sets.hash(new Key("test1"), new Key("test2")));
-        expectLastCall().andReturn(nodeToKeys).once();
-
+        router.routeToNodeFor("bucket", new Key("test1"));
+        expectLastCall().andReturn(node1).once();
         node1.send(EasyMock.<MapCommand>anyObject());
         expectLastCall().andReturn(mapResult1).once();
-        node2.send(EasyMock.<MapCommand>anyObject());
+        node2.send(EasyMock.<ScanMapCommand>anyObject());
         expectLastCall().andReturn(mapResult2).once();
         node1.send(EasyMock.<ReduceCommand>anyObject());
         expectLastCall().andReturn(reduceResult).once();
@@ -881,6 +1079,75 @@ public class DefaultQueryServiceTest {
         verify(cluster1, cluster2, node1, node2, router);
     }
 
+    @Test
+    public void testQueryByMapReduceWithTreeReduce() throws Exception {
+        Cluster cluster1 = createMock(Cluster.class);
+        Cluster cluster2 = createMock(Cluster.class);
+        Node node1 = createMock(Node.class);
+        makeThreadSafe(node1, true);
+        Node node2 = createMock(Node.class);
+        makeThreadSafe(node2, true);
+        Node node3 = createMock(Node.class);
+        makeThreadSafe(node3, true);
+        Node node4 = createMock(Node.class);
+        Node node5 = createMock(Node.class);
+        Router router = createMock(Router.class);
+        makeThreadSafe(router, true);
+        Map<String, Object> mapResult1 = new HashMap<String, Object>();
+        mapResult1.put("k1", "v1");
+        Map<String, Object> treeResult2 = new HashMap<String, Object>();
+        treeResult2.put("k2", "v2");
+        Map<String, Object> treeResult3 = new HashMap<String, Object>();
+        treeResult3.put("k3", "v3");
+        Value reduceResult = new Value(REDUCE_VALUE.getBytes());
+        Capture<TreeReduceCommand> treeCapture = new Capture<TreeReduceCommand>();
+
+        router.broadcastRoute();
+        expectLastCall().andReturn(Maps.hash(new Cluster[]{cluster1, cluster2}, new Set[]{Sets.linked(node1, node2), Sets.linked(node3, node4, node5)})).times(3);
+        router.routeToLocalNode();
+        expectLastCall().andReturn(node1).anyTimes();
+        node2.getName();
+        expectLastCall().andReturn("node2").anyTimes();
+        node3.getName();
+        expectLastCall().andReturn("node3").anyTimes();
+        node4.getName();
+        expectLastCall().andReturn("node4").anyTimes();
+        node5.getName();
+        expectLastCall().andReturn("node5").anyTimes();
+        node1.getName();
+        expectLastCall().andReturn("node1").anyTimes();
+
+        // The local node maps its own keys, while other nodes map their own keys as tree reduce children:
+        node1.send(EasyMock.<GetKeysCommand>anyObject());
+        expectLastCall().andReturn(Sets.hash(new Key("test1"), new Key("test2"))).once();
+        router.routeToNodeFor("bucket", new Key("test1"));
+        expectLastCall().andReturn(node1).once();
+        router.routeToNodeFor("bucket", new Key("test2"));
+        expectLastCall().andReturn(node2).once();
+
+        node1.send(EasyMock.<MapCommand>anyObject());
+        expectLastCall().andReturn(mapResult1).once();
+        node2.send(EasyMock.<TreeReduceCommand>anyObject());
+        expectLastCall().andReturn(treeResult2).once();
+        node3.send(EasyMock.capture(treeCapture));
+        expectLastCall().andReturn(treeResult3).once();
+        node1.send(EasyMock.<ReduceCommand>anyObject());
+        expectLastCall().andReturn(reduceResult).once();
+
+        replay(cluster1, cluster2, node1, node2, node3, node4, node5, router);
+
+        DefaultQueryService service = new DefaultQueryService(router, new DefaultKeyRangeStrategy());
+
+        Mapper mapper = new Mapper("mapper", null, 1000, null);
+        Reducer reducer = new Reducer("reducer", 1000, Collections.EMPTY_MAP, true);
+        Value result = service.queryByMapReduce("bucket", new Range(), mapper, reducer);
+        assertEquals(new Value(REDUCE_VALUE.getBytes()), result);
+        // Node 3 reduces results from the other nodes of its own cluster:
+        assertEquals(Sets.linked("node4", "node5"), treeCapture.getValue().getChildren().keySet());
+
+        verify(cluster1, cluster2, node1, node2, node3, node4, node5, router);
+    }
+
     @Test
     public void testQueryByMapReduceSucceedsBySkippingFailingNodesDuringKeysHarvesting() throws Exception {
         Cluster cluster1 = createMock(Cluster.class);
@@ -18,11 +18,18 @@ package terrastore.store;
 import java.io.File;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 import org.apache.commons.lang.time.StopWatch;
 import org.junit.Before;
 import org.junit.Test;
 import terrastore.startup.Constants;
+import terrastore.store.snapshot.DefaultSnapshotBackendFactory;
+import terrastore.store.snapshot.HawtDBSnapshotBackend;
+import terrastore.store.snapshot.MemorySnapshotBackend;
+import terrastore.store.snapshot.SnapshotBackend;
+import terrastore.store.snapshot.SnapshotBackendFactory;
 import static org.junit.Assert.*;
 
 /**
@@ -273,6 +280,170 @@ public class SortedSnapshotTest {
         snapshot.discard();
     }
 
+    @Test
+    public void testIncrementalAddAndRemove() {
+        Set<Key> keys = new HashSet<Key>();
+        keys.add(new Key("a"));
+        keys.add(new Key("c"));
+
+        SortedSnapshot snapshot = new SortedSnapshot("bucket", keys, new StringComparator());
+        snapshot.add(new Key("b"));
+        snapshot.add(new Key("d"));
+        snapshot.remove(new Key("c"));
+        Set<Key> sorted = snapshot.keysInRange(new Key("a"), new Key("z"), 0);
+        assertEquals(3, sorted.size());
+        assertEquals(new Key("a"), sorted.toArray()[0]);
+        assertEquals(new Key("b"), sorted.toArray()[1]);
+        assertEquals(new Key("d"), sorted.toArray()[2]);
+
+        snapshot.discard();
+    }
+
+    @Test
+    public void testChangesDuringUpdateAreAppliedAfterUpdate() {
+        Set<Key> keys = new HashSet<Key>();
+        keys.add(new Key("a"));
+        keys.add(new Key("c"));
+
+        SortedSnapshot snapshot = new SortedSnapshot("bucket", new StringComparator());
+        snapshot.beginUpdate();
+        snapshot.add(new Key("b"));
+        snapshot.remove(new Key("c"));
+        snapshot.update(keys);
+        Set<Key> sorted = snapshot.keysInRange(new Key("a"), new Key("z"), 0);
+        assertEquals(2, sorted.size());
+        assertEquals(new Key("a"), sorted.toArray()[0]);
+        assertEquals(new Key("b"), sorted.toArray()[1]);
+
+        snapshot.discard();
+    }
+
+    @Test
+    public void testAlwaysExpiresWithZeroTimeToLive() {
+        Set<Key> keys = new HashSet<Key>();
+
+        SortedSnapshot snapshot = new SortedSnapshot("bucket", keys, new StringComparator());
+        assertTrue(snapshot.isExpired(0));
+        snapshot.discard();
+    }
+
+    @Test
+    public void testNeverExpiresWithNegativeTimeToLive() throws InterruptedException {
+        Set<Key> keys = new HashSet<Key>();
+
+        SortedSnapshot snapshot = new SortedSnapshot("bucket", keys, new StringComparator());
+        Thread.sleep(100);
+        assertFalse(snapshot.isExpired(-1));
+        snapshot.discard();
+    }
+
+    @Test
+    public void testBackendIsReplacedWhenSnapshotGrows() {
+        final List<SnapshotBackend> backends = new LinkedList<SnapshotBackend>();
+        SnapshotBackendFactory factory = new DefaultSnapshotBackendFactory(2) {
+
+            @Override
+            public SnapshotBackend create(String name, Comparator<String> comparator, int size) {
+                SnapshotBackend backend = super.create(name, comparator, size);
+                backends.add(backend);
+                return backend;
+            }
+
+        };
+        Set<Key> keys = new HashSet<Key>();
+
+        SortedSnapshot snapshot = new SortedSnapshot("bucket", new StringComparator(), factory);
+        snapshot.update(keys);
+        snapshot.add(new Key("a"));
+        keys.add(new Key("a"));
+        keys.add(new Key("b"));
+        snapshot.update(keys);
+        assertEquals(1, backends.size());
+        assertTrue(backends.get(0) instanceof MemorySnapshotBackend);
+
+        keys.add(new Key("c"));
+        snapshot.update(keys);
+        assertEquals(2, backends.size());
+        assertTrue(backends.get(1) instanceof HawtDBSnapshotBackend);
+        Set<Key> sorted = snapshot.keysInRange(new Key("a"), new Key("z"), 0);
+        assertEquals(3, sorted.size());
+        assertEquals(new Key("a"), sorted.toArray()[0]);
+        assertEquals(new Key("c"), sorted.toArray()[2]);
+
+        snapshot.discard();
+    }
+
+    @Test
+    public void testFailedUpdateStopsBufferingChangesAndExpires() {
+        SnapshotBackendFactory factory = new DefaultSnapshotBackendFactory(-1) {
+
+            @Override
+            public SnapshotBackend create(String name, Comparator<String> comparator, int size) {
+                SnapshotBackend backend = new MemorySnapshotBackend(comparator) {
+
+                    private boolean loaded;
+
+                    @Override
+                    public void load(String[] sortedKeys) {
+                        if (loaded) {
+                            throw new IllegalStateException("Failed!");
+                        }
+                        super.load(sortedKeys);
+                        loaded = true;
+                    }
+
+                };
+                return backend;
+            }
+
+        };
+        Set<Key> keys = new HashSet<Key>();
+        keys.add(new Key("a"));
+
+        SortedSnapshot snapshot = new SortedSnapshot("bucket", new StringComparator(), factory);
+        snapshot.beginUpdate();
+        snapshot.update(keys);
+        assertFalse(snapshot.isExpired(-1));
+
+        snapshot.beginUpdate();
+        snapshot.add(new Key("b"));
+        try {
+            snapshot.update(keys);
+            fail("Should throw exception!");
+        } catch (IllegalStateException ex) {
+        }
+        assertTrue(snapshot.isExpired(-1));
+        // Changes are no more buffered, but directly applied:
+        snapshot.add(new Key("c"));
+        Set<Key> sorted = snapshot.keysInRange(new Key("a"), new Key("z"), 0);
+        assertEquals(2, sorted.size());
+        assertEquals(new Key("a"), sorted.toArray()[0]);
+        assertEquals(new Key("c"), sorted.toArray()[1]);
+
+        snapshot.discard();
+    }
+
+    @Test
+    public void testCancelledUpdateStopsBufferingChangesAndExpires() {
+        Set<Key> keys = new HashSet<Key>();
+        keys.add(new Key("a"));
+
+        SortedSnapshot snapshot = new SortedSnapshot("bucket", keys, new StringComparator());
+        snapshot.beginUpdate();
+        snapshot.add(new Key("b"));
+        snapshot.cancelUpdate();
+        assertTrue(snapshot.isExpired(-1));
+        snapshot.add(new Key("c"));
+        assertEquals(2, snapshot.keysInRange(new Key("a"), new Key("z"), 0).size());
+
+        snapshot.beginUpdate();
+        snapshot.update(keys);
+        assertFalse(snapshot.isExpired(-1));
+        assertEquals(1, snapshot.keysInRange(new Key("a"), new Key("z"), 0).size());
+
+        snapshot.discard();
+    }
+
     private static class StringComparator implements Comparator<String> {
 
         @Override
@@ -16,7 +16,13 @@
 package terrastore.store;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.InflaterInputStream;
 import org.junit.Test;
+import terrastore.store.codec.Codecs;
+import terrastore.store.codec.CompressionPolicy;
+import terrastore.store.codec.DictionaryCodec;
+import terrastore.store.codec.LZFCodec;
 import terrastore.util.io.IOUtils;
 import static org.junit.Assert.*;
 
@@ -36,21 +42,96 @@ public class ValueTest {
     }
 
     @Test
-    public void testGetCompressedBytesFromUncompressedValue() throws Exception {
+    public void testGetEncodedBytesFromUncompressedValue() throws Exception {
+        // Short values don't get smaller once compressed, so use a larger one:
+        StringBuilder json = new StringBuilder("{\"array\" : [");
+        for (int i = 0; i < 100; i++) {
+            json.append(i > 0 ? ", " : "").append(JSON_VALUE);
+        }
+        json.append("]}");
+        Value value = new Value(json.toString().getBytes("UTF-8"));
+        byte[] encoded = value.getEncodedBytes(new CompressionPolicy(Codecs.LZF, 0));
+        assertEquals(LZFCodec.ID, encoded[0]);
+        assertArrayEquals(json.toString().getBytes("UTF-8"), Codecs.decode(encoded));
+    }
+
+    @Test
+    public void testGetEncodedBytesNotSmallerThanRaw() throws Exception {
+        Value value = new Value(JSON_VALUE.getBytes("UTF-8"));
+        assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), value.getEncodedBytes(new CompressionPolicy(Codecs.LZF, 0)));
+    }
+
+    @Test
+    public void testGetEncodedBytesBelowThreshold() throws Exception {
         Value value = new Value(JSON_VALUE.getBytes("UTF-8"));
-        assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), IOUtils.readCompressed(new ByteArrayInputStream(value.getCompressedBytes())));
+        assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), value.getEncodedBytes(new CompressionPolicy(Codecs.DEFLATE, 1024)));
+    }
+
+    @Test
+    public void testGetEncodedBytesWithNoPolicy() throws Exception {
+        Value value = new Value(Codecs.encode(Codecs.DEFLATE, JSON_VALUE.getBytes("UTF-8")));
+        assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), value.getEncodedBytes(null));
     }
 
     @Test
     public void testGetBytesFromCompressedValue() throws Exception {
-        Value value = new Value(IOUtils.readAndCompress(new ByteArrayInputStream(JSON_VALUE.getBytes("UTF-8"))));
+        Value value = new Value(Codecs.encode(Codecs.DEFLATE, JSON_VALUE.getBytes("UTF-8")));
         assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), value.getBytes());
     }
 
     @Test
-    public void testGetCompressedBytesFromCompressedValue() throws Exception {
+    public void testGetEncodedBytesFromCompressedValue() throws Exception {
+        byte[] encoded = Codecs.encode(Codecs.DEFLATE, JSON_VALUE.getBytes("UTF-8"));
+        Value value = new Value(encoded);
+        assertSame(encoded, value.getEncodedBytes(new CompressionPolicy(Codecs.DEFLATE, 0)));
+        assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), Codecs.decode(value.getEncodedBytes(new CompressionPolicy(Codecs.LZF, 0))));
+    }
+
+    @Test
+    public void testGetEncodedBytesFromValueCompressedWithDifferentDictionary() throws Exception {
+        DictionaryCodec codec1 = new DictionaryCodec("{\"value\" : \"test\"}".getBytes("UTF-8"));
+        DictionaryCodec codec2 = new DictionaryCodec("{\"other\" : \"test\"}".getBytes("UTF-8"));
+        Codecs.register(codec1);
+        Codecs.register(codec2);
+        byte[] encoded = Codecs.encode(codec1, JSON_VALUE.getBytes("UTF-8"));
+        Value value = new Value(encoded);
+        assertSame(encoded, value.getEncodedBytes(new CompressionPolicy(codec1, 0)));
+        byte[] reencoded = value.getEncodedBytes(new CompressionPolicy(codec2, 0));
+        assertNotSame(encoded, reencoded);
+        assertTrue(Codecs.isEncodedBy(codec2, reencoded));
+        assertFalse(Codecs.isEncodedBy(codec1, reencoded));
+        assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), Codecs.decode(reencoded));
+    }
+
+    @Test
+    public void testCompressedValueHasSameVersionAsUncompressedValue() throws Exception {
+        Value value = new Value(JSON_VALUE.getBytes("UTF-8"));
+        Value compressed = new Value(Codecs.encode(Codecs.DEFLATE, JSON_VALUE.getBytes("UTF-8")));
+        assertEquals(value.getVersion(), compressed.getVersion());
+    }
+
+    @Test
+    public void testWriteCompressedTo() throws Exception {
+        byte[] encoded = Codecs.encode(Codecs.DEFLATE, JSON_VALUE.getBytes("UTF-8"));
+        Value value = new Value(encoded);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        value.writeCompressedTo(output);
+        assertSame(Codecs.DEFLATE, value.getCodec());
+        assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), IOUtils.read(new InflaterInputStream(new ByteArrayInputStream(output.toByteArray()))));
+    }
+
+    @Test
+    public void testGetBytesFromLegacyCompressedValue() throws Exception {
         Value value = new Value(IOUtils.readAndCompress(new ByteArrayInputStream(JSON_VALUE.getBytes("UTF-8"))));
-        assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), IOUtils.readCompressed(new ByteArrayInputStream(value.getCompressedBytes())));
+        assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), value.getBytes());
+    }
+
+    @Test
+    public void testVersionOfClientFramedBytesIsComputedFromContents() throws Exception {
+        byte[] framed = Codecs.encode(Codecs.DEFLATE, JSON_VALUE.getBytes("UTF-8"));
+        framed[1] ^= 0xff;
+        Value value = Value.fromJson(framed);
+        assertEquals(Codecs.checksum(framed), value.getVersion());
     }
 
     @Test
@@ -61,7 +142,7 @@ public class ValueTest {
 
     @Test
     public void testGetInputStreamFromCompressedValue() throws Exception {
-        Value value = new Value(IOUtils.readAndCompress(new ByteArrayInputStream(JSON_VALUE.getBytes("UTF-8"))));
+        Value value = new Value(Codecs.encode(Codecs.LZF, JSON_VALUE.getBytes("UTF-8")));
         assertArrayEquals(JSON_VALUE.getBytes("UTF-8"), IOUtils.read(value.getInputStream()));
     }
 }
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.aggregators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import terrastore.store.functions.NumericMapper;
+import terrastore.store.operators.Accumulator;
+import terrastore.store.operators.OperatorException;
+
+/**
+ * @author Sergio Bossa
+ */
+public class NumericAggregatorTest {
+
+    private static final double DELTA = 0.000001;
+
+    @Test
+    public void testSumCountMinMax() throws Exception {
+        Map<String, Object> parameters = parameters("/amount", null);
+        List<Map<String, Object>> values = map(parameters, 1, 2, 3, 4, 5);
+        assertEquals(15d, new NumericAggregator("sum").apply(values, parameters).get("sum"));
+        assertEquals(5L, new NumericAggregator("count").apply(values, parameters).get("count"));
+        assertEquals(1d, new NumericAggregator("min").apply(values, parameters).get("min"));
+        assertEquals(5d, new NumericAggregator("max").apply(values, parameters).get("max"));
+    }
+
+    @Test
+    public void testAvgAndVarianceOverCombinedPartials() throws Exception {
+        Map<String, Object> parameters = parameters("/amount", null);
+        for (String statistic : Arrays.asList("avg", "variance")) {
+            NumericAggregator aggregator = new NumericAggregator(statistic);
+            Accumulator first = aggregator.newAccumulator(parameters);
+            for (Map<String, Object> value : map(parameters, 2, 4, 4)) {
+                first.add(value);
+            }
+            Accumulator second = aggregator.newAccumulator(parameters);
+            for (Map<String, Object> value : map(parameters, 4, 5, 5)) {
+                second.add(value);
+            }
+            first.merge(second);
+            Map<String, Object> combined = first.result();
+            Map<String, Object> other = aggregator.apply(map(parameters, 7, 9), parameters);
+            Map<String, Object> reduced = aggregator.apply(Arrays.asList(combined, other), parameters);
+            if (statistic.equals("avg")) {
+                assertEquals(5d, (Double) reduced.get("avg"), DELTA);
+            } else {
+                assertEquals(4d, (Double) reduced.get("variance"), DELTA);
+            }
+            assertEquals(8L, reduced.get("count"));
+        }
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        Map<String, Object> parameters = parameters("/amount", null);
+        parameters.put("from", "0");
+        parameters.put("to", 10);
+        parameters.put("bins", 2);
+        Map<String, Object> result = new NumericAggregator("histogram").apply(map(parameters, -1, 0, 4, 5, 9, 10), parameters);
+        assertEquals(Arrays.asList(2L, 2L), result.get("histogram"));
+        assertEquals(1L, result.get("underflow"));
+        assertEquals(1L, result.get("overflow"));
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testHistogramWithoutRange() throws Exception {
+        new NumericAggregator("histogram").newAccumulator(parameters("/amount", null));
+    }
+
+    @Test
+    public void testGroupBy() throws Exception {
+        Map<String, Object> parameters = parameters("/amount", "/customer");
+        NumericMapper mapper = new NumericMapper();
+        List<Map<String, Object>> values = new LinkedList<Map<String, Object>>();
+        values.add(mapper.apply("1", document("a", 1), parameters));
+        values.add(mapper.apply("2", document("b", 2), parameters));
+        values.add(mapper.apply("3", document("a", 3), parameters));
+        values.add(mapper.apply("4", document(null, 4), parameters));
+        NumericAggregator aggregator = new NumericAggregator("sum");
+        Map<String, Object> partial = aggregator.apply(values, parameters);
+        Map<String, Object> result = aggregator.apply(Arrays.asList(partial, partial), parameters);
+        assertEquals(2, result.size());
+        assertEquals(8d, ((Map) result.get("a")).get("sum"));
+        assertEquals(4d, ((Map) result.get("b")).get("sum"));
+    }
+
+    @Test
+    public void testNonNumericValuesAreIgnored() throws Exception {
+        Map<String, Object> parameters = parameters("/amount", null);
+        Map<String, Object> document = new HashMap<String, Object>();
+        document.put("amount", Arrays.<Object>asList(1, "two", 3));
+        Map<String, Object> other = new HashMap<String, Object>();
+        other.put("amount", "none");
+        NumericMapper mapper = new NumericMapper();
+        List<Map<String, Object>> values = Arrays.asList(mapper.apply("1", document, parameters), mapper.apply("2", other, parameters));
+        Map<String, Object> result = new NumericAggregator("avg").apply(values, parameters);
+        assertEquals(2d, result.get("avg"));
+        assertFalse(new NumericAggregator("min").apply(values.subList(1, 2), parameters).containsKey("min"));
+    }
+
+    private Map<String, Object> parameters(String path, String groupBy) {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("path", path);
+        if (groupBy != null) {
+            parameters.put("groupBy", groupBy);
+        }
+        return parameters;
+    }
+
+    private List<Map<String, Object>> map(Map<String, Object> parameters, int... amounts) throws OperatorException {
+        NumericMapper mapper = new NumericMapper();
+        List<Map<String, Object>> values = new LinkedList<Map<String, Object>>();
+        for (int amount : amounts) {
+            values.add(mapper.apply(Integer.toString(amount), document(null, amount), parameters));
+        }
+        return values;
+    }
+
+    private Map<String, Object> document(String customer, int amount) {
+        Map<String, Object> document = new HashMap<String, Object>();
+        if (customer != null) {
+            document.put("customer", customer);
+        }
+        document.put("amount", amount);
+        return document;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.codec;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import terrastore.util.io.IOUtils;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class CodecsTest {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final String JSON_VALUE = "{\"name\" : \"terrastore\", \"type\" : \"document store\", \"tags\" : [\"json\", \"http\", \"cluster\"]}";
+
+    @Test
+    public void testEncodeAndDecodeWithLZF() throws Exception {
+        doTestEncodeAndDecode(Codecs.LZF);
+    }
+
+    @Test
+    public void testEncodeAndDecodeWithDeflate() throws Exception {
+        doTestEncodeAndDecode(Codecs.DEFLATE);
+    }
+
+    @Test
+    public void testEncodeAndDecodeWithDictionary() throws Exception {
+        List<byte[]> samples = new ArrayList<byte[]>();
+        for (int i = 0; i < 10; i++) {
+            samples.add(("{\"name\" : \"sample" + i + "\", \"type\" : \"document store\", \"tags\" : [\"json\"]}").getBytes(CHARSET));
+        }
+        Codec codec = new DictionaryCodec(DictionaryCodec.train(samples, DictionaryCodec.DEFAULT_DICTIONARY_SIZE));
+        Codecs.register(codec);
+        doTestEncodeAndDecode(codec);
+        assertTrue(Codecs.encode(codec, JSON_VALUE.getBytes(CHARSET)).length < Codecs.encode(Codecs.DEFLATE, JSON_VALUE.getBytes(CHARSET)).length);
+    }
+
+    @Test
+    public void testTrainDictionaryWithBestTokensLast() throws Exception {
+        List<byte[]> samples = new ArrayList<byte[]>();
+        samples.add("{\"a\" : 1, \"longer\" : 2}".getBytes(CHARSET));
+        samples.add("{\"a\" : 3, \"longer\" : 4}".getBytes(CHARSET));
+        String dictionary = new String(DictionaryCodec.train(samples, 1024), CHARSET);
+        assertTrue(dictionary.endsWith("\"longer\" :"));
+        assertFalse(dictionary.contains("1"));
+    }
+
+    @Test
+    public void testDecodeRawData() throws Exception {
+        byte[] raw = JSON_VALUE.getBytes(CHARSET);
+        assertNull(Codecs.getCodec(raw));
+        assertFalse(Codecs.isEncoded(raw));
+        assertSame(raw, Codecs.decode(raw));
+        assertArrayEquals(raw, IOUtils.read(Codecs.decoding(raw)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDecodeWithUnknownCodec() throws Exception {
+        Codecs.decode(new byte[]{Codecs.MAX_CODEC_ID, 0, 0});
+    }
+
+    private void doTestEncodeAndDecode(Codec codec) throws Exception {
+        byte[] raw = JSON_VALUE.getBytes(CHARSET);
+        byte[] encoded = Codecs.encode(codec, raw);
+        assertEquals(codec.getId(), encoded[0]);
+        assertTrue(Codecs.isEncoded(encoded));
+        assertEquals(Codecs.checksum(raw), Codecs.getChecksum(encoded));
+        assertArrayEquals(raw, Codecs.decode(encoded));
+        assertArrayEquals(raw, IOUtils.read(Codecs.decoding(encoded)));
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.conditions;
+
+import java.util.Map;
+import org.junit.Test;
+import terrastore.store.Value;
+import terrastore.store.operators.OperatorException;
+import terrastore.util.json.JsonUtils;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class ExpressionConditionTest {
+
+    private static final String JSON = "{\"name\" : \"sergio\", \"age\" : 32, \"status\" : \"active\", \"nickname\" : null, "
+            + "\"address\" : {\"city\" : \"Rome\", \"zip\" : \"00100\"}, \"tags\" : [\"admin\", \"dev\"], \"scores\" : [1.5, 8]}";
+
+    @Test
+    public void testComparisons() throws Exception {
+        assertTrue(isSatisfied("age > 30"));
+        assertTrue(isSatisfied("age >= 32"));
+        assertTrue(isSatisfied("age == 32.0"));
+        assertFalse(isSatisfied("age < 32"));
+        assertTrue(isSatisfied("age <= 32"));
+        assertTrue(isSatisfied("age != 31"));
+        assertTrue(isSatisfied("name == \"sergio\""));
+        assertTrue(isSatisfied("name == 'sergio'"));
+        assertTrue(isSatisfied("name > \"a\""));
+        assertFalse(isSatisfied("name > 1"));
+        assertFalse(isSatisfied("age == \"32\""));
+    }
+
+    @Test
+    public void testNestedPathsAndLists() throws Exception {
+        assertTrue(isSatisfied("address.city == \"Rome\""));
+        assertFalse(isSatisfied("address.city.name == \"Rome\""));
+        assertTrue(isSatisfied("`address`.`zip` == \"00100\""));
+        assertTrue(isSatisfied("tags == \"dev\""));
+        assertTrue(isSatisfied("scores > 5"));
+        assertFalse(isSatisfied("scores > 10"));
+    }
+
+    @Test
+    public void testNullsAndExists() throws Exception {
+        assertTrue(isSatisfied("nickname == null"));
+        assertTrue(isSatisfied("missing == null"));
+        assertTrue(isSatisfied("exists(nickname)"));
+        assertFalse(isSatisfied("exists(missing)"));
+        assertTrue(isSatisfied("exists(address.city)"));
+        assertFalse(isSatisfied("exists(address.country)"));
+    }
+
+    @Test
+    public void testIn() throws Exception {
+        assertTrue(isSatisfied("status in (\"active\", \"pending\")"));
+        assertFalse(isSatisfied("status in (\"deleted\")"));
+        assertTrue(isSatisfied("age in (1, 32)"));
+        assertTrue(isSatisfied("tags in ('owner', 'admin')"));
+    }
+
+    @Test
+    public void testBooleanOperators() throws Exception {
+        assertTrue(isSatisfied("age > 30 && status == \"active\""));
+        assertFalse(isSatisfied("age > 30 && status == \"deleted\""));
+        assertTrue(isSatisfied("age > 40 || status == \"active\""));
+        assertTrue(isSatisfied("!(age > 40)"));
+        assertTrue(isSatisfied("age > 30 && (status == \"deleted\" || exists(address.city)) && !exists(missing)"));
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testWrongExpression() throws Exception {
+        isSatisfied("age >");
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testWrongExpressionWithTrailingCharacters() throws Exception {
+        isSatisfied("age > 30 )");
+    }
+
+    private boolean isSatisfied(String expression) throws Exception {
+        Map<String, Object> json = JsonUtils.toUnmodifiableMap(new Value(JSON.getBytes("UTF-8")));
+        return new ExpressionCondition().isSatisfied("ignored", json, expression);
+    }
+}
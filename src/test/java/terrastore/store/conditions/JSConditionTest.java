@@ -45,4 +45,22 @@ public class JSConditionTest {
         JSCondition condition = new JSCondition();
         assertTrue(condition.isSatisfied("key", json, function));
     }
+
+    @Test
+    public void testSatisfiedWithStrictComparisons() throws Exception {
+        Map<String, Object> json = JsonUtils.toUnmodifiableMap(new Value("{\"name\" : \"terrastore\", \"tags\" : [\"a\", \"b\"], \"flag\" : false}".getBytes("UTF-8")));
+        JSCondition condition = new JSCondition();
+        assertTrue(condition.isSatisfied("key", json, "key === 'key' && value.name === 'terra' + 'store' && typeof value.name == 'string'"));
+        assertTrue(condition.isSatisfied("key", json, "value.tags instanceof Array && value.tags.length === 2 && value.tags[1] === 'b'"));
+        assertTrue(condition.isSatisfied("key", json, "!value.flag && typeof value.flag == 'boolean'"));
+        assertFalse(condition.isSatisfied("key", json, "value.missing"));
+    }
+
+    @Test
+    public void testSatisfiedWithDates() throws Exception {
+        Map<String, Object> json = JsonUtils.toUnmodifiableMap(new Value("{\"time\" : 1293937445000}".getBytes("UTF-8")));
+        JSCondition condition = new JSCondition();
+        assertTrue(condition.isSatisfied("key", json, "new Date(value.time).getUTCFullYear() === 2011"));
+        assertFalse(condition.isSatisfied("key", json, "new Date(value.time) > new Date()"));
+    }
 }
@@ -18,6 +18,8 @@ package terrastore.store.conditions;
 import terrastore.util.io.IOUtils;
 import java.util.Map;
 import org.junit.Test;
+import terrastore.store.operators.CompiledCondition;
+import terrastore.store.operators.OperatorException;
 import terrastore.store.Value;
 import terrastore.util.json.JsonUtils;
 import static org.junit.Assert.*;
@@ -46,4 +48,18 @@ public class JXPathConditionTest {
         JXPathCondition condition = new JXPathCondition();
         assertFalse(condition.isSatisfied("ignored", json, jxpath));
     }
+
+    @Test
+    public void testCompiledConditionWithJsonValue() throws Exception {
+        String input = new String(IOUtils.read(this.getClass().getClassLoader().getResourceAsStream("example.json")));
+        Map<String, Object> json = JsonUtils.toUnmodifiableMap(new Value(input.getBytes("UTF-8")));
+        CompiledCondition condition = new JXPathCondition().compile("/id[.='6626190681']");
+        assertTrue(condition.isSatisfied("ignored", json));
+        assertTrue(condition.isSatisfied("ignored", json));
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testCompileWrongExpression() throws Exception {
+        new JXPathCondition().compile("/id[");
+    }
 }
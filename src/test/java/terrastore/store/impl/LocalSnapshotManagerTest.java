@@ -20,12 +20,15 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
 import terrastore.server.Keys;
@@ -189,6 +192,149 @@ public class LocalSnapshotManagerTest {
         verify(bucket);
     }
 
+    @Test
+    public void testDifferentSnapshotsAreComputedConcurrently() throws Exception {
+        final CountDownLatch computing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Bucket slow = createMock(Bucket.class);
+        slow.getName();
+        expectLastCall().andReturn("slow").anyTimes();
+        slow.keys();
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+
+            @Override
+            public Object answer() throws Throwable {
+                computing.countDown();
+                release.await();
+                return new Keys(Sets.hash(new Key("a")));
+            }
+        }).once();
+        makeThreadSafe(slow, true);
+        Bucket fast = createMock(Bucket.class);
+        fast.getName();
+        expectLastCall().andReturn("fast").anyTimes();
+        fast.keys();
+        expectLastCall().andReturn(new Keys(Sets.hash(new Key("b")))).once();
+
+        replay(slow, fast);
+
+        LocalSnapshotManager snapshotManager = new LocalSnapshotManager();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<SortedSnapshot> slowSnapshot = executor.submit(new SnapshotThread(snapshotManager, slow, 0));
+        assertTrue(computing.await(60, TimeUnit.SECONDS));
+        SortedSnapshot fastSnapshot = snapshotManager.getOrComputeSortedSnapshot(fast, new StringComparator(), "string", 0);
+        assertNotNull(fastSnapshot);
+        assertFalse(slowSnapshot.isDone());
+        release.countDown();
+        assertNotNull(slowSnapshot.get());
+
+        executor.shutdown();
+        executor.awaitTermination(60, TimeUnit.SECONDS);
+
+        verify(slow, fast);
+    }
+
+    @Test
+    public void testSnapshotWithNegativeTimeToLiveIsNeverRecomputed() throws InterruptedException {
+        Bucket bucket = createMock(Bucket.class);
+        bucket.getName();
+        expectLastCall().andReturn("bucket").anyTimes();
+        bucket.keys();
+        expectLastCall().andReturn(new Keys(Sets.hash(new Key("v"), new Key("c"), new Key("a")))).once();
+
+        replay(bucket);
+
+        LocalSnapshotManager snapshotManager = new LocalSnapshotManager();
+        SortedSnapshot snapshot = snapshotManager.getOrComputeSortedSnapshot(bucket, new StringComparator(), "string", -1);
+        assertNotNull(snapshot);
+
+        Thread.sleep(100);
+
+        SortedSnapshot read = snapshotManager.getOrComputeSortedSnapshot(bucket, new StringComparator(), "string", -1);
+        assertSame(snapshot, read);
+
+        verify(bucket);
+    }
+
+    @Test
+    public void testSnapshotIsIncrementallyUpdated() {
+        Bucket bucket = createMock(Bucket.class);
+        bucket.getName();
+        expectLastCall().andReturn("bucket").anyTimes();
+        bucket.keys();
+        expectLastCall().andReturn(new Keys(Sets.hash(new Key("v"), new Key("c"), new Key("a")))).once();
+
+        replay(bucket);
+
+        LocalSnapshotManager snapshotManager = new LocalSnapshotManager();
+        SortedSnapshot snapshot = snapshotManager.getOrComputeSortedSnapshot(bucket, new StringComparator(), "string", -1);
+        snapshotManager.keyAdded(bucket, new Key("b"));
+        snapshotManager.keyRemoved(bucket, new Key("c"));
+
+        Set<Key> keys = snapshotManager.getOrComputeSortedSnapshot(bucket, new StringComparator(), "string", -1).keysInRange(new Key("a"), null, 0);
+        assertEquals(3, keys.size());
+        assertEquals(new Key("a"), keys.toArray()[0]);
+        assertEquals(new Key("b"), keys.toArray()[1]);
+        assertEquals(new Key("v"), keys.toArray()[2]);
+        snapshot.discard();
+
+        verify(bucket);
+    }
+
+    @Test
+    public void testSnapshotIsRecomputedAfterBucketClear() {
+        Bucket bucket = createMock(Bucket.class);
+        bucket.getName();
+        expectLastCall().andReturn("bucket").anyTimes();
+        bucket.keys();
+        expectLastCall().andReturn(new Keys(Sets.hash(new Key("v"), new Key("c"), new Key("a")))).once();
+        bucket.keys();
+        expectLastCall().andReturn(new Keys(Sets.<Key>hash())).once();
+
+        replay(bucket);
+
+        LocalSnapshotManager snapshotManager = new LocalSnapshotManager();
+        SortedSnapshot snapshot = snapshotManager.getOrComputeSortedSnapshot(bucket, new StringComparator(), "string", -1);
+        snapshotManager.bucketCleared(bucket);
+
+        SortedSnapshot read = snapshotManager.getOrComputeSortedSnapshot(bucket, new StringComparator(), "string", -1);
+        assertNotSame(snapshot, read);
+        assertEquals(0, read.keysInRange(new Key("a"), null, 0).size());
+        read.discard();
+
+        verify(bucket);
+    }
+
+    @Test
+    public void testSnapshotIsComputedAgainAfterFailure() {
+        Bucket bucket = createMock(Bucket.class);
+        bucket.getName();
+        expectLastCall().andReturn("bucket").anyTimes();
+        bucket.keys();
+        expectLastCall().andThrow(new IllegalStateException("Failed!")).once();
+        bucket.keys();
+        expectLastCall().andReturn(new Keys(Sets.hash(new Key("v"), new Key("c"), new Key("a")))).once();
+
+        replay(bucket);
+
+        LocalSnapshotManager snapshotManager = new LocalSnapshotManager();
+        try {
+            snapshotManager.getOrComputeSortedSnapshot(bucket, new StringComparator(), "string", -1);
+            fail("Should throw exception!");
+        } catch (IllegalStateException ex) {
+        }
+        // Changes don't reach the failed snapshot:
+        snapshotManager.keyAdded(bucket, new Key("b"));
+
+        SortedSnapshot snapshot = snapshotManager.getOrComputeSortedSnapshot(bucket, new StringComparator(), "string", -1);
+        assertEquals(3, snapshot.keysInRange(new Key("a"), null, 0).size());
+        snapshot.discard();
+
+        verify(bucket);
+    }
+
     private static class StringComparator implements Comparator<String> {
 
         @Override
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import terrastore.store.operators.Accumulator;
+import terrastore.store.operators.Aggregator;
+
+/**
+ * @author Sergio Bossa
+ */
+public class SpillingAggregatorTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("terrastore-spill-test", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testApplyWithoutSpilling() throws Exception {
+        SpillingAggregator aggregator = new SpillingAggregator(new SumAggregator(), Long.MAX_VALUE, directory);
+        Map<String, Object> result = aggregator.apply(values(100, 10), Collections.<String, Object>emptyMap());
+        assertSums(result, 100, 10);
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void testApplyWithSpilling() throws Exception {
+        SpillingAggregator aggregator = new SpillingAggregator(new SumAggregator(), 1000, directory);
+        Map<String, Object> result = aggregator.apply(values(1000, 100), Collections.<String, Object>emptyMap());
+        assertSums(result, 1000, 100);
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void testMergeWithSpilling() throws Exception {
+        SpillingAggregator aggregator = new SpillingAggregator(new SumAggregator(), 1000, directory);
+        Accumulator first = aggregator.newAccumulator(Collections.<String, Object>emptyMap());
+        Accumulator second = aggregator.newAccumulator(Collections.<String, Object>emptyMap());
+        List<Map<String, Object>> values = values(1000, 100);
+        for (int i = 0; i < values.size(); i++) {
+            (i % 2 == 0 ? first : second).add(values.get(i));
+        }
+        assertTrue(directory.listFiles().length > 0);
+        first.merge(second);
+        assertSums(first.result(), 1000, 100);
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void testGroupsAreAggregatedInOrder() throws Exception {
+        SpillingAggregator aggregator = new SpillingAggregator(new ConcatAggregator(), 1, directory);
+        List<Map<String, Object>> values = new LinkedList<Map<String, Object>>();
+        for (String value : Arrays.asList("a", "b", "c", "d")) {
+            values.add(Collections.<String, Object>singletonMap("letters", value));
+        }
+        Map<String, Object> result = aggregator.apply(values, Collections.<String, Object>emptyMap());
+        assertEquals("abcd", result.get("letters"));
+    }
+
+    private List<Map<String, Object>> values(int count, int groups) {
+        List<Map<String, Object>> values = new LinkedList<Map<String, Object>>();
+        for (int i = 0; i < count; i++) {
+            values.add(Collections.<String, Object>singletonMap("group" + (i % groups), i));
+        }
+        return values;
+    }
+
+    private void assertSums(Map<String, Object> result, int count, int groups) {
+        assertEquals(groups, result.size());
+        for (int group = 0; group < groups; group++) {
+            int expected = 0;
+            for (int i = group; i < count; i += groups) {
+                expected += i;
+            }
+            assertEquals(expected, result.get("group" + group));
+        }
+    }
+
+    private static class SumAggregator implements Aggregator {
+
+        @Override
+        public Map<String, Object> apply(List<Map<String, Object>> values, Map<String, Object> parameters) {
+            Map<String, Object> result = new HashMap<String, Object>();
+            for (Map<String, Object> value : values) {
+                for (Map.Entry<String, Object> entry : value.entrySet()) {
+                    Integer sum = (Integer) result.get(entry.getKey());
+                    result.put(entry.getKey(), (sum != null ? sum : 0) + (Integer) entry.getValue());
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class ConcatAggregator implements Aggregator {
+
+        @Override
+        public Map<String, Object> apply(List<Map<String, Object>> values, Map<String, Object> parameters) {
+            StringBuilder result = new StringBuilder();
+            for (Map<String, Object> value : values) {
+                result.append(value.get("letters"));
+            }
+            return Collections.<String, Object>singletonMap("letters", result.toString());
+        }
+    }
+}
@@ -79,6 +79,44 @@ public class TCBucketEventingTest {
         verify(eventBus);
     }
 
+    @Test
+    public void testPutAllFiresEventBus() throws StoreOperationException {
+        Key key1 = new Key("key1");
+        Key key2 = new Key("key2");
+        Value value1 = new Value(JSON_VALUE.getBytes());
+        Value value2 = new Value(JSON_VALUE_2.getBytes());
+
+        Capture<Event> capturedEvent1 = new Capture<Event>();
+        Capture<Event> capturedEvent2 = new Capture<Event>();
+        Capture<Event> capturedEvent3 = new Capture<Event>();
+        EventBus eventBus = createMock(EventBus.class);
+        eventBus.isEnabled();
+        expectLastCall().andReturn(true).anyTimes();
+        eventBus.publish(capture(capturedEvent1));
+        expectLastCall().once();
+        eventBus.publish(capture(capturedEvent2));
+        expectLastCall().once();
+        eventBus.publish(capture(capturedEvent3));
+        expectLastCall().once();
+
+        replay(eventBus);
+
+        bucket.setEventBus(eventBus);
+        bucket.put(key1, value1);
+        bucket.putAll(Maps.hash(new Key[]{key1, key2}, new Value[]{value2, value1}));
+        assertEquals(value2, bucket.get(key1));
+        assertEquals(value1, bucket.get(key2));
+
+        Event key1Event = capturedEvent2.getValue().getKey().equals("key1") ? capturedEvent2.getValue() : capturedEvent3.getValue();
+        Event key2Event = capturedEvent2.getValue().getKey().equals("key2") ? capturedEvent2.getValue() : capturedEvent3.getValue();
+        assertArrayEquals(JSON_VALUE.getBytes(), key1Event.getOldValueAsBytes());
+        assertArrayEquals(JSON_VALUE_2.getBytes(), key1Event.getNewValueAsBytes());
+        assertNull(key2Event.getOldValueAsBytes());
+        assertArrayEquals(JSON_VALUE.getBytes(), key2Event.getNewValueAsBytes());
+
+        verify(eventBus);
+    }
+
     @Test
     public void testPutDoesNotFireEventBusIfNotEnabled() throws StoreOperationException {
         Key key = new Key("key");
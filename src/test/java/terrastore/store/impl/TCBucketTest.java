@@ -18,6 +18,7 @@ package terrastore.store.impl;
 import terrastore.store.operators.OperatorException;
 import terrastore.common.ErrorMessage;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -30,6 +31,7 @@ import terrastore.internal.tc.TCMaster;
 import terrastore.event.Event;
 import terrastore.event.EventBus;
 import terrastore.event.EventListener;
+import terrastore.store.FlushCondition;
 import terrastore.store.Key;
 import terrastore.store.StoreOperationException;
 import terrastore.store.features.Predicate;
@@ -38,6 +40,8 @@ import terrastore.store.features.Update;
 import terrastore.store.features.Range;
 import terrastore.store.operators.Condition;
 import terrastore.store.Value;
+import terrastore.store.conditions.IndexCondition;
+import terrastore.store.index.IndexDefinition;
 import terrastore.store.features.Mapper;
 import terrastore.store.operators.Comparator;
 import terrastore.util.collect.Maps;
@@ -83,6 +87,26 @@ public class TCBucketTest {
         assertEquals(value, bucket.get(key));
     }
 
+    @Test
+    public void testPutAllAndGetValues() throws StoreOperationException {
+        Key key1 = new Key("key1");
+        Key key2 = new Key("key2");
+        Key key3 = new Key("key3");
+        Value value1 = new Value(JSON_VALUE.getBytes());
+        Value value2 = new Value(JSON_VALUE_2.getBytes());
+        bucket.put(key1, value2);
+        Map<Key, Value> values = new HashMap<Key, Value>();
+        values.put(key1, value1);
+        values.put(key2, value2);
+        values.put(key3, value1);
+        bucket.putAll(values);
+        assertEquals(3, bucket.size());
+        assertEquals(value1, bucket.get(key1));
+        assertEquals(value2, bucket.get(key2));
+        assertEquals(value1, bucket.get(key3));
+        assertEquals(3, bucket.keysInRange(new Range(new Key("key1"), new Key("key3"), 0, "", 0)).size());
+    }
+
     @Test
     public void testPutAndGetValues() throws StoreOperationException {
         Key key1 = new Key("key1");
@@ -214,6 +238,43 @@ public class TCBucketTest {
         bucket.conditionalGet(key, predicate);
     }
 
+    @Test
+    public void testPutIfVersion() throws StoreOperationException {
+        Key key = new Key("key");
+        Value value = new Value(JSON_VALUE.getBytes());
+        Value updated = new Value(JSON_UPDATED.getBytes());
+        assertFalse(bucket.putIfVersion(key, updated, value.getVersion()));
+        bucket.put(key, value);
+        assertFalse(bucket.putIfVersion(key, updated, updated.getVersion()));
+        assertEquals(value, bucket.get(key));
+        assertTrue(bucket.putIfVersion(key, updated, bucket.get(key).getVersion()));
+        assertEquals(updated, bucket.get(key));
+    }
+
+    @Test
+    public void testPutIfAnyVersion() throws StoreOperationException {
+        Key key = new Key("key");
+        Value value = new Value(JSON_VALUE.getBytes());
+        Value updated = new Value(JSON_UPDATED.getBytes());
+        assertFalse(bucket.putIfVersion(key, updated, Value.ANY_VERSION));
+        bucket.put(key, value);
+        assertTrue(bucket.putIfVersion(key, updated, Value.ANY_VERSION));
+        assertEquals(updated, bucket.get(key));
+    }
+
+    @Test
+    public void testRemoveIfVersion() throws StoreOperationException {
+        Key key = new Key("key");
+        Value value = new Value(JSON_VALUE.getBytes());
+        Value updated = new Value(JSON_UPDATED.getBytes());
+        assertFalse(bucket.removeIfVersion(key, value.getVersion()));
+        bucket.put(key, value);
+        assertFalse(bucket.removeIfVersion(key, updated.getVersion()));
+        assertEquals(1, bucket.size());
+        assertTrue(bucket.removeIfVersion(key, value.getVersion()));
+        assertEquals(0, bucket.size());
+    }
+
     @Test
     public void testPutAndConditionallyGetValue() throws StoreOperationException {
         Key key = new Key("key");
@@ -535,6 +596,46 @@ public class TCBucketTest {
         assertEquals(1, bucket.keysInRange(new Range(new Key("key1"), new Key("key1"), 0, "order", 0)).size());
     }
 
+    @Test
+    public void testValuesInRangeWithPredicateAndLimit() throws StoreOperationException {
+        Comparator stringComparator = new Comparator() {
+
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.compareTo(o2);
+            }
+
+        };
+        Condition condition = new Condition() {
+
+            @Override
+            public boolean isSatisfied(String key, Map<String, Object> value, String expression) {
+                return value.get("test").equals(expression);
+            }
+
+        };
+
+        bucket.setComparators(Maps.hash(new String[]{"order"}, new Comparator[]{stringComparator}));
+        bucket.setConditions(Maps.hash(new String[]{"test"}, new Condition[]{condition}));
+
+        Key key1 = new Key("key1");
+        Key key2 = new Key("key2");
+        Key key3 = new Key("key3");
+        Key key4 = new Key("key4");
+        bucket.put(key1, new Value(JSON_VALUE.getBytes()));
+        bucket.put(key2, new Value(JSON_UPDATED.getBytes()));
+        bucket.put(key3, new Value(JSON_VALUE.getBytes()));
+        bucket.put(key4, new Value(JSON_VALUE.getBytes()));
+        Map<Key, Value> all = bucket.valuesInRange(new Range(new Key("key1"), new Key("key4"), 0, "order", 0), new Predicate(null));
+        assertEquals(4, all.size());
+        assertEquals(key1, all.keySet().toArray()[0]);
+        assertEquals(key4, all.keySet().toArray()[3]);
+        Map<Key, Value> satisfied = bucket.valuesInRange(new Range(new Key("key1"), new Key("key4"), 2, "order", 0), new Predicate("test:test"));
+        assertEquals(2, satisfied.size());
+        assertEquals(key1, satisfied.keySet().toArray()[0]);
+        assertEquals(key3, satisfied.keySet().toArray()[1]);
+    }
+
     @Test
     public void testUpdate() throws StoreOperationException, UnsupportedEncodingException {
         long timeoutInMillis = 1000;
@@ -647,6 +748,71 @@ public class TCBucketTest {
         bucket.map(key, mapper);
     }
 
+    @Test
+    public void testNearCacheIsInvalidatedOnWrites() throws StoreOperationException {
+        bucket.setNearCacheSize(1024 * 1024);
+        Key key = new Key("key");
+        bucket.put(key, new Value(JSON_VALUE.getBytes()));
+        assertEquals(JSON_VALUE, bucket.get(key).toString());
+        assertEquals(JSON_VALUE, bucket.get(key).toString());
+        assertEquals(1, bucket.getNearCache().getHits());
+        bucket.put(key, new Value(JSON_VALUE_2.getBytes()));
+        assertEquals(JSON_VALUE_2, bucket.get(key).toString());
+        bucket.remove(key);
+        try {
+            bucket.get(key);
+            fail("Should throw exception!");
+        } catch (StoreOperationException ex) {
+        }
+    }
+
+    @Test
+    public void testNearCacheSkipsKeysNotOwned() throws StoreOperationException {
+        Key owned = new Key("owned");
+        Key notOwned = new Key("notOwned");
+        FlushCondition condition = createMock(FlushCondition.class);
+        condition.isSatisfied(bucket, owned);
+        expectLastCall().andReturn(false).once();
+        condition.isSatisfied(bucket, notOwned);
+        expectLastCall().andReturn(true).times(2);
+        replay(condition);
+
+        bucket.setNearCacheSize(1024 * 1024);
+        bucket.setFlushCondition(condition);
+        bucket.put(owned, new Value(JSON_VALUE.getBytes()));
+        bucket.put(notOwned, new Value(JSON_VALUE.getBytes()));
+        bucket.get(owned);
+        bucket.get(owned);
+        bucket.get(notOwned);
+        bucket.get(notOwned);
+        assertEquals(1, bucket.getNearCache().getHits());
+        assertEquals(1, bucket.getNearCache().size());
+
+        verify(condition);
+    }
+
+    @Test
+    public void testQueryByIndex() throws Exception {
+        bucket.put(new Key("key1"), new Value("{\"name\":\"a\",\"age\":10}".getBytes()));
+        bucket.put(new Key("key2"), new Value("{\"name\":\"b\",\"age\":20}".getBytes()));
+        bucket.setConditions(Maps.hash(new String[]{"index"}, new Condition[]{new IndexCondition()}));
+        bucket.setIndexes(Arrays.asList(new IndexDefinition("/name", IndexDefinition.Type.HASH), new IndexDefinition("/age", IndexDefinition.Type.SORTED)));
+        while (!bucket.getIndexes().isReady()) {
+            Thread.sleep(10);
+        }
+        bucket.put(new Key("key3"), new Value("{\"name\":\"c\",\"age\":30}".getBytes()));
+        bucket.put(new Key("key1"), new Value("{\"name\":\"a\",\"age\":40}".getBytes()));
+        bucket.remove(new Key("key2"));
+        //
+        Map<Key, Value> byName = bucket.queryByIndex(new Predicate("index:eq(/name,a)"));
+        assertEquals(1, byName.size());
+        assertTrue(byName.containsKey(new Key("key1")));
+        Map<Key, Value> byAge = bucket.queryByIndex(new Predicate("index:range(/age,15,35)"));
+        assertEquals(1, byAge.size());
+        assertTrue(byAge.containsKey(new Key("key3")));
+        assertNull(bucket.queryByIndex(new Predicate("index:range(/name,a,b)")));
+    }
+
     private static class DisabledEventBus implements EventBus {
 
         @Override
@@ -16,6 +16,9 @@
 package terrastore.store.impl;
 
 import terrastore.internal.tc.TCMaster;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -102,4 +105,21 @@ public class TCLockManagerTest {
         assertFalse(overflow.get());
     }
 
+    @Test
+    public void testGroupByLock() {
+        LockManager lockManager = new TCLockManager("node", 2);
+        Set<Key> keys = new HashSet<Key>();
+        for (int i = 0; i < 10; i++) {
+            keys.add(new Key("" + i));
+        }
+        List<Set<Key>> groups = lockManager.groupByLock("bucket", keys);
+        assertTrue(groups.size() <= 2);
+        Set<Key> grouped = new HashSet<Key>();
+        for (Set<Key> group : groups) {
+            grouped.addAll(group);
+        }
+        assertEquals(keys, grouped);
+        assertEquals(groups, lockManager.groupByLock("bucket", keys));
+    }
+
 }
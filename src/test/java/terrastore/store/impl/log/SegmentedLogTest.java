@@ -0,0 +1,146 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.impl.log;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import terrastore.util.io.IOUtils;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class SegmentedLogTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(System.getProperty("java.io.tmpdir"), "terrastore-log-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        IOUtils.deleteRecursively(directory);
+    }
+
+    @Test
+    public void testPutGetAndRemove() throws Exception {
+        SegmentedLog log = new SegmentedLog(directory, 1024, 0.5, 0);
+        log.put("key".getBytes(), "value".getBytes());
+        assertArrayEquals("value".getBytes(), log.get("key".getBytes()));
+        assertEquals(1, log.size());
+        log.remove("key".getBytes());
+        assertNull(log.get("key".getBytes()));
+        assertEquals(0, log.size());
+        log.close();
+    }
+
+    @Test
+    public void testRollOverAndRecovery() throws Exception {
+        SegmentedLog log = new SegmentedLog(directory, 128, 0.5, 0);
+        for (int i = 0; i < 100; i++) {
+            log.put(("key" + i).getBytes(), ("value" + i).getBytes());
+        }
+        log.remove("key0".getBytes());
+        log.put("key1".getBytes(), "updated".getBytes());
+        log.close();
+        //
+        log = new SegmentedLog(directory, 128, 0.5, 0);
+        assertEquals(99, log.size());
+        assertNull(log.get("key0".getBytes()));
+        assertArrayEquals("updated".getBytes(), log.get("key1".getBytes()));
+        assertArrayEquals("value99".getBytes(), log.get("key99".getBytes()));
+        log.close();
+    }
+
+    @Test
+    public void testRecoveryStopsAtCorruptedRecord() throws Exception {
+        SegmentedLog log = new SegmentedLog(directory, 1024, 0.5, 0);
+        log.put("key1".getBytes(), "value1".getBytes());
+        log.put("key2".getBytes(), "value2".getBytes());
+        log.put("key3".getBytes(), "value3".getBytes());
+        log.close();
+        // Corrupt the value of the second record:
+        RandomAccessFile segment = new RandomAccessFile(getSegmentFile(), "rw");
+        segment.seek(LogSegment.sizeOf("key1".getBytes(), "value1".getBytes()) + LogSegment.HEADER_SIZE + "key2".length());
+        segment.write('X');
+        segment.close();
+        //
+        log = new SegmentedLog(directory, 1024, 0.5, 0);
+        assertEquals(1, log.size());
+        assertArrayEquals("value1".getBytes(), log.get("key1".getBytes()));
+        assertNull(log.get("key2".getBytes()));
+        assertNull(log.get("key3".getBytes()));
+        log.close();
+    }
+
+    @Test
+    public void testRecoveryStopsAtOverflowingLengths() throws Exception {
+        SegmentedLog log = new SegmentedLog(directory, 1024, 0.5, 0);
+        log.put("key1".getBytes(), "value1".getBytes());
+        log.close();
+        // Write a record header whose lengths would overflow when summed:
+        RandomAccessFile segment = new RandomAccessFile(getSegmentFile(), "rw");
+        segment.seek(LogSegment.sizeOf("key1".getBytes(), "value1".getBytes()));
+        segment.writeInt(Integer.MAX_VALUE);
+        segment.writeInt(Integer.MAX_VALUE);
+        segment.close();
+        //
+        log = new SegmentedLog(directory, 1024, 0.5, 0);
+        assertEquals(1, log.size());
+        assertArrayEquals("value1".getBytes(), log.get("key1".getBytes()));
+        log.put("key2".getBytes(), "value2".getBytes());
+        assertArrayEquals("value2".getBytes(), log.get("key2".getBytes()));
+        log.close();
+    }
+
+    @Test
+    public void testCompactionPreservesLiveRecordsAndRemovals() throws Exception {
+        SegmentedLog log = new SegmentedLog(directory, 128, 0.1, 0);
+        for (int i = 0; i < 100; i++) {
+            log.put(("key" + i).getBytes(), ("value" + i).getBytes());
+        }
+        for (int i = 0; i < 50; i++) {
+            log.remove(("key" + i).getBytes());
+        }
+        int files = directory.listFiles().length;
+        log.compact();
+        assertTrue(directory.listFiles().length < files);
+        assertEquals(50, log.size());
+        assertEquals(50, log.keys().size());
+        log.close();
+        //
+        log = new SegmentedLog(directory, 128, 0.1, 0);
+        assertEquals(50, log.size());
+        for (int i = 0; i < 50; i++) {
+            assertNull(log.get(("key" + i).getBytes()));
+        }
+        for (int i = 50; i < 100; i++) {
+            assertArrayEquals(("value" + i).getBytes(), log.get(("key" + i).getBytes()));
+        }
+        log.close();
+    }
+
+    private File getSegmentFile() {
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        return files[0];
+    }
+}
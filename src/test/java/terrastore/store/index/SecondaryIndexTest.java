@@ -0,0 +1,78 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import terrastore.store.Key;
+import terrastore.util.collect.Sets;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class SecondaryIndexTest {
+
+    @Test
+    public void testHashIndexLookup() {
+        SecondaryIndex index = new SecondaryIndex(new IndexDefinition("/address/city", IndexDefinition.Type.HASH));
+        index.add(new Key("1"), document("rome", 10));
+        index.add(new Key("2"), document("milan", 20));
+        assertEquals(Sets.hash(new Key("1")), index.lookup(IndexQuery.parse("eq(/address/city,rome)")));
+        assertTrue(index.lookup(IndexQuery.parse("eq(/address/city,turin)")).isEmpty());
+        assertFalse(index.supports(IndexQuery.parse("range(/address/city,a,z)")));
+    }
+
+    @Test
+    public void testSortedIndexLookup() {
+        SecondaryIndex index = new SecondaryIndex(new IndexDefinition("/age", IndexDefinition.Type.SORTED));
+        index.add(new Key("1"), document("rome", 10));
+        index.add(new Key("2"), document("milan", 20));
+        index.add(new Key("3"), document("turin", 30));
+        assertEquals(Sets.hash(new Key("2")), index.lookup(IndexQuery.parse("eq(/age,20)")));
+        assertEquals(Sets.hash(new Key("1"), new Key("2")), index.lookup(IndexQuery.parse("range(/age,,20)")));
+        assertEquals(Sets.hash(new Key("2"), new Key("3")), index.lookup(IndexQuery.parse("range(/age,15,)")));
+        assertEquals(Sets.hash(new Key("2")), index.lookup(IndexQuery.parse("range(/age,15,25)")));
+    }
+
+    @Test
+    public void testRemove() {
+        SecondaryIndex index = new SecondaryIndex(new IndexDefinition("/age", IndexDefinition.Type.SORTED));
+        Map<String, Object> document = document("rome", 10);
+        index.add(new Key("1"), document);
+        index.remove(new Key("1"), document);
+        assertTrue(index.lookup(IndexQuery.parse("range(/age,,)")).isEmpty());
+    }
+
+    @Test
+    public void testQueryMatchesListElements() {
+        Map<String, Object> document = document("rome", 10);
+        document.put("tags", Arrays.asList("a", "b"));
+        assertTrue(IndexQuery.parse("eq(/tags,b)").matches(document));
+        assertFalse(IndexQuery.parse("eq(/tags,c)").matches(document));
+    }
+
+    private Map<String, Object> document(String city, int age) {
+        Map<String, Object> address = new HashMap<String, Object>();
+        address.put("city", city);
+        Map<String, Object> document = new HashMap<String, Object>();
+        document.put("address", address);
+        document.put("age", age);
+        return document;
+    }
+}
@@ -18,6 +18,7 @@ package terrastore.store.js;
 import org.junit.Test;
 import terrastore.store.Value;
 import terrastore.util.json.JsonUtils;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -58,6 +59,114 @@ public class JSInvokerTest {
         assertEquals("test2", newMap.get("1"));
     }
 
+    @Test
+    public void testWithFunctionOverNestedValues() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        String f = "function(key, value, params) {"
+                + "    return {'key' : key, 'city' : value.address.city, 'count' : value.tags.length, 'tags' : value.tags, 'half' : value.size / 2};"
+                + "}";
+        params.put("function", f);
+
+        JSInvoker function = new JSInvoker("function");
+        Value value = new Value("{\"address\" : {\"city\" : \"Rome\"}, \"tags\" : [\"a\", \"b\"], \"size\" : 5}".getBytes("UTF-8"));
+        Map<String, Object> newMap = function.apply("1", JsonUtils.toUnmodifiableMap(value), params);
+
+        assertEquals("1", newMap.get("key"));
+        assertEquals("Rome", newMap.get("city"));
+        assertEquals(2, newMap.get("count"));
+        assertEquals(Arrays.asList("a", "b"), newMap.get("tags"));
+        assertEquals(2.5, newMap.get("half"));
+    }
+
+    @Test
+    public void testWithFunctionReturningConcatenatedStrings() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        String f = "function(key, value, params) {"
+                + "    var s = '';"
+                + "    for (var i = 0; i < 3; i++) { s = s + value.test + i; }"
+                + "    return {'concat' : s, 'nested' : {'concat' : key + '-' + value.test}, 'list' : [key + '!']};"
+                + "}";
+        params.put("function", f);
+
+        JSInvoker function = new JSInvoker("function");
+        Value value = new Value(JSON_VALUE.getBytes("UTF-8"));
+        Map<String, Object> newMap = function.apply("1", JsonUtils.toUnmodifiableMap(value), params);
+
+        assertEquals("test0test1test2", newMap.get("concat"));
+        assertEquals(String.class, newMap.get("concat").getClass());
+        assertEquals("1-test", ((Map) newMap.get("nested")).get("concat"));
+        assertEquals(String.class, ((Map) newMap.get("nested")).get("concat").getClass());
+        assertEquals(Arrays.asList("1!"), newMap.get("list"));
+        assertEquals(String.class, ((List) newMap.get("list")).get(0).getClass());
+        assertEquals("{\"concat\":\"test0test1test2\",\"nested\":{\"concat\":\"1-test\"},\"list\":[\"1!\"]}", JsonUtils.fromMap(newMap).toString());
+    }
+
+    @Test
+    public void testWithFunctionReturningDates() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        String f = "function(key, value, params) {"
+                + "    return {'date' : new Date(Date.UTC(2011, 0, 2, 3, 4, 5)), 'invalid' : new Date(NaN)};"
+                + "}";
+        params.put("function", f);
+
+        JSInvoker function = new JSInvoker("function");
+        Value value = new Value(JSON_VALUE.getBytes("UTF-8"));
+        Map<String, Object> newMap = function.apply("1", JsonUtils.toUnmodifiableMap(value), params);
+
+        assertEquals("2011-01-02T03:04:05.000Z", newMap.get("date"));
+        assertTrue(newMap.containsKey("invalid"));
+        assertNull(newMap.get("invalid"));
+    }
+
+    @Test
+    public void testWithFunctionReturningJavaObjects() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        String f = "function(key, value, params) {"
+                + "    var map = new java.util.HashMap();"
+                + "    map.put('inner', 'value');"
+                + "    var list = new java.util.ArrayList();"
+                + "    list.add('element');"
+                + "    return {'map' : map, 'list' : list, 'string' : new java.lang.String('java'), 'number' : new java.lang.Long(1), 'flag' : java.lang.Boolean.TRUE};"
+                + "}";
+        params.put("function", f);
+
+        JSInvoker function = new JSInvoker("function");
+        Value value = new Value(JSON_VALUE.getBytes("UTF-8"));
+        Map<String, Object> newMap = function.apply("1", JsonUtils.toUnmodifiableMap(value), params);
+
+        assertEquals(Maps.hash(new String[]{"inner"}, new Object[]{"value"}), newMap.get("map"));
+        assertEquals(Arrays.asList("element"), newMap.get("list"));
+        assertEquals("java", newMap.get("string"));
+        assertEquals(1L, ((Number) newMap.get("number")).longValue());
+        assertEquals(Boolean.TRUE, newMap.get("flag"));
+    }
+
+    @Test
+    public void testWithFunctionSeeingJavaTypesAsJavaScriptOnes() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        String f = "function(key, value, params) {"
+                + "    return {'key' : typeof key, 'object' : typeof value.object, 'array' : value.array instanceof Array, "
+                + "        'string' : typeof value.string, 'number' : typeof value.number, 'flag' : typeof value.flag, 'negated' : !value.flag, "
+                + "        'param' : typeof params.param, 'equal' : value.string === 'string'};"
+                + "}";
+        params.put("function", f);
+        params.put("param", "param");
+
+        JSInvoker function = new JSInvoker("function");
+        Value value = new Value("{\"object\" : {}, \"array\" : [], \"string\" : \"string\", \"number\" : 1, \"flag\" : false}".getBytes("UTF-8"));
+        Map<String, Object> newMap = function.apply("1", JsonUtils.toUnmodifiableMap(value), params);
+
+        assertEquals("string", newMap.get("key"));
+        assertEquals("object", newMap.get("object"));
+        assertEquals(true, newMap.get("array"));
+        assertEquals("string", newMap.get("string"));
+        assertEquals("number", newMap.get("number"));
+        assertEquals("boolean", newMap.get("flag"));
+        assertEquals(true, newMap.get("negated"));
+        assertEquals("string", newMap.get("param"));
+        assertEquals(true, newMap.get("equal"));
+    }
+
     @Test
     public void testWithFunctionOnFile() throws Exception {
         Map<String, Object> params = new HashMap<String, Object>();
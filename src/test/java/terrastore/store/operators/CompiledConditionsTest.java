@@ -0,0 +1,86 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.operators;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+import terrastore.store.conditions.IfCondition;
+import terrastore.store.features.Predicate;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class CompiledConditionsTest {
+
+    @After
+    public void tearDown() {
+        CompiledConditions.setMaxSize(CompiledConditions.DEFAULT_MAX_SIZE);
+    }
+
+    @Test
+    public void testCompiledConditionsAreCached() throws Exception {
+        Condition condition = new IfCondition();
+        CompiledCondition compiled = CompiledConditions.compile(condition, "matches(key,test)");
+        assertSame(compiled, CompiledConditions.compile(condition, "matches(key,test)"));
+        assertNotSame(compiled, CompiledConditions.compile(new IfCondition(), "matches(key,test)"));
+        assertTrue(compiled.isSatisfied("key", value("key", "test")));
+        assertFalse(compiled.isSatisfied("key", value("key", "unmatched")));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedConditionsAreEvicted() throws Exception {
+        CompiledConditions.setMaxSize(2);
+        Condition condition = new IfCondition();
+        CompiledCondition first = CompiledConditions.compile(condition, "matches(key,first)");
+        CompiledCondition second = CompiledConditions.compile(condition, "matches(key,second)");
+        assertSame(first, CompiledConditions.compile(condition, "matches(key,first)"));
+        CompiledConditions.compile(condition, "matches(key,third)");
+        assertSame(first, CompiledConditions.compile(condition, "matches(key,first)"));
+        assertNotSame(second, CompiledConditions.compile(condition, "matches(key,second)"));
+    }
+
+    @Test
+    public void testNotCompilableConditionsAreEvaluatedWithExpression() throws Exception {
+        Condition condition = new Condition() {
+
+            @Override
+            public boolean isSatisfied(String key, Map<String, Object> value, String expression) {
+                return expression.equals(value.get("key"));
+            }
+        };
+        CompiledCondition compiled = CompiledConditions.compile(condition, "test");
+        assertTrue(compiled.isSatisfied("key", value("key", "test")));
+        assertFalse(compiled.isSatisfied("key", value("key", "unmatched")));
+    }
+
+    @Test
+    public void testPredicateKeepsCompiledCondition() throws Exception {
+        Condition condition = new IfCondition();
+        Predicate predicate = new Predicate("if:matches(key,test)");
+        CompiledCondition compiled = predicate.compile(condition);
+        assertSame(compiled, predicate.compile(condition));
+        assertTrue(compiled.isSatisfied("key", value("key", "test")));
+    }
+
+    private Map<String, Object> value(String name, Object value) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put(name, value);
+        return result;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.store.snapshot;
+
+import java.util.Comparator;
+import java.util.Set;
+import org.junit.Test;
+import terrastore.store.Key;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class MemorySnapshotBackendTest {
+
+    @Test
+    public void testLoadAndKeysInRange() {
+        MemorySnapshotBackend backend = new MemorySnapshotBackend(new StringComparator());
+        backend.load(new String[]{"a", "b", "c", "v"});
+        Set<Key> keys = backend.keysInRange("b", "c", 0);
+        assertEquals(2, keys.size());
+        assertEquals(new Key("b"), keys.toArray()[0]);
+        assertEquals(new Key("c"), keys.toArray()[1]);
+    }
+
+    @Test
+    public void testKeysInRangeWithNoEndAndLimit() {
+        MemorySnapshotBackend backend = new MemorySnapshotBackend(new StringComparator());
+        backend.load(new String[]{"a", "b", "c", "v"});
+        Set<Key> keys = backend.keysInRange("b", null, 2);
+        assertEquals(2, keys.size());
+        assertEquals(new Key("b"), keys.toArray()[0]);
+        assertEquals(new Key("c"), keys.toArray()[1]);
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        MemorySnapshotBackend backend = new MemorySnapshotBackend(new StringComparator());
+        backend.load(new String[]{"a", "c"});
+        backend.add("b");
+        backend.remove("c");
+        Set<Key> keys = backend.keysInRange("a", "z", 0);
+        assertEquals(2, keys.size());
+        assertEquals(new Key("a"), keys.toArray()[0]);
+        assertEquals(new Key("b"), keys.toArray()[1]);
+    }
+
+    @Test
+    public void testLoadReplacesKeys() {
+        MemorySnapshotBackend backend = new MemorySnapshotBackend(new StringComparator());
+        backend.load(new String[]{"a", "c"});
+        backend.load(new String[]{"d"});
+        Set<Key> keys = backend.keysInRange("a", "z", 0);
+        assertEquals(1, keys.size());
+        assertEquals(new Key("d"), keys.toArray()[0]);
+    }
+
+    @Test
+    public void testDefaultFactoryChoosesBackendBySize() {
+        DefaultSnapshotBackendFactory factory = new DefaultSnapshotBackendFactory(10);
+        assertTrue(factory.create("snapshot", new StringComparator(), 10) instanceof MemorySnapshotBackend);
+        factory.setMemoryThreshold(-1);
+        assertTrue(factory.create("snapshot", new StringComparator(), 1000) instanceof MemorySnapshotBackend);
+    }
+
+    private static class StringComparator implements Comparator<String> {
+
+        @Override
+        public int compare(String o1, String o2) {
+            return o1.compareTo(o2);
+        }
+    }
+}
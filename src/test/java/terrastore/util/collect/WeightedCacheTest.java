@@ -0,0 +1,85 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.collect;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class WeightedCacheTest {
+
+    @Test
+    public void testPutAndGet() {
+        WeightedCache<String, String> cache = new WeightedCache<String, String>(16 * 1000, new StringWeigher());
+        assertNull(cache.get("key"));
+        cache.put("key", "value", cache.stamp("key"));
+        assertEquals("value", cache.get("key"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidate() {
+        WeightedCache<String, String> cache = new WeightedCache<String, String>(16 * 1000, new StringWeigher());
+        cache.put("key", "value", cache.stamp("key"));
+        cache.invalidate("key");
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testPutIsDiscardedIfInvalidatedWhileLoading() {
+        WeightedCache<String, String> cache = new WeightedCache<String, String>(16 * 1000, new StringWeigher());
+        long stamp = cache.stamp("key");
+        cache.invalidate("key");
+        cache.put("key", "stale", stamp);
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testFrequentlyAccessedEntriesSurviveScan() {
+        WeightedCache<String, String> cache = new WeightedCache<String, String>(16 * 100, new StringWeigher());
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 10; i++) {
+                String key = "hot" + i;
+                if (cache.get(key) == null) {
+                    cache.put(key, "0123456789", cache.stamp(key));
+                }
+            }
+        }
+        for (int i = 0; i < 10000; i++) {
+            String key = "cold" + i;
+            if (cache.get(key) == null) {
+                cache.put(key, "0123456789", cache.stamp(key));
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get("hot" + i));
+        }
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.size() <= 160);
+    }
+
+    private static class StringWeigher implements WeightedCache.Weigher<String> {
+
+        @Override
+        public int weigh(String value) {
+            return value.length();
+        }
+
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -54,6 +55,18 @@ public class ParallelUtilsTest {
         assertEquals(Sets.linked("1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12"), merged);
     }
 
+    @Test
+    public void testParallelSort() {
+        Integer[] elements = new Integer[100000];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = (i * 7919) % elements.length;
+        }
+        ParallelUtils.parallelSort(elements, Collections.<Integer>reverseOrder(), fjPool);
+        for (int i = 0; i < elements.length; i++) {
+            assertEquals(elements.length - 1 - i, elements[i].intValue());
+        }
+    }
+
     @Test
     public void testParallelMap() throws ParallelExecutionException {
         List<String> result = ParallelUtils.parallelMap(
@@ -119,6 +132,100 @@ public class ParallelUtilsTest {
         assertEquals(2, threads.size());
     }
 
+    @Test
+    public void testParallelSliceFold() throws ParallelExecutionException {
+        List<Integer> input = new LinkedList<Integer>();
+        for (int i = 1; i <= 1000; i++) {
+            input.add(i);
+        }
+        final AtomicInteger accumulators = new AtomicInteger();
+        List<Integer> result = ParallelUtils.parallelSliceFold(
+                input, 7,
+                new MapTask<Integer, Integer>() {
+
+                    @Override
+                    public Integer map(Integer input) throws ParallelExecutionException {
+                        return input % 10 == 0 ? null : input;
+                    }
+
+                },
+                new FoldTask<Integer, List<Integer>>() {
+
+                    @Override
+                    public List<Integer> newAccumulator() throws ParallelExecutionException {
+                        accumulators.incrementAndGet();
+                        return new LinkedList<Integer>();
+                    }
+
+                    @Override
+                    public List<Integer> fold(List<Integer> accumulator, Integer output) throws ParallelExecutionException {
+                        accumulator.add(output);
+                        return accumulator;
+                    }
+
+                    @Override
+                    public List<Integer> merge(List<Integer> first, List<Integer> second) throws ParallelExecutionException {
+                        first.addAll(second);
+                        return first;
+                    }
+
+                }, executor);
+        assertEquals(900, result.size());
+        assertEquals(143, accumulators.get());
+        for (int i = 1, j = 0; i <= 1000; i++) {
+            if (i % 10 != 0) {
+                assertEquals(i, result.get(j++).intValue());
+            }
+        }
+    }
+
+
+    @Test
+    public void testParallelSliceFoldKeepsFewAccumulatorsInMemory() throws ParallelExecutionException {
+        List<Integer> input = new LinkedList<Integer>();
+        for (int i = 1; i <= 10000; i++) {
+            input.add(i);
+        }
+        final AtomicInteger alive = new AtomicInteger();
+        final AtomicInteger maxAlive = new AtomicInteger();
+        Integer result = ParallelUtils.parallelSliceFold(
+                input, 1,
+                new MapTask<Integer, Integer>() {
+
+                    @Override
+                    public Integer map(Integer input) throws ParallelExecutionException {
+                        return input;
+                    }
+
+                },
+                new FoldTask<Integer, Integer>() {
+
+                    @Override
+                    public Integer newAccumulator() throws ParallelExecutionException {
+                        int current = alive.incrementAndGet();
+                        int max = maxAlive.get();
+                        while (current > max && !maxAlive.compareAndSet(max, current)) {
+                            max = maxAlive.get();
+                        }
+                        return 0;
+                    }
+
+                    @Override
+                    public Integer fold(Integer accumulator, Integer output) throws ParallelExecutionException {
+                        return accumulator + output;
+                    }
+
+                    @Override
+                    public Integer merge(Integer first, Integer second) throws ParallelExecutionException {
+                        alive.decrementAndGet();
+                        return first + second;
+                    }
+
+                }, executor);
+        assertEquals(50005000, result.intValue());
+        // Running slices, plus a logarithmic number of accumulators waiting for merge:
+        assertTrue(maxAlive.get() <= Runtime.getRuntime().availableProcessors() * 4 + 16);
+    }
     @Test(expected = ParallelExecutionException.class)
     public void testParallelMapWithException() throws Exception {
         ParallelUtils.parallelMap(
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.collect.sketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author Sergio Bossa
+ */
+public class CountMinTopKTest {
+
+    @Test
+    public void testTopValues() {
+        CountMinTopK sketch = new CountMinTopK(4, 1024, 12);
+        for (int i = 0; i < 10000; i++) {
+            sketch.add("noise" + i);
+            if (i % 10 == 0) {
+                sketch.add("first");
+            }
+            if (i % 20 == 0) {
+                sketch.add("second");
+            }
+            if (i % 40 == 0) {
+                sketch.add("third");
+            }
+        }
+        Map<String, Long> top = sketch.top(3);
+        assertEquals(Arrays.asList("first", "second", "third"), new LinkedList<String>(top.keySet()));
+        assertTrue(top.get("first") >= 1000);
+        assertTrue(sketch.estimate("second") >= 500);
+    }
+
+    @Test
+    public void testMergeSketches() {
+        CountMinTopK first = new CountMinTopK(4, 1024, 8);
+        CountMinTopK second = new CountMinTopK(4, 1024, 8);
+        for (int i = 0; i < 1000; i++) {
+            first.add("a");
+            second.add("b");
+            second.add("b");
+            first.add("noise" + i);
+            second.add("noise" + i);
+        }
+        first.merge(CountMinTopK.fromByteArray(second.toByteArray()));
+        Map<String, Long> top = first.top(2);
+        assertEquals(Arrays.asList("b", "a"), new LinkedList<String>(top.keySet()));
+        assertTrue(top.get("b") >= 2000);
+        assertTrue(top.get("a") >= 1000);
+    }
+}
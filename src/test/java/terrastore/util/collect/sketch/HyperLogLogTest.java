@@ -0,0 +1,73 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.collect.sketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Sergio Bossa
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void testEstimateSmallCardinality() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("value" + (i % 100));
+        }
+        assertEquals(100, sketch.estimate(), 2);
+    }
+
+    @Test
+    public void testEstimateLargeCardinality() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for (int i = 0; i < 100000; i++) {
+            sketch.add("value" + i);
+        }
+        assertEquals(100000, sketch.estimate(), 100000 * 0.05);
+    }
+
+    @Test
+    public void testMergeOverlappingSketches() {
+        HyperLogLog first = new HyperLogLog(12);
+        HyperLogLog second = new HyperLogLog(12);
+        for (int i = 0; i < 50000; i++) {
+            first.add("value" + i);
+            second.add("value" + (i + 25000));
+        }
+        first.merge(HyperLogLog.fromByteArray(second.toByteArray()));
+        assertEquals(75000, first.estimate(), 75000 * 0.05);
+    }
+
+    @Test
+    public void testSerializedSizeIsConstant() {
+        HyperLogLog sketch = new HyperLogLog(10);
+        int size = sketch.toByteArray().length;
+        for (int i = 0; i < 10000; i++) {
+            sketch.add("value" + i);
+        }
+        assertEquals(size, sketch.toByteArray().length);
+        assertTrue(size <= 1025);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCannotMergeDifferentPrecisions() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+}
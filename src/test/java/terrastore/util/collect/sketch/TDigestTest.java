@@ -0,0 +1,75 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.collect.sketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Sergio Bossa
+ */
+public class TDigestTest {
+
+    @Test
+    public void testQuantilesOfUniformValues() {
+        TDigest digest = new TDigest(100);
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            digest.add(random.nextDouble() * 1000);
+        }
+        assertEquals(100000, digest.count());
+        assertEquals(500, digest.quantile(0.5), 10);
+        assertEquals(900, digest.quantile(0.9), 10);
+        assertEquals(990, digest.quantile(0.99), 2);
+        assertTrue(digest.quantile(0) >= 0);
+        assertTrue(digest.quantile(1) <= 1000);
+    }
+
+    @Test
+    public void testMergeDigests() {
+        TDigest first = new TDigest(100);
+        TDigest second = new TDigest(100);
+        for (int i = 0; i < 50000; i++) {
+            first.add(i);
+            second.add(i + 50000);
+        }
+        first.merge(TDigest.fromByteArray(second.toByteArray()));
+        assertEquals(100000, first.count());
+        assertEquals(50000, first.quantile(0.5), 1000);
+        assertEquals(99000, first.quantile(0.99), 200);
+    }
+
+    @Test
+    public void testSerializedSizeIsBounded() {
+        TDigest digest = new TDigest(100);
+        for (int i = 0; i < 100000; i++) {
+            digest.add(i % 777);
+        }
+        assertTrue(digest.toByteArray().length < 36 + 16 * 200);
+    }
+
+    @Test
+    public void testSingleValue() {
+        TDigest digest = new TDigest(100);
+        digest.add(3);
+        assertEquals(3, digest.quantile(0.5), 0);
+        assertTrue(Double.isNaN(new TDigest(100).quantile(0.5)));
+    }
+}
@@ -18,6 +18,7 @@ package terrastore.util.io;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import org.junit.Test;
@@ -26,6 +27,9 @@ import org.msgpack.MessageTypeException;
 import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
+import terrastore.store.codec.Codecs;
+import terrastore.store.codec.CompressionPolicy;
+
 
 /**
  * @author Sergio Bossa
@@ -43,6 +47,18 @@ public class MsgPackSerializerTest {
         doTestSerializeDeserialize(true);
     }
 
+    @Test
+    public void testSerializeDeserializeCompressedWithCodec() throws IOException, ClassNotFoundException {
+        TestObject obj = new TestObject("test");
+        //
+        MsgPackSerializer<TestObject> serializer = new MsgPackSerializer<TestObject>(new CompressionPolicy(Codecs.DEFLATE, 0));
+        //
+        byte[] serialized = serializer.serialize(obj);
+        TestObject deserialized = serializer.deserialize(new ByteArrayInputStream(serialized));
+        assertNotNull(deserialized);
+        assertEquals(obj, deserialized);
+    }
+
     private void doTestSerializeDeserialize(boolean compressed) throws IOException, ClassNotFoundException {
         TestObject obj = new TestObject("test");
         //
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.util.json;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import terrastore.store.Value;
+import terrastore.store.codec.BinaryJsonCodec;
+import terrastore.store.codec.Codecs;
+import terrastore.store.codec.CompressionPolicy;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class BinaryJsonTest {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    //
+    private static final String COMPOSITE = "{\"key1\":\"string\",\"key2\":1,\"key3\":1.5,\"key4\":true,\"key5\":false,\"key6\":null,\"key7\":{},\"key8\":[]}";
+    private static final String NESTED = "{\"name\":\"terrastore\",\"inner\":{\"key\":\"object\",\"array\":[1,\"two\",{\"three\":3}]}}";
+    private static final String NUMBERS = "{\"int\":1,\"long\":9223372036854775807,\"big\":92233720368547758070,\"float\":1.25e2}";
+    private static final String COLLIDING = "{\"Aa\":1,\"BB\":2}";
+
+    @Test
+    public void testEncodeAndDecode() throws Exception {
+        assertEquals(COMPOSITE, decode(BinaryJson.encode(COMPOSITE.getBytes(CHARSET))));
+        assertEquals(NESTED, decode(BinaryJson.encode(NESTED.getBytes(CHARSET))));
+        assertEquals(NUMBERS, decode(BinaryJson.encode(NUMBERS.getBytes(CHARSET))));
+    }
+
+    @Test
+    public void testUnmodifiableMap() throws Exception {
+        Map<String, Object> map = BinaryJson.toUnmodifiableMap(BinaryJson.encode(COMPOSITE.getBytes(CHARSET)), 0);
+        assertEquals(8, map.size());
+        assertEquals("string", map.get("key1"));
+        assertEquals(1L, map.get("key2"));
+        assertEquals(1.5f, map.get("key3"));
+        assertEquals(true, map.get("key4"));
+        assertEquals(false, map.get("key5"));
+        assertNull(map.get("key6"));
+        assertTrue(map.containsKey("key6"));
+        assertTrue(((Map) map.get("key7")).isEmpty());
+        assertTrue(((List) map.get("key8")).isEmpty());
+        assertNull(map.get("notfound"));
+        assertFalse(map.containsKey("notfound"));
+    }
+
+    @Test
+    public void testUnmodifiableMapWithNestedValues() throws Exception {
+        Map<String, Object> map = BinaryJson.toUnmodifiableMap(BinaryJson.encode(NESTED.getBytes(CHARSET)), 0);
+        Map<String, Object> inner = (Map<String, Object>) map.get("inner");
+        assertEquals("object", inner.get("key"));
+        List<Object> array = (List<Object>) inner.get("array");
+        assertEquals(3, array.size());
+        assertEquals(1L, array.get(0));
+        assertEquals("two", array.get(1));
+        assertEquals(3L, ((Map) array.get(2)).get("three"));
+    }
+
+    @Test
+    public void testUnmodifiableMapIteratesInOriginalOrder() throws Exception {
+        Map<String, Object> map = BinaryJson.toUnmodifiableMap(BinaryJson.encode(COMPOSITE.getBytes(CHARSET)), 0);
+        Iterator<String> keys = map.keySet().iterator();
+        for (int i = 1; i <= 8; i++) {
+            assertEquals("key" + i, keys.next());
+        }
+        assertFalse(keys.hasNext());
+    }
+
+    @Test
+    public void testUnmodifiableMapWithCollidingNames() throws Exception {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        Map<String, Object> map = BinaryJson.toUnmodifiableMap(BinaryJson.encode(COLLIDING.getBytes(CHARSET)), 0);
+        assertEquals(1L, map.get("Aa"));
+        assertEquals(2L, map.get("BB"));
+        assertNull(map.get("C#"));
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        Map<String, Object> map = BinaryJson.toUnmodifiableMap(BinaryJson.encode(NUMBERS.getBytes(CHARSET)), 0);
+        assertEquals(Long.MAX_VALUE, map.get("long"));
+        assertEquals(new BigInteger("92233720368547758070"), map.get("big"));
+        assertEquals(125f, map.get("float"));
+    }
+
+    @Test
+    public void testModifiableMap() throws Exception {
+        Map<String, Object> map = BinaryJson.toModifiableMap(BinaryJson.encode(NESTED.getBytes(CHARSET)), 0);
+        Map<String, Object> inner = (Map<String, Object>) map.get("inner");
+        List<Object> array = (List<Object>) inner.get("array");
+        assertEquals(1, array.get(0));
+        assertEquals("two", array.get(1));
+        assertEquals(3, ((Map) array.get(2)).get("three"));
+        map.put("name", "changed");
+        assertEquals("changed", map.get("name"));
+    }
+
+    @Test
+    public void testValueWithBinaryCodec() throws Exception {
+        Value json = new Value(NESTED.getBytes(CHARSET));
+        Value binary = new Value(json.getEncodedBytes(new CompressionPolicy(new BinaryJsonCodec(), 0)));
+        assertTrue(binary.getCodec() instanceof BinaryJsonCodec);
+        assertEquals(NESTED, new String(binary.getBytes(), CHARSET));
+        assertEquals(json.getVersion(), binary.getVersion());
+        assertEquals(JsonUtils.toModifiableMap(json), JsonUtils.toModifiableMap(binary));
+        assertEquals(JsonUtils.toUnmodifiableMap(json), JsonUtils.toUnmodifiableMap(binary));
+        assertTrue(JsonUtils.toUnmodifiableMap(binary) instanceof BinaryJsonMap);
+        assertSame(Codecs.BINARY_JSON, Codecs.forName(BinaryJsonCodec.NAME));
+    }
+
+    private String decode(byte[] binary) throws Exception {
+        return new String(BinaryJson.decode(binary, 0), CHARSET);
+    }
+}
@@ -45,6 +45,7 @@ public class JsonStreamingMapTest {
     private static final String INNER_OBJECT = "{\"inner\":{\"key\":\"object\"}}";
     private static final String INNER_OBJECT_2 = "{\"key\" : \"value\", \"inner\":{\"key\":\"object\"}}";
     private static final String INNER_ARRAY = "{\"inner\":[\"array\"]}";
+    private static final String TRICKY = " { \"key\" : \"v\\\"}\\u0041\" ,\n \"inner\" : {\"array\" : [ -1 , \"]}\" ]} , \"last\" : 1e2 } ";
 
     @Test
     public void testEmptyMap() {
@@ -154,4 +155,16 @@ public class JsonStreamingMapTest {
         assertEquals(1, inner.size());
         assertEquals("array", inner.get(0));
     }
+
+    @Test
+    public void testWithEscapesWhitespacesAndStructuralCharactersInStrings() {
+        JsonStreamingMap map = new JsonStreamingMap(new Value(TRICKY.getBytes()));
+        assertEquals(3, map.size());
+        assertEquals("v\"}A", map.get("key"));
+        JsonStreamingList inner = (JsonStreamingList) ((JsonStreamingMap) map.get("inner")).get("array");
+        assertEquals(2, inner.size());
+        assertEquals(-1L, inner.get(0));
+        assertEquals("]}", inner.get(1));
+        assertEquals(100f, map.get("last"));
+    }
 }